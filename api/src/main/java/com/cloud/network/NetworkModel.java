@@ -276,6 +276,20 @@ public interface NetworkModel {
 
     Set<Long> getAvailableIps(Network network, String requestedIp);
 
+    /**
+     * Picks a free guest ip in the cidr of the network and marks it as used
+     * in the allocation bitmap of the network.  The ip is checked against the
+     * nics, secondary ips and load balancers in the database before it is
+     * returned.
+     *
+     * @return the ip, null if the network has no free ip.
+     */
+    String allocateGuestIp(Network network);
+
+    void markGuestIpUsed(long networkId, String ip);
+
+    void markGuestIpFree(long networkId, String ip);
+
     String getDomainNetworkDomain(long domainId, long zoneId);
 
     PublicIpAddress getSourceNatIpAddressForGuestNetwork(Account owner, Network guestNetwork);
@@ -30,6 +30,12 @@ public interface ResourceLimitService {
     static final ConfigKey<Long> ResourceCountCheckInterval = new ConfigKey<Long>("Advanced", Long.class, "resourcecount.check.interval", "300",
             "Time (in seconds) to wait before running resource recalculation and fixing task. Default is 300 seconds, Setting this to 0 disables execution of the task", false);
 
+    static final ConfigKey<Long> ResourceCountCompactionInterval = new ConfigKey<Long>("Advanced", Long.class, "resourcecount.compaction.interval", "10",
+            "Time (in seconds) between two runs of the task folding the logged resource count changes into the resource counts. Setting this to 0 disables execution of the task", false);
+
+    static final ConfigKey<Long> ResourceLimitCacheTtl = new ConfigKey<Long>("Advanced", Long.class, "resourcelimit.cache.ttl", "30",
+            "Time (in seconds) the resource limits of accounts and domains are cached. Limits changed on another management server are enforced after this time", false);
+
     /**
      * Updates an existing resource limit with the specified details. If a limit doesn't exist, will create one.
      *
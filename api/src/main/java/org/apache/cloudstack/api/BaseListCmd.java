@@ -70,6 +70,19 @@ public abstract class BaseListCmd extends BaseCmd implements IBaseListCmd {
         return pageSize;
     }
 
+    /**
+     * List APIs that support keyset pagination declare the cursor parameter
+     * and override this together with {@link #isCursorSupported()}.
+     */
+    @Override
+    public String getCursor() {
+        return null;
+    }
+
+    protected boolean isCursorSupported() {
+        return false;
+    }
+
     @Override
     public void configure() {
         if (s_maxPageSize == null) {
@@ -132,7 +145,13 @@ public abstract class BaseListCmd extends BaseCmd implements IBaseListCmd {
             pageSize = Long.valueOf((String)pageSizeObj);
         }
 
+        final boolean cursor = params.get(ApiConstants.CURSOR) != null;
+        if (cursor && !isCursorSupported()) {
+            throw new ServerApiException(ApiErrorCode.PARAM_ERROR, "\"cursor\" parameter is not supported by " + getActualCommandName());
+        }
+
         if (params.get(ApiConstants.PAGE) == null &&
+                !cursor &&
                 pageSize != null &&
                 !pageSize.equals(BaseListCmd.s_pageSizeUnlimited)) {
             final ServerApiException ex = new ServerApiException(ApiErrorCode.PARAM_ERROR, "\"page\" parameter is required when \"pagesize\" is specified");
@@ -140,6 +159,8 @@ public abstract class BaseListCmd extends BaseCmd implements IBaseListCmd {
             throw ex;
         } else if (pageSize == null && (params.get(ApiConstants.PAGE) != null)) {
             throw new ServerApiException(ApiErrorCode.PARAM_ERROR, "\"pagesize\" parameter is required when \"page\" is specified");
+        } else if (cursor && params.get(ApiConstants.PAGE) != null) {
+            throw new ServerApiException(ApiErrorCode.PARAM_ERROR, "\"page\" and \"cursor\" parameters can not be specified together");
         }
     }
 }
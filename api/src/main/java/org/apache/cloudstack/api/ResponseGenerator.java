@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.cloudstack.acl.ControlledEntity;
 import org.apache.cloudstack.affinity.AffinityGroup;
 import org.apache.cloudstack.affinity.AffinityGroupResponse;
 import org.apache.cloudstack.api.ApiConstants.HostDetails;
@@ -216,6 +217,14 @@ public interface ResponseGenerator {
 
     ConfigurationResponse createConfigurationResponse(Configuration cfg);
 
+    /**
+     * Loads the accounts and domains owning the entities in bulk, so that
+     * the create*Response calls that follow for each entity do not look
+     * them up one at a time.  Only has an effect while a list API is being
+     * executed.
+     */
+    void prefetchOwners(List<? extends ControlledEntity> entities);
+
     SnapshotResponse createSnapshotResponse(Snapshot snapshot);
 
     SnapshotPolicyResponse createSnapshotPolicyResponse(SnapshotPolicy policy);
@@ -40,6 +40,7 @@ public class ListNetworksCmdByAdmin extends ListNetworksCmd {
         Pair<List<? extends Network>, Integer> networks = _networkService.searchForNetworks(this);
         ListResponse<NetworkResponse> response = new ListResponse<NetworkResponse>();
         List<NetworkResponse> networkResponses = new ArrayList<NetworkResponse>();
+        _responseGenerator.prefetchOwners(networks.first());
         for (Network network : networks.first()) {
             NetworkResponse networkResponse = _responseGenerator.createNetworkResponse(ResponseView.Full, network);
             networkResponses.add(networkResponse);
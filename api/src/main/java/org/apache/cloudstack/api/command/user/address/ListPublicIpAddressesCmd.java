@@ -182,6 +182,7 @@ public class ListPublicIpAddressesCmd extends BaseListTaggedResourcesCmd {
         Pair<List<? extends IpAddress>, Integer> result = _mgr.searchForIPAddresses(this);
         ListResponse<IPAddressResponse> response = new ListResponse<IPAddressResponse>();
         List<IPAddressResponse> ipAddrResponses = new ArrayList<IPAddressResponse>();
+        _responseGenerator.prefetchOwners(result.first());
         for (IpAddress ipAddress : result.first()) {
             IPAddressResponse ipResponse = _responseGenerator.createIPAddressResponse(ResponseView.Restricted, ipAddress);
             ipResponse.setObjectName("publicipaddress");
@@ -110,6 +110,7 @@ public class ListFirewallRulesCmd extends BaseListTaggedResourcesCmd implements
         ListResponse<FirewallResponse> response = new ListResponse<FirewallResponse>();
         List<FirewallResponse> fwResponses = new ArrayList<FirewallResponse>();
 
+        _responseGenerator.prefetchOwners(result.first());
         for (FirewallRule fwRule : result.first()) {
             FirewallResponse ruleData = _responseGenerator.createFirewallResponse(fwRule);
             ruleData.setObjectName("firewallrule");
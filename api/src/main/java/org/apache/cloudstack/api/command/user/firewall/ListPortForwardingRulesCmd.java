@@ -103,6 +103,7 @@ public class ListPortForwardingRulesCmd extends BaseListTaggedResourcesCmd {
         ListResponse<FirewallRuleResponse> response = new ListResponse<FirewallRuleResponse>();
         List<FirewallRuleResponse> fwResponses = new ArrayList<FirewallRuleResponse>();
 
+        _responseGenerator.prefetchOwners(result.first());
         for (PortForwardingRule fwRule : result.first()) {
             FirewallRuleResponse ruleData = _responseGenerator.createPortForwardingRuleResponse(fwRule);
             ruleData.setObjectName("portforwardingrule");
@@ -125,6 +125,7 @@ public class ListLoadBalancerRulesCmd extends BaseListTaggedResourcesCmd {
         ListResponse<LoadBalancerResponse> response = new ListResponse<LoadBalancerResponse>();
         List<LoadBalancerResponse> lbResponses = new ArrayList<LoadBalancerResponse>();
         if (loadBalancers != null) {
+            _responseGenerator.prefetchOwners(loadBalancers.first());
             for (LoadBalancer loadBalancer : loadBalancers.first()) {
                 LoadBalancerResponse lbResponse = _responseGenerator.createLoadBalancerResponse(loadBalancer);
                 lbResponse.setObjectName("loadbalancerrule");
@@ -133,6 +133,10 @@ public class ListVMsCmd extends BaseListTaggedResourcesCmd {
     @Parameter(name = ApiConstants.USER_ID, type = CommandType.UUID, entityType = UserResponse.class, required = false, description = "the user ID that created the VM and is under the account that owns the VM")
     private Long userId;
 
+    @Parameter(name = ApiConstants.CURSOR, type = CommandType.STRING, description = "the nextcursor returned by the previous page, "
+            + "lists the page after it without counting the rows of the previous pages", since = "4.12")
+    private String cursor;
+
     /////////////////////////////////////////////////////
     /////////////////// Accessors ///////////////////////
     /////////////////////////////////////////////////////
@@ -157,6 +161,16 @@ public class ListVMsCmd extends BaseListTaggedResourcesCmd {
         return name;
     }
 
+    @Override
+    public String getCursor() {
+        return cursor;
+    }
+
+    @Override
+    protected boolean isCursorSupported() {
+        return true;
+    }
+
     public String getState() {
         return state;
     }
@@ -73,6 +73,7 @@ public class ListVMSnapshotCmd extends BaseListTaggedResourcesCmd {
         Pair<List<? extends VMSnapshot>,Integer> result = _vmSnapshotService.listVMSnapshots(this);
         ListResponse<VMSnapshotResponse> response = new ListResponse<VMSnapshotResponse>();
         List<VMSnapshotResponse> snapshotResponses = new ArrayList<VMSnapshotResponse>();
+        _responseGenerator.prefetchOwners(result.first());
         for (VMSnapshot r : result.first()) {
             VMSnapshotResponse vmSnapshotResponse = _responseGenerator.createVMSnapshotResponse(r);
             vmSnapshotResponse.setObjectName("vmSnapshot");
@@ -94,6 +94,10 @@ public class ListVolumesCmd extends BaseListTaggedResourcesCmd {
     @Parameter(name = ApiConstants.DISPLAY_VOLUME, type = CommandType.BOOLEAN, description = "list resources by display flag; only ROOT admin is eligible to pass this parameter", since = "4.4", authorized = {RoleType.Admin})
     private Boolean display;
 
+    @Parameter(name = ApiConstants.CURSOR, type = CommandType.STRING, description = "the nextcursor returned by the previous page, "
+            + "lists the page after it without counting the rows of the previous pages", since = "4.12")
+    private String cursor;
+
     /////////////////////////////////////////////////////
     /////////////////// Accessors ///////////////////////
     /////////////////////////////////////////////////////
@@ -138,6 +142,16 @@ public class ListVolumesCmd extends BaseListTaggedResourcesCmd {
         return storageId;
     }
 
+    @Override
+    public String getCursor() {
+        return cursor;
+    }
+
+    @Override
+    protected boolean isCursorSupported() {
+        return true;
+    }
+
     @Override
     public Boolean getDisplay() {
         if (display != null) {
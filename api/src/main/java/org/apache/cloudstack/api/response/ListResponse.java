@@ -24,6 +24,7 @@ import org.apache.cloudstack.api.ResponseObject;
 public class ListResponse<T extends ResponseObject> extends BaseResponse {
     List<T> responses;
     private transient Integer count;
+    private transient String nextCursor;
 
     public List<T> getResponses() {
         return responses;
@@ -49,4 +50,16 @@ public class ListResponse<T extends ResponseObject> extends BaseResponse {
 
         return null;
     }
+
+    /**
+     * @return the cursor of the page after this one, null if this is the last
+     *         page or the API does not support keyset pagination.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
@@ -0,0 +1,66 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.api;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.cloudstack.api.command.user.volume.ListVolumesCmd;
+import org.apache.cloudstack.api.command.user.zone.ListZonesCmd;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BaseListCmdTest {
+
+    private static Map<String, String> params(String... keyValues) {
+        Map<String, String> params = new HashMap<String, String>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            params.put(keyValues[i], keyValues[i + 1]);
+        }
+        return params;
+    }
+
+    @Test
+    public void cursorReplacesPageWhereSupported() {
+        new ListVolumesCmd().validateSpecificParameters(params(ApiConstants.PAGE_SIZE, "10", ApiConstants.CURSOR, "MTA"));
+    }
+
+    @Test(expected = ServerApiException.class)
+    public void cursorAndPageAreExclusive() {
+        new ListVolumesCmd().validateSpecificParameters(params(ApiConstants.PAGE_SIZE, "10", ApiConstants.PAGE, "2", ApiConstants.CURSOR, "MTA"));
+    }
+
+    @Test
+    public void cursorIsRejectedWhereNotSupported() {
+        try {
+            new ListZonesCmd().validateSpecificParameters(params(ApiConstants.PAGE_SIZE, "10", ApiConstants.CURSOR, "MTA"));
+            Assert.fail("cursor accepted by listZones");
+        } catch (ServerApiException e) {
+            Assert.assertEquals(ApiErrorCode.PARAM_ERROR, e.getErrorCode());
+        }
+    }
+
+    @Test(expected = ServerApiException.class)
+    public void pageSizeNeedsPage() {
+        new ListZonesCmd().validateSpecificParameters(params(ApiConstants.PAGE_SIZE, "10"));
+    }
+
+    @Test
+    public void unlimitedPageSizeDoesNotNeedPage() {
+        new ListZonesCmd().validateSpecificParameters(params(ApiConstants.PAGE_SIZE, "-1"));
+    }
+}
@@ -0,0 +1,44 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.agent.api;
+
+/*
+ * Sent to MS peers when tables with a DAO query cache were written, so that
+ * the peers flush their cached search results for those tables.
+ */
+public class InvalidateQueryCacheCommand extends Command {
+    String[] tables;
+
+    protected InvalidateQueryCacheCommand() {
+    }
+
+    public InvalidateQueryCacheCommand(String[] tables) {
+        this.tables = tables;
+    }
+
+    public String[] getTables() {
+        return tables;
+    }
+
+    @Override
+    public boolean executeInSequence() {
+        return false;
+    }
+}
@@ -0,0 +1,51 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.agent.api;
+
+/*
+ * Sent to MS peers when the uuid of a row was changed or the row was deleted,
+ * so that the peers drop the uuid translations they cached for that row, or
+ * for every row of the entity when the id is null.
+ */
+public class InvalidateUuidCommand extends Command {
+    String entityBeanType;
+    Long id;
+
+    protected InvalidateUuidCommand() {
+    }
+
+    public InvalidateUuidCommand(String entityBeanType, Long id) {
+        this.entityBeanType = entityBeanType;
+        this.id = id;
+    }
+
+    public String getEntityBeanType() {
+        return entityBeanType;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean executeInSequence() {
+        return false;
+    }
+}
@@ -16,6 +16,8 @@
 // under the License.
 package com.cloud.capacity;
 
+import java.util.List;
+
 import org.apache.cloudstack.framework.config.ConfigKey;
 import org.apache.cloudstack.storage.datastore.db.StoragePoolVO;
 
@@ -99,6 +101,13 @@ public interface CapacityManager {
 
     void updateCapacityForHost(Host host);
 
+    /**
+     * Same as updateCapacityForHost for each of the hosts, but loads the vms
+     * and capacities of many hosts at a time and updates them in batches
+     * @param hosts the hosts to update the cpu/ram capacity of
+     */
+    void updateCapacityForHosts(List<? extends Host> hosts);
+
     /**
      * @param pool storage pool
      * @param templateForVmCreation template that will be used for vm creation
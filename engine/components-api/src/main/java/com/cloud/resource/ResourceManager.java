@@ -123,6 +123,11 @@ public interface ResourceManager extends ResourceService {
 
     HostStats getHostStatistics(long hostId);
 
+    /**
+     * @param timeout time in milliseconds to wait for the host to answer, 0 for the default wait.
+     */
+    HostStats getHostStatistics(long hostId, int timeout);
+
     Long getGuestOSCategoryId(long hostId);
 
     String getHostTags(long hostId);
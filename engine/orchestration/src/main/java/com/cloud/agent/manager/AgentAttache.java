@@ -18,10 +18,8 @@ package com.cloud.agent.manager;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -85,26 +83,10 @@ public abstract class AgentAttache {
         }
     };
 
-    protected static final Comparator<Object> s_seqComparator = new Comparator<Object>() {
-        @Override
-        public int compare(final Object o1, final Object o2) {
-            long seq1 = ((Request)o1).getSequence();
-            long seq2 = (Long)o2;
-            if (seq1 < seq2) {
-                return -1;
-            } else if (seq1 > seq2) {
-                return 1;
-            } else {
-                return 0;
-            }
-        }
-    };
-
     protected final long _id;
     protected String _name = null;
     protected final ConcurrentHashMap<Long, Listener> _waitForList;
-    protected final LinkedList<Request> _requests;
-    protected Long _currentSequence;
+    protected final AgentRequestQueue _requests;
     protected Status _status = Status.Connecting;
     protected boolean _maintenance;
     protected long _nextSequence;
@@ -126,9 +108,8 @@ public abstract class AgentAttache {
         _id = id;
         _name = name;
         _waitForList = new ConcurrentHashMap<Long, Listener>();
-        _currentSequence = null;
         _maintenance = maintenance;
-        _requests = new LinkedList<Request>();
+        _requests = new AgentRequestQueue();
         _agentMgr = agentMgr;
         _nextSequence = new Long(s_rand.nextInt(Short.MAX_VALUE)).longValue() << 48;
     }
@@ -179,18 +160,12 @@ public abstract class AgentAttache {
         }
     }
 
-    protected synchronized void addRequest(final Request req) {
-        int index = findRequest(req);
-        assert (index < 0) : "How can we get index again? " + index + ":" + req.toString();
-        _requests.add(-index - 1, req);
-    }
-
     protected void cancel(final Request req) {
         long seq = req.getSequence();
         cancel(seq);
     }
 
-    protected synchronized void cancel(final long seq) {
+    protected void cancel(final long seq) {
         if (s_logger.isDebugEnabled()) {
             s_logger.debug(log(seq, "Cancelling."));
         }
@@ -198,18 +173,7 @@ public abstract class AgentAttache {
         if (listener != null) {
             listener.processDisconnect(_id, Status.Disconnected);
         }
-        int index = findRequest(seq);
-        if (index >= 0) {
-            _requests.remove(index);
-        }
-    }
-
-    protected synchronized int findRequest(final Request req) {
-        return Collections.binarySearch(_requests, req, s_reqComparator);
-    }
-
-    protected synchronized int findRequest(final long seq) {
-        return Collections.binarySearch(_requests, seq, s_seqComparator);
+        _requests.remove(seq);
     }
 
     protected String log(final long seq, final String msg) {
@@ -249,6 +213,17 @@ public abstract class AgentAttache {
         return _requests.size();
     }
 
+    public AgentRequestQueue getRequestQueue() {
+        return _requests;
+    }
+
+    /**
+     * @return the sequence of the request being executed in sequence, or null if there is none.
+     */
+    public Long getCurrentSequence() {
+        return _requests.getCurrentSequence();
+    }
+
     public int getNonRecurringListenersSize() {
         List<Listener> nonRecurringListenersList = new ArrayList<Listener>();
         if (_waitForList.isEmpty()) {
@@ -355,39 +330,44 @@ public abstract class AgentAttache {
             s_logger.debug(log(seq, "Routed from " + req.getManagementServerId()));
         }
 
-        synchronized (this) {
-            try {
-                if (isClosed()) {
-                    throw new AgentUnavailableException("The link to the agent " + _name + " has been closed", _id);
-                }
+        try {
+            if (isClosed()) {
+                throw new AgentUnavailableException("The link to the agent " + _name + " has been closed", _id);
+            }
 
-                if (req.executeInSequence() && _currentSequence != null) {
-                    req.logD("Waiting for Seq " + _currentSequence + " Scheduling: ", true);
-                    addRequest(req);
+            if (req.executeInSequence()) {
+                if (!_requests.tryStart(seq)) {
+                    req.logD("Waiting for Seq " + _requests.getCurrentSequence() + " Scheduling: ", true);
+                    _requests.add(req);
+                    // the current request may have been done before this one was queued
+                    sendQueued();
                     return;
                 }
-
-                // If we got to here either we're not suppose to set
-                // the _currentSequence or it is null already.
-
-                req.logD("Sending ", true);
-                send(req);
-
-                if (req.executeInSequence() && _currentSequence == null) {
-                    _currentSequence = seq;
-                    if (s_logger.isTraceEnabled()) {
-                        s_logger.trace(log(seq, " is current sequence"));
-                    }
+                if (s_logger.isTraceEnabled()) {
+                    s_logger.trace(log(seq, " is current sequence"));
                 }
-            } catch (AgentUnavailableException e) {
-                s_logger.info(log(seq, "Unable to send due to " + e.getMessage()));
-                cancel(seq);
-                throw e;
-            } catch (Exception e) {
-                s_logger.warn(log(seq, "Unable to send due to "), e);
-                cancel(seq);
-                throw new AgentUnavailableException("Problem due to other exception " + e.getMessage(), _id);
             }
+
+            // Requests that are not executed in sequence are sent right
+            // away, without waiting on the ones that are.
+            req.logD("Sending ", true);
+            send(req);
+        } catch (AgentUnavailableException e) {
+            s_logger.info(log(seq, "Unable to send due to " + e.getMessage()));
+            cancel(seq);
+            releaseSequence(req);
+            throw e;
+        } catch (Exception e) {
+            s_logger.warn(log(seq, "Unable to send due to "), e);
+            cancel(seq);
+            releaseSequence(req);
+            throw new AgentUnavailableException("Problem due to other exception " + e.getMessage(), _id);
+        }
+    }
+
+    private void releaseSequence(final Request req) {
+        if (req.executeInSequence() && _requests.finish(req.getSequence())) {
+            sendQueued();
         }
     }
 
@@ -422,7 +402,7 @@ public abstract class AgentAttache {
                     return answers;
                 }
 
-                final Long current = _currentSequence;
+                final Long current = _requests.getCurrentSequence();
                 if (current != null && seq != current) {
                     if (s_logger.isDebugEnabled()) {
                         s_logger.debug(log(seq, "Waited too long."));
@@ -440,16 +420,14 @@ public abstract class AgentAttache {
         } catch (OperationTimedoutException e) {
             s_logger.warn(log(seq, "Timed out on " + req.toString()));
             cancel(seq);
-            final Long current = _currentSequence;
-            if (req.executeInSequence() && (current != null && current == seq)) {
+            if (req.executeInSequence()) {
                 sendNext(seq);
             }
             throw e;
         } catch (Exception e) {
             s_logger.warn(log(seq, "Exception while waiting for answer"), e);
             cancel(seq);
-            final Long current = _currentSequence;
-            if (req.executeInSequence() && (current != null && current == seq)) {
+            if (req.executeInSequence()) {
                 sendNext(seq);
             }
             throw new OperationTimedoutException(req.getCommands(), _id, seq, wait, false);
@@ -458,28 +436,42 @@ public abstract class AgentAttache {
         }
     }
 
-    protected synchronized void sendNext(final long seq) {
-        _currentSequence = null;
+    /**
+     * Sends the next request waiting to be executed in sequence, if the
+     * request is the one being executed.
+     */
+    protected void sendNext(final long seq) {
+        if (!_requests.finish(seq)) {
+            if (s_logger.isDebugEnabled()) {
+                s_logger.debug(log(seq, "is not the current sequence " + _requests.getCurrentSequence()));
+            }
+            return;
+        }
         if (_requests.isEmpty()) {
             if (s_logger.isDebugEnabled()) {
                 s_logger.debug(log(seq, "No more commands found"));
             }
-            return;
         }
+        sendQueued();
+    }
 
-        Request req = _requests.pop();
-        if (s_logger.isDebugEnabled()) {
-            s_logger.debug(log(req.getSequence(), "Sending now.  is current sequence."));
-        }
-        try {
-            send(req);
-        } catch (AgentUnavailableException e) {
+    private void sendQueued() {
+        Request req;
+        while ((req = _requests.next()) != null) {
             if (s_logger.isDebugEnabled()) {
-                s_logger.debug(log(req.getSequence(), "Unable to send the next sequence"));
+                s_logger.debug(log(req.getSequence(), "Sending now.  is current sequence."));
+            }
+            try {
+                send(req);
+                return;
+            } catch (AgentUnavailableException e) {
+                if (s_logger.isDebugEnabled()) {
+                    s_logger.debug(log(req.getSequence(), "Unable to send the next sequence"));
+                }
+                cancel(req.getSequence());
+                _requests.finish(req.getSequence());
             }
-            cancel(req.getSequence());
         }
-        _currentSequence = req.getSequence();
     }
 
     public void process(final Answer[] answers) {
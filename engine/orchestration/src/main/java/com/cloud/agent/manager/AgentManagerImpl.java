@@ -113,6 +113,7 @@ import com.cloud.utils.exception.NioConnectionException;
 import com.cloud.utils.exception.TaskExecutionException;
 import com.cloud.utils.fsm.NoTransitionException;
 import com.cloud.utils.fsm.StateMachine2;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.nio.HandlerFactory;
 import com.cloud.utils.nio.Link;
 import com.cloud.utils.nio.NioServer;
@@ -612,6 +613,12 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
 
         _monitorExecutor.scheduleWithFixedDelay(new MonitorTask(), mgmtServiceConf.getPingInterval(), mgmtServiceConf.getPingInterval(), TimeUnit.SECONDS);
 
+        try {
+            JmxUtil.registerMBean("AgentManager", "RequestQueues", new AgentRequestQueues(_agents));
+        } catch (final Exception e) {
+            s_logger.warn("Unable to register the agent request queues to JMX", e);
+        }
+
         return true;
     }
 
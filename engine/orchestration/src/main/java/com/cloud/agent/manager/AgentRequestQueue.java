@@ -0,0 +1,168 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent.manager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cloud.agent.transport.Request;
+
+/**
+ * AgentRequestQueue holds the requests of an agent that have to be executed
+ * in sequence, one after the other in the order of their sequence number.
+ *
+ * The requests are kept in a skip list keyed by their sequence, so adding,
+ * finding and cancelling one does not walk the queue, and the one request
+ * being executed is handed over with compare-and-set, so none of it needs a
+ * lock. Requests that can be executed in parallel never go through here.
+ */
+public class AgentRequestQueue {
+    private static final long NONE = Long.MIN_VALUE;
+    // the next request is being taken off the queue
+    private static final long HANDING_OVER = Long.MIN_VALUE + 1;
+
+    private static class Queued {
+        final Request _request;
+        final long _queuedTime;
+
+        Queued(Request request, long queuedTime) {
+            _request = request;
+            _queuedTime = queuedTime;
+        }
+    }
+
+    private final ConcurrentSkipListMap<Long, Queued> _queue = new ConcurrentSkipListMap<Long, Queued>();
+    private final AtomicInteger _size = new AtomicInteger();
+    private final AtomicLong _current = new AtomicLong(NONE);
+
+    private final AtomicLong _dequeued = new AtomicLong();
+    private final AtomicLong _totalWait = new AtomicLong();
+    private final AtomicLong _maxWait = new AtomicLong();
+    private volatile long _lastWait;
+
+    /**
+     * Makes the request the current one if no request is being executed
+     * and none is waiting.
+     *
+     * @return true if the request is to be sent right away.
+     */
+    public boolean tryStart(long seq) {
+        return _queue.isEmpty() && _current.compareAndSet(NONE, seq);
+    }
+
+    public void add(Request req) {
+        if (_queue.put(req.getSequence(), new Queued(req, System.currentTimeMillis())) == null) {
+            _size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Takes the next request off the queue and makes it the current one, if
+     * no request is being executed.
+     *
+     * @return the request to send, or null if there is none or another
+     *         request is being executed.
+     */
+    public Request next() {
+        while (_current.compareAndSet(NONE, HANDING_OVER)) {
+            final Map.Entry<Long, Queued> entry = _queue.pollFirstEntry();
+            if (entry == null) {
+                _current.set(NONE);
+                // a request added while handing over would be left waiting otherwise
+                if (_queue.isEmpty()) {
+                    return null;
+                }
+                continue;
+            }
+            _size.decrementAndGet();
+            _current.set(entry.getKey());
+
+            final long wait = System.currentTimeMillis() - entry.getValue()._queuedTime;
+            _lastWait = wait;
+            _totalWait.addAndGet(wait);
+            _dequeued.incrementAndGet();
+            _maxWait.accumulateAndGet(wait, Math::max);
+            return entry.getValue()._request;
+        }
+        return null;
+    }
+
+    /**
+     * Lets the next request go if the request is the current one.
+     *
+     * @return true if the request was the current one.
+     */
+    public boolean finish(long seq) {
+        return _current.compareAndSet(seq, NONE);
+    }
+
+    /**
+     * @return the sequence of the request being executed, or null if there is none.
+     */
+    public Long getCurrentSequence() {
+        final long current = _current.get();
+        return current == NONE || current == HANDING_OVER ? null : current;
+    }
+
+    /**
+     * @return true if the request was waiting.
+     */
+    public boolean remove(long seq) {
+        if (_queue.remove(seq) != null) {
+            _size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public void clear() {
+        while (_queue.pollFirstEntry() != null) {
+            _size.decrementAndGet();
+        }
+    }
+
+    public boolean isEmpty() {
+        return _queue.isEmpty();
+    }
+
+    public int size() {
+        return _size.get();
+    }
+
+    /**
+     * @return the time, in milliseconds, the request first in line has been waiting.
+     */
+    public long getOldestWaitMillis() {
+        final Map.Entry<Long, Queued> entry = _queue.firstEntry();
+        return entry == null ? 0 : System.currentTimeMillis() - entry.getValue()._queuedTime;
+    }
+
+    public long getLastWaitMillis() {
+        return _lastWait;
+    }
+
+    public long getMaxWaitMillis() {
+        return _maxWait.get();
+    }
+
+    public long getAverageWaitMillis() {
+        final long dequeued = _dequeued.get();
+        return dequeued == 0 ? 0 : _totalWait.get() / dequeued;
+    }
+}
@@ -0,0 +1,87 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reports the in sequence request queues of the agents connected to this
+ * management server.
+ */
+public class AgentRequestQueues implements AgentRequestQueuesMBean {
+    private final Map<Long, AgentAttache> _agents;
+
+    public AgentRequestQueues(Map<Long, AgentAttache> agents) {
+        _agents = agents;
+    }
+
+    @Override
+    public int getQueuedRequestCount() {
+        int count = 0;
+        for (final AgentAttache attache : _agents.values()) {
+            count += attache.getQueueSize();
+        }
+        return count;
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        int depth = 0;
+        for (final AgentAttache attache : _agents.values()) {
+            depth = Math.max(depth, attache.getQueueSize());
+        }
+        return depth;
+    }
+
+    @Override
+    public long getOldestWaitMillis() {
+        long wait = 0;
+        for (final AgentAttache attache : _agents.values()) {
+            wait = Math.max(wait, attache.getRequestQueue().getOldestWaitMillis());
+        }
+        return wait;
+    }
+
+    @Override
+    public String[] getQueuesByHost() {
+        final List<AgentAttache> attaches = new ArrayList<AgentAttache>();
+        for (final AgentAttache attache : _agents.values()) {
+            if (attache.getQueueSize() > 0 || attache.getRequestQueue().getMaxWaitMillis() > 0) {
+                attaches.add(attache);
+            }
+        }
+        Collections.sort(attaches, new Comparator<AgentAttache>() {
+            @Override
+            public int compare(AgentAttache a1, AgentAttache a2) {
+                return Integer.compare(a2.getQueueSize(), a1.getQueueSize());
+            }
+        });
+
+        final String[] queues = new String[attaches.size()];
+        for (int i = 0; i < queues.length; i++) {
+            final AgentAttache attache = attaches.get(i);
+            final AgentRequestQueue queue = attache.getRequestQueue();
+            queues[i] = "Host " + attache.getId() + " (" + attache.getName() + "): " + queue.size() + " queued, oldest waiting " + queue.getOldestWaitMillis()
+                    + " ms, average wait " + queue.getAverageWaitMillis() + " ms, max wait " + queue.getMaxWaitMillis() + " ms";
+        }
+        return queues;
+    }
+}
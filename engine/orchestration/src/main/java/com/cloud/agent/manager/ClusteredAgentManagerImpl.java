@@ -24,6 +24,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -44,8 +45,11 @@ import javax.net.ssl.SSLEngine;
 
 import org.apache.cloudstack.ca.CAManager;
 import org.apache.cloudstack.framework.config.ConfigDepot;
+import org.apache.cloudstack.framework.config.ConfigDepotAdmin;
 import org.apache.cloudstack.framework.config.ConfigKey;
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
+import org.apache.cloudstack.framework.messagebus.MessageBus;
+import org.apache.cloudstack.framework.messagebus.MessageSubscriber;
 import org.apache.cloudstack.ha.dao.HAConfigDao;
 import org.apache.cloudstack.managed.context.ManagedContextRunnable;
 import org.apache.cloudstack.managed.context.ManagedContextTimerTask;
@@ -59,6 +63,9 @@ import com.cloud.agent.api.CancelCommand;
 import com.cloud.agent.api.ChangeAgentAnswer;
 import com.cloud.agent.api.ChangeAgentCommand;
 import com.cloud.agent.api.Command;
+import com.cloud.agent.api.InvalidateConfigValuesCommand;
+import com.cloud.agent.api.InvalidateQueryCacheCommand;
+import com.cloud.agent.api.InvalidateUuidCommand;
 import com.cloud.agent.api.PropagateResourceEventCommand;
 import com.cloud.agent.api.ScheduleHostScanTaskCommand;
 import com.cloud.agent.api.TransferAgentCommand;
@@ -76,6 +83,7 @@ import com.cloud.cluster.agentlb.HostTransferMapVO;
 import com.cloud.cluster.agentlb.HostTransferMapVO.HostTransferState;
 import com.cloud.cluster.agentlb.dao.HostTransferMapDao;
 import com.cloud.cluster.dao.ManagementServerHostDao;
+import com.cloud.event.EventTypes;
 import com.cloud.exception.AgentUnavailableException;
 import com.cloud.exception.OperationTimedoutException;
 import com.cloud.exception.UnsupportedVersionException;
@@ -88,6 +96,8 @@ import com.cloud.serializer.GsonHelper;
 import com.cloud.utils.DateUtil;
 import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.QueryBuilder;
+import com.cloud.utils.db.QueryCache;
+import com.cloud.utils.db.UuidChanges;
 import com.cloud.utils.db.SearchCriteria.Op;
 import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.exception.CloudRuntimeException;
@@ -124,6 +134,10 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
     @Inject
     ConfigDepot _configDepot;
     @Inject
+    ConfigDepotAdmin _configDepotAdmin;
+    @Inject
+    MessageBus _messageBus;
+    @Inject
     private OutOfBandManagementDao outOfBandManagementDao;
     @Inject
     private HAConfigDao haConfigDao;
@@ -153,6 +167,24 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
 
         _clusterMgr.registerListener(this);
         _clusterMgr.registerDispatcher(new ClusterDispatcher());
+        QueryCache.setListener(new QueryCache.Listener() {
+            @Override
+            public void onTablesChanged(final Collection<String> tables) {
+                notifyNodesInClusterToInvalidateQueryCache(tables);
+            }
+        });
+        UuidChanges.setClusterListener(new UuidChanges.Listener() {
+            @Override
+            public void onUuidChanged(final Class<?> entityBeanType, final Long id) {
+                notifyNodesInClusterToInvalidateUuid(entityBeanType, id);
+            }
+        });
+        _messageBus.subscribe(EventTypes.EVENT_CONFIGURATION_VALUE_EDIT, new MessageSubscriber() {
+            @Override
+            public void onPublishMessage(final String senderAddress, final String subject, final Object args) {
+                notifyNodesInClusterToInvalidateConfigValues((String)args);
+            }
+        });
 
         _gson = GsonHelper.getGson();
 
@@ -389,6 +421,32 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
         _clusterMgr.broadcast(0, _gson.toJson(cmds));
     }
 
+    // notifies MS peers to flush the DAO query caches of tables written by this MS
+    public void notifyNodesInClusterToInvalidateQueryCache(final Collection<String> tables) {
+        if (s_logger.isTraceEnabled()) {
+            s_logger.trace("Notifying other MS nodes to invalidate query cache for " + tables);
+        }
+        final Command[] cmds = new Command[] {new InvalidateQueryCacheCommand(tables.toArray(new String[tables.size()]))};
+        _clusterMgr.broadcast(0, _gson.toJson(cmds));
+    }
+
+    // notifies MS peers to drop the uuid translations of a row whose uuid was changed or that was deleted by this MS
+    public void notifyNodesInClusterToInvalidateUuid(final Class<?> entityBeanType, final Long id) {
+        if (s_logger.isTraceEnabled()) {
+            s_logger.trace("Notifying other MS nodes to invalidate uuid of " + entityBeanType.getSimpleName() + " " + id);
+        }
+        final Command[] cmds = new Command[] {new InvalidateUuidCommand(entityBeanType.getName(), id)};
+        _clusterMgr.broadcast(0, _gson.toJson(cmds));
+    }
+
+    public void notifyNodesInClusterToInvalidateConfigValues(final String name) {
+        if (s_logger.isTraceEnabled()) {
+            s_logger.trace("Notifying other MS nodes to invalidate config values after update of " + name);
+        }
+        final Command[] cmds = new Command[] {new InvalidateConfigValuesCommand(name)};
+        _clusterMgr.broadcast(0, _gson.toJson(cmds));
+    }
+
     protected static void logT(final byte[] bytes, final String msg) {
         s_logger.trace("Seq " + Request.getAgentId(bytes) + "-" + Request.getSequence(bytes) + ": MgmtId " + Request.getManagementServerId(bytes) + ": "
                 + (Request.isRequest(bytes) ? "Req: " : "Resp: ") + msg);
@@ -648,11 +706,10 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
                             logD(data, "Cancel request received");
                         }
                         agent.cancel(cancel.getSequence());
-                        final Long current = agent._currentSequence;
                         // if the request is the current request, always have to trigger sending next request in
                         // sequence,
                         // otherwise the agent queue will be blocked
-                        if (req.executeInSequence() && current != null && current == Request.getSequence(data)) {
+                        if (req.executeInSequence()) {
                             agent.sendNext(Request.getSequence(data));
                         }
                         return;
@@ -1343,6 +1400,31 @@ public class ClusteredAgentManagerImpl extends AgentManagerImpl implements Clust
                 final ScheduleHostScanTaskCommand cmd = (ScheduleHostScanTaskCommand)cmds[0];
                 final String response = handleScheduleHostScanTaskCommand(cmd);
                 return response;
+            } else if (cmds.length == 1 && cmds[0] instanceof InvalidateQueryCacheCommand) {
+                final InvalidateQueryCacheCommand cmd = (InvalidateQueryCacheCommand)cmds[0];
+                QueryCache.invalidateLocal(Arrays.asList(cmd.getTables()));
+                final Answer[] answers = new Answer[1];
+                answers[0] = new Answer(cmd, true, null);
+                return _gson.toJson(answers);
+            } else if (cmds.length == 1 && cmds[0] instanceof InvalidateUuidCommand) {
+                final InvalidateUuidCommand cmd = (InvalidateUuidCommand)cmds[0];
+                boolean result = true;
+                try {
+                    UuidChanges.changedLocal(Class.forName(cmd.getEntityBeanType()), cmd.getId());
+                } catch (final ClassNotFoundException e) {
+                    s_logger.warn("Unable to invalidate uuid of unknown entity " + cmd.getEntityBeanType(), e);
+                    result = false;
+                }
+                final Answer[] answers = new Answer[1];
+                answers[0] = new Answer(cmd, result, null);
+                return _gson.toJson(answers);
+            } else if (cmds.length == 1 && cmds[0] instanceof InvalidateConfigValuesCommand) {
+                final InvalidateConfigValuesCommand cmd = (InvalidateConfigValuesCommand)cmds[0];
+                s_logger.debug("Invalidating config values after update of " + cmd.getName() + " on a peer");
+                _configDepotAdmin.invalidateValues();
+                final Answer[] answers = new Answer[1];
+                answers[0] = new Answer(cmd, true, null);
+                return _gson.toJson(answers);
             }
 
             try {
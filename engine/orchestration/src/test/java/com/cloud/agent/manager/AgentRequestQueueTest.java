@@ -0,0 +1,125 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent.manager;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cloud.agent.transport.Request;
+
+public class AgentRequestQueueTest {
+
+    private final AgentRequestQueue queue = new AgentRequestQueue();
+
+    private static Request request(long seq) {
+        Request req = mock(Request.class);
+        when(req.getSequence()).thenReturn(seq);
+        return req;
+    }
+
+    @Test
+    public void testRequestsAreSentInSequence() {
+        Assert.assertTrue(queue.tryStart(1));
+        Assert.assertFalse(queue.tryStart(2));
+        Assert.assertEquals(Long.valueOf(1), queue.getCurrentSequence());
+
+        queue.add(request(4));
+        queue.add(request(3));
+        queue.add(request(2));
+        Assert.assertEquals(3, queue.size());
+        // request 1 is still being executed
+        Assert.assertNull(queue.next());
+
+        Assert.assertFalse(queue.finish(2));
+        Assert.assertTrue(queue.finish(1));
+        Assert.assertEquals(2, queue.next().getSequence());
+        Assert.assertTrue(queue.finish(2));
+        Assert.assertEquals(3, queue.next().getSequence());
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(Long.valueOf(3), queue.getCurrentSequence());
+    }
+
+    @Test
+    public void testCancelledRequestIsNotSent() {
+        Assert.assertTrue(queue.tryStart(1));
+        queue.add(request(2));
+        queue.add(request(3));
+
+        Assert.assertTrue(queue.remove(2));
+        Assert.assertFalse(queue.remove(2));
+        Assert.assertTrue(queue.finish(1));
+        Assert.assertEquals(3, queue.next().getSequence());
+        Assert.assertTrue(queue.finish(3));
+        Assert.assertNull(queue.next());
+        Assert.assertNull(queue.getCurrentSequence());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testConcurrentSendersDoNotLoseRequests() throws InterruptedException {
+        final int threads = 8;
+        final int requestsPerThread = 500;
+        final List<Long> sent = Collections.synchronizedList(new ArrayList<Long>());
+        final AtomicInteger executing = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final long base = t * requestsPerThread;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (long seq = base; seq < base + requestsPerThread; seq++) {
+                        Request req = request(seq);
+                        if (!queue.tryStart(seq)) {
+                            queue.add(req);
+                            req = queue.next();
+                        }
+                        // execute the request and whatever is queued up behind it
+                        while (req != null) {
+                            if (executing.incrementAndGet() > 1) {
+                                overlaps.incrementAndGet();
+                            }
+                            sent.add(req.getSequence());
+                            executing.decrementAndGet();
+                            if (!queue.finish(req.getSequence())) {
+                                overlaps.incrementAndGet();
+                            }
+                            req = queue.next();
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        Assert.assertEquals(0, overlaps.get());
+        Assert.assertEquals(threads * requestsPerThread, sent.size());
+        Assert.assertEquals(0, queue.size());
+        Assert.assertNull(queue.getCurrentSequence());
+    }
+}
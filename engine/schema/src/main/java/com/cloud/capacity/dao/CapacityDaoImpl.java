@@ -63,6 +63,7 @@ public class CapacityDaoImpl extends GenericDaoBase<CapacityVO, Long> implements
             " AND capacity_type = ? AND cluster_details.name= ? AND ((total_capacity * cluster_details.value) - used_capacity + reserved_capacity) >= ?) ";
 
     private final SearchBuilder<CapacityVO> _hostIdTypeSearch;
+    private final SearchBuilder<CapacityVO> _hostIdsTypesSearch;
     private final SearchBuilder<CapacityVO> _hostOrPoolIdSearch;
     private final SearchBuilder<CapacityVO> _allFieldsSearch;
     @Inject
@@ -204,6 +205,11 @@ public class CapacityDaoImpl extends GenericDaoBase<CapacityVO, Long> implements
         _hostIdTypeSearch.and("type", _hostIdTypeSearch.entity().getCapacityType(), SearchCriteria.Op.EQ);
         _hostIdTypeSearch.done();
 
+        _hostIdsTypesSearch = createSearchBuilder();
+        _hostIdsTypesSearch.and("hostIds", _hostIdsTypesSearch.entity().getHostOrPoolId(), SearchCriteria.Op.IN);
+        _hostIdsTypesSearch.and("types", _hostIdsTypesSearch.entity().getCapacityType(), SearchCriteria.Op.IN);
+        _hostIdsTypesSearch.done();
+
         _hostOrPoolIdSearch = createSearchBuilder();
         _hostOrPoolIdSearch.and("hostId", _hostOrPoolIdSearch.entity().getHostOrPoolId(), SearchCriteria.Op.EQ);
         _hostOrPoolIdSearch.done();
@@ -571,6 +577,14 @@ public class CapacityDaoImpl extends GenericDaoBase<CapacityVO, Long> implements
         return findOneBy(sc);
     }
 
+    @Override
+    public List<CapacityVO> listByHostIdsTypes(List<Long> hostIds, List<Short> capacityTypes) {
+        SearchCriteria<CapacityVO> sc = _hostIdsTypesSearch.create();
+        sc.setParameters("hostIds", hostIds.toArray());
+        sc.setParameters("types", capacityTypes.toArray());
+        return listBy(sc);
+    }
+
     @Override
     public List<Long> listClustersInZoneOrPodByHostCapacities(long id, int requiredCpu, long requiredRam, short capacityTypeForOrdering, boolean isZone) {
         TransactionLegacy txn = TransactionLegacy.currentTxn();
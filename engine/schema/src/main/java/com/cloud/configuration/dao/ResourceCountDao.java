@@ -16,7 +16,9 @@
 // under the License.
 package com.cloud.configuration.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.cloud.configuration.Resource.ResourceOwnerType;
@@ -41,6 +43,50 @@ public interface ResourceCountDao extends GenericDao<ResourceCountVO, Long> {
 
     boolean updateById(long id, boolean increment, long delta);
 
+    /**
+     * Records a change of the given resource count rows in the
+     * resource_count_delta ledger instead of updating the rows, so that
+     * concurrent changes of the same account or domain do not wait for each
+     * other.  The count of a row is its count plus the sum of its pending
+     * deltas until {@link #compactDeltas(int)} folds them in.  The deltas
+     * of all the rows are appended in one transaction.
+     *
+     * @param ids the ids of the resource_count rows to change
+     * @param delta the amount to add, negative to decrease the count
+     */
+    void appendDelta(Collection<Long> ids, long delta);
+
+    /**
+     * @param domainIds the ids of the domains to get the resource count
+     * @param type the type of resource (e.g. user_vm, public_ip, volume)
+     * @return the count including pending deltas of each domain that has a
+     *         resource_count row for the type
+     */
+    Map<Long, Long> getDomainResourceCounts(Collection<Long> domainIds, ResourceType type);
+
+    /**
+     * @param accountIds the ids of the accounts to get the resource count
+     * @param type the type of resource (e.g. user_vm, public_ip, volume)
+     * @return the count including pending deltas of each account that has a
+     *         resource_count row for the type
+     */
+    Map<Long, Long> getAccountResourceCounts(Collection<Long> accountIds, ResourceType type);
+
+    /**
+     * Removes the pending deltas of a resource count row before its count is
+     * recalculated.  Must be called in a transaction: the deltas are locked,
+     * so deltas for the row can not be appended until the transaction ends.
+     */
+    void removeDeltas(long id);
+
+    /**
+     * Folds up to batchSize of the oldest deltas into their resource_count
+     * rows and removes them from the ledger.
+     *
+     * @return the number of deltas folded in
+     */
+    int compactDeltas(int batchSize);
+
     void createResourceCounts(long ownerId, ResourceOwnerType ownerType);
 
     List<ResourceCountVO> listByOwnerId(long ownerId, ResourceOwnerType ownerType);
@@ -20,13 +20,21 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
 import org.springframework.stereotype.Component;
 
 import com.cloud.configuration.Resource;
@@ -39,6 +47,7 @@ import com.cloud.domain.dao.DomainDao;
 import com.cloud.exception.UnsupportedServiceException;
 import com.cloud.user.AccountVO;
 import com.cloud.user.dao.AccountDao;
+import com.cloud.utils.DateUtil;
 import com.cloud.utils.db.DB;
 import com.cloud.utils.db.GenericDaoBase;
 import com.cloud.utils.db.JoinBuilder;
@@ -49,6 +58,19 @@ import com.cloud.utils.exception.CloudRuntimeException;
 
 @Component
 public class ResourceCountDaoImpl extends GenericDaoBase<ResourceCountVO, Long> implements ResourceCountDao {
+    private static final Logger s_logger = Logger.getLogger(ResourceCountDaoImpl.class);
+
+    private static final String INSERT_DELTA_SQL = "INSERT INTO resource_count_delta (resource_count_id, delta, created) VALUES (?, ?, ?)";
+    private static final String PENDING_DELTAS_SQL = "SELECT resource_count_id, SUM(delta) FROM resource_count_delta WHERE resource_count_id IN (%s) GROUP BY resource_count_id";
+    private static final String OWNER_COUNTS_SQL = "SELECT rc.%1$s, rc.count + COALESCE((SELECT SUM(d.delta) FROM resource_count_delta d WHERE d.resource_count_id = rc.id), 0)"
+            + " FROM resource_count rc WHERE rc.type = ? AND rc.%1$s IN (%2$s)";
+    private static final String REMOVE_DELTAS_SQL = "DELETE FROM resource_count_delta WHERE resource_count_id = ?";
+    private static final String OLDEST_DELTAS_SQL = "SELECT id, resource_count_id FROM resource_count_delta ORDER BY id LIMIT ?";
+    private static final String LOCK_COUNTS_SQL = "SELECT id FROM resource_count WHERE id IN (%s) ORDER BY id FOR UPDATE";
+    private static final String LOCK_DELTAS_SQL = "SELECT id, resource_count_id, delta FROM resource_count_delta WHERE id <= ? AND resource_count_id IN (%s) FOR UPDATE";
+    private static final String APPLY_DELTA_SQL = "UPDATE resource_count SET count = count + ? WHERE id = ?";
+    private static final String REMOVE_DELTA_SQL = "DELETE FROM resource_count_delta WHERE id = ?";
+
     private final SearchBuilder<ResourceCountVO> TypeSearch;
 
     private final SearchBuilder<ResourceCountVO> AccountSearch;
@@ -105,12 +127,172 @@ public class ResourceCountDaoImpl extends GenericDaoBase<ResourceCountVO, Long>
     public long getResourceCount(long ownerId, ResourceOwnerType ownerType, ResourceType type) {
         ResourceCountVO vo = findByOwnerAndType(ownerId, ownerType, type);
         if (vo != null) {
-            return vo.getCount();
+            Long pending = getPendingDeltas(Collections.singletonList(vo.getId())).get(vo.getId());
+            return vo.getCount() + (pending != null ? pending : 0);
         } else {
             return 0;
         }
     }
 
+    /**
+     * @return the sum of the deltas in the ledger per resource count row,
+     *         rows without pending deltas are left out.
+     */
+    protected Map<Long, Long> getPendingDeltas(Collection<Long> ids) {
+        Map<Long, Long> pending = new HashMap<Long, Long>();
+        if (ids.isEmpty()) {
+            return pending;
+        }
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try {
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement(String.format(PENDING_DELTAS_SQL, StringUtils.join(ids, ",")));
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                pending.put(rs.getLong(1), rs.getLong(2));
+            }
+        } catch (SQLException e) {
+            throw new CloudRuntimeException("Unable to get the pending resource count deltas", e);
+        }
+        return pending;
+    }
+
+    @Override
+    @DB
+    public void appendDelta(Collection<Long> ids, long delta) {
+        if (ids.isEmpty() || delta == 0) {
+            return;
+        }
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try {
+            // the account and its domains change together, see removeDeltas.  The rows are
+            // referenced in the order of their ids, the order in which compactDeltas locks them
+            txn.start();
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement(INSERT_DELTA_SQL);
+            String created = DateUtil.getDateDisplayString(DateUtil.GMT_TIMEZONE, new Date());
+            for (Long id : new TreeSet<Long>(ids)) {
+                pstmt.setLong(1, id);
+                pstmt.setLong(2, delta);
+                pstmt.setString(3, created);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            txn.commit();
+        } catch (SQLException e) {
+            txn.rollback();
+            throw new CloudRuntimeException("Unable to append the resource count delta " + delta + " for rows " + ids, e);
+        }
+    }
+
+    @Override
+    public Map<Long, Long> getDomainResourceCounts(Collection<Long> domainIds, ResourceType type) {
+        return getOwnerResourceCounts("domain_id", domainIds, type);
+    }
+
+    @Override
+    public Map<Long, Long> getAccountResourceCounts(Collection<Long> accountIds, ResourceType type) {
+        return getOwnerResourceCounts("account_id", accountIds, type);
+    }
+
+    protected Map<Long, Long> getOwnerResourceCounts(String ownerColumn, Collection<Long> ownerIds, ResourceType type) {
+        Map<Long, Long> counts = new HashMap<Long, Long>();
+        if (ownerIds.isEmpty()) {
+            return counts;
+        }
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try {
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement(String.format(OWNER_COUNTS_SQL, ownerColumn, StringUtils.join(ownerIds, ",")));
+            pstmt.setString(1, type.name());
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                counts.put(rs.getLong(1), rs.getLong(2));
+            }
+        } catch (SQLException e) {
+            throw new CloudRuntimeException("Unable to get the " + type + " resource counts of " + ownerColumn + " " + ownerIds, e);
+        }
+        return counts;
+    }
+
+    @Override
+    public void removeDeltas(long id) {
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try {
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement(REMOVE_DELTAS_SQL);
+            pstmt.setLong(1, id);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new CloudRuntimeException("Unable to remove the resource count deltas of row " + id, e);
+        }
+    }
+
+    /**
+     * The resource_count rows are locked before their deltas, the same order
+     * as the recalculation which locks the rows and then removes their
+     * deltas, so that both do not deadlock.  Deltas that were not committed
+     * yet when the oldest ones were listed are left for the next run unless
+     * their row was locked anyway.
+     */
+    @Override
+    @DB
+    public int compactDeltas(int batchSize) {
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try {
+            txn.start();
+            long lastDeltaId = 0;
+            Set<Long> rowIds = new HashSet<Long>();
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement(OLDEST_DELTAS_SQL);
+            pstmt.setInt(1, batchSize);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                lastDeltaId = rs.getLong(1);
+                rowIds.add(rs.getLong(2));
+            }
+            if (rowIds.isEmpty()) {
+                txn.commit();
+                return 0;
+            }
+
+            String rowIdList = StringUtils.join(rowIds, ",");
+            pstmt = txn.prepareAutoCloseStatement(String.format(LOCK_COUNTS_SQL, rowIdList));
+            pstmt.executeQuery();
+
+            List<Long> deltaIds = new ArrayList<Long>();
+            Map<Long, Long> sums = new HashMap<Long, Long>();
+            pstmt = txn.prepareAutoCloseStatement(String.format(LOCK_DELTAS_SQL, rowIdList));
+            pstmt.setLong(1, lastDeltaId);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                deltaIds.add(rs.getLong(1));
+                long rowId = rs.getLong(2);
+                Long sum = sums.get(rowId);
+                sums.put(rowId, (sum != null ? sum : 0) + rs.getLong(3));
+            }
+
+            pstmt = txn.prepareAutoCloseStatement(APPLY_DELTA_SQL);
+            for (Map.Entry<Long, Long> sum : sums.entrySet()) {
+                pstmt.setLong(1, sum.getValue());
+                pstmt.setLong(2, sum.getKey());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+
+            pstmt = txn.prepareAutoCloseStatement(REMOVE_DELTA_SQL);
+            for (Long deltaId : deltaIds) {
+                pstmt.setLong(1, deltaId);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            txn.commit();
+
+            if (s_logger.isDebugEnabled()) {
+                s_logger.debug("Folded " + deltaIds.size() + " resource count deltas into " + sums.size() + " rows");
+            }
+            return deltaIds.size();
+        } catch (SQLException e) {
+            txn.rollback();
+            throw new CloudRuntimeException("Unable to compact the resource count deltas", e);
+        }
+    }
+
     @Override
     public void setResourceCount(long ownerId, ResourceOwnerType ownerType, ResourceType type, long count) {
         ResourceCountVO resourceCountVO = findByOwnerAndType(ownerId, ownerType, type);
@@ -197,13 +379,28 @@ public class ResourceCountDaoImpl extends GenericDaoBase<ResourceCountVO, Long>
 
     @Override
     public List<ResourceCountVO> listByOwnerId(long ownerId, ResourceOwnerType ownerType) {
+        List<ResourceCountVO> counts;
         if (ownerType == ResourceOwnerType.Account) {
-            return listByAccountId(ownerId);
+            counts = listByAccountId(ownerId);
         } else if (ownerType == ResourceOwnerType.Domain) {
-            return listByDomainId(ownerId);
+            counts = listByDomainId(ownerId);
         } else {
             return new ArrayList<ResourceCountVO>();
         }
+
+        // hand out the counts including the pending deltas; the rows themselves are only changed by compactDeltas
+        List<Long> ids = new ArrayList<Long>();
+        for (ResourceCountVO count : counts) {
+            ids.add(count.getId());
+        }
+        Map<Long, Long> pending = getPendingDeltas(ids);
+        for (ResourceCountVO count : counts) {
+            Long delta = pending.get(count.getId());
+            if (delta != null) {
+                count.setCount(count.getCount() + delta);
+            }
+        }
+        return counts;
     }
 
     @Override
@@ -19,6 +19,7 @@ package com.cloud.dc.dao;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -32,8 +33,10 @@ import com.cloud.dc.DataCenterVnetVO;
 import com.cloud.network.dao.AccountGuestVlanMapDao;
 import com.cloud.network.dao.AccountGuestVlanMapVO;
 import com.cloud.utils.NumbersUtil;
+import com.cloud.utils.Pair;
 import com.cloud.utils.UriUtils;
 import com.cloud.utils.db.DB;
+import com.cloud.utils.db.Filter;
 import com.cloud.utils.db.GenericDaoBase;
 import com.cloud.utils.db.GenericSearchBuilder;
 import com.cloud.utils.db.JoinBuilder;
@@ -41,6 +44,7 @@ import com.cloud.utils.db.SearchBuilder;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.SearchCriteria.Func;
 import com.cloud.utils.db.SearchCriteria.Op;
+import com.cloud.utils.db.ShardedFreeList;
 import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.exception.CloudRuntimeException;
 
@@ -51,9 +55,8 @@ import com.cloud.utils.exception.CloudRuntimeException;
 @Component
 @DB
 public class DataCenterVnetDaoImpl extends GenericDaoBase<DataCenterVnetVO, Long> implements DataCenterVnetDao {
+    private static final int FREE_VNET_BATCH_SIZE = 100;
 
-    private final SearchBuilder<DataCenterVnetVO> FreeVnetSearch;
-    private final SearchBuilder<DataCenterVnetVO> FreeDedicatedVnetSearch;
     private final SearchBuilder<DataCenterVnetVO> VnetDcSearch;
     private final SearchBuilder<DataCenterVnetVO> VnetDcSearchAllocated;
     private final SearchBuilder<DataCenterVnetVO> DcSearchAllocated;
@@ -66,6 +69,30 @@ public class DataCenterVnetDaoImpl extends GenericDaoBase<DataCenterVnetVO, Long
     protected GenericSearchBuilder<DataCenterVnetVO, Integer> countVnetsDedicatedToAccount;
     protected SearchBuilder<AccountGuestVlanMapVO> AccountGuestVlanMapSearch;
     protected GenericSearchBuilder<DataCenterVnetVO, String> ListAllVnetSearch;
+    private final GenericSearchBuilder<DataCenterVnetVO, Long> FreeVnetIdSearch;
+    private final GenericSearchBuilder<DataCenterVnetVO, Long> FreeDedicatedVnetIdSearch;
+    private final SearchBuilder<DataCenterVnetVO> TakeVnetSearch;
+    private final SearchBuilder<DataCenterVnetVO> TakeDedicatedVnetSearch;
+
+    /**
+     * Free vnets by physical network and dedicated guest vlan range, the
+     * range being null for the vnets that are not dedicated.
+     */
+    private final ShardedFreeList<Pair<Long, Long>> _freeVnets = new ShardedFreeList<Pair<Long, Long>>("op_dc_vnet_alloc", FREE_VNET_BATCH_SIZE,
+        new ShardedFreeList.Loader<Pair<Long, Long>>() {
+            @Override
+            public List<Long> listFree(Pair<Long, Long> shard, int max) {
+                SearchCriteria<Long> sc;
+                if (shard.second() != null) {
+                    sc = FreeDedicatedVnetIdSearch.create();
+                    sc.setParameters("accountGuestVlanMapId", shard.second());
+                } else {
+                    sc = FreeVnetIdSearch.create();
+                }
+                sc.setParameters("physicalNetworkId", shard.first());
+                return customSearch(sc, new Filter(DataCenterVnetVO.class, "id", true, 0L, (long)max));
+            }
+        });
 
     @Inject
     protected AccountGuestVlanMapDao _accountGuestVlanMapDao;
@@ -191,31 +218,46 @@ public class DataCenterVnetDaoImpl extends GenericDaoBase<DataCenterVnetVO, Long
         remove(sc);
     }
 
+    /**
+     * Takes a free vnet without locking the free ones, see
+     * {@link ShardedFreeList}.  With vlanDbIds, the vnet is taken from one of
+     * the given dedicated guest vlan ranges.
+     */
     @Override
-    @DB
-    public DataCenterVnetVO take(long physicalNetworkId, long accountId, String reservationId, List<Long> vlanDbIds) {
-        SearchCriteria<DataCenterVnetVO> sc;
+    public DataCenterVnetVO take(long physicalNetworkId, final long accountId, final String reservationId, List<Long> vlanDbIds) {
+        final List<Long> accountGuestVlanMapIds;
         if (vlanDbIds != null) {
-            sc = FreeDedicatedVnetSearch.create();
-            sc.setParameters("accountGuestVlanMapId", vlanDbIds.toArray());
+            accountGuestVlanMapIds = new ArrayList<Long>(vlanDbIds);
+            Collections.shuffle(accountGuestVlanMapIds);
         } else {
-            sc = FreeVnetSearch.create();
+            accountGuestVlanMapIds = Collections.singletonList(null);
         }
-        sc.setParameters("physicalNetworkId", physicalNetworkId);
-        Date now = new Date();
-        TransactionLegacy txn = TransactionLegacy.currentTxn();
-        txn.start();
-        DataCenterVnetVO vo = lockOneRandomRow(sc, true);
-        if (vo == null) {
-            return null;
+        final Date now = new Date();
+        for (final Long accountGuestVlanMapId : accountGuestVlanMapIds) {
+            Long id = _freeVnets.take(new Pair<Long, Long>(physicalNetworkId, accountGuestVlanMapId), new ShardedFreeList.Claim() {
+                @Override
+                public boolean claim(long id) {
+                    SearchCriteria<DataCenterVnetVO> sc;
+                    if (accountGuestVlanMapId != null) {
+                        sc = TakeDedicatedVnetSearch.create();
+                        sc.setParameters("accountGuestVlanMapId", accountGuestVlanMapId);
+                    } else {
+                        sc = TakeVnetSearch.create();
+                    }
+                    sc.setParameters("id", id);
+
+                    DataCenterVnetVO vo = createForUpdate();
+                    vo.setTakenAt(now);
+                    vo.setAccountId(accountId);
+                    vo.setReservationId(reservationId);
+                    return update(vo, sc) == 1;
+                }
+            });
+            if (id != null) {
+                return findById(id);
+            }
         }
-
-        vo.setTakenAt(now);
-        vo.setAccountId(accountId);
-        vo.setReservationId(reservationId);
-        update(vo.getId(), vo);
-        txn.commit();
-        return vo;
+        return null;
     }
 
     @Override
@@ -234,7 +276,9 @@ public class DataCenterVnetDaoImpl extends GenericDaoBase<DataCenterVnetVO, Long
         vo.setTakenAt(null);
         vo.setAccountId(null);
         vo.setReservationId(null);
-        update(vo.getId(), vo);
+        if (update(vo.getId(), vo)) {
+            _freeVnets.offer(new Pair<Long, Long>(physicalNetworkId, vo.getAccountGuestVlanMapId()), vo.getId());
+        }
     }
 
     @Override
@@ -310,20 +354,6 @@ public class DataCenterVnetDaoImpl extends GenericDaoBase<DataCenterVnetVO, Long
         SearchRange.and("physicalNetworkId", SearchRange.entity().getPhysicalNetworkId(), Op.EQ);
         SearchRange.and("vnetRange", SearchRange.entity().getVnet(), Op.BETWEEN);
 
-        FreeVnetSearch = createSearchBuilder();
-        FreeVnetSearch.and("dc", FreeVnetSearch.entity().getDataCenterId(), SearchCriteria.Op.EQ);
-        FreeVnetSearch.and("physicalNetworkId", FreeVnetSearch.entity().getPhysicalNetworkId(), SearchCriteria.Op.EQ);
-        FreeVnetSearch.and("taken", FreeVnetSearch.entity().getTakenAt(), SearchCriteria.Op.NULL);
-        FreeVnetSearch.and("accountGuestVlanMapId", FreeVnetSearch.entity().getAccountGuestVlanMapId(), SearchCriteria.Op.NULL);
-        FreeVnetSearch.done();
-
-        FreeDedicatedVnetSearch = createSearchBuilder();
-        FreeDedicatedVnetSearch.and("dc", FreeDedicatedVnetSearch.entity().getDataCenterId(), SearchCriteria.Op.EQ);
-        FreeDedicatedVnetSearch.and("physicalNetworkId", FreeDedicatedVnetSearch.entity().getPhysicalNetworkId(), SearchCriteria.Op.EQ);
-        FreeDedicatedVnetSearch.and("taken", FreeDedicatedVnetSearch.entity().getTakenAt(), SearchCriteria.Op.NULL);
-        FreeDedicatedVnetSearch.and("accountGuestVlanMapId", FreeDedicatedVnetSearch.entity().getAccountGuestVlanMapId(), SearchCriteria.Op.IN);
-        FreeDedicatedVnetSearch.done();
-
         VnetDcSearch = createSearchBuilder();
         VnetDcSearch.and("vnet", VnetDcSearch.entity().getVnet(), SearchCriteria.Op.EQ);
         VnetDcSearch.and("dc", VnetDcSearch.entity().getDataCenterId(), SearchCriteria.Op.EQ);
@@ -366,5 +396,30 @@ public class DataCenterVnetDaoImpl extends GenericDaoBase<DataCenterVnetVO, Long
         ListAllVnetSearch.and("physicalNetworkId", ListAllVnetSearch.entity().getPhysicalNetworkId(), Op.EQ);
         ListAllVnetSearch.done();
 
+        FreeVnetIdSearch = createSearchBuilder(Long.class);
+        FreeVnetIdSearch.select(null, Func.NATIVE, FreeVnetIdSearch.entity().getId());
+        FreeVnetIdSearch.and("physicalNetworkId", FreeVnetIdSearch.entity().getPhysicalNetworkId(), Op.EQ);
+        FreeVnetIdSearch.and("taken", FreeVnetIdSearch.entity().getTakenAt(), Op.NULL);
+        FreeVnetIdSearch.and("accountGuestVlanMapId", FreeVnetIdSearch.entity().getAccountGuestVlanMapId(), Op.NULL);
+        FreeVnetIdSearch.done();
+
+        FreeDedicatedVnetIdSearch = createSearchBuilder(Long.class);
+        FreeDedicatedVnetIdSearch.select(null, Func.NATIVE, FreeDedicatedVnetIdSearch.entity().getId());
+        FreeDedicatedVnetIdSearch.and("physicalNetworkId", FreeDedicatedVnetIdSearch.entity().getPhysicalNetworkId(), Op.EQ);
+        FreeDedicatedVnetIdSearch.and("taken", FreeDedicatedVnetIdSearch.entity().getTakenAt(), Op.NULL);
+        FreeDedicatedVnetIdSearch.and("accountGuestVlanMapId", FreeDedicatedVnetIdSearch.entity().getAccountGuestVlanMapId(), Op.EQ);
+        FreeDedicatedVnetIdSearch.done();
+
+        TakeVnetSearch = createSearchBuilder();
+        TakeVnetSearch.and("id", TakeVnetSearch.entity().getId(), Op.EQ);
+        TakeVnetSearch.and("taken", TakeVnetSearch.entity().getTakenAt(), Op.NULL);
+        TakeVnetSearch.and("accountGuestVlanMapId", TakeVnetSearch.entity().getAccountGuestVlanMapId(), Op.NULL);
+        TakeVnetSearch.done();
+
+        TakeDedicatedVnetSearch = createSearchBuilder();
+        TakeDedicatedVnetSearch.and("id", TakeDedicatedVnetSearch.entity().getId(), Op.EQ);
+        TakeDedicatedVnetSearch.and("taken", TakeDedicatedVnetSearch.entity().getTakenAt(), Op.NULL);
+        TakeDedicatedVnetSearch.and("accountGuestVlanMapId", TakeDedicatedVnetSearch.entity().getAccountGuestVlanMapId(), Op.EQ);
+        TakeDedicatedVnetSearch.done();
     }
 }
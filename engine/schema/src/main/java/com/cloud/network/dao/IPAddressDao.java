@@ -20,6 +20,7 @@ import java.util.List;
 
 import com.cloud.dc.Vlan.VlanType;
 import com.cloud.utils.db.GenericDao;
+import com.cloud.utils.db.ShardedFreeList;
 import com.cloud.utils.net.Ip;
 
 public interface IPAddressDao extends GenericDao<IPAddressVO, Long> {
@@ -89,4 +90,21 @@ public interface IPAddressDao extends GenericDao<IPAddressVO, Long> {
     List<IPAddressVO> listByAssociatedVmId(long vmId);
 
     IPAddressVO findByVmIdAndNetworkId(long networkId, long vmId);
+
+    /**
+     * Takes a free address of the vlan without locking the free ones, see
+     * {@link ShardedFreeList}.
+     *
+     * @param claim takes the address, usually with {@link #takeIfFree(long, IPAddressVO)}.
+     * @return the address taken, null if the vlan has no free address left.
+     */
+    IPAddressVO takeFreeIp(long vlanDbId, boolean forSystemVms, ShardedFreeList.Claim claim);
+
+    /**
+     * Applies the changes, made on an entity from createForUpdate(), to the
+     * address if it is still free.
+     *
+     * @return true if the address was free.
+     */
+    boolean takeIfFree(long ipAddressId, IPAddressVO changes);
 }
@@ -34,7 +34,9 @@ import com.cloud.dc.dao.VlanDao;
 import com.cloud.network.IpAddress.State;
 import com.cloud.server.ResourceTag.ResourceObjectType;
 import com.cloud.tags.dao.ResourceTagDao;
+import com.cloud.utils.Pair;
 import com.cloud.utils.db.DB;
+import com.cloud.utils.db.Filter;
 import com.cloud.utils.db.GenericDaoBase;
 import com.cloud.utils.db.GenericSearchBuilder;
 import com.cloud.utils.db.JoinBuilder;
@@ -42,6 +44,7 @@ import com.cloud.utils.db.SearchBuilder;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.SearchCriteria.Func;
 import com.cloud.utils.db.SearchCriteria.Op;
+import com.cloud.utils.db.ShardedFreeList;
 import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.net.Ip;
 
@@ -49,6 +52,7 @@ import com.cloud.utils.net.Ip;
 @DB
 public class IPAddressDaoImpl extends GenericDaoBase<IPAddressVO, Long> implements IPAddressDao {
     private static final Logger s_logger = Logger.getLogger(IPAddressDaoImpl.class);
+    private static final int FREE_IP_BATCH_SIZE = 100;
 
     protected SearchBuilder<IPAddressVO> AllFieldsSearch;
     protected SearchBuilder<IPAddressVO> VlanDbIdSearchUnallocated;
@@ -66,6 +70,23 @@ public class IPAddressDaoImpl extends GenericDaoBase<IPAddressVO, Long> implemen
     ResourceTagDao _tagsDao;
     @Inject
     UserIpAddressDetailsDao _detailsDao;
+    protected GenericSearchBuilder<IPAddressVO, Long> FreeIpIdSearch;
+    protected SearchBuilder<IPAddressVO> TakeIpSearch;
+
+    /**
+     * Free addresses by vlan and for_system_vms.
+     */
+    private final ShardedFreeList<Pair<Long, Boolean>> _freeIps = new ShardedFreeList<Pair<Long, Boolean>>("user_ip_address", FREE_IP_BATCH_SIZE,
+        new ShardedFreeList.Loader<Pair<Long, Boolean>>() {
+            @Override
+            public List<Long> listFree(Pair<Long, Boolean> shard, int max) {
+                SearchCriteria<Long> sc = FreeIpIdSearch.create();
+                sc.setParameters("vlan", shard.first());
+                sc.setParameters("forSystemVms", shard.second());
+                sc.setParameters("state", State.Free);
+                return customSearch(sc, new Filter(IPAddressVO.class, "id", true, 0L, (long)max));
+            }
+        });
 
     // make it public for JUnit test
     public IPAddressDaoImpl() {
@@ -151,6 +172,34 @@ public class IPAddressDaoImpl extends GenericDaoBase<IPAddressVO, Long> implemen
         DeleteAllExceptGivenIp = createSearchBuilder();
         DeleteAllExceptGivenIp.and("vlanDbId", DeleteAllExceptGivenIp.entity().getVlanId(), Op.EQ);
         DeleteAllExceptGivenIp.and("ip", DeleteAllExceptGivenIp.entity().getAddress(), Op.NEQ);
+
+        FreeIpIdSearch = createSearchBuilder(Long.class);
+        FreeIpIdSearch.select(null, Func.NATIVE, FreeIpIdSearch.entity().getId());
+        FreeIpIdSearch.and("vlan", FreeIpIdSearch.entity().getVlanId(), Op.EQ);
+        FreeIpIdSearch.and("forSystemVms", FreeIpIdSearch.entity().isForSystemVms(), Op.EQ);
+        FreeIpIdSearch.and("state", FreeIpIdSearch.entity().getState(), Op.EQ);
+        FreeIpIdSearch.and("allocated", FreeIpIdSearch.entity().getAllocatedTime(), Op.NULL);
+        FreeIpIdSearch.done();
+
+        TakeIpSearch = createSearchBuilder();
+        TakeIpSearch.and("id", TakeIpSearch.entity().getId(), Op.EQ);
+        TakeIpSearch.and("state", TakeIpSearch.entity().getState(), Op.EQ);
+        TakeIpSearch.and("allocated", TakeIpSearch.entity().getAllocatedTime(), Op.NULL);
+        TakeIpSearch.done();
+    }
+
+    @Override
+    public IPAddressVO takeFreeIp(long vlanDbId, boolean forSystemVms, ShardedFreeList.Claim claim) {
+        Long id = _freeIps.take(new Pair<Long, Boolean>(vlanDbId, forSystemVms), claim);
+        return id != null ? findById(id) : null;
+    }
+
+    @Override
+    public boolean takeIfFree(long ipAddressId, IPAddressVO changes) {
+        SearchCriteria<IPAddressVO> sc = TakeIpSearch.create();
+        sc.setParameters("id", ipAddressId);
+        sc.setParameters("state", State.Free);
+        return update(changes, sc) == 1;
     }
 
     @Override
@@ -425,6 +474,8 @@ public class IPAddressDaoImpl extends GenericDaoBase<IPAddressVO, Long> implemen
         SearchCriteria<IPAddressVO> sc = AllFieldsSearch.create();
         sc.setParameters("vlan", vlanDbId);
         remove(sc);
+        _freeIps.clear(new Pair<Long, Boolean>(vlanDbId, false));
+        _freeIps.clear(new Pair<Long, Boolean>(vlanDbId, true));
         return true;
     }
 
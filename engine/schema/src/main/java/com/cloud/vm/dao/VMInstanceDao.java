@@ -100,6 +100,16 @@ public interface VMInstanceDao extends GenericDao<VMInstanceVO, Long>, StateDao<
 
     List<VMInstanceVO> listByLastHostId(Long hostId);
 
+    /**
+     * @return the starting and running vms on any of the hosts
+     */
+    List<VMInstanceVO> listUpByHostIds(List<Long> hostIds);
+
+    /**
+     * @return the stopped vms that last ran on any of the hosts
+     */
+    List<VMInstanceVO> listByLastHostIds(List<Long> hostIds);
+
     List<VMInstanceVO> listByTypeAndState(VirtualMachine.Type type, State state);
 
     List<VMInstanceVO> listByAccountId(long accountId);
@@ -82,6 +82,8 @@ public class VMInstanceDaoImpl extends GenericDaoBase<VMInstanceVO, Long> implem
     protected SearchBuilder<VMInstanceVO> HostIdStatesSearch;
     protected SearchBuilder<VMInstanceVO> HostIdUpTypesSearch;
     protected SearchBuilder<VMInstanceVO> HostUpSearch;
+    protected SearchBuilder<VMInstanceVO> HostIdsUpSearch;
+    protected SearchBuilder<VMInstanceVO> LastHostIdsSearch;
     protected SearchBuilder<VMInstanceVO> InstanceNameSearch;
     protected SearchBuilder<VMInstanceVO> HostNameSearch;
     protected SearchBuilder<VMInstanceVO> HostNameAndZoneSearch;
@@ -218,6 +220,16 @@ public class VMInstanceDaoImpl extends GenericDaoBase<VMInstanceVO, Long> implem
         HostUpSearch.and("states", HostUpSearch.entity().getState(), Op.IN);
         HostUpSearch.done();
 
+        HostIdsUpSearch = createSearchBuilder();
+        HostIdsUpSearch.and("hosts", HostIdsUpSearch.entity().getHostId(), Op.IN);
+        HostIdsUpSearch.and("states", HostIdsUpSearch.entity().getState(), Op.IN);
+        HostIdsUpSearch.done();
+
+        LastHostIdsSearch = createSearchBuilder();
+        LastHostIdsSearch.and("lastHosts", LastHostIdsSearch.entity().getLastHostId(), Op.IN);
+        LastHostIdsSearch.and("state", LastHostIdsSearch.entity().getState(), Op.EQ);
+        LastHostIdsSearch.done();
+
         InstanceNameSearch = createSearchBuilder();
         InstanceNameSearch.and("instanceName", InstanceNameSearch.entity().getInstanceName(), Op.EQ);
         InstanceNameSearch.done();
@@ -545,6 +557,22 @@ public class VMInstanceDaoImpl extends GenericDaoBase<VMInstanceVO, Long> implem
         return listBy(sc);
     }
 
+    @Override
+    public List<VMInstanceVO> listUpByHostIds(List<Long> hostIds) {
+        SearchCriteria<VMInstanceVO> sc = HostIdsUpSearch.create();
+        sc.setParameters("hosts", hostIds.toArray());
+        sc.setParameters("states", new Object[] {State.Starting, State.Running});
+        return listBy(sc);
+    }
+
+    @Override
+    public List<VMInstanceVO> listByLastHostIds(List<Long> hostIds) {
+        SearchCriteria<VMInstanceVO> sc = LastHostIdsSearch.create();
+        sc.setParameters("lastHosts", hostIds.toArray());
+        sc.setParameters("state", State.Stopped);
+        return listBy(sc);
+    }
+
     @Override
     public List<Long> findIdsOfAllocatedVirtualRoutersForAccount(long accountId) {
         SearchCriteria<Long> sc = FindIdsOfVirtualRoutersByAccount.create();
@@ -73,6 +73,13 @@ public interface ResourceDetailsDao<R extends ResourceDetail> extends GenericDao
 
     public Map<String, String> listDetailsKeyPairs(long resourceId, boolean forDisplay);
 
+    /**
+     * Lists the details of many resources in one go
+     * @param resourceIds
+     * @return the details keyed by resourceId, resources without details are left out
+     */
+    public Map<Long, Map<String, String>> listDetailsKeyPairs(List<Long> resourceIds);
+
     public void saveDetails(List<R> details);
 
     public void addDetail(long resourceId, String key, String value, boolean display);
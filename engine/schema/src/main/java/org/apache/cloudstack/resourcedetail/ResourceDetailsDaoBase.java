@@ -29,6 +29,7 @@ import com.cloud.utils.db.TransactionLegacy;
 
 public abstract class ResourceDetailsDaoBase<R extends ResourceDetail> extends GenericDaoBase<R, Long> {
     private SearchBuilder<R> AllFieldsSearch;
+    private SearchBuilder<R> ResourceIdsSearch;
 
     public ResourceDetailsDaoBase() {
         AllFieldsSearch = createSearchBuilder();
@@ -40,6 +41,10 @@ public abstract class ResourceDetailsDaoBase<R extends ResourceDetail> extends G
             AllFieldsSearch.and("display", AllFieldsSearch.entity().isDisplay(), SearchCriteria.Op.EQ);
         }
         AllFieldsSearch.done();
+
+        ResourceIdsSearch = createSearchBuilder();
+        ResourceIdsSearch.and("resourceIds", ResourceIdsSearch.entity().getResourceId(), SearchCriteria.Op.IN);
+        ResourceIdsSearch.done();
     }
 
     public R findDetail(long resourceId, String name) {
@@ -81,6 +86,26 @@ public abstract class ResourceDetailsDaoBase<R extends ResourceDetail> extends G
         return details;
     }
 
+    public Map<Long, Map<String, String>> listDetailsKeyPairs(List<Long> resourceIds) {
+        Map<Long, Map<String, String>> details = new HashMap<Long, Map<String, String>>();
+        if (resourceIds.isEmpty()) {
+            return details;
+        }
+        SearchCriteria<R> sc = ResourceIdsSearch.create();
+        sc.setParameters("resourceIds", resourceIds.toArray());
+
+        List<R> results = search(sc, null);
+        for (R result : results) {
+            Map<String, String> resourceDetails = details.get(result.getResourceId());
+            if (resourceDetails == null) {
+                resourceDetails = new HashMap<String, String>();
+                details.put(result.getResourceId(), resourceDetails);
+            }
+            resourceDetails.put(result.getName(), result.getValue());
+        }
+        return details;
+    }
+
     public List<R> listDetails(long resourceId) {
         SearchCriteria<R> sc = AllFieldsSearch.create();
         sc.setParameters("resourceId", resourceId);
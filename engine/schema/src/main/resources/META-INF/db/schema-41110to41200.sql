@@ -32,4 +32,276 @@ ALTER TABLE `vlan` CHANGE `description` `ip4_range` varchar(255);
 -- We are only adding the permission to the default rules. Any custom rule must be configured by the root admin.
 INSERT INTO `cloud`.`role_permissions` (`uuid`, `role_id`, `rule`, `permission`, `sort_order`) values (UUID(), 2, 'moveNetworkAclItem', 'ALLOW', 100) ON DUPLICATE KEY UPDATE rule=rule;
 INSERT INTO `cloud`.`role_permissions` (`uuid`, `role_id`, `rule`, `permission`, `sort_order`) values (UUID(), 3, 'moveNetworkAclItem', 'ALLOW', 302) ON DUPLICATE KEY UPDATE rule=rule;
-INSERT INTO `cloud`.`role_permissions` (`uuid`, `role_id`, `rule`, `permission`, `sort_order`) values (UUID(), 4, 'moveNetworkAclItem', 'ALLOW', 260) ON DUPLICATE KEY UPDATE rule=rule;
\ No newline at end of file
+INSERT INTO `cloud`.`role_permissions` (`uuid`, `role_id`, `rule`, `permission`, `sort_order`) values (UUID(), 4, 'moveNetworkAclItem', 'ALLOW', 260) ON DUPLICATE KEY UPDATE rule=rule;
+
+-- Ledger of resource count changes, folded into resource_count by the management servers
+CREATE TABLE IF NOT EXISTS `cloud`.`resource_count_delta` (
+  `id` bigint unsigned NOT NULL auto_increment,
+  `resource_count_id` bigint unsigned NOT NULL COMMENT 'resource_count row the delta applies to',
+  `delta` bigint NOT NULL,
+  `created` datetime NOT NULL,
+  PRIMARY KEY (`id`),
+  INDEX `i_resource_count_delta__resource_count_id`(`resource_count_id`),
+  CONSTRAINT `fk_resource_count_delta__resource_count_id` FOREIGN KEY (`resource_count_id`) REFERENCES `resource_count`(`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- The resource counts of accounts and domains include their changes that are still in the ledger
+DROP VIEW IF EXISTS `cloud`.`account_view`;
+CREATE VIEW `cloud`.`account_view` AS
+    select
+        account.id,
+        account.uuid,
+        account.account_name,
+        account.type,
+        account.role_id,
+        account.state,
+        account.removed,
+        account.cleanup_needed,
+        account.network_domain,
+        account.default,
+        domain.id domain_id,
+        domain.uuid domain_uuid,
+        domain.name domain_name,
+        domain.path domain_path,
+        data_center.id data_center_id,
+        data_center.uuid data_center_uuid,
+        data_center.name data_center_name,
+        account_netstats_view.bytesReceived,
+        account_netstats_view.bytesSent,
+        vmlimit.max vmLimit,
+        vmcount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = vmcount.id), 0) vmTotal,
+        runningvm.vmcount runningVms,
+        stoppedvm.vmcount stoppedVms,
+        iplimit.max ipLimit,
+        ipcount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = ipcount.id), 0) ipTotal,
+        free_ip_view.free_ip ipFree,
+        volumelimit.max volumeLimit,
+        volumecount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = volumecount.id), 0) volumeTotal,
+        snapshotlimit.max snapshotLimit,
+        snapshotcount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = snapshotcount.id), 0) snapshotTotal,
+        templatelimit.max templateLimit,
+        templatecount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = templatecount.id), 0) templateTotal,
+        vpclimit.max vpcLimit,
+        vpccount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = vpccount.id), 0) vpcTotal,
+        projectlimit.max projectLimit,
+        projectcount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = projectcount.id), 0) projectTotal,
+        networklimit.max networkLimit,
+        networkcount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = networkcount.id), 0) networkTotal,
+        cpulimit.max cpuLimit,
+        cpucount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = cpucount.id), 0) cpuTotal,
+        memorylimit.max memoryLimit,
+        memorycount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = memorycount.id), 0) memoryTotal,
+        primary_storage_limit.max primaryStorageLimit,
+        primary_storage_count.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = primary_storage_count.id), 0) primaryStorageTotal,
+        secondary_storage_limit.max secondaryStorageLimit,
+        secondary_storage_count.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = secondary_storage_count.id), 0) secondaryStorageTotal,
+        async_job.id job_id,
+        async_job.uuid job_uuid,
+        async_job.job_status job_status,
+        async_job.account_id job_account_id
+    from
+        `cloud`.`free_ip_view`,
+        `cloud`.`account`
+            inner join
+        `cloud`.`domain` ON account.domain_id = domain.id
+            left join
+        `cloud`.`data_center` ON account.default_zone_id = data_center.id
+            left join
+        `cloud`.`account_netstats_view` ON account.id = account_netstats_view.account_id
+            left join
+        `cloud`.`resource_limit` vmlimit ON account.id = vmlimit.account_id
+            and vmlimit.type = 'user_vm'
+            left join
+        `cloud`.`resource_count` vmcount ON account.id = vmcount.account_id
+            and vmcount.type = 'user_vm'
+            left join
+        `cloud`.`account_vmstats_view` runningvm ON account.id = runningvm.account_id
+            and runningvm.state = 'Running'
+            left join
+        `cloud`.`account_vmstats_view` stoppedvm ON account.id = stoppedvm.account_id
+           and stoppedvm.state = 'Stopped'
+            left join
+        `cloud`.`resource_limit` iplimit ON account.id = iplimit.account_id
+            and iplimit.type = 'public_ip'
+            left join
+        `cloud`.`resource_count` ipcount ON account.id = ipcount.account_id
+            and ipcount.type = 'public_ip'
+            left join
+        `cloud`.`resource_limit` volumelimit ON account.id = volumelimit.account_id
+            and volumelimit.type = 'volume'
+            left join
+        `cloud`.`resource_count` volumecount ON account.id = volumecount.account_id
+            and volumecount.type = 'volume'
+            left join
+        `cloud`.`resource_limit` snapshotlimit ON account.id = snapshotlimit.account_id
+            and snapshotlimit.type = 'snapshot'
+            left join
+        `cloud`.`resource_count` snapshotcount ON account.id = snapshotcount.account_id
+            and snapshotcount.type = 'snapshot'
+            left join
+        `cloud`.`resource_limit` templatelimit ON account.id = templatelimit.account_id
+            and templatelimit.type = 'template'
+            left join
+        `cloud`.`resource_count` templatecount ON account.id = templatecount.account_id
+            and templatecount.type = 'template'
+            left join
+        `cloud`.`resource_limit` vpclimit ON account.id = vpclimit.account_id
+            and vpclimit.type = 'vpc'
+            left join
+        `cloud`.`resource_count` vpccount ON account.id = vpccount.account_id
+            and vpccount.type = 'vpc'
+            left join
+        `cloud`.`resource_limit` projectlimit ON account.id = projectlimit.account_id
+            and projectlimit.type = 'project'
+            left join
+        `cloud`.`resource_count` projectcount ON account.id = projectcount.account_id
+            and projectcount.type = 'project'
+            left join
+        `cloud`.`resource_limit` networklimit ON account.id = networklimit.account_id
+            and networklimit.type = 'network'
+            left join
+        `cloud`.`resource_count` networkcount ON account.id = networkcount.account_id
+            and networkcount.type = 'network'
+            left join
+        `cloud`.`resource_limit` cpulimit ON account.id = cpulimit.account_id
+            and cpulimit.type = 'cpu'
+            left join
+        `cloud`.`resource_count` cpucount ON account.id = cpucount.account_id
+            and cpucount.type = 'cpu'
+            left join
+        `cloud`.`resource_limit` memorylimit ON account.id = memorylimit.account_id
+            and memorylimit.type = 'memory'
+            left join
+        `cloud`.`resource_count` memorycount ON account.id = memorycount.account_id
+            and memorycount.type = 'memory'
+            left join
+        `cloud`.`resource_limit` primary_storage_limit ON account.id = primary_storage_limit.account_id
+            and primary_storage_limit.type = 'primary_storage'
+            left join
+        `cloud`.`resource_count` primary_storage_count ON account.id = primary_storage_count.account_id
+            and primary_storage_count.type = 'primary_storage'
+            left join
+        `cloud`.`resource_limit` secondary_storage_limit ON account.id = secondary_storage_limit.account_id
+            and secondary_storage_limit.type = 'secondary_storage'
+            left join
+        `cloud`.`resource_count` secondary_storage_count ON account.id = secondary_storage_count.account_id
+            and secondary_storage_count.type = 'secondary_storage'
+            left join
+        `cloud`.`async_job` ON async_job.instance_id = account.id
+            and async_job.instance_type = 'Account'
+            and async_job.job_status = 0;
+
+DROP VIEW IF EXISTS `cloud`.`domain_view`;
+CREATE VIEW `cloud`.`domain_view` AS
+    select
+        domain.id id,
+        domain.parent parent,
+        domain.name name,
+        domain.uuid uuid,
+        domain.owner owner,
+        domain.path path,
+        domain.level level,
+        domain.child_count child_count,
+        domain.next_child_seq next_child_seq,
+        domain.removed removed,
+        domain.state state,
+        domain.network_domain network_domain,
+        domain.type type,
+        vmlimit.max vmLimit,
+        vmcount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = vmcount.id), 0) vmTotal,
+        iplimit.max ipLimit,
+        ipcount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = ipcount.id), 0) ipTotal,
+        volumelimit.max volumeLimit,
+        volumecount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = volumecount.id), 0) volumeTotal,
+        snapshotlimit.max snapshotLimit,
+        snapshotcount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = snapshotcount.id), 0) snapshotTotal,
+        templatelimit.max templateLimit,
+        templatecount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = templatecount.id), 0) templateTotal,
+        vpclimit.max vpcLimit,
+        vpccount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = vpccount.id), 0) vpcTotal,
+        projectlimit.max projectLimit,
+        projectcount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = projectcount.id), 0) projectTotal,
+        networklimit.max networkLimit,
+        networkcount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = networkcount.id), 0) networkTotal,
+        cpulimit.max cpuLimit,
+        cpucount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = cpucount.id), 0) cpuTotal,
+        memorylimit.max memoryLimit,
+        memorycount.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = memorycount.id), 0) memoryTotal,
+        primary_storage_limit.max primaryStorageLimit,
+        primary_storage_count.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = primary_storage_count.id), 0) primaryStorageTotal,
+        secondary_storage_limit.max secondaryStorageLimit,
+        secondary_storage_count.count + COALESCE((SELECT SUM(delta) FROM `cloud`.`resource_count_delta` WHERE resource_count_id = secondary_storage_count.id), 0) secondaryStorageTotal
+    from
+        `cloud`.`domain`
+            left join
+        `cloud`.`resource_limit` vmlimit ON domain.id = vmlimit.domain_id
+            and vmlimit.type = 'user_vm'
+            left join
+        `cloud`.`resource_count` vmcount ON domain.id = vmcount.domain_id
+            and vmcount.type = 'user_vm'
+            left join
+        `cloud`.`resource_limit` iplimit ON domain.id = iplimit.domain_id
+            and iplimit.type = 'public_ip'
+            left join
+        `cloud`.`resource_count` ipcount ON domain.id = ipcount.domain_id
+            and ipcount.type = 'public_ip'
+            left join
+        `cloud`.`resource_limit` volumelimit ON domain.id = volumelimit.domain_id
+            and volumelimit.type = 'volume'
+            left join
+        `cloud`.`resource_count` volumecount ON domain.id = volumecount.domain_id
+            and volumecount.type = 'volume'
+            left join
+        `cloud`.`resource_limit` snapshotlimit ON domain.id = snapshotlimit.domain_id
+            and snapshotlimit.type = 'snapshot'
+            left join
+        `cloud`.`resource_count` snapshotcount ON domain.id = snapshotcount.domain_id
+            and snapshotcount.type = 'snapshot'
+            left join
+        `cloud`.`resource_limit` templatelimit ON domain.id = templatelimit.domain_id
+            and templatelimit.type = 'template'
+            left join
+        `cloud`.`resource_count` templatecount ON domain.id = templatecount.domain_id
+            and templatecount.type = 'template'
+            left join
+        `cloud`.`resource_limit` vpclimit ON domain.id = vpclimit.domain_id
+            and vpclimit.type = 'vpc'
+            left join
+        `cloud`.`resource_count` vpccount ON domain.id = vpccount.domain_id
+            and vpccount.type = 'vpc'
+            left join
+        `cloud`.`resource_limit` projectlimit ON domain.id = projectlimit.domain_id
+            and projectlimit.type = 'project'
+            left join
+        `cloud`.`resource_count` projectcount ON domain.id = projectcount.domain_id
+            and projectcount.type = 'project'
+            left join
+        `cloud`.`resource_limit` networklimit ON domain.id = networklimit.domain_id
+            and networklimit.type = 'network'
+            left join
+        `cloud`.`resource_count` networkcount ON domain.id = networkcount.domain_id
+            and networkcount.type = 'network'
+            left join
+        `cloud`.`resource_limit` cpulimit ON domain.id = cpulimit.domain_id
+            and cpulimit.type = 'cpu'
+            left join
+        `cloud`.`resource_count` cpucount ON domain.id = cpucount.domain_id
+            and cpucount.type = 'cpu'
+            left join
+        `cloud`.`resource_limit` memorylimit ON domain.id = memorylimit.domain_id
+            and memorylimit.type = 'memory'
+            left join
+        `cloud`.`resource_count` memorycount ON domain.id = memorycount.domain_id
+            and memorycount.type = 'memory'
+            left join
+        `cloud`.`resource_limit` primary_storage_limit ON domain.id = primary_storage_limit.domain_id
+            and primary_storage_limit.type = 'primary_storage'
+            left join
+        `cloud`.`resource_count` primary_storage_count ON domain.id = primary_storage_count.domain_id
+            and primary_storage_count.type = 'primary_storage'
+            left join
+        `cloud`.`resource_limit` secondary_storage_limit ON domain.id = secondary_storage_limit.domain_id
+            and secondary_storage_limit.type = 'secondary_storage'
+            left join
+        `cloud`.`resource_count` secondary_storage_count ON domain.id = secondary_storage_count.domain_id
+            and secondary_storage_count.type = 'secondary_storage';
@@ -0,0 +1,179 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.configuration.dao;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.cloud.configuration.Resource.ResourceType;
+import com.cloud.utils.db.TransactionLegacy;
+import com.cloud.utils.exception.CloudRuntimeException;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(TransactionLegacy.class)
+@PowerMockIgnore("javax.management.*")
+public class ResourceCountDaoImplTest {
+
+    @Mock
+    private TransactionLegacy transactionMock;
+
+    @Mock
+    private PreparedStatement insertMock;
+
+    private final ResourceCountDaoImpl resourceCountDao = new ResourceCountDaoImpl();
+
+    @Before
+    public void setUp() throws Exception {
+        PowerMockito.mockStatic(TransactionLegacy.class);
+        Mockito.when(TransactionLegacy.currentTxn()).thenReturn(transactionMock);
+        Mockito.when(transactionMock.prepareAutoCloseStatement(Mockito.startsWith("INSERT INTO resource_count_delta"))).thenReturn(insertMock);
+    }
+
+    private PreparedStatement mockQuery(String sqlPrefix, long[]... rows) throws SQLException {
+        PreparedStatement pstmt = Mockito.mock(PreparedStatement.class);
+        ResultSet rs = Mockito.mock(ResultSet.class);
+        Mockito.when(transactionMock.prepareAutoCloseStatement(Mockito.startsWith(sqlPrefix))).thenReturn(pstmt);
+        Mockito.when(pstmt.executeQuery()).thenReturn(rs);
+        if (rows.length == 0) {
+            Mockito.when(rs.next()).thenReturn(false);
+            return pstmt;
+        }
+        Boolean[] more = new Boolean[rows.length];
+        Arrays.fill(more, true);
+        more[rows.length - 1] = false;
+        Mockito.when(rs.next()).thenReturn(true, more);
+        for (int column = 0; column < rows[0].length; column++) {
+            Long[] values = new Long[rows.length - 1];
+            for (int row = 1; row < rows.length; row++) {
+                values[row - 1] = rows[row][column];
+            }
+            Mockito.when(rs.getLong(column + 1)).thenReturn(rows[0][column], values);
+        }
+        return pstmt;
+    }
+
+    @Test
+    public void appendDeltaLogsAllRowsInOneTransaction() throws Exception {
+        resourceCountDao.appendDelta(Arrays.asList(7L, 3L, 5L), -2);
+
+        InOrder inOrder = Mockito.inOrder(transactionMock, insertMock);
+        inOrder.verify(transactionMock).start();
+        // rows are referenced in the order of their ids
+        inOrder.verify(insertMock).setLong(1, 3L);
+        inOrder.verify(insertMock).setLong(1, 5L);
+        inOrder.verify(insertMock).setLong(1, 7L);
+        inOrder.verify(insertMock).executeBatch();
+        inOrder.verify(transactionMock).commit();
+        Mockito.verify(insertMock, Mockito.times(3)).setLong(2, -2L);
+        Mockito.verify(insertMock, Mockito.times(3)).addBatch();
+    }
+
+    @Test
+    public void appendDeltaOfNothingDoesNotWrite() throws Exception {
+        resourceCountDao.appendDelta(Collections.<Long>emptyList(), 1);
+        resourceCountDao.appendDelta(Arrays.asList(1L), 0);
+        Mockito.verify(transactionMock, Mockito.never()).prepareAutoCloseStatement(Mockito.anyString());
+    }
+
+    @Test
+    public void appendDeltaRollsBackOnFailure() throws Exception {
+        Mockito.when(insertMock.executeBatch()).thenThrow(new SQLException("deadlock"));
+        try {
+            resourceCountDao.appendDelta(Arrays.asList(1L, 2L), 1);
+            Assert.fail("failure to append was ignored");
+        } catch (CloudRuntimeException e) {
+            Mockito.verify(transactionMock).rollback();
+            Mockito.verify(transactionMock, Mockito.never()).commit();
+        }
+    }
+
+    @Test
+    public void getDomainResourceCountsIncludesPendingDeltas() throws Exception {
+        PreparedStatement pstmt = mockQuery("SELECT rc.domain_id", new long[] {1, 10}, new long[] {2, 20});
+
+        Map<Long, Long> counts = resourceCountDao.getDomainResourceCounts(Arrays.asList(1L, 2L, 3L), ResourceType.volume);
+
+        Mockito.verify(transactionMock).prepareAutoCloseStatement(Mockito.contains("SUM(d.delta)"));
+        Mockito.verify(transactionMock).prepareAutoCloseStatement(Mockito.endsWith("rc.domain_id IN (1,2,3)"));
+        Mockito.verify(pstmt).setString(1, "volume");
+        Assert.assertEquals(2, counts.size());
+        Assert.assertEquals(Long.valueOf(10), counts.get(1L));
+        Assert.assertEquals(Long.valueOf(20), counts.get(2L));
+    }
+
+    @Test
+    public void getDomainResourceCountsOfNoDomains() throws Exception {
+        Assert.assertTrue(resourceCountDao.getDomainResourceCounts(Collections.<Long>emptyList(), ResourceType.volume).isEmpty());
+        Mockito.verify(transactionMock, Mockito.never()).prepareAutoCloseStatement(Mockito.anyString());
+    }
+
+    @Test
+    public void compactDeltasFoldsTheLockedDeltas() throws Exception {
+        mockQuery("SELECT id, resource_count_id FROM resource_count_delta ORDER BY id", new long[] {10, 100}, new long[] {11, 101}, new long[] {12, 100});
+        PreparedStatement lockCounts = mockQuery("SELECT id FROM resource_count WHERE id IN");
+        PreparedStatement lockDeltas = mockQuery("SELECT id, resource_count_id, delta FROM resource_count_delta", new long[] {10, 100, 1}, new long[] {11, 101, -1},
+                new long[] {12, 100, 2});
+        PreparedStatement apply = Mockito.mock(PreparedStatement.class);
+        Mockito.when(transactionMock.prepareAutoCloseStatement(Mockito.startsWith("UPDATE resource_count SET"))).thenReturn(apply);
+        PreparedStatement remove = Mockito.mock(PreparedStatement.class);
+        Mockito.when(transactionMock.prepareAutoCloseStatement(Mockito.startsWith("DELETE FROM resource_count_delta WHERE id"))).thenReturn(remove);
+
+        Assert.assertEquals(3, resourceCountDao.compactDeltas(3));
+
+        InOrder inOrder = Mockito.inOrder(transactionMock, lockCounts, lockDeltas, apply, remove);
+        inOrder.verify(transactionMock).start();
+        inOrder.verify(lockCounts).executeQuery();
+        inOrder.verify(lockDeltas).setLong(1, 12L);
+        inOrder.verify(lockDeltas).executeQuery();
+        inOrder.verify(apply).executeBatch();
+        inOrder.verify(remove).executeBatch();
+        inOrder.verify(transactionMock).commit();
+        Mockito.verify(apply).setLong(1, 3L);
+        Mockito.verify(apply).setLong(2, 100L);
+        Mockito.verify(apply).setLong(1, -1L);
+        Mockito.verify(apply).setLong(2, 101L);
+        Mockito.verify(remove).setLong(1, 10L);
+        Mockito.verify(remove).setLong(1, 11L);
+        Mockito.verify(remove).setLong(1, 12L);
+    }
+
+    @Test
+    public void compactDeltasWithEmptyLedger() throws Exception {
+        mockQuery("SELECT id, resource_count_id FROM resource_count_delta ORDER BY id");
+
+        Assert.assertEquals(0, resourceCountDao.compactDeltas(100));
+
+        Mockito.verify(transactionMock).commit();
+        Mockito.verify(transactionMock, Mockito.never()).prepareAutoCloseStatement(Mockito.startsWith("UPDATE"));
+    }
+}
@@ -35,4 +35,10 @@ public interface ConfigDepotAdmin {
     void populateConfiguration(Configurable configurable);
 
     List<String> getComponentsInDepot();
+
+    /**
+     * Forgets the config values read so far, so that the next reads get them
+     * from the database.  Called when a configuration was changed.
+     */
+    void invalidateValues();
 }
@@ -19,8 +19,10 @@ package org.apache.cloudstack.framework.config;
 import java.sql.Date;
 
 import org.apache.cloudstack.framework.config.impl.ConfigDepotImpl;
+import org.apache.cloudstack.framework.config.impl.ConfigSnapshot;
 import org.apache.cloudstack.framework.config.impl.ConfigurationVO;
 
+import com.cloud.utils.Pair;
 import com.cloud.utils.exception.CloudRuntimeException;
 
 /**
@@ -77,6 +79,8 @@ public class ConfigKey<T> {
     private final boolean _isDynamic;
     private final T _multiplier;
     T _value = null;
+    // value of a dynamic key and the version of the snapshot it was read from
+    private volatile Pair<Long, T> _snapshotValue = null;
 
     static ConfigDepotImpl s_depot = null;
 
@@ -139,20 +143,43 @@ public class ConfigKey<T> {
 
     public T value() {
         if (_value == null || isDynamic()) {
-            ConfigurationVO vo = s_depot != null ? s_depot.global().findById(key()) : null;
-            final String value = (vo != null && vo.getValue() != null) ? vo.getValue() : defaultValue();
-            _value = ((value == null) ? (T)defaultValue() : valueOf(value));
+            final ConfigSnapshot snapshot = s_depot != null ? s_depot.getSnapshot() : null;
+            if (snapshot == null) {
+                ConfigurationVO vo = s_depot != null ? s_depot.global().findById(key()) : null;
+                _value = valueOrDefault(vo != null ? vo.getValue() : null);
+            } else if (isDynamic()) {
+                Pair<Long, T> cached = _snapshotValue;
+                if (cached == null || cached.first() != snapshot.getVersion()) {
+                    cached = new Pair<Long, T>(snapshot.getVersion(), valueOrDefault(snapshot.getGlobalValue(this)));
+                    _snapshotValue = cached;
+                }
+                return cached.second();
+            } else {
+                _value = valueOrDefault(snapshot.getGlobalValue(this));
+            }
         }
 
         return _value;
     }
 
+    @SuppressWarnings("unchecked")
+    private T valueOrDefault(String value) {
+        if (value == null) {
+            value = defaultValue();
+        }
+        return (value == null) ? (T)defaultValue() : valueOf(value);
+    }
+
     public T valueIn(Long id) {
         if (id == null) {
             return value();
         }
 
-        String value = s_depot != null ? s_depot.findScopedConfigStorage(this).getConfigValue(id, this) : null;
+        String value = null;
+        if (s_depot != null) {
+            final ConfigSnapshot snapshot = s_depot.getSnapshot();
+            value = snapshot != null ? snapshot.getScopedValue(this, id) : s_depot.findScopedConfigStorage(this).getConfigValue(id, this);
+        }
         if (value == null) {
             return value();
         } else {
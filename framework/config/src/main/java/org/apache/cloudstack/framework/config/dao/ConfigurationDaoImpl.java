@@ -143,6 +143,7 @@ public class ConfigurationDaoImpl extends GenericDaoBase<ConfigurationVO, String
             stmt.setString(1, value);
             stmt.setString(2, name);
             stmt.executeUpdate();
+            tablesChanged(txn);
             return true;
         } catch (Exception e) {
             s_logger.warn("Unable to update Configuration Value", e);
@@ -159,6 +160,7 @@ public class ConfigurationDaoImpl extends GenericDaoBase<ConfigurationVO, String
                 stmt.setString(1, value);
                 stmt.setString(2, name);
                 stmt.executeUpdate();
+                tablesChanged(txn);
                 return true;
             }
         } catch (Exception e) {
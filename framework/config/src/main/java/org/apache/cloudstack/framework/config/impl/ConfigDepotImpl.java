@@ -22,7 +22,11 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
@@ -38,6 +42,7 @@ import org.apache.log4j.Logger;
 
 import com.cloud.utils.Pair;
 import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.utils.mgmt.JmxUtil;
 
 /**
  * ConfigDepotImpl implements the ConfigDepot and ConfigDepotAdmin interface.
@@ -48,6 +53,14 @@ import com.cloud.utils.exception.CloudRuntimeException;
  *     variables into the config table.
  *   - Hide the data source where configs are stored and retrieved.
  *
+ * Values read through ConfigKey.value() and ConfigKey.valueIn() are kept
+ * in a {@link ConfigSnapshot}.  The snapshot is replaced when a
+ * configuration is changed through this depot or when
+ * {@link #invalidateValues()} is called, which ConfigurationManagerImpl does
+ * on every configuration update, and in any case once it is older than
+ * {@link #SNAPSHOT_MAX_AGE} so that changes made behind our back are
+ * eventually seen.
+ *
  * When dealing with this class, we must be very careful on cluster situations.
  *
  * TODO:
@@ -68,6 +81,11 @@ import com.cloud.utils.exception.CloudRuntimeException;
  */
 public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
     private final static Logger s_logger = Logger.getLogger(ConfigDepotImpl.class);
+    /**
+     * Milliseconds after which the snapshot of config values is replaced.
+     */
+    protected static final long SNAPSHOT_MAX_AGE = 60000L;
+
     @Inject
     ConfigurationDao _configDao;
     List<Configurable> _configurables;
@@ -78,6 +96,12 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
 
     HashMap<ConfigKey.Scope, Set<ConfigKey<?>>> _scopeLevelConfigsMap = new HashMap<ConfigKey.Scope, Set<ConfigKey<?>>>();
 
+    // shared by all depots so that a ConfigKey never mixes up snapshots of two depots
+    private static final AtomicLong s_snapshotVersion = new AtomicLong();
+    private volatile ConfigSnapshot _snapshot = new ConfigSnapshot(s_snapshotVersion.incrementAndGet(), this);
+    private final ConcurrentHashMap<String, LongAdder> _reads = new ConcurrentHashMap<String, LongAdder>();
+    private final ConcurrentHashMap<String, LongAdder> _loads = new ConcurrentHashMap<String, LongAdder>();
+
     public ConfigDepotImpl() {
         ConfigKey.init(this);
         _scopeLevelConfigsMap.put(ConfigKey.Scope.Zone, new HashSet<ConfigKey<?>>());
@@ -95,6 +119,15 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
     }
 
     @PostConstruct
+    void init() {
+        populateConfigurations();
+        try {
+            JmxUtil.registerMBean("ConfigDepot", "ReadCounts", new ConfigReadCounts(this));
+        } catch (final Exception e) {
+            s_logger.warn("Unable to register the config read counts to JMX", e);
+        }
+    }
+
     @Override
     public void populateConfigurations() {
         Date date = new Date();
@@ -137,6 +170,7 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
                 vo.setValue(value);
             }
             _configDao.persist(vo);
+            invalidateValues();
         } else {
             if (vo.isDynamic() != key.isDynamic() || !ObjectUtils.equals(vo.getDescription(), key.description()) || !ObjectUtils.equals(vo.getDefaultValue(), key.defaultValue()) ||
                 !ObjectUtils.equals(vo.getScope(), key.scope().toString()) ||
@@ -148,6 +182,7 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
                 vo.setComponent(componentName);
                 vo.setUpdated(date);
                 _configDao.persist(vo);
+                invalidateValues();
             }
         }
     }
@@ -202,6 +237,7 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
     @Override
     public <T> void set(ConfigKey<T> key, T value) {
         _configDao.update(key.key(), value.toString());
+        invalidateValues();
     }
 
     @Override
@@ -209,4 +245,64 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
         createOrupdateConfigObject(new Date(), componentName, key, value);
 
     }
+
+    /**
+     * @return the snapshot to read config values from, replaced by a new one
+     *         if it is too old.
+     */
+    public ConfigSnapshot getSnapshot() {
+        final ConfigSnapshot snapshot = _snapshot;
+        if (System.currentTimeMillis() - snapshot.getCreated() > SNAPSHOT_MAX_AGE) {
+            return replaceSnapshot(snapshot);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void invalidateValues() {
+        replaceSnapshot(_snapshot);
+    }
+
+    protected synchronized ConfigSnapshot replaceSnapshot(ConfigSnapshot current) {
+        if (_snapshot == current) {
+            _snapshot = new ConfigSnapshot(s_snapshotVersion.incrementAndGet(), this);
+            if (s_logger.isTraceEnabled()) {
+                s_logger.trace("Replaced config snapshot " + current.getVersion() + " by " + _snapshot.getVersion());
+            }
+        }
+        return _snapshot;
+    }
+
+    void countRead(ConfigKey<?> key) {
+        count(_reads, key);
+    }
+
+    void countLoad(ConfigKey<?> key) {
+        count(_loads, key);
+    }
+
+    private static void count(ConcurrentHashMap<String, LongAdder> counters, ConfigKey<?> key) {
+        LongAdder counter = counters.get(key.key());
+        if (counter == null) {
+            final LongAdder created = new LongAdder();
+            counter = counters.putIfAbsent(key.key(), created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * @return for each key read so far, the number of reads and how many of
+     *         them went to the database.
+     */
+    public Map<String, Pair<Long, Long>> getReadCounts() {
+        final Map<String, Pair<Long, Long>> counts = new HashMap<String, Pair<Long, Long>>();
+        for (Map.Entry<String, LongAdder> entry : _reads.entrySet()) {
+            final LongAdder loads = _loads.get(entry.getKey());
+            counts.put(entry.getKey(), new Pair<Long, Long>(entry.getValue().sum(), loads != null ? loads.sum() : 0L));
+        }
+        return counts;
+    }
 }
@@ -0,0 +1,73 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.framework.config.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.cloud.utils.Pair;
+
+/**
+ * Reports how often the config values are read and how often a read has to
+ * load the value from the database.
+ */
+public class ConfigReadCounts implements ConfigReadCountsMBean {
+    private final ConfigDepotImpl _depot;
+
+    public ConfigReadCounts(ConfigDepotImpl depot) {
+        _depot = depot;
+    }
+
+    @Override
+    public long getReadCount() {
+        long count = 0;
+        for (final Pair<Long, Long> counts : _depot.getReadCounts().values()) {
+            count += counts.first();
+        }
+        return count;
+    }
+
+    @Override
+    public long getLoadCount() {
+        long count = 0;
+        for (final Pair<Long, Long> counts : _depot.getReadCounts().values()) {
+            count += counts.second();
+        }
+        return count;
+    }
+
+    @Override
+    public String[] getReadCountsByKey() {
+        final List<Map.Entry<String, Pair<Long, Long>>> entries = new ArrayList<Map.Entry<String, Pair<Long, Long>>>(_depot.getReadCounts().entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Pair<Long, Long>>>() {
+            @Override
+            public int compare(Map.Entry<String, Pair<Long, Long>> e1, Map.Entry<String, Pair<Long, Long>> e2) {
+                return Long.compare(e2.getValue().first(), e1.getValue().first());
+            }
+        });
+
+        final String[] counts = new String[entries.size()];
+        for (int i = 0; i < counts.length; i++) {
+            final Map.Entry<String, Pair<Long, Long>> entry = entries.get(i);
+            counts[i] = entry.getKey() + ": " + entry.getValue().first() + " reads, " + entry.getValue().second() + " loads";
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,95 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.framework.config.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.cloudstack.framework.config.ConfigKey;
+
+/**
+ * ConfigSnapshot remembers the values of the configuration table and of the
+ * scoped config storages as they are read.  A snapshot is never updated;
+ * ConfigDepotImpl replaces it by an empty one with the next version whenever
+ * a configuration changes, so a value read from the database while the
+ * snapshot was being replaced only ends up in the discarded snapshot.
+ */
+public class ConfigSnapshot {
+    // stands for a null value, which ConcurrentHashMap cannot hold
+    private static final String NULL = new String();
+
+    private final long _version;
+    private final long _created;
+    private final ConfigDepotImpl _depot;
+    private final ConcurrentHashMap<String, String> _globalValues = new ConcurrentHashMap<String, String>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<Long, String>> _scopedValues = new ConcurrentHashMap<String, ConcurrentHashMap<Long, String>>();
+
+    ConfigSnapshot(long version, ConfigDepotImpl depot) {
+        _version = version;
+        _created = System.currentTimeMillis();
+        _depot = depot;
+    }
+
+    public long getVersion() {
+        return _version;
+    }
+
+    public long getCreated() {
+        return _created;
+    }
+
+    /**
+     * @return the value in the configuration table, null if the key is not
+     *         there or has no value.
+     */
+    public String getGlobalValue(ConfigKey<?> key) {
+        _depot.countRead(key);
+        String value = _globalValues.get(key.key());
+        if (value == null) {
+            _depot.countLoad(key);
+            final ConfigurationVO vo = _depot.global().findById(key.key());
+            value = vo != null && vo.getValue() != null ? vo.getValue() : NULL;
+            _globalValues.put(key.key(), value);
+        }
+        return value != NULL ? value : null;
+    }
+
+    /**
+     * @return the value of the key for the resource in the storage of the
+     *         scope of the key, null if it has none.
+     */
+    public String getScopedValue(ConfigKey<?> key, long id) {
+        _depot.countRead(key);
+        ConcurrentHashMap<Long, String> values = _scopedValues.get(key.key());
+        if (values == null) {
+            final ConcurrentHashMap<Long, String> created = new ConcurrentHashMap<Long, String>();
+            values = _scopedValues.putIfAbsent(key.key(), created);
+            if (values == null) {
+                values = created;
+            }
+        }
+        String value = values.get(id);
+        if (value == null) {
+            _depot.countLoad(key);
+            value = _depot.findScopedConfigStorage(key).getConfigValue(id, key);
+            if (value == null) {
+                value = NULL;
+            }
+            values.put(id, value);
+        }
+        return value != NULL ? value : null;
+    }
+}
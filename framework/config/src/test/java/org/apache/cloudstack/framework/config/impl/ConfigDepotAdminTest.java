@@ -17,6 +17,7 @@
 package org.apache.cloudstack.framework.config.impl;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -41,6 +42,7 @@ import com.cloud.utils.db.EntityManager;
 public class ConfigDepotAdminTest extends TestCase {
     private final static ConfigKey<Integer> DynamicIntCK = new ConfigKey<Integer>(Integer.class, "dynIntKey", "Advance", "10", "Test Key", true);
     private final static ConfigKey<Integer> StaticIntCK = new ConfigKey<Integer>(Integer.class, "statIntKey", "Advance", "10", "Test Key", false);
+    private final static ConfigKey<Integer> ZoneIntCK = new ConfigKey<Integer>("Advance", Integer.class, "zoneIntKey", "10", "Test Key", true, ConfigKey.Scope.Zone);
 
     @Mock
     Configurable _configurable;
@@ -98,4 +100,42 @@ public class ConfigDepotAdminTest extends TestCase {
         // This is two because DynamicIntCK also returns null.
         verify(_configDao, times(2)).persist(any(ConfigurationVO.class));
     }
+
+    @Test
+    public void testDynamicValueIsReadOnceUntilInvalidated() {
+        ConfigurationVO dynamicIntCV = new ConfigurationVO("UnitTestComponent", DynamicIntCK);
+        dynamicIntCV.setValue("100");
+        when(_configDao.findById(DynamicIntCK.key())).thenReturn(dynamicIntCV);
+
+        assertEquals(Integer.valueOf(100), DynamicIntCK.value());
+        assertEquals(Integer.valueOf(100), DynamicIntCK.value());
+        verify(_configDao, times(1)).findById(DynamicIntCK.key());
+
+        dynamicIntCV.setValue("200");
+        _depotAdmin.invalidateValues();
+        assertEquals(Integer.valueOf(200), DynamicIntCK.value());
+        verify(_configDao, times(2)).findById(DynamicIntCK.key());
+
+        assertEquals(3L, _depotAdmin.getReadCounts().get(DynamicIntCK.key()).first().longValue());
+        assertEquals(2L, _depotAdmin.getReadCounts().get(DynamicIntCK.key()).second().longValue());
+
+        ConfigReadCounts readCounts = new ConfigReadCounts(_depotAdmin);
+        assertEquals(3L, readCounts.getReadCount());
+        assertEquals(2L, readCounts.getLoadCount());
+        assertEquals(DynamicIntCK.key() + ": 3 reads, 2 loads", readCounts.getReadCountsByKey()[0]);
+    }
+
+    @Test
+    public void testScopedValuesAreRemembered() {
+        when(_scopedStorage.getScope()).thenReturn(ConfigKey.Scope.Zone);
+        when(_scopedStorage.getConfigValue(1L, ZoneIntCK)).thenReturn("20");
+        when(_configDao.findById(ZoneIntCK.key())).thenReturn(null);
+
+        assertEquals(Integer.valueOf(20), ZoneIntCK.valueIn(1L));
+        assertEquals(Integer.valueOf(20), ZoneIntCK.valueIn(1L));
+        assertEquals(Integer.valueOf(10), ZoneIntCK.valueIn(2L));
+        assertEquals(Integer.valueOf(10), ZoneIntCK.valueIn(2L));
+        verify(_scopedStorage, times(2)).getConfigValue(anyLong(), any(ConfigKey.class));
+        verify(_configDao, times(1)).findById(ZoneIntCK.key());
+    }
 }
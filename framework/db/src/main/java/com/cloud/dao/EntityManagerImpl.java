@@ -17,6 +17,7 @@
 package com.cloud.dao;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -63,6 +64,18 @@ public class EntityManagerImpl extends ManagerBase implements EntityManager {
         return dao.findByUuidIncludingRemoved(uuid);
     }
 
+    @Override
+    public <T> Map<String, ? extends T> findByUuidsIncludingRemoved(Class<T> entityType, Collection<String> uuids) {
+        GenericDao<? extends T, ? extends Serializable> dao = GenericDaoBase.getDao(entityType);
+        return dao.findByUuidsIncludingRemoved(uuids);
+    }
+
+    @Override
+    public <T, K extends Serializable> Map<K, ? extends T> findByIds(Class<T> entityType, Collection<K> ids) {
+        GenericDao<? extends T, K> dao = (GenericDao<? extends T, K>)GenericDaoBase.getDao(entityType);
+        return dao.findByIds(ids);
+    }
+
     @Override
     public <T> T findByXId(Class<T> entityType, String xid) {
         return null;
@@ -0,0 +1,443 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+
+import com.cloud.utils.DateUtil;
+import com.cloud.utils.crypt.DBEncryptionUtil;
+import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.utils.net.Ip;
+import com.cloud.utils.net.NetUtils;
+
+/**
+ * ColumnMapper copies one column of a result set into one field of an
+ * entity.  The type dispatch and the annotation lookups (Encrypt, Enumerated)
+ * are done once when the mapper is created and the field is written through
+ * a MethodHandle instead of Field.set(), so mapping a row does no reflection.
+ *
+ * Mappers are created once per field and shared by all DAOs.
+ */
+public abstract class ColumnMapper {
+    protected final static TimeZone s_gmtTimeZone = TimeZone.getTimeZone("GMT");
+
+    private final static Map<Field, ColumnMapper> s_mappers = new ConcurrentHashMap<Field, ColumnMapper>(1024);
+
+    protected final Field field;
+
+    protected ColumnMapper(Field field) {
+        this.field = field;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Reads the column at index from the current row and sets it on the entity.
+     */
+    public abstract void map(Object entity, ResultSet rs, int index) throws SQLException;
+
+    public static ColumnMapper forField(Field field) {
+        ColumnMapper mapper = s_mappers.get(field);
+        if (mapper == null) {
+            mapper = create(field);
+            ColumnMapper existing = s_mappers.putIfAbsent(field, mapper);
+            if (existing != null) {
+                mapper = existing;
+            }
+        }
+        return mapper;
+    }
+
+    protected static ColumnMapper create(Field field) {
+        final Class<?> type = field.getType();
+        if (type == String.class) {
+            Encrypt encrypt = field.getAnnotation(Encrypt.class);
+            return new StringMapper(field, encrypt != null && encrypt.encrypt());
+        } else if (type == long.class) {
+            return new LongMapper(field);
+        } else if (type == int.class) {
+            return new IntMapper(field);
+        } else if (type == boolean.class) {
+            return new BooleanMapper(field);
+        } else if (type == short.class) {
+            return new ShortMapper(field);
+        } else if (type == float.class) {
+            return new FloatMapper(field);
+        } else if (type == double.class) {
+            return new DoubleMapper(field);
+        } else if (type == byte.class) {
+            return new ByteMapper(field);
+        } else if (type.isEnum()) {
+            return new EnumMapper(field);
+        } else if (type == Ip.class) {
+            return new IpMapper(field);
+        }
+        return new ObjectMapper(field);
+    }
+
+    protected static MethodHandle setterFor(Field field, Class<?> valueType) {
+        try {
+            return MethodHandles.lookup().unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, valueType));
+        } catch (IllegalAccessException e) {
+            throw new CloudRuntimeException("Unable to access " + field, e);
+        }
+    }
+
+    protected CloudRuntimeException wrap(Throwable th) {
+        if (th instanceof CloudRuntimeException) {
+            return (CloudRuntimeException)th;
+        }
+        return new CloudRuntimeException("Unable to set " + field, th);
+    }
+
+    protected static class StringMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+        private final boolean _encrypted;
+
+        protected StringMapper(Field field, boolean encrypted) {
+            super(field);
+            _setter = setterFor(field, Object.class);
+            _encrypted = encrypted;
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            byte[] bytes = rs.getBytes(index);
+            String value = null;
+            if (bytes != null) {
+                value = new String(bytes, StandardCharsets.UTF_8);
+                if (_encrypted) {
+                    value = DBEncryptionUtil.decrypt(value);
+                }
+            }
+            try {
+                _setter.invokeExact(entity, (Object)value);
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+    }
+
+    protected static class LongMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+
+        protected LongMapper(Field field) {
+            super(field);
+            _setter = setterFor(field, long.class);
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            try {
+                _setter.invokeExact(entity, rs.getLong(index));
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+    }
+
+    protected static class IntMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+
+        protected IntMapper(Field field) {
+            super(field);
+            _setter = setterFor(field, int.class);
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            try {
+                _setter.invokeExact(entity, rs.getInt(index));
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+    }
+
+    protected static class BooleanMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+
+        protected BooleanMapper(Field field) {
+            super(field);
+            _setter = setterFor(field, boolean.class);
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            try {
+                _setter.invokeExact(entity, rs.getBoolean(index));
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+    }
+
+    protected static class ShortMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+
+        protected ShortMapper(Field field) {
+            super(field);
+            _setter = setterFor(field, short.class);
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            try {
+                _setter.invokeExact(entity, rs.getShort(index));
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+    }
+
+    protected static class FloatMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+
+        protected FloatMapper(Field field) {
+            super(field);
+            _setter = setterFor(field, float.class);
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            try {
+                _setter.invokeExact(entity, rs.getFloat(index));
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+    }
+
+    protected static class DoubleMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+
+        protected DoubleMapper(Field field) {
+            super(field);
+            _setter = setterFor(field, double.class);
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            try {
+                _setter.invokeExact(entity, rs.getDouble(index));
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+    }
+
+    protected static class ByteMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+
+        protected ByteMapper(Field field) {
+            super(field);
+            _setter = setterFor(field, byte.class);
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            try {
+                _setter.invokeExact(entity, rs.getByte(index));
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+    }
+
+    /**
+     * Enum constants are resolved from a precomputed lookup table.  As before,
+     * a value that does not match any constant leaves the field untouched.
+     */
+    protected static class EnumMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+        private final boolean _ordinal;
+        private final Enum<?>[] _constants;
+        private final Map<String, Enum<?>> _byName;
+
+        protected EnumMapper(Field field) {
+            super(field);
+            _setter = setterFor(field, Object.class);
+            final Enumerated enumerated = field.getAnnotation(Enumerated.class);
+            _ordinal = enumerated != null && enumerated.value() == EnumType.ORDINAL;
+            _constants = (Enum<?>[])field.getType().getEnumConstants();
+            _byName = new TreeMap<String, Enum<?>>(String.CASE_INSENSITIVE_ORDER);
+            for (Enum<?> e : _constants) {
+                if (!_byName.containsKey(e.name())) {
+                    _byName.put(e.name(), e);
+                }
+            }
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            Enum<?> value = null;
+            if (_ordinal) {
+                int ordinal = rs.getInt(index);
+                if (ordinal >= 0 && ordinal < _constants.length) {
+                    value = _constants[ordinal];
+                }
+            } else {
+                String name = rs.getString(index);
+                if (name != null) {
+                    value = _byName.get(name);
+                }
+            }
+            if (value == null) {
+                return;
+            }
+            try {
+                _setter.invokeExact(entity, (Object)value);
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+    }
+
+    protected static class IpMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+        private final boolean _string;
+
+        protected IpMapper(Field field) {
+            super(field);
+            _setter = setterFor(field, Object.class);
+            final Enumerated enumerated = field.getAnnotation(Enumerated.class);
+            _string = enumerated == null || enumerated.value() == EnumType.STRING;
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            Ip ip = null;
+            if (_string) {
+                String s = rs.getString(index);
+                ip = s == null ? null : new Ip(NetUtils.ip2Long(s));
+            } else {
+                ip = new Ip(rs.getLong(index));
+            }
+            try {
+                _setter.invokeExact(entity, (Object)ip);
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+    }
+
+    /**
+     * Handles the boxed and object types, where a SQL NULL becomes a null field.
+     */
+    protected static class ObjectMapper extends ColumnMapper {
+        private final MethodHandle _setter;
+        private final Class<?> _type;
+
+        protected ObjectMapper(Field field) {
+            super(field);
+            _setter = setterFor(field, Object.class);
+            _type = field.getType();
+        }
+
+        @Override
+        public void map(Object entity, ResultSet rs, int index) throws SQLException {
+            Object value = read(rs, index);
+            try {
+                _setter.invokeExact(entity, value);
+            } catch (Throwable th) {
+                throw wrap(th);
+            }
+        }
+
+        protected Object read(ResultSet rs, int index) throws SQLException {
+            if (_type == Long.class) {
+                return rs.getObject(index) == null ? null : rs.getLong(index);
+            } else if (_type == Integer.class) {
+                return rs.getObject(index) == null ? null : rs.getInt(index);
+            } else if (_type == Date.class) {
+                if (rs.getDate(index) == null) {
+                    return null;
+                }
+                return DateUtil.parseDateString(s_gmtTimeZone, rs.getString(index));
+            } else if (_type == Calendar.class) {
+                if (rs.getDate(index) == null) {
+                    return null;
+                }
+                final Calendar cal = Calendar.getInstance();
+                cal.setTime(DateUtil.parseDateString(s_gmtTimeZone, rs.getString(index)));
+                return cal;
+            } else if (_type == Boolean.class) {
+                return rs.getObject(index) == null ? null : rs.getBoolean(index);
+            } else if (_type == URI.class) {
+                String str = rs.getString(index);
+                try {
+                    return str == null ? null : new URI(str);
+                } catch (URISyntaxException e) {
+                    throw new CloudRuntimeException("Invalid URI: " + str, e);
+                }
+            } else if (_type == URL.class) {
+                String str = rs.getString(index);
+                try {
+                    return str != null ? new URL(str) : null;
+                } catch (MalformedURLException e) {
+                    throw new CloudRuntimeException("Invalid URL: " + str, e);
+                }
+            } else if (_type == Short.class) {
+                return rs.getObject(index) == null ? null : rs.getShort(index);
+            } else if (_type == Float.class) {
+                return rs.getObject(index) == null ? null : rs.getFloat(index);
+            } else if (_type == Double.class) {
+                return rs.getObject(index) == null ? null : rs.getDouble(index);
+            } else if (_type == Byte.class) {
+                return rs.getObject(index) == null ? null : rs.getByte(index);
+            } else if (_type == byte[].class) {
+                return rs.getBytes(index);
+            }
+            return rs.getObject(index);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+/**
+ * ConnectionPool wraps the DataSource of one database (cloud, usage or
+ * simulator) and keeps track of how long callers wait to borrow a
+ * connection from it.  The counters are lock free so that recording them
+ * does not add contention to the borrow path.
+ *
+ * The implementation is chosen with db.[database].connectionPoolLib in
+ * db.properties, see {@link Library}.
+ */
+public abstract class ConnectionPool {
+    public enum Library {
+        dbcp, hikaricp;
+
+        public static Library fromString(String value, Library defaultValue) {
+            if (value == null || value.trim().isEmpty()) {
+                return defaultValue;
+            }
+            for (Library library : values()) {
+                if (library.name().equalsIgnoreCase(value.trim())) {
+                    return library;
+                }
+            }
+            return defaultValue;
+        }
+    }
+
+    protected final String _name;
+    protected final DataSource _dataSource;
+
+    private final LongAdder _borrowCount = new LongAdder();
+    private final LongAdder _borrowFailures = new LongAdder();
+    private final LongAdder _waitNanos = new LongAdder();
+    private final AtomicLong _maxWaitNanos = new AtomicLong();
+
+    protected ConnectionPool(String name, DataSource dataSource) {
+        _name = name;
+        _dataSource = dataSource;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public DataSource getDataSource() {
+        return _dataSource;
+    }
+
+    public Connection getConnection() throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            final Connection conn = _dataSource.getConnection();
+            recordWait(System.nanoTime() - start);
+            return conn;
+        } catch (SQLException e) {
+            _borrowFailures.increment();
+            throw e;
+        }
+    }
+
+    protected void recordWait(long nanos) {
+        _borrowCount.increment();
+        _waitNanos.add(nanos);
+        long max = _maxWaitNanos.get();
+        while (nanos > max && !_maxWaitNanos.compareAndSet(max, nanos)) {
+            max = _maxWaitNanos.get();
+        }
+    }
+
+    public abstract Library getLibrary();
+
+    public abstract int getNumActive();
+
+    public abstract int getNumIdle();
+
+    /**
+     * @return number of threads waiting for a connection, or -1 if the pool does not report it.
+     */
+    public abstract int getNumWaiting();
+
+    public abstract void close();
+
+    public Map<String, String> getStats() {
+        final Map<String, String> stats = new HashMap<String, String>();
+        final long borrows = _borrowCount.sum();
+        final long waitNanos = _waitNanos.sum();
+        stats.put("name", _name);
+        stats.put("library", getLibrary().name());
+        stats.put("active", Integer.toString(getNumActive()));
+        stats.put("idle", Integer.toString(getNumIdle()));
+        stats.put("waiting", Integer.toString(getNumWaiting()));
+        stats.put("borrows", Long.toString(borrows));
+        stats.put("borrowFailures", Long.toString(_borrowFailures.sum()));
+        stats.put("totalWaitMs", Long.toString(TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        stats.put("avgWaitMs", Double.toString(borrows == 0 ? 0 : (double)waitNanos / borrows / 1000000d));
+        stats.put("maxWaitMs", Double.toString(_maxWaitNanos.get() / 1000000d));
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return _name + "[" + getLibrary() + "]";
+    }
+}
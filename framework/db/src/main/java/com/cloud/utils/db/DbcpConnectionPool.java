@@ -0,0 +1,64 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import org.apache.commons.dbcp.PoolingDataSource;
+import org.apache.commons.pool.ObjectPool;
+import org.apache.log4j.Logger;
+
+/**
+ * The commons-dbcp pool that CloudStack has always used.
+ */
+public class DbcpConnectionPool extends ConnectionPool {
+    private static final Logger s_logger = Logger.getLogger(DbcpConnectionPool.class);
+
+    private final ObjectPool _pool;
+
+    public DbcpConnectionPool(String name, ObjectPool pool) {
+        super(name, new PoolingDataSource(pool));
+        _pool = pool;
+    }
+
+    @Override
+    public Library getLibrary() {
+        return Library.dbcp;
+    }
+
+    @Override
+    public int getNumActive() {
+        return _pool.getNumActive();
+    }
+
+    @Override
+    public int getNumIdle() {
+        return _pool.getNumIdle();
+    }
+
+    @Override
+    public int getNumWaiting() {
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        try {
+            _pool.close();
+        } catch (Exception e) {
+            s_logger.warn("Unable to close connection pool " + _name, e);
+        }
+    }
+}
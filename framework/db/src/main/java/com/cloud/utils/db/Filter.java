@@ -17,6 +17,9 @@
 package com.cloud.utils.db;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.persistence.Column;
 
@@ -37,6 +40,8 @@ public class Filter {
     Long _offset;
     Long _limit;
     String _orderBy;
+    List<Pair<String, Boolean>> _orderColumns = new ArrayList<Pair<String, Boolean>>();
+    Object[] _seekValues;
 
     /**
      * @param clazz the VO object type
@@ -61,6 +66,7 @@ public class Filter {
      */
     public Filter(Filter that) {
         this._orderBy = that._orderBy;
+        this._orderColumns.addAll(that._orderColumns);
         this._limit = null;
         that._limit = null;
     }
@@ -84,7 +90,9 @@ public class Filter {
         } else {
             order.append(column.table());
         }
-        order.append(".").append(name).append(ascending ? " ASC " : " DESC ");
+        order.append(".").append(name);
+        _orderColumns.add(new Pair<String, Boolean>(order.toString(), ascending));
+        order.append(ascending ? " ASC " : " DESC ");
 
         if (_orderBy == null) {
             _orderBy = order.insert(0, " ORDER BY ").toString();
@@ -97,6 +105,68 @@ public class Filter {
         return _orderBy;
     }
 
+    /**
+     * Keyset pagination: only return the rows that sort after the given
+     * values of the order by columns, typically the values of the last row
+     * of the previous page.  Unlike an offset, the database can seek to the
+     * first row through the index instead of reading and throwing away all
+     * of the rows of the previous pages.  The order by columns must identify
+     * a row, so end the order by with the id if the other columns are not
+     * unique.
+     *
+     * @param values one value for each of the first order by columns, in order.
+     */
+    public void setSeekAfter(Object... values) {
+        if (values == null || values.length == 0) {
+            _seekValues = null;
+            return;
+        }
+        if (values.length > _orderColumns.size()) {
+            throw new IllegalArgumentException("Seek needs an order by for each of the " + values.length + " values, the filter has " + _orderColumns.size());
+        }
+        for (Object value : values) {
+            if (value == null) {
+                throw new IllegalArgumentException("Can not seek after a null value");
+            }
+        }
+        _seekValues = values.clone();
+    }
+
+    /**
+     * @return the condition selecting the rows after the seek values, or null
+     *         if no seek has been set.  The parameters to bind are given by
+     *         {@link #getSeekParameters()}.
+     */
+    public String getSeekClause() {
+        if (_seekValues == null) {
+            return null;
+        }
+        // (c1 > ?) OR (c1 = ? AND c2 > ?) OR ...
+        StringBuilder clause = new StringBuilder("(");
+        for (int i = 0; i < _seekValues.length; i++) {
+            if (i > 0) {
+                clause.append(" OR ");
+            }
+            clause.append("(");
+            for (int j = 0; j < i; j++) {
+                clause.append(_orderColumns.get(j).first()).append(" = ? AND ");
+            }
+            Pair<String, Boolean> column = _orderColumns.get(i);
+            clause.append(column.first()).append(column.second() ? " > ?" : " < ?").append(")");
+        }
+        return clause.append(")").toString();
+    }
+
+    public List<Object> getSeekParameters() {
+        List<Object> params = new ArrayList<Object>();
+        if (_seekValues != null) {
+            for (int i = 0; i < _seekValues.length; i++) {
+                params.addAll(Arrays.asList(_seekValues).subList(0, i + 1));
+            }
+        }
+        return params;
+    }
+
     public void setOffset(Long offset) {
         _offset = offset;
     }
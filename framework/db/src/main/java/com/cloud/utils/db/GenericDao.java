@@ -17,6 +17,7 @@
 package com.cloud.utils.db;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -53,12 +54,30 @@ public interface GenericDao<T, ID extends Serializable> {
 
     T findById(ID id, boolean fresh);
 
+    /**
+     * Look for several entity beans at once.  The ones in the cache are taken
+     * from it and the rest are loaded with one query per batch of ids.
+     * @param ids database ids, duplicates and nulls are ignored.
+     * @return the entity beans found keyed by their id.
+     */
+    Map<ID, T> findByIds(Collection<ID> ids);
+
+    Map<ID, T> findByIdsIncludingRemoved(Collection<ID> ids);
+
     // Finds one unique VO using uuid
     T findByUuid(String uuid);
 
     // Finds one unique VO using uuid including removed entities
     T findByUuidIncludingRemoved(String uuid);
 
+    /**
+     * Look for several entity beans, including removed ones, by their uuid
+     * with one query per batch of uuids.
+     * @param uuids duplicates and nulls are ignored.
+     * @return the entity beans found keyed by their uuid.
+     */
+    Map<String, T> findByUuidsIncludingRemoved(Collection<String> uuids);
+
     /**
      * @return VO object ready to be used for update.  It won't have any fields filled in.
      */
@@ -22,9 +22,7 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.net.MalformedURLException;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.net.URL;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -39,6 +37,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
@@ -148,6 +147,8 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     protected Map<String, Attribute> _allAttributes;
     protected List<Attribute> _ecAttributes;
     protected Map<Pair<String, String>, Attribute> _allColumns;
+    protected boolean _hasUuid;
+    protected Map<Field, ColumnMapper> _columnMappers;
     protected Enhancer _enhancer;
     protected Factory _factory;
     protected Enhancer _searchEnhancer;
@@ -158,6 +159,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     protected static final String FOR_UPDATE_CLAUSE = " FOR UPDATE ";
     protected static final String SHARE_MODE_CLAUSE = " LOCK IN SHARE MODE";
     protected static final String SELECT_LAST_INSERT_ID_SQL = "SELECT LAST_INSERT_ID()";
+    protected static final int FIND_BY_IDS_BATCH_SIZE = 500;
     public static final Date DATE_TO_NULL = new Date(Long.MIN_VALUE);
 
     protected static final SequenceFetcher s_seqFetcher = SequenceFetcher.getInstance();
@@ -229,6 +231,17 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
         _allAttributes = generator.getAllAttributes();
         _allColumns = generator.getAllColumns();
+        for (final Pair<String, String> column : _allColumns.keySet()) {
+            if ("uuid".equals(column.second())) {
+                _hasUuid = true;
+            }
+        }
+        _columnMappers = new HashMap<Field, ColumnMapper>();
+        for (final Attribute attr : _allColumns.values()) {
+            if (attr.field != null && attr.isSelectable() && !_columnMappers.containsKey(attr.field)) {
+                _columnMappers.put(attr.field, ColumnMapper.forField(attr.field));
+            }
+        }
 
         _selectByIdSql = buildSelectByIdSql(createPartialSelectSql(null, true));
         _removeSql = generator.buildRemoveSql();
@@ -371,10 +384,9 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             clause = null;
         }
 
-        final StringBuilder str = createPartialSelectSql(sc, clause != null, enableQueryCache);
-        if (clause != null) {
-            str.append(clause);
-        }
+        final String seekClause = filter != null ? filter.getSeekClause() : null;
+        final StringBuilder str = createPartialSelectSql(sc, clause != null || seekClause != null, enableQueryCache);
+        addWhereClause(str, clause, seekClause);
 
         Collection<JoinBuilder<SearchCriteria<?>>> joins = null;
         if (sc != null) {
@@ -395,6 +407,19 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
         final String sql = str.toString();
 
+        // Only plain reads outside of a DB transaction are served from the query cache
+        String queryCacheKey = null;
+        long queryCacheGeneration = 0;
+        final QueryCache queryCache = _queryCache;
+        if (queryCache != null && lock == null && joins == null && groupByValues == null && seekClause == null && !txn.dbTxnStarted()) {
+            queryCacheKey = QueryCache.buildKey(sql, clause != null ? sc.getValues() : null);
+            final List<T> cached = queryCache.get(queryCacheKey);
+            if (cached != null) {
+                return cached;
+            }
+            queryCacheGeneration = queryCache.getGeneration();
+        }
+
         PreparedStatement pstmt = null;
         final List<T> result = new ArrayList<T>();
         try {
@@ -406,6 +431,10 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 }
             }
 
+            if (seekClause != null) {
+                i = addSeekParameters(i, pstmt, filter);
+            }
+
             if (joins != null) {
                 i = addJoinAttributes(i, pstmt, joins);
             }
@@ -423,6 +452,9 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             while (rs.next()) {
                 result.add(toEntityBean(rs, cache));
             }
+            if (queryCacheKey != null) {
+                queryCache.put(queryCacheKey, result, queryCacheGeneration);
+            }
             return result;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
@@ -445,10 +477,9 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             clause = null;
         }
 
-        final StringBuilder str = createPartialSelectSql(sc, clause != null);
-        if (clause != null) {
-            str.append(clause);
-        }
+        final String seekClause = filter != null ? filter.getSeekClause() : null;
+        final StringBuilder str = createPartialSelectSql(sc, clause != null || seekClause != null);
+        addWhereClause(str, clause, seekClause);
 
         Collection<JoinBuilder<SearchCriteria<?>>> joins = null;
         joins = sc.getJoins();
@@ -472,6 +503,10 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 }
             }
 
+            if (seekClause != null) {
+                i = addSeekParameters(i, pstmt, filter);
+            }
+
             if (joins != null) {
                 i = addJoinAttributes(i, pstmt, joins);
             }
@@ -520,146 +555,11 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
     @DB()
     protected void setField(Object entity, Field field, ResultSet rs, int index) throws SQLException {
-        try {
-            final Class<?> type = field.getType();
-            if (type == String.class) {
-                byte[] bytes = rs.getBytes(index);
-                if (bytes != null) {
-                    try {
-                        Encrypt encrypt = field.getAnnotation(Encrypt.class);
-                        if (encrypt != null && encrypt.encrypt()) {
-                            field.set(entity, DBEncryptionUtil.decrypt(new String(bytes, "UTF-8")));
-                        } else {
-                            field.set(entity, new String(bytes, "UTF-8"));
-                        }
-                    } catch (IllegalArgumentException e) {
-                        assert (false);
-                        throw new CloudRuntimeException("IllegalArgumentException when converting UTF-8 data");
-                    } catch (UnsupportedEncodingException e) {
-                        assert (false);
-                        throw new CloudRuntimeException("UnsupportedEncodingException when converting UTF-8 data");
-                    }
-                } else {
-                    field.set(entity, null);
-                }
-            } else if (type == long.class) {
-                field.setLong(entity, rs.getLong(index));
-            } else if (type == Long.class) {
-                if (rs.getObject(index) == null) {
-                    field.set(entity, null);
-                } else {
-                    field.set(entity, rs.getLong(index));
-                }
-            } else if (type.isEnum()) {
-                final Enumerated enumerated = field.getAnnotation(Enumerated.class);
-                final EnumType enumType = (enumerated == null) ? EnumType.STRING : enumerated.value();
-
-                final Enum<?>[] enums = (Enum<?>[])field.getType().getEnumConstants();
-                for (final Enum<?> e : enums) {
-                    if ((enumType == EnumType.STRING && e.name().equalsIgnoreCase(rs.getString(index))) ||
-                            (enumType == EnumType.ORDINAL && e.ordinal() == rs.getInt(index))) {
-                        field.set(entity, e);
-                        return;
-                    }
-                }
-            } else if (type == int.class) {
-                field.set(entity, rs.getInt(index));
-            } else if (type == Integer.class) {
-                if (rs.getObject(index) == null) {
-                    field.set(entity, null);
-                } else {
-                    field.set(entity, rs.getInt(index));
-                }
-            } else if (type == Date.class) {
-                final Object data = rs.getDate(index);
-                if (data == null) {
-                    field.set(entity, null);
-                    return;
-                }
-                field.set(entity, DateUtil.parseDateString(s_gmtTimeZone, rs.getString(index)));
-            } else if (type == Calendar.class) {
-                final Object data = rs.getDate(index);
-                if (data == null) {
-                    field.set(entity, null);
-                    return;
-                }
-                final Calendar cal = Calendar.getInstance();
-                cal.setTime(DateUtil.parseDateString(s_gmtTimeZone, rs.getString(index)));
-                field.set(entity, cal);
-            } else if (type == boolean.class) {
-                field.setBoolean(entity, rs.getBoolean(index));
-            } else if (type == Boolean.class) {
-                if (rs.getObject(index) == null) {
-                    field.set(entity, null);
-                } else {
-                    field.set(entity, rs.getBoolean(index));
-                }
-            } else if (type == URI.class) {
-                try {
-                    String str = rs.getString(index);
-                    field.set(entity, str == null ? null : new URI(str));
-                } catch (URISyntaxException e) {
-                    throw new CloudRuntimeException("Invalid URI: " + rs.getString(index), e);
-                }
-            } else if (type == URL.class) {
-                try {
-                    String str = rs.getString(index);
-                    field.set(entity, str != null ? new URL(str) : null);
-                } catch (MalformedURLException e) {
-                    throw new CloudRuntimeException("Invalid URL: " + rs.getString(index), e);
-                }
-            } else if (type == Ip.class) {
-                final Enumerated enumerated = field.getAnnotation(Enumerated.class);
-                final EnumType enumType = (enumerated == null) ? EnumType.STRING : enumerated.value();
-
-                Ip ip = null;
-                if (enumType == EnumType.STRING) {
-                    String s = rs.getString(index);
-                    ip = s == null ? null : new Ip(NetUtils.ip2Long(s));
-                } else {
-                    ip = new Ip(rs.getLong(index));
-                }
-                field.set(entity, ip);
-            } else if (type == short.class) {
-                field.setShort(entity, rs.getShort(index));
-            } else if (type == Short.class) {
-                if (rs.getObject(index) == null) {
-                    field.set(entity, null);
-                } else {
-                    field.set(entity, rs.getShort(index));
-                }
-            } else if (type == float.class) {
-                field.setFloat(entity, rs.getFloat(index));
-            } else if (type == Float.class) {
-                if (rs.getObject(index) == null) {
-                    field.set(entity, null);
-                } else {
-                    field.set(entity, rs.getFloat(index));
-                }
-            } else if (type == double.class) {
-                field.setDouble(entity, rs.getDouble(index));
-            } else if (type == Double.class) {
-                if (rs.getObject(index) == null) {
-                    field.set(entity, null);
-                } else {
-                    field.set(entity, rs.getDouble(index));
-                }
-            } else if (type == byte.class) {
-                field.setByte(entity, rs.getByte(index));
-            } else if (type == Byte.class) {
-                if (rs.getObject(index) == null) {
-                    field.set(entity, null);
-                } else {
-                    field.set(entity, rs.getByte(index));
-                }
-            } else if (type == byte[].class) {
-                field.set(entity, rs.getBytes(index));
-            } else {
-                field.set(entity, rs.getObject(index));
-            }
-        } catch (final IllegalAccessException e) {
-            throw new CloudRuntimeException("Yikes! ", e);
+        ColumnMapper mapper = _columnMappers.get(field);
+        if (mapper == null) {
+            mapper = ColumnMapper.forField(field);
         }
+        mapper.map(entity, rs, index);
     }
 
     /**
@@ -804,13 +704,26 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             throw new CloudRuntimeException("Unable to persist element collection", e);
         }
 
+        final boolean uuidChanged = isUuidChanged(ub);
         int rowsUpdated = update(ub, sc, null);
+        if (uuidChanged && rowsUpdated > 0 && id instanceof Long) {
+            uuidChanged(txn, (Long)id);
+        }
 
         txn.commit();
 
         return rowsUpdated;
     }
 
+    protected static boolean isUuidChanged(UpdateBuilder ub) {
+        for (Ternary<Attribute, Boolean, Object> change : ub.getChanges()) {
+            if ("uuid".equals(change.first().getColumnName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public int update(UpdateBuilder ub, final SearchCriteria<?> sc, Integer rows) {
         StringBuilder sql = null;
         PreparedStatement pstmt = null;
@@ -846,6 +759,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             int result = pstmt.executeUpdate();
             txn.commit();
             ub.clear();
+            tablesChanged(txn);
             return result;
         } catch (final SQLException e) {
             if (e.getSQLState().equals("23000") && e.getErrorCode() == 1062) {
@@ -1003,6 +917,100 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         return lockRow(id, null);
     }
 
+    @Override
+    @DB()
+    @SuppressWarnings("unchecked")
+    public Map<String, T> findByUuidsIncludingRemoved(final Collection<String> uuids) {
+        final Map<String, T> result = new HashMap<String, T>();
+        final List<String> distinct = new ArrayList<String>();
+        for (final String uuid : new LinkedHashSet<String>(uuids)) {
+            if (uuid != null) {
+                distinct.add(uuid);
+            }
+        }
+        final Attribute uuidAttr = findAttributeByFieldName("uuid");
+        if (uuidAttr == null) {
+            for (final String uuid : distinct) {
+                final T entity = findByUuidIncludingRemoved(uuid);
+                if (entity != null) {
+                    result.put(uuid, entity);
+                }
+            }
+            return result;
+        }
+
+        for (int i = 0; i < distinct.size(); i += FIND_BY_IDS_BATCH_SIZE) {
+            final List<String> batch = distinct.subList(i, Math.min(i + FIND_BY_IDS_BATCH_SIZE, distinct.size()));
+            final SearchCriteria<T> sc = createSearchCriteria();
+            sc.addAnd("uuid", SearchCriteria.Op.IN, batch.toArray());
+            try {
+                for (final T entity : searchIncludingRemoved(sc, null, null, false)) {
+                    result.put((String)uuidAttr.getField().get(entity), entity);
+                }
+            } catch (final IllegalAccessException e) {
+                throw new CloudRuntimeException("Unable to read the uuid of " + _entityBeanType, e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    @DB()
+    public Map<ID, T> findByIds(final Collection<ID> ids) {
+        return findByIds(ids, false);
+    }
+
+    @Override
+    @DB()
+    public Map<ID, T> findByIdsIncludingRemoved(final Collection<ID> ids) {
+        return findByIds(ids, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Map<ID, T> findByIds(final Collection<ID> ids, final boolean removed) {
+        final Map<ID, T> result = new HashMap<ID, T>();
+        final List<ID> missing = new ArrayList<ID>();
+        for (final ID id : new LinkedHashSet<ID>(ids)) {
+            if (id == null) {
+                continue;
+            }
+            final Element element = _cache != null ? _cache.get(id) : null;
+            if (element != null) {
+                result.put(id, (T)element.getObjectValue());
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        if (_idField.getAnnotation(EmbeddedId.class) != null) {
+            for (final ID id : missing) {
+                final T entity = findById(id, removed, null);
+                if (entity != null) {
+                    result.put(id, entity);
+                }
+            }
+            return result;
+        }
+
+        for (int i = 0; i < missing.size(); i += FIND_BY_IDS_BATCH_SIZE) {
+            final List<ID> batch = missing.subList(i, Math.min(i + FIND_BY_IDS_BATCH_SIZE, missing.size()));
+            final SearchCriteria<T> sc = createSearchCriteria();
+            sc.addAnd(_idField.getName(), SearchCriteria.Op.IN, batch.toArray());
+            final List<T> entities = removed ? searchIncludingRemoved(sc, null, null, true) : search(sc, null, null, true);
+            try {
+                for (final T entity : entities) {
+                    result.put((ID)_idField.get(entity), entity);
+                }
+            } catch (final IllegalAccessException e) {
+                throw new CloudRuntimeException("Unable to read the id of " + _entityBeanType, e);
+            }
+        }
+        return result;
+    }
+
     @Override
     @DB()
     public T lockRow(ID id, Boolean lock) {
@@ -1102,6 +1110,33 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         }
     }
 
+    /**
+     * Appends the where clause of the search criteria and the keyset
+     * condition of the filter, either of which may be null.
+     */
+    protected static void addWhereClause(final StringBuilder sql, final String clause, final String seekClause) {
+        if (clause != null && seekClause != null) {
+            sql.append("(").append(clause).append(") AND ").append(seekClause);
+        } else if (clause != null) {
+            sql.append(clause);
+        } else if (seekClause != null) {
+            sql.append(seekClause);
+        }
+    }
+
+    protected int addSeekParameters(int i, final PreparedStatement pstmt, final Filter filter) throws SQLException {
+        for (final Object value : filter.getSeekParameters()) {
+            if (value instanceof Date) {
+                pstmt.setString(i++, DateUtil.getDateDisplayString(s_gmtTimeZone, (Date)value));
+            } else if (value instanceof Enum) {
+                pstmt.setString(i++, ((Enum<?>)value).name());
+            } else {
+                pstmt.setObject(i++, value);
+            }
+        }
+        return i;
+    }
+
     @DB()
     protected void addFilter(final StringBuilder sql, final Filter filter) {
         if (filter != null) {
@@ -1188,11 +1223,15 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 }
                 pstmt.executeUpdate();
             }
+            if (id instanceof Long) {
+                uuidChanged(txn, (Long)id);
+            }
 
             txn.commit();
             if (_cache != null) {
                 _cache.remove(id);
             }
+            tablesChanged(txn);
             return true;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
@@ -1224,7 +1263,13 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             for (final Pair<Attribute, Object> value : sc.getValues()) {
                 prepareAttribute(++i, pstmt, value.first(), value.second());
             }
-            return pstmt.executeUpdate();
+            final int result = pstmt.executeUpdate();
+            if (result > 0) {
+                // the deleted rows are not known
+                uuidChanged(txn, null);
+            }
+            tablesChanged(txn);
+            return result;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
         } catch (final Throwable e) {
@@ -1443,6 +1488,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
                 insertElementCollection(entity, _idAttributes.get(_table)[0], id, ecAttributes);
             }
             txn.commit();
+            tablesChanged(txn);
         } catch (final SQLException e) {
             if (e.getSQLState().equals("23000") && e.getErrorCode() == 1062) {
                 throw new EntityExistsException("Entity already exists: ", e);
@@ -1772,8 +1818,11 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             txn.start();
             pstmt = txn.prepareAutoCloseStatement(sql.toString());
 
-            pstmt.executeUpdate();
+            if (pstmt.executeUpdate() > 0) {
+                uuidChanged(txn, null);
+            }
             txn.commit();
+            tablesChanged(txn);
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on " + pstmt, e);
         }
@@ -1816,6 +1865,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
             if (_cache != null) {
                 _cache.remove(id);
             }
+            tablesChanged(txn);
             return result > 0;
         } catch (final SQLException e) {
             throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
@@ -1836,6 +1886,7 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
     }
 
     protected Cache _cache;
+    protected QueryCache _queryCache;
 
     @DB()
     protected void createCache(final Map<String, ? extends Object> params) {
@@ -1852,6 +1903,48 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         } else {
             _cache = null;
         }
+
+        final String queryCacheSize = (String)params.get("query.cache.size");
+        if (queryCacheSize != null) {
+            final int live = NumbersUtil.parseInt((String)params.get("query.cache.time.to.live"), 60);
+            _queryCache = new QueryCache(getName(), _idAttributes.keySet(), NumbersUtil.parseInt(queryCacheSize, 0), live);
+        } else {
+            _queryCache = null;
+        }
+    }
+
+    /**
+     * Flushes the query caches on the tables of this entity.  Inside a DB
+     * transaction only the local caches are flushed right away; the flush is
+     * repeated and sent to the other management servers once the transaction
+     * commits, so that nobody caches rows that are about to change.
+     */
+    protected void tablesChanged(final TransactionLegacy txn) {
+        final Collection<String> tables = _idAttributes.keySet();
+        if (!QueryCache.isCached(tables)) {
+            return;
+        }
+        if (txn.dbTxnStarted()) {
+            QueryCache.invalidateLocal(tables);
+            txn.tablesChangedOnCommit(tables);
+        } else {
+            QueryCache.tablesChanged(tables);
+        }
+    }
+
+    /**
+     * Tells the uuid caches that the uuid of the row, or of every row if id
+     * is null, no longer resolves to it, once the transaction commits.
+     */
+    protected void uuidChanged(final TransactionLegacy txn, final Long id) {
+        if (!_hasUuid) {
+            return;
+        }
+        if (txn.dbTxnStarted()) {
+            txn.uuidChangedOnCommit(_entityBeanType, id);
+        } else {
+            UuidChanges.changed(_entityBeanType, id);
+        }
     }
 
     @Override
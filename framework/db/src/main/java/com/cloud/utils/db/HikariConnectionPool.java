@@ -0,0 +1,120 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * Connection pool backed by HikariCP.  Borrowing does not synchronize on the
+ * pool, connections held longer than the leak detection threshold are logged
+ * with the stack of the borrower, and prepared statements are cached by the
+ * JDBC driver.
+ */
+public class HikariConnectionPool extends ConnectionPool {
+    private final HikariDataSource _hikari;
+
+    public HikariConnectionPool(String name, HikariConfig config) {
+        super(name, new HikariDataSource(config));
+        _hikari = (HikariDataSource)_dataSource;
+    }
+
+    /**
+     * Creates the pool configuration from the same settings that are used
+     * for the dbcp pool.
+     *
+     * @param isolationLevel one of the java.sql.Connection isolation levels,
+     *        -1 keeps the driver default.
+     * @param leakDetectionThresholdMs 0 disables leak detection.
+     * @param cachePrepStmts have the driver cache prepared statements, in
+     *        place of the statement pooling of dbcp.  The size of the cache
+     *        is set with prepStmtCacheSize in db.[database].url.params.
+     */
+    public static HikariConfig createConfig(String name, String uri, String username, String password, int maxActive, int maxIdle, long maxWait,
+            String validationQuery, int isolationLevel, long leakDetectionThresholdMs, boolean cachePrepStmts) {
+        final HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setJdbcUrl(uri);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(maxActive);
+        config.setMinimumIdle(Math.min(maxIdle, maxActive));
+        config.setConnectionTimeout(maxWait > 0 ? maxWait : 30000);
+        // transactions are committed explicitly, as with the dbcp pool
+        config.setAutoCommit(false);
+        // do not fail the management server start up if the database is not reachable yet
+        config.setInitializationFailTimeout(-1);
+        if (validationQuery != null && !validationQuery.isEmpty()) {
+            config.setConnectionTestQuery(validationQuery);
+        }
+        final String isolation = toIsolationName(isolationLevel);
+        if (isolation != null) {
+            config.setTransactionIsolation(isolation);
+        }
+        if (leakDetectionThresholdMs > 0) {
+            config.setLeakDetectionThreshold(leakDetectionThresholdMs);
+        }
+        if (cachePrepStmts) {
+            config.addDataSourceProperty("cachePrepStmts", "true");
+        }
+        return config;
+    }
+
+    protected static String toIsolationName(int isolationLevel) {
+        switch (isolationLevel) {
+        case java.sql.Connection.TRANSACTION_READ_COMMITTED:
+            return "TRANSACTION_READ_COMMITTED";
+        case java.sql.Connection.TRANSACTION_READ_UNCOMMITTED:
+            return "TRANSACTION_READ_UNCOMMITTED";
+        case java.sql.Connection.TRANSACTION_REPEATABLE_READ:
+            return "TRANSACTION_REPEATABLE_READ";
+        case java.sql.Connection.TRANSACTION_SERIALIZABLE:
+            return "TRANSACTION_SERIALIZABLE";
+        default:
+            return null;
+        }
+    }
+
+    @Override
+    public Library getLibrary() {
+        return Library.hikaricp;
+    }
+
+    @Override
+    public int getNumActive() {
+        final HikariPoolMXBean pool = _hikari.getHikariPoolMXBean();
+        return pool != null ? pool.getActiveConnections() : 0;
+    }
+
+    @Override
+    public int getNumIdle() {
+        final HikariPoolMXBean pool = _hikari.getHikariPoolMXBean();
+        return pool != null ? pool.getIdleConnections() : 0;
+    }
+
+    @Override
+    public int getNumWaiting() {
+        final HikariPoolMXBean pool = _hikari.getHikariPoolMXBean();
+        return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+    }
+
+    @Override
+    public void close() {
+        _hikari.close();
+    }
+}
@@ -0,0 +1,130 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LookupContext remembers the entities looked up by id on the current
+ * thread while it is open, and loads ids registered with
+ * {@link #prefetch(GenericDao, Serializable)} in bulk the first time one of
+ * them is needed.  It is meant to be opened around read only work, such as
+ * building the response of a list API, where the same accounts, domains,
+ * etc. are looked up for every item.
+ *
+ * Entities are looked up including the removed ones.  Without an open
+ * context the lookups go straight to the DAO.
+ *
+ *   LookupContext ctx = LookupContext.open();
+ *   try {
+ *       ...
+ *   } finally {
+ *       ctx.close();
+ *   }
+ */
+public class LookupContext implements AutoCloseable {
+    private static final ThreadLocal<LookupContext> s_current = new ThreadLocal<LookupContext>();
+
+    private final LookupContext _parent;
+    private final Map<GenericDao<?, ?>, Map<Object, Object>> _found = new HashMap<GenericDao<?, ?>, Map<Object, Object>>();
+    private final Map<GenericDao<?, ?>, Set<Object>> _pending = new HashMap<GenericDao<?, ?>, Set<Object>>();
+
+    private LookupContext(LookupContext parent) {
+        _parent = parent;
+    }
+
+    public static LookupContext open() {
+        final LookupContext ctx = new LookupContext(s_current.get());
+        s_current.set(ctx);
+        return ctx;
+    }
+
+    public static LookupContext current() {
+        return s_current.get();
+    }
+
+    @Override
+    public void close() {
+        if (s_current.get() == this) {
+            if (_parent != null) {
+                s_current.set(_parent);
+            } else {
+                s_current.remove();
+            }
+        }
+    }
+
+    /**
+     * Registers an id to be loaded with the next lookup on the same DAO.
+     * Does nothing if there is no open context.
+     */
+    public static <ID extends Serializable> void prefetch(GenericDao<?, ID> dao, ID id) {
+        final LookupContext ctx = s_current.get();
+        if (ctx == null || id == null) {
+            return;
+        }
+        final Map<Object, Object> found = ctx._found.get(dao);
+        if (found != null && found.containsKey(id)) {
+            return;
+        }
+        Set<Object> pending = ctx._pending.get(dao);
+        if (pending == null) {
+            pending = new LinkedHashSet<Object>();
+            ctx._pending.put(dao, pending);
+        }
+        pending.add(id);
+    }
+
+    public static <T, ID extends Serializable> T findByIdIncludingRemoved(GenericDao<T, ID> dao, ID id) {
+        final LookupContext ctx = s_current.get();
+        if (ctx == null || id == null) {
+            return dao.findByIdIncludingRemoved(id);
+        }
+        return ctx.find(dao, id);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <T, ID extends Serializable> T find(GenericDao<T, ID> dao, ID id) {
+        Map<Object, Object> found = _found.get(dao);
+        if (found == null) {
+            found = new HashMap<Object, Object>();
+            _found.put(dao, found);
+        } else if (found.containsKey(id)) {
+            return (T)found.get(id);
+        }
+
+        final Set<Object> pending = _pending.remove(dao);
+        final Set<ID> ids = pending != null ? (Set<ID>)(Set<?>)pending : new LinkedHashSet<ID>();
+        ids.add(id);
+        final Map<ID, T> loaded = ids.size() == 1 ? singleton(dao, id) : dao.findByIdsIncludingRemoved(ids);
+        for (final ID each : ids) {
+            // misses are remembered as well
+            found.put(each, loaded.get(each));
+        }
+        return (T)found.get(id);
+    }
+
+    private static <T, ID extends Serializable> Map<ID, T> singleton(GenericDao<T, ID> dao, ID id) {
+        final T entity = dao.findByIdIncludingRemoved(id);
+        return entity != null ? Collections.singletonMap(id, entity) : Collections.<ID, T> emptyMap();
+    }
+}
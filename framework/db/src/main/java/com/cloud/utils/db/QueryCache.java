@@ -0,0 +1,231 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+
+import org.apache.log4j.Logger;
+
+import com.cloud.utils.Pair;
+
+/**
+ * QueryCache keeps the results of searches done by one DAO, keyed by the SQL
+ * and the parameter values of the search.  A DAO opts in by setting
+ * query.cache.size (and optionally query.cache.time.to.live) in its
+ * configParams.
+ *
+ * Every cache is registered under the tables of its entity.  Whenever a DAO
+ * writes to a table, all caches registered under that table are flushed and
+ * the registered {@link Listener} is told about it so that the other
+ * management servers can flush theirs.  Writes that bypass GenericDaoBase
+ * (hand written SQL) are only caught by the time to live, so the cache
+ * should be enabled only for DAOs of tables that change rarely.
+ */
+public class QueryCache {
+    private static final Logger s_logger = Logger.getLogger(QueryCache.class);
+
+    public interface Listener {
+        /**
+         * Called after a local write to tables that have a query cache.
+         */
+        void onTablesChanged(Collection<String> tables);
+    }
+
+    private static final ConcurrentHashMap<String, Set<QueryCache>> s_cachesByTable = new ConcurrentHashMap<String, Set<QueryCache>>();
+    private static volatile Listener s_listener;
+
+    private final String _name;
+    private final Collection<String> _tables;
+    private final Cache _cache;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _invalidations = new LongAdder();
+    private final AtomicLong _generation = new AtomicLong();
+
+    public QueryCache(String name, Collection<String> tables, int maxElements, int timeToLive) {
+        _name = name;
+        _tables = new ArrayList<String>(tables);
+        _cache = new Cache(name + "-query", maxElements, false, false, timeToLive, timeToLive);
+        CacheManager.create().addCache(_cache);
+        for (String table : _tables) {
+            Set<QueryCache> caches = s_cachesByTable.get(table);
+            if (caches == null) {
+                caches = new CopyOnWriteArraySet<QueryCache>();
+                Set<QueryCache> existing = s_cachesByTable.putIfAbsent(table, caches);
+                if (existing != null) {
+                    caches = existing;
+                }
+            }
+            caches.add(this);
+        }
+        s_logger.info("Query cache created for " + name + " on tables " + _tables);
+    }
+
+    public static void setListener(Listener listener) {
+        s_listener = listener;
+    }
+
+    public static String buildKey(String sql, List<Pair<Attribute, Object>> values) {
+        final StringBuilder key = new StringBuilder(sql);
+        if (values != null) {
+            for (Pair<Attribute, Object> value : values) {
+                key.append('|');
+                Object obj = value.second();
+                if (obj instanceof Object[]) {
+                    key.append(Arrays.deepToString((Object[])obj));
+                } else {
+                    key.append(obj);
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(String key) {
+        final Element element = _cache.get(key);
+        if (element == null) {
+            _misses.increment();
+            return null;
+        }
+        _hits.increment();
+        return new ArrayList<T>((List<T>)element.getObjectValue());
+    }
+
+    /**
+     * The generation changes every time the cache is flushed.  Take it before
+     * running the query and pass it to put() so that a result read before a
+     * concurrent write is not cached after the flush.
+     */
+    public long getGeneration() {
+        return _generation.get();
+    }
+
+    public <T> void put(String key, List<T> result, long generation) {
+        if (_generation.get() == generation) {
+            _cache.put(new Element(key, new ArrayList<T>(result)));
+        }
+    }
+
+    public void clear() {
+        _generation.incrementAndGet();
+        _cache.removeAll();
+        _invalidations.increment();
+    }
+
+    public Collection<String> getTables() {
+        return _tables;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    public double getHitRatio() {
+        final long hits = _hits.sum();
+        final long total = hits + _misses.sum();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    public Map<String, String> getStats() {
+        final Map<String, String> stats = new HashMap<String, String>();
+        stats.put("name", _name);
+        stats.put("tables", _tables.toString());
+        stats.put("size", Integer.toString(_cache.getSize()));
+        stats.put("hits", Long.toString(getHits()));
+        stats.put("misses", Long.toString(getMisses()));
+        stats.put("hitRatio", Double.toString(getHitRatio()));
+        stats.put("invalidations", Long.toString(_invalidations.sum()));
+        return stats;
+    }
+
+    /**
+     * Flushes the caches of the tables and notifies the listener.  Does
+     * nothing if none of the tables has a query cache.
+     */
+    public static void tablesChanged(Collection<String> tables) {
+        if (invalidateLocal(tables)) {
+            final Listener listener = s_listener;
+            if (listener != null) {
+                try {
+                    listener.onTablesChanged(tables);
+                } catch (Exception e) {
+                    s_logger.warn("Unable to propagate query cache invalidation for " + tables, e);
+                }
+            }
+        }
+    }
+
+    public static boolean isCached(Collection<String> tables) {
+        for (String table : tables) {
+            if (s_cachesByTable.containsKey(table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Flushes the caches of the tables without notifying the listener.
+     *
+     * @return true if any of the tables has a query cache.
+     */
+    public static boolean invalidateLocal(Collection<String> tables) {
+        boolean found = false;
+        for (String table : tables) {
+            final Set<QueryCache> caches = s_cachesByTable.get(table);
+            if (caches != null) {
+                for (QueryCache cache : caches) {
+                    cache.clear();
+                }
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    public static List<QueryCache> getCaches() {
+        final Set<QueryCache> all = new HashSet<QueryCache>();
+        for (Set<QueryCache> caches : s_cachesByTable.values()) {
+            all.addAll(caches);
+        }
+        return new ArrayList<QueryCache>(all);
+    }
+}
@@ -0,0 +1,151 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * ShardedFreeList hands out the ids of free rows of an allocation table, such
+ * as the vnets of a physical network or the addresses of a public ip range,
+ * without locking the free set.  The ids are kept in memory per shard and
+ * loaded in batches by the {@link Loader}; a row is taken by the
+ * {@link Claim} given to {@link #take(Object, Claim)}, which must be a
+ * conditional update that only succeeds while the row is still free.
+ *
+ * The lists are hints only.  Rows taken by other management servers fail
+ * their claim and are dropped, and rows freed elsewhere are found by the next
+ * load once the list of their shard runs empty.
+ */
+public class ShardedFreeList<K> {
+    private static final Logger s_logger = Logger.getLogger(ShardedFreeList.class);
+
+    /**
+     * Number of times the list of a shard is reloaded by one take before it
+     * gives up because every loaded row was taken by someone else.
+     */
+    protected static final int MAX_LOADS = 3;
+
+    public interface Loader<K> {
+        /**
+         * @return up to max ids of rows of the shard that are free.
+         */
+        List<Long> listFree(K shard, int max);
+    }
+
+    public interface Claim {
+        /**
+         * @return true if the row was free and is now taken by the caller.
+         */
+        boolean claim(long id);
+    }
+
+    private final String _name;
+    private final int _batchSize;
+    private final Loader<K> _loader;
+    private final ConcurrentHashMap<K, ConcurrentLinkedQueue<Long>> _free = new ConcurrentHashMap<K, ConcurrentLinkedQueue<Long>>();
+
+    public ShardedFreeList(String name, int batchSize, Loader<K> loader) {
+        _name = name;
+        _batchSize = batchSize;
+        _loader = loader;
+    }
+
+    /**
+     * @return the id of the row taken, null if the shard has no free row.
+     */
+    public Long take(K shard, Claim claim) {
+        final ConcurrentLinkedQueue<Long> free = getList(shard);
+        for (int loads = 0; loads <= MAX_LOADS; loads++) {
+            Long id;
+            while ((id = free.poll()) != null) {
+                if (claim.claim(id)) {
+                    return id;
+                }
+            }
+            if (loads < MAX_LOADS && !load(shard, free)) {
+                return null;
+            }
+        }
+        s_logger.debug("Unable to claim a free row of " + _name + " shard " + shard + " after " + MAX_LOADS + " loads");
+        return null;
+    }
+
+    /**
+     * Gives back a row that has been freed, if the shard is loaded.
+     */
+    public void offer(K shard, long id) {
+        final ConcurrentLinkedQueue<Long> free = _free.get(shard);
+        if (free != null && !free.contains(id)) {
+            free.offer(id);
+        }
+    }
+
+    /**
+     * Forgets the rows of a shard, e.g. after the shard was deleted.
+     */
+    public void clear(K shard) {
+        _free.remove(shard);
+    }
+
+    public int size(K shard) {
+        final ConcurrentLinkedQueue<Long> free = _free.get(shard);
+        return free != null ? free.size() : 0;
+    }
+
+    protected ConcurrentLinkedQueue<Long> getList(K shard) {
+        ConcurrentLinkedQueue<Long> free = _free.get(shard);
+        if (free == null) {
+            final ConcurrentLinkedQueue<Long> created = new ConcurrentLinkedQueue<Long>();
+            free = _free.putIfAbsent(shard, created);
+            if (free == null) {
+                free = created;
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Loads the next batch of the shard unless another thread did it in the
+     * meantime.  The batch is shuffled so that management servers loading
+     * the same rows do not go after them in the same order.
+     *
+     * @return false if the shard has no free row left.
+     */
+    protected boolean load(K shard, ConcurrentLinkedQueue<Long> free) {
+        synchronized (free) {
+            if (!free.isEmpty()) {
+                return true;
+            }
+            final List<Long> ids = new ArrayList<Long>(_loader.listFree(shard, _batchSize));
+            if (ids.isEmpty()) {
+                return false;
+            }
+            Collections.shuffle(ids);
+            free.addAll(ids);
+            if (s_logger.isTraceEnabled()) {
+                s_logger.trace("Loaded " + ids.size() + " free rows of " + _name + " shard " + shard);
+            }
+            return true;
+        }
+    }
+}
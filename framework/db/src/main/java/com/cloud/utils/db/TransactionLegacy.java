@@ -25,18 +25,19 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
-import javax.sql.DataSource;
-
 import org.apache.commons.dbcp.ConnectionFactory;
 import org.apache.commons.dbcp.DriverManagerConnectionFactory;
 import org.apache.commons.dbcp.PoolableConnectionFactory;
-import org.apache.commons.dbcp.PoolingDataSource;
 import org.apache.commons.pool.KeyedObjectPoolFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
 import org.apache.commons.pool.impl.StackKeyedObjectPoolFactory;
@@ -103,6 +104,8 @@ public class TransactionLegacy implements Closeable {
     private long _txnTime;
     private Statement _stmt;
     private String _creator;
+    private Set<String> _changedTables;
+    private List<Pair<Class<?>, Long>> _changedUuids;
 
     public static TransactionLegacy currentTxn() {
         return currentTxn(true);
@@ -208,6 +211,31 @@ public class TransactionLegacy implements Closeable {
         return _txn;
     }
 
+    /**
+     * Remembers tables written in this transaction so that their query
+     * caches are flushed again, on this and the other management servers,
+     * once the transaction commits.
+     */
+    public void tablesChangedOnCommit(Collection<String> tables) {
+        if (_changedTables == null) {
+            _changedTables = new HashSet<String>();
+        }
+        _changedTables.addAll(tables);
+    }
+
+    /**
+     * Remembers a row whose uuid was changed or that was deleted in this
+     * transaction, or every row of the entity if id is null, so that the uuid
+     * caches, on this and the other management servers, drop it once the
+     * transaction commits.
+     */
+    public void uuidChangedOnCommit(Class<?> entityBeanType, Long id) {
+        if (_changedUuids == null) {
+            _changedUuids = new ArrayList<Pair<Class<?>, Long>>();
+        }
+        _changedUuids.add(new Pair<Class<?>, Long>(entityBeanType, id));
+    }
+
     public static Connection getStandaloneConnectionWithException() throws SQLException {
         Connection conn = s_ds.getConnection();
         if (s_connLogger.isTraceEnabled()) {
@@ -734,6 +762,18 @@ public class TransactionLegacy implements Closeable {
                 clearLockTimes();
                 closeConnection();
             }
+            if (_changedTables != null) {
+                final Set<String> tables = _changedTables;
+                _changedTables = null;
+                QueryCache.tablesChanged(tables);
+            }
+            if (_changedUuids != null) {
+                final List<Pair<Class<?>, Long>> uuids = _changedUuids;
+                _changedUuids = null;
+                for (Pair<Class<?>, Long> uuid : uuids) {
+                    UuidChanges.changed(uuid.first(), uuid.second());
+                }
+            }
             return true;
         } catch (final SQLException e) {
             rollbackTransaction();
@@ -843,6 +883,8 @@ public class TransactionLegacy implements Closeable {
         }
         assert (!hasTxnInStack()) : "Who's rolling back transaction when there's still txn in stack?";
         _txn = false;
+        _changedTables = null;
+        _changedUuids = null;
         try {
             if (_conn != null) {
                 if (s_logger.isDebugEnabled()) {
@@ -999,9 +1041,9 @@ public class TransactionLegacy implements Closeable {
         }
     }
 
-    private static DataSource s_ds;
-    private static DataSource s_usageDS;
-    private static DataSource s_simulatorDS;
+    private static ConnectionPool s_ds;
+    private static ConnectionPool s_usageDS;
+    private static ConnectionPool s_simulatorDS;
     private static boolean s_dbHAEnabled;
 
     static {
@@ -1061,6 +1103,8 @@ public class TransactionLegacy implements Closeable {
             final long cloudTimeBtwEvictionRunsMillis = Long.parseLong(dbProps.getProperty("db.cloud.timeBetweenEvictionRunsMillis"));
             final long cloudMinEvcitableIdleTimeMillis = Long.parseLong(dbProps.getProperty("db.cloud.minEvictableIdleTimeMillis"));
             final boolean cloudPoolPreparedStatements = Boolean.parseBoolean(dbProps.getProperty("db.cloud.poolPreparedStatements"));
+            final ConnectionPool.Library cloudPoolLib = getPoolLibrary(dbProps, "cloud", ConnectionPool.Library.dbcp);
+            final long cloudLeakDetectionThreshold = Long.parseLong(dbProps.getProperty("db.cloud.leakDetectionThreshold", "0"));
             final String url = dbProps.getProperty("db.cloud.url.params");
 
             String cloudDbHAParams = null;
@@ -1079,24 +1123,29 @@ public class TransactionLegacy implements Closeable {
                 System.setProperty("javax.net.ssl.trustStorePassword", dbProps.getProperty("db.cloud.trustStorePassword"));
             }
 
-            final GenericObjectPool cloudConnectionPool =
-                    new GenericObjectPool(null, cloudMaxActive, GenericObjectPool.DEFAULT_WHEN_EXHAUSTED_ACTION, cloudMaxWait, cloudMaxIdle, cloudTestOnBorrow, false,
-                            cloudTimeBtwEvictionRunsMillis, 1, cloudMinEvcitableIdleTimeMillis, cloudTestWhileIdle);
-
             final String cloudConnectionUri = cloudDriver + "://" + cloudHost + (s_dbHAEnabled ? "," + cloudSlaves : "") + ":" + cloudPort + "/" + cloudDbName +
                     "?autoReconnect=" + cloudAutoReconnect + (url != null ? "&" + url : "") + (useSSL ? "&useSSL=true" : "") +
                     (s_dbHAEnabled ? "&" + cloudDbHAParams : "") + (s_dbHAEnabled ? "&loadBalanceStrategy=" + loadBalanceStrategy : "");
             DriverLoader.loadDriver(cloudDriver);
 
-            final ConnectionFactory cloudConnectionFactory = new DriverManagerConnectionFactory(cloudConnectionUri, cloudUsername, cloudPassword);
+            // Default Data Source for CloudStack
+            if (cloudPoolLib == ConnectionPool.Library.hikaricp) {
+                s_ds = new HikariConnectionPool("cloud", HikariConnectionPool.createConfig("cloud", cloudConnectionUri, cloudUsername, cloudPassword, cloudMaxActive,
+                        cloudMaxIdle, cloudMaxWait, cloudValidationQuery, isolationLevel, cloudLeakDetectionThreshold, cloudPoolPreparedStatements));
+            } else {
+                final GenericObjectPool cloudConnectionPool =
+                        new GenericObjectPool(null, cloudMaxActive, GenericObjectPool.DEFAULT_WHEN_EXHAUSTED_ACTION, cloudMaxWait, cloudMaxIdle, cloudTestOnBorrow, false,
+                                cloudTimeBtwEvictionRunsMillis, 1, cloudMinEvcitableIdleTimeMillis, cloudTestWhileIdle);
 
-            final KeyedObjectPoolFactory poolableObjFactory = (cloudPoolPreparedStatements ? new StackKeyedObjectPoolFactory() : null);
+                final ConnectionFactory cloudConnectionFactory = new DriverManagerConnectionFactory(cloudConnectionUri, cloudUsername, cloudPassword);
 
-            final PoolableConnectionFactory cloudPoolableConnectionFactory =
-                    new PoolableConnectionFactory(cloudConnectionFactory, cloudConnectionPool, poolableObjFactory, cloudValidationQuery, false, false, isolationLevel);
+                final KeyedObjectPoolFactory poolableObjFactory = (cloudPoolPreparedStatements ? new StackKeyedObjectPoolFactory() : null);
 
-            // Default Data Source for CloudStack
-            s_ds = new PoolingDataSource(cloudPoolableConnectionFactory.getPool());
+                final PoolableConnectionFactory cloudPoolableConnectionFactory =
+                        new PoolableConnectionFactory(cloudConnectionFactory, cloudConnectionPool, poolableObjFactory, cloudValidationQuery, false, false, isolationLevel);
+
+                s_ds = new DbcpConnectionPool("cloud", cloudPoolableConnectionFactory.getPool());
+            }
 
             // Configure the usage db
             final int usageMaxActive = Integer.parseInt(dbProps.getProperty("db.usage.maxActive"));
@@ -1110,22 +1159,29 @@ public class TransactionLegacy implements Closeable {
             final String usageDbName = dbProps.getProperty("db.usage.name");
             final boolean usageAutoReconnect = Boolean.parseBoolean(dbProps.getProperty("db.usage.autoReconnect"));
             final String usageUrl = dbProps.getProperty("db.usage.url.params");
-
-            final GenericObjectPool usageConnectionPool =
-                    new GenericObjectPool(null, usageMaxActive, GenericObjectPool.DEFAULT_WHEN_EXHAUSTED_ACTION, usageMaxWait, usageMaxIdle);
+            final ConnectionPool.Library usagePoolLib = getPoolLibrary(dbProps, "usage", cloudPoolLib);
+            final long usageLeakDetectionThreshold = Long.parseLong(dbProps.getProperty("db.usage.leakDetectionThreshold", "0"));
 
             final String usageConnectionUri = usageDriver + "://" + usageHost + (s_dbHAEnabled ? "," + dbProps.getProperty("db.cloud.slaves") : "") + ":" + usagePort +
                     "/" + usageDbName + "?autoReconnect=" + usageAutoReconnect + (usageUrl != null ? "&" + usageUrl : "") +
                     (s_dbHAEnabled ? "&" + getDBHAParams("usage", dbProps) : "") + (s_dbHAEnabled ? "&loadBalanceStrategy=" + loadBalanceStrategy : "");
             DriverLoader.loadDriver(usageDriver);
 
-            final ConnectionFactory usageConnectionFactory = new DriverManagerConnectionFactory(usageConnectionUri, usageUsername, usagePassword);
+            // Data Source for usage server
+            if (usagePoolLib == ConnectionPool.Library.hikaricp) {
+                s_usageDS = new HikariConnectionPool("usage", HikariConnectionPool.createConfig("usage", usageConnectionUri, usageUsername, usagePassword, usageMaxActive,
+                        usageMaxIdle, usageMaxWait, null, -1, usageLeakDetectionThreshold, cloudPoolPreparedStatements));
+            } else {
+                final GenericObjectPool usageConnectionPool =
+                        new GenericObjectPool(null, usageMaxActive, GenericObjectPool.DEFAULT_WHEN_EXHAUSTED_ACTION, usageMaxWait, usageMaxIdle);
 
-            final PoolableConnectionFactory usagePoolableConnectionFactory =
-                    new PoolableConnectionFactory(usageConnectionFactory, usageConnectionPool, new StackKeyedObjectPoolFactory(), null, false, false);
+                final ConnectionFactory usageConnectionFactory = new DriverManagerConnectionFactory(usageConnectionUri, usageUsername, usagePassword);
 
-            // Data Source for usage server
-            s_usageDS = new PoolingDataSource(usagePoolableConnectionFactory.getPool());
+                final PoolableConnectionFactory usagePoolableConnectionFactory =
+                        new PoolableConnectionFactory(usageConnectionFactory, usageConnectionPool, new StackKeyedObjectPoolFactory(), null, false, false);
+
+                s_usageDS = new DbcpConnectionPool("usage", usagePoolableConnectionFactory.getPool());
+            }
 
             try {
                 // Configure the simulator db
@@ -1139,19 +1195,25 @@ public class TransactionLegacy implements Closeable {
                 final int simulatorPort = Integer.parseInt(dbProps.getProperty("db.simulator.port"));
                 final String simulatorDbName = dbProps.getProperty("db.simulator.name");
                 final boolean simulatorAutoReconnect = Boolean.parseBoolean(dbProps.getProperty("db.simulator.autoReconnect"));
-
-                final GenericObjectPool simulatorConnectionPool =
-                        new GenericObjectPool(null, simulatorMaxActive, GenericObjectPool.DEFAULT_WHEN_EXHAUSTED_ACTION, simulatorMaxWait, simulatorMaxIdle);
+                final ConnectionPool.Library simulatorPoolLib = getPoolLibrary(dbProps, "simulator", cloudPoolLib);
 
                 final String simulatorConnectionUri = simulatorDriver + "://" + simulatorHost + ":" + simulatorPort + "/" + simulatorDbName + "?autoReconnect=" +
                         simulatorAutoReconnect;
                 DriverLoader.loadDriver(simulatorDriver);
 
-                final ConnectionFactory simulatorConnectionFactory = new DriverManagerConnectionFactory(simulatorConnectionUri, simulatorUsername, simulatorPassword);
+                if (simulatorPoolLib == ConnectionPool.Library.hikaricp) {
+                    s_simulatorDS = new HikariConnectionPool("simulator", HikariConnectionPool.createConfig("simulator", simulatorConnectionUri, simulatorUsername,
+                            simulatorPassword, simulatorMaxActive, simulatorMaxIdle, simulatorMaxWait, null, -1, 0, cloudPoolPreparedStatements));
+                } else {
+                    final GenericObjectPool simulatorConnectionPool =
+                            new GenericObjectPool(null, simulatorMaxActive, GenericObjectPool.DEFAULT_WHEN_EXHAUSTED_ACTION, simulatorMaxWait, simulatorMaxIdle);
+
+                    final ConnectionFactory simulatorConnectionFactory = new DriverManagerConnectionFactory(simulatorConnectionUri, simulatorUsername, simulatorPassword);
 
-                final PoolableConnectionFactory simulatorPoolableConnectionFactory =
-                        new PoolableConnectionFactory(simulatorConnectionFactory, simulatorConnectionPool, new StackKeyedObjectPoolFactory(), null, false, false);
-                s_simulatorDS = new PoolingDataSource(simulatorPoolableConnectionFactory.getPool());
+                    final PoolableConnectionFactory simulatorPoolableConnectionFactory =
+                            new PoolableConnectionFactory(simulatorConnectionFactory, simulatorConnectionPool, new StackKeyedObjectPoolFactory(), null, false, false);
+                    s_simulatorDS = new DbcpConnectionPool("simulator", simulatorPoolableConnectionFactory.getPool());
+                }
             } catch (Exception e) {
                 s_logger.debug("Simulator DB properties are not available. Not initializing simulator DS");
             }
@@ -1165,6 +1227,13 @@ public class TransactionLegacy implements Closeable {
         }
     }
 
+    /**
+     * @return the pool implementation set by db.[database].connectionPoolLib, or the default if it is not set.
+     */
+    static ConnectionPool.Library getPoolLibrary(Properties dbProps, String database, ConnectionPool.Library defaultValue) {
+        return ConnectionPool.Library.fromString(dbProps.getProperty("db." + database + ".connectionPoolLib"), defaultValue);
+    }
+
     private static String getDBHAParams(String dbName, Properties dbProps) {
         StringBuilder sb = new StringBuilder();
         sb.append("failOverReadOnly=" + dbProps.getProperty("db." + dbName + ".failOverReadOnly"));
@@ -1177,12 +1246,21 @@ public class TransactionLegacy implements Closeable {
     }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
-    private static DataSource getDefaultDataSource(final String database) {
+    private static ConnectionPool getDefaultDataSource(final String database) {
         final GenericObjectPool connectionPool = new GenericObjectPool(null, 5);
         final ConnectionFactory connectionFactory = new DriverManagerConnectionFactory("jdbc:mysql://localhost:3306/" + database, "cloud", "cloud");
         final PoolableConnectionFactory poolableConnectionFactory = new PoolableConnectionFactory(connectionFactory, connectionPool, null, null, false, true);
-        return new PoolingDataSource(
-                /* connectionPool */poolableConnectionFactory.getPool());
+        return new DbcpConnectionPool(database, poolableConnectionFactory.getPool());
+    }
+
+    static List<ConnectionPool> getConnectionPools() {
+        final List<ConnectionPool> pools = new ArrayList<ConnectionPool>();
+        for (ConnectionPool pool : new ConnectionPool[] {s_ds, s_usageDS, s_simulatorDS}) {
+            if (pool != null) {
+                pools.add(pool);
+            }
+        }
+        return pools;
     }
 
     /**
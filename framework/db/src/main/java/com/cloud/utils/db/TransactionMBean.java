@@ -30,4 +30,8 @@ public interface TransactionMBean {
 
     List<Map<String, String>> getTransactionsWithDatabaseConnection();
 
+    List<Map<String, String>> getConnectionPools();
+
+    List<Map<String, String>> getQueryCaches();
+
 }
@@ -110,4 +110,22 @@ public class TransactionMBeanImpl extends StandardMBean implements TransactionMB
         }
         return txns;
     }
+
+    @Override
+    public List<Map<String, String>> getConnectionPools() {
+        ArrayList<Map<String, String>> pools = new ArrayList<Map<String, String>>();
+        for (ConnectionPool pool : TransactionLegacy.getConnectionPools()) {
+            pools.add(pool.getStats());
+        }
+        return pools;
+    }
+
+    @Override
+    public List<Map<String, String>> getQueryCaches() {
+        ArrayList<Map<String, String>> caches = new ArrayList<Map<String, String>>();
+        for (QueryCache cache : QueryCache.getCaches()) {
+            caches.add(cache.getStats());
+        }
+        return caches;
+    }
 }
@@ -0,0 +1,90 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * UuidChanges tells the caches that map uuids to ids about the rows whose
+ * uuid no longer resolves to them: rows whose uuid was changed, e.g. to a
+ * custom id given by the user, and rows that were deleted.  GenericDaoBase
+ * reports every committed update of a uuid column and every delete from a
+ * table with a uuid column.  Rows changed by hand written SQL are not
+ * reported.
+ *
+ * The local listeners drop what they know about the row.  The cluster
+ * {@link Listener} passes the change on to the other management servers,
+ * which hand it to their local listeners through changedLocal().
+ */
+public class UuidChanges {
+    private static final Logger s_logger = Logger.getLogger(UuidChanges.class);
+
+    public interface Listener {
+        /**
+         * @param entityBeanType the VO class of the DAO that changed the row.
+         * @param id id of the row, null if any row of the entity may have
+         *        changed, e.g. after a delete by search criteria.
+         */
+        void onUuidChanged(Class<?> entityBeanType, Long id);
+    }
+
+    private static final List<Listener> s_listeners = new CopyOnWriteArrayList<Listener>();
+    private static volatile Listener s_clusterListener;
+
+    public static void addListener(Listener listener) {
+        s_listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        s_listeners.remove(listener);
+    }
+
+    public static void setClusterListener(Listener listener) {
+        s_clusterListener = listener;
+    }
+
+    /**
+     * Notifies the local listeners and the cluster listener.
+     */
+    public static void changed(Class<?> entityBeanType, Long id) {
+        changedLocal(entityBeanType, id);
+        final Listener listener = s_clusterListener;
+        if (listener != null) {
+            try {
+                listener.onUuidChanged(entityBeanType, id);
+            } catch (Exception e) {
+                s_logger.warn("Unable to propagate the uuid change of " + entityBeanType.getSimpleName() + " " + id, e);
+            }
+        }
+    }
+
+    /**
+     * Notifies the local listeners only.
+     */
+    public static void changedLocal(Class<?> entityBeanType, Long id) {
+        for (Listener listener : s_listeners) {
+            try {
+                listener.onUuidChanged(entityBeanType, id);
+            } catch (Exception e) {
+                s_logger.warn("Unable to handle the uuid change of " + entityBeanType.getSimpleName() + " " + id, e);
+            }
+        }
+    }
+}
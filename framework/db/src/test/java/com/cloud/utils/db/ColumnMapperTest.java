@@ -0,0 +1,124 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ColumnMapperTest {
+    @Mock
+    ResultSet resultSet;
+
+    enum Color {
+        Red, Green
+    }
+
+    static class Row {
+        long id;
+        Long hostId;
+        int count;
+        boolean enabled;
+        String name;
+        Color color;
+        @Enumerated(value = EnumType.ORDINAL)
+        Color ordinalColor;
+    }
+
+    private static ColumnMapper mapper(String name) throws NoSuchFieldException {
+        Field field = Row.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return ColumnMapper.forField(field);
+    }
+
+    @Test
+    public void mapPrimitives() throws Exception {
+        Mockito.when(resultSet.getLong(1)).thenReturn(42L);
+        Mockito.when(resultSet.getInt(2)).thenReturn(7);
+        Mockito.when(resultSet.getBoolean(3)).thenReturn(true);
+        Row row = new Row();
+        mapper("id").map(row, resultSet, 1);
+        mapper("count").map(row, resultSet, 2);
+        mapper("enabled").map(row, resultSet, 3);
+        Assert.assertEquals(42L, row.id);
+        Assert.assertEquals(7, row.count);
+        Assert.assertTrue(row.enabled);
+    }
+
+    @Test
+    public void mapNullableLong() throws Exception {
+        Row row = new Row();
+        row.hostId = 5L;
+        Mockito.when(resultSet.getObject(1)).thenReturn(null);
+        mapper("hostId").map(row, resultSet, 1);
+        Assert.assertNull(row.hostId);
+
+        Mockito.when(resultSet.getObject(1)).thenReturn(9L);
+        Mockito.when(resultSet.getLong(1)).thenReturn(9L);
+        mapper("hostId").map(row, resultSet, 1);
+        Assert.assertEquals(Long.valueOf(9L), row.hostId);
+    }
+
+    @Test
+    public void mapString() throws Exception {
+        Mockito.when(resultSet.getBytes(1)).thenReturn("héllo".getBytes("UTF-8"));
+        Row row = new Row();
+        mapper("name").map(row, resultSet, 1);
+        Assert.assertEquals("héllo", row.name);
+    }
+
+    @Test
+    public void mapEnumByNameIgnoresCase() throws Exception {
+        Mockito.when(resultSet.getString(1)).thenReturn("green");
+        Row row = new Row();
+        mapper("color").map(row, resultSet, 1);
+        Assert.assertEquals(Color.Green, row.color);
+    }
+
+    @Test
+    public void mapEnumUnknownValueLeavesField() throws Exception {
+        Mockito.when(resultSet.getString(1)).thenReturn("Blue");
+        Row row = new Row();
+        row.color = Color.Red;
+        mapper("color").map(row, resultSet, 1);
+        Assert.assertEquals(Color.Red, row.color);
+    }
+
+    @Test
+    public void mapEnumByOrdinal() throws SQLException, NoSuchFieldException {
+        Mockito.when(resultSet.getInt(1)).thenReturn(1);
+        Row row = new Row();
+        mapper("ordinalColor").map(row, resultSet, 1);
+        Assert.assertEquals(Color.Green, row.ordinalColor);
+    }
+
+    @Test
+    public void mapperIsSharedPerField() throws NoSuchFieldException {
+        Assert.assertSame(mapper("id"), mapper("id"));
+    }
+}
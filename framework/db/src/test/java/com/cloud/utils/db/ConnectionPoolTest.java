@@ -0,0 +1,80 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.sql.Connection;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zaxxer.hikari.HikariConfig;
+
+public class ConnectionPoolTest {
+
+    @Test
+    public void poolLibraryDefaultsWhenNotSet() {
+        Properties props = new Properties();
+        Assert.assertEquals(ConnectionPool.Library.dbcp, TransactionLegacy.getPoolLibrary(props, "cloud", ConnectionPool.Library.dbcp));
+        props.setProperty("db.cloud.connectionPoolLib", " ");
+        Assert.assertEquals(ConnectionPool.Library.dbcp, TransactionLegacy.getPoolLibrary(props, "cloud", ConnectionPool.Library.dbcp));
+    }
+
+    @Test
+    public void poolLibraryIsReadPerDatabase() {
+        Properties props = new Properties();
+        props.setProperty("db.cloud.connectionPoolLib", "HikariCP");
+        ConnectionPool.Library cloud = TransactionLegacy.getPoolLibrary(props, "cloud", ConnectionPool.Library.dbcp);
+        Assert.assertEquals(ConnectionPool.Library.hikaricp, cloud);
+        // usage follows the cloud database unless it is set
+        Assert.assertEquals(ConnectionPool.Library.hikaricp, TransactionLegacy.getPoolLibrary(props, "usage", cloud));
+        props.setProperty("db.usage.connectionPoolLib", "dbcp");
+        Assert.assertEquals(ConnectionPool.Library.dbcp, TransactionLegacy.getPoolLibrary(props, "usage", cloud));
+    }
+
+    @Test
+    public void unknownPoolLibraryFallsBackToDefault() {
+        Properties props = new Properties();
+        props.setProperty("db.simulator.connectionPoolLib", "c3p0");
+        Assert.assertEquals(ConnectionPool.Library.hikaricp, TransactionLegacy.getPoolLibrary(props, "simulator", ConnectionPool.Library.hikaricp));
+    }
+
+    @Test
+    public void hikariConfigMatchesDbcpSettings() {
+        HikariConfig config = HikariConnectionPool.createConfig("test", "jdbc:mysql://localhost:3306/cloud", "cloud", "secret", 50, 30, 10000, "SELECT 1",
+                Connection.TRANSACTION_READ_COMMITTED, 5000, false);
+        Assert.assertFalse(config.isAutoCommit());
+        Assert.assertEquals(50, config.getMaximumPoolSize());
+        Assert.assertEquals(30, config.getMinimumIdle());
+        Assert.assertEquals(10000, config.getConnectionTimeout());
+        Assert.assertEquals("SELECT 1", config.getConnectionTestQuery());
+        Assert.assertEquals("TRANSACTION_READ_COMMITTED", config.getTransactionIsolation());
+        Assert.assertEquals(5000, config.getLeakDetectionThreshold());
+        Assert.assertTrue(config.getDataSourceProperties().isEmpty());
+    }
+
+    @Test
+    public void hikariConfigCachesStatementsOnlyWhenAsked() {
+        HikariConfig config = HikariConnectionPool.createConfig("test", "jdbc:mysql://localhost:3306/cloud", "cloud", "secret", 10, 20, -1, null, -1, 0, true);
+        Assert.assertEquals("true", config.getDataSourceProperties().getProperty("cachePrepStmts"));
+        // the cache size comes from the url parameters
+        Assert.assertNull(config.getDataSourceProperties().getProperty("prepStmtCacheSize"));
+        Assert.assertEquals(10, config.getMinimumIdle());
+        Assert.assertNull(config.getTransactionIsolation());
+        Assert.assertEquals(0, config.getLeakDetectionThreshold());
+    }
+}
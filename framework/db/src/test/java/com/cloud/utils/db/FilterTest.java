@@ -16,6 +16,8 @@
 // under the License.
 package com.cloud.utils.db;
 
+import java.util.Arrays;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -41,4 +43,25 @@ public class FilterTest {
         Assert.assertTrue(filter.getOrderBy().split(",").length == 3);
         Assert.assertTrue(filter.getOrderBy().split(",")[2].trim().toLowerCase().equals("test.fld_int asc"));
     }
+
+    @Test
+    public void testSeekAfter() {
+        Filter filter = new Filter(DbTestVO.class, "fieldString", false, 0L, 10L);
+        filter.addOrderBy(DbTestVO.class, "fieldLong", true);
+        Assert.assertNull(filter.getSeekClause());
+
+        filter.setSeekAfter("b", 5L);
+        Assert.assertEquals("((test.fld_string < ?) OR (test.fld_string = ? AND test.fld_long > ?))", filter.getSeekClause());
+        Assert.assertEquals(Arrays.<Object>asList("b", "b", 5L), filter.getSeekParameters());
+
+        filter.setSeekAfter("c");
+        Assert.assertEquals("((test.fld_string < ?))", filter.getSeekClause());
+        Assert.assertEquals(Arrays.<Object>asList("c"), filter.getSeekParameters());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSeekAfterNeedsOrderBy() {
+        Filter filter = new Filter(DbTestVO.class, "fieldString", true, 0L, 10L);
+        filter.setSeekAfter("a", 1L);
+    }
 }
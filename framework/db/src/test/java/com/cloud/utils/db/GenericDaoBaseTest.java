@@ -16,20 +16,32 @@
 // under the License.
 package com.cloud.utils.db;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.cloud.utils.Pair;
 
 @RunWith(MockitoJUnitRunner.class)
 public class GenericDaoBaseTest {
     @Mock
     ResultSet resultSet;
+    @Mock
+    PreparedStatement pstmt;
 
     @Test
     public void getObjectBoolean() throws SQLException {
@@ -148,4 +160,91 @@ public class GenericDaoBaseTest {
         Mockito.verify(resultSet).getByte(1);
     }
 
+
+    @Test
+    public void addWhereClauseCombinesSearchAndSeek() {
+        StringBuilder sql = new StringBuilder();
+        GenericDaoBase.addWhereClause(sql, "test.fld_int = ? OR test.fld_long = ?", "((test.id > ?))");
+        Assert.assertEquals("(test.fld_int = ? OR test.fld_long = ?) AND ((test.id > ?))", sql.toString());
+
+        sql = new StringBuilder();
+        GenericDaoBase.addWhereClause(sql, null, "((test.id > ?))");
+        Assert.assertEquals("((test.id > ?))", sql.toString());
+
+        sql = new StringBuilder();
+        GenericDaoBase.addWhereClause(sql, "test.fld_int = ?", null);
+        Assert.assertEquals("test.fld_int = ?", sql.toString());
+    }
+
+    @Test
+    public void addSeekParametersBindsEveryPrefix() throws SQLException {
+        Filter filter = new Filter(DbTestVO.class, "fieldString", true, 0L, 10L);
+        filter.addOrderBy(DbTestVO.class, "id", true);
+        filter.setSeekAfter("b", 5L);
+        Assert.assertEquals(4, new DbTestDao().addSeekParameters(1, pstmt, filter));
+        Mockito.verify(pstmt).setObject(1, "b");
+        Mockito.verify(pstmt).setObject(2, "b");
+        Mockito.verify(pstmt).setObject(3, 5L);
+    }
+
+    @Test
+    public void addSeekParametersFormatsDates() throws SQLException {
+        Filter filter = new Filter(DbTestVO.class, "fieldString", true, 0L, 10L);
+        filter.setSeekAfter(new Date(0));
+        new DbTestDao().addSeekParameters(1, pstmt, filter);
+        Mockito.verify(pstmt).setString(1, "1970-01-01 00:00:00");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static DbTestDao daoReturningSearchedIds(final List<Integer> batchSizes) {
+        DbTestDao dao = Mockito.spy(new DbTestDao());
+        Mockito.doAnswer(new Answer<List<DbTestVO>>() {
+            @Override
+            public List<DbTestVO> answer(InvocationOnMock invocation) {
+                List<DbTestVO> result = new ArrayList<DbTestVO>();
+                for (Pair<Attribute, Object> value : ((SearchCriteria<DbTestVO>)invocation.getArguments()[0]).getValues()) {
+                    long id = (Long)value.second();
+                    // ids above 1000 do not exist
+                    if (id <= 1000) {
+                        DbTestVO vo = new DbTestVO();
+                        vo.id = id;
+                        result.add(vo);
+                    }
+                }
+                batchSizes.add(((SearchCriteria<DbTestVO>)invocation.getArguments()[0]).getValues().size());
+                return result;
+            }
+        }).when(dao).search(Mockito.any(SearchCriteria.class), Mockito.any(Filter.class), Mockito.anyBoolean(), Mockito.anyBoolean());
+        return dao;
+    }
+
+    @Test
+    public void findByIdsSkipsNullsAndDuplicates() {
+        List<Integer> batchSizes = new ArrayList<Integer>();
+        Map<Long, DbTestVO> result = daoReturningSearchedIds(batchSizes).findByIds(Arrays.asList(3L, null, 1L, 3L, 2000L));
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(3L, result.get(3L).id);
+        Assert.assertEquals(1L, result.get(1L).id);
+        Assert.assertFalse(result.containsKey(2000L));
+        Assert.assertEquals(Arrays.asList(3), batchSizes);
+    }
+
+    @Test
+    public void findByIdsSearchesInBatches() {
+        List<Long> ids = new ArrayList<Long>();
+        for (long id = 1; id <= GenericDaoBase.FIND_BY_IDS_BATCH_SIZE * 2 + 1; id++) {
+            ids.add(id);
+        }
+        List<Integer> batchSizes = new ArrayList<Integer>();
+        Map<Long, DbTestVO> result = daoReturningSearchedIds(batchSizes).findByIds(ids);
+        Assert.assertEquals(ids.size(), result.size());
+        Assert.assertEquals(Arrays.asList(GenericDaoBase.FIND_BY_IDS_BATCH_SIZE, GenericDaoBase.FIND_BY_IDS_BATCH_SIZE, 1), batchSizes);
+    }
+
+    @Test
+    public void findByIdsOfNothingDoesNotSearch() {
+        List<Integer> batchSizes = new ArrayList<Integer>();
+        Assert.assertTrue(daoReturningSearchedIds(batchSizes).findByIds(new ArrayList<Long>()).isEmpty());
+        Assert.assertTrue(batchSizes.isEmpty());
+    }
 }
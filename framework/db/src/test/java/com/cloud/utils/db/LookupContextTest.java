@@ -0,0 +1,96 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LookupContextTest {
+    @Mock
+    GenericDao<DbTestVO, Long> dao;
+
+    @After
+    public void closeContext() {
+        LookupContext ctx = LookupContext.current();
+        while (ctx != null) {
+            ctx.close();
+            ctx = LookupContext.current();
+        }
+    }
+
+    @Test
+    public void withoutContextGoesToTheDao() {
+        DbTestVO vo = new DbTestVO();
+        Mockito.when(dao.findByIdIncludingRemoved(1L)).thenReturn(vo);
+        LookupContext.prefetch(dao, 2L);
+        Assert.assertSame(vo, LookupContext.findByIdIncludingRemoved(dao, 1L));
+        Assert.assertSame(vo, LookupContext.findByIdIncludingRemoved(dao, 1L));
+        Mockito.verify(dao, Mockito.times(2)).findByIdIncludingRemoved(1L);
+    }
+
+    @Test
+    public void prefetchedIdsAreLoadedTogether() {
+        DbTestVO one = new DbTestVO();
+        DbTestVO two = new DbTestVO();
+        Map<Long, DbTestVO> found = new HashMap<Long, DbTestVO>();
+        found.put(1L, one);
+        found.put(2L, two);
+        Mockito.when(dao.findByIdsIncludingRemoved(Matchers.anyCollectionOf(Long.class))).thenReturn(found);
+
+        LookupContext ctx = LookupContext.open();
+        try {
+            LookupContext.prefetch(dao, 1L);
+            LookupContext.prefetch(dao, 2L);
+            LookupContext.prefetch(dao, 3L);
+            Assert.assertSame(two, LookupContext.findByIdIncludingRemoved(dao, 2L));
+            Assert.assertSame(one, LookupContext.findByIdIncludingRemoved(dao, 1L));
+            Assert.assertNull(LookupContext.findByIdIncludingRemoved(dao, 3L));
+        } finally {
+            ctx.close();
+        }
+        Mockito.verify(dao).findByIdsIncludingRemoved(new LinkedHashSet<Long>(Arrays.asList(1L, 2L, 3L)));
+        Mockito.verify(dao, Mockito.never()).findByIdIncludingRemoved(Matchers.anyLong());
+        Assert.assertNull(LookupContext.current());
+    }
+
+    @Test
+    public void lookupsAreRemembered() {
+        DbTestVO vo = new DbTestVO();
+        Mockito.when(dao.findByIdIncludingRemoved(1L)).thenReturn(vo);
+
+        LookupContext ctx = LookupContext.open();
+        try {
+            Assert.assertSame(vo, LookupContext.findByIdIncludingRemoved(dao, 1L));
+            Assert.assertSame(vo, LookupContext.findByIdIncludingRemoved(dao, 1L));
+        } finally {
+            ctx.close();
+        }
+        Mockito.verify(dao, Mockito.times(1)).findByIdIncludingRemoved(1L);
+    }
+}
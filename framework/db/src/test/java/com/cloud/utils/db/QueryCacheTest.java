@@ -0,0 +1,117 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.cloud.utils.Pair;
+
+public class QueryCacheTest {
+
+    @Test
+    public void getReturnsCopyAndCountsHits() {
+        QueryCache cache = new QueryCache("QueryCacheTest-hits", Arrays.asList("qct_hits"), 10, 60);
+        Assert.assertNull(cache.get("k"));
+        cache.put("k", Arrays.asList("a", "b"), cache.getGeneration());
+        List<String> result = cache.get("k");
+        Assert.assertEquals(Arrays.asList("a", "b"), result);
+        result.clear();
+        Assert.assertEquals(2, cache.<String>get("k").size());
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void tableChangeFlushesCache() {
+        QueryCache cache = new QueryCache("QueryCacheTest-flush", Arrays.asList("qct_flush"), 10, 60);
+        cache.put("k", Arrays.asList("a"), cache.getGeneration());
+        Assert.assertTrue(QueryCache.invalidateLocal(Arrays.asList("qct_flush")));
+        Assert.assertNull(cache.get("k"));
+        Assert.assertFalse(QueryCache.invalidateLocal(Arrays.asList("qct_not_cached")));
+    }
+
+    @Test
+    public void staleGenerationIsNotCached() {
+        QueryCache cache = new QueryCache("QueryCacheTest-generation", Arrays.asList("qct_generation"), 10, 60);
+        long generation = cache.getGeneration();
+        cache.clear();
+        cache.put("k", Arrays.asList("a"), generation);
+        Assert.assertNull(cache.get("k"));
+    }
+
+    @Test
+    public void listenerIsNotifiedOfCachedTablesOnly() {
+        new QueryCache("QueryCacheTest-listener", Arrays.asList("qct_listener"), 10, 60);
+        final List<String> notified = new ArrayList<String>();
+        QueryCache.setListener(new QueryCache.Listener() {
+            @Override
+            public void onTablesChanged(Collection<String> tables) {
+                notified.addAll(tables);
+            }
+        });
+        try {
+            QueryCache.tablesChanged(Arrays.asList("qct_not_cached"));
+            Assert.assertTrue(notified.isEmpty());
+            QueryCache.tablesChanged(Arrays.asList("qct_listener"));
+            Assert.assertEquals(Arrays.asList("qct_listener"), notified);
+        } finally {
+            QueryCache.setListener(null);
+        }
+    }
+
+    @Test
+    public void writeInTransactionIsBroadcastOnlyOnCommit() {
+        QueryCache cache = new QueryCache("QueryCacheTest-dao", Arrays.asList("test"), 10, 60);
+        DbTestDao dao = new DbTestDao();
+        final List<String> notified = new ArrayList<String>();
+        QueryCache.setListener(new QueryCache.Listener() {
+            @Override
+            public void onTablesChanged(Collection<String> tables) {
+                notified.addAll(tables);
+            }
+        });
+        try {
+            TransactionLegacy txn = Mockito.mock(TransactionLegacy.class);
+            Mockito.when(txn.dbTxnStarted()).thenReturn(true);
+            cache.put("k", Arrays.asList("a"), cache.getGeneration());
+            dao.tablesChanged(txn);
+            Assert.assertNull(cache.get("k"));
+            Assert.assertTrue(notified.isEmpty());
+            Mockito.verify(txn).tablesChangedOnCommit(Mockito.<Collection<String>>any());
+
+            Mockito.when(txn.dbTxnStarted()).thenReturn(false);
+            dao.tablesChanged(txn);
+            Assert.assertEquals(Arrays.asList("test"), notified);
+            Mockito.verify(txn, Mockito.times(1)).tablesChangedOnCommit(Mockito.<Collection<String>>any());
+        } finally {
+            QueryCache.setListener(null);
+        }
+    }
+
+    @Test
+    public void keyIncludesParameters() {
+        Assert.assertNotEquals(QueryCache.buildKey("SELECT", null),
+                QueryCache.buildKey("SELECT", Arrays.asList(new Pair<Attribute, Object>(null, new Object[] {1L, 2L}))));
+    }
+}
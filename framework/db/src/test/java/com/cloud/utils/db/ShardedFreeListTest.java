@@ -0,0 +1,135 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShardedFreeListTest {
+
+    /**
+     * Rows of one shard, free unless in taken.
+     */
+    static class Rows implements ShardedFreeList.Loader<String>, ShardedFreeList.Claim {
+        final int count;
+        final Set<Long> taken = ConcurrentHashMap.newKeySet();
+        final AtomicInteger loads = new AtomicInteger();
+
+        Rows(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public List<Long> listFree(String shard, int max) {
+            loads.incrementAndGet();
+            List<Long> ids = new ArrayList<Long>();
+            for (long id = 1; id <= count && ids.size() < max; id++) {
+                if (!taken.contains(id)) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        }
+
+        @Override
+        public boolean claim(long id) {
+            return taken.add(id);
+        }
+    }
+
+    @Test
+    public void takesEveryRowOnce() {
+        Rows rows = new Rows(25);
+        ShardedFreeList<String> list = new ShardedFreeList<String>("test", 10, rows);
+        for (int i = 0; i < 25; i++) {
+            Assert.assertNotNull(list.take("shard", rows));
+        }
+        Assert.assertNull(list.take("shard", rows));
+        Assert.assertEquals(25, rows.taken.size());
+        Assert.assertEquals(4, rows.loads.get());
+    }
+
+    @Test
+    public void rowsTakenElsewhereAreSkipped() {
+        Rows rows = new Rows(10);
+        ShardedFreeList<String> list = new ShardedFreeList<String>("test", 10, rows);
+        Long first = list.take("shard", rows);
+        Assert.assertNotNull(first);
+        long left = first == 10 ? 1 : 10;
+        for (long id = 1; id <= 10; id++) {
+            if (id != left) {
+                rows.taken.add(id);
+            }
+        }
+        Assert.assertEquals(Long.valueOf(left), list.take("shard", rows));
+        Assert.assertNull(list.take("shard", rows));
+    }
+
+    @Test
+    public void offeredRowsGoBackToTheirShard() {
+        Rows rows = new Rows(2);
+        ShardedFreeList<String> list = new ShardedFreeList<String>("test", 10, rows);
+        Long first = list.take("shard", rows);
+        Assert.assertNotNull(first);
+        rows.taken.remove(first);
+        list.offer("shard", first);
+        list.offer("other", first);
+        Assert.assertEquals(2, list.size("shard"));
+        Assert.assertEquals(0, list.size("other"));
+    }
+
+    @Test
+    public void concurrentTakesGetDistinctRows() throws Exception {
+        final Rows rows = new Rows(1000);
+        final ShardedFreeList<String> list = new ShardedFreeList<String>("test", 100, rows);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(200);
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        start.await();
+                        return list.take("shard", rows);
+                    }
+                }));
+            }
+            start.countDown();
+            Set<Long> ids = ConcurrentHashMap.newKeySet();
+            for (Future<Long> future : futures) {
+                Long id = future.get();
+                Assert.assertNotNull(id);
+                Assert.assertTrue(ids.add(id));
+            }
+            Assert.assertEquals(200, rows.taken.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cloudstack.framework.events;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * BufferedEventPublisher takes the events published on an event bus off the
+ * thread publishing them.  The events are queued in a bounded buffer and
+ * handed to the {@link Sink} of the bus in batches by a single thread.
+ *
+ * When the buffer is full a publisher waits up to maxBlock milliseconds for
+ * room and the event is dropped after that.  When the sink fails, e.g. because
+ * the broker is down, the batch is appended to a spill file, if a spill
+ * directory is given, and the spilled events are sent again, in order and
+ * before any new event, every retryInterval milliseconds until the sink
+ * accepts them.  Events may be delivered twice if the sink fails after
+ * sending part of a batch.
+ */
+public class BufferedEventPublisher {
+    private static final Logger s_logger = Logger.getLogger(BufferedEventPublisher.class);
+
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_LINGER = 50;
+    public static final long DEFAULT_MAX_BLOCK = 100;
+    public static final long DEFAULT_RETRY_INTERVAL = 10000;
+    public static final long DEFAULT_MAX_SPILL_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Delivers the events to the message broker.
+     */
+    public interface Sink {
+        /**
+         * @throws EventBusException if the events could not all be delivered.
+         */
+        void publish(List<Event> events) throws EventBusException;
+    }
+
+    private static class Pending {
+        final Event event;
+        final long queued = System.nanoTime();
+
+        Pending(Event event) {
+            this.event = event;
+        }
+    }
+
+    private final String _name;
+    private final Sink _sink;
+    private final BlockingQueue<Pending> _buffer;
+    private final int _batchSize;
+    private final long _linger;
+    private final long _maxBlock;
+    private final long _retryInterval;
+    private final File _spillFile;
+    private final long _maxSpillSize;
+    private final Gson _gson = new Gson();
+
+    private final AtomicLong _published = new AtomicLong();
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _spilled = new AtomicLong();
+    private final AtomicLong _failedBatches = new AtomicLong();
+    private final AtomicLong _latencyCount = new AtomicLong();
+    private final AtomicLong _latencySum = new AtomicLong();
+    private final AtomicLong _latencyMax = new AtomicLong();
+
+    private volatile boolean _running;
+    private Thread _flusher;
+    private long _nextRetry;
+    // size of the spill file, only used by the flusher thread so that the file is not looked up for every batch
+    private long _spillSize;
+
+    public BufferedEventPublisher(String name, Sink sink, int capacity, int batchSize, long linger, long maxBlock, long retryInterval, String spillDirectory) {
+        _name = name;
+        _sink = sink;
+        _buffer = new ArrayBlockingQueue<Pending>(capacity);
+        _batchSize = batchSize;
+        _linger = linger;
+        _maxBlock = maxBlock;
+        _retryInterval = retryInterval;
+        _spillFile = spillDirectory != null ? new File(spillDirectory, name + ".events") : null;
+        _maxSpillSize = DEFAULT_MAX_SPILL_SIZE;
+    }
+
+    public BufferedEventPublisher(String name, Sink sink, String spillDirectory) {
+        this(name, sink, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_LINGER, DEFAULT_MAX_BLOCK, DEFAULT_RETRY_INTERVAL, spillDirectory);
+    }
+
+    public synchronized void start() {
+        if (_running) {
+            return;
+        }
+        if (_spillFile != null) {
+            _spillFile.getParentFile().mkdirs();
+            // events spilled before a restart are sent first
+            _spillSize = _spillFile.length();
+        }
+        _running = true;
+        _flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "EventPublisher-" + _name);
+        _flusher.setDaemon(true);
+        _flusher.start();
+    }
+
+    /**
+     * Stops taking events and waits up to timeout milliseconds for the
+     * buffered ones to be delivered or spilled.
+     */
+    public void stop(long timeout) {
+        Thread flusher;
+        synchronized (this) {
+            _running = false;
+            flusher = _flusher;
+            _flusher = null;
+        }
+        if (flusher != null) {
+            try {
+                flusher.join(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        s_logger.info("Stopped publishing events of " + _name + ": " + getStats());
+    }
+
+    /**
+     * Queues the event, waiting for room in the buffer if it is full.
+     *
+     * @return false if the event was dropped.
+     */
+    public boolean publish(Event event) {
+        boolean queued = false;
+        if (_running) {
+            try {
+                queued = _buffer.offer(new Pending(event), _maxBlock, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!queued) {
+            // log the first drop and then every thousandth one, not to flood the log while the buffer is full
+            if (_dropped.getAndIncrement() % 1000 == 0) {
+                s_logger.warn("Dropped event " + event.getEventType() + " of " + event.getResourceType() + " " + event.getResourceUUID() + ", the " + _name
+                        + " event buffer is full or stopped: " + getStats());
+            }
+        }
+        return queued;
+    }
+
+    protected void flushLoop() {
+        final List<Pending> batch = new ArrayList<Pending>(_batchSize);
+        while (_running || !_buffer.isEmpty()) {
+            try {
+                if (isSpilling() && System.currentTimeMillis() >= _nextRetry) {
+                    replaySpill();
+                }
+
+                final Pending first = _buffer.poll(_running ? Math.max(_linger, 1000) : 0, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // wait up to linger milliseconds for the batch to fill up
+                final long deadline = System.nanoTime() + (_running ? TimeUnit.MILLISECONDS.toNanos(_linger) : 0);
+                while (batch.size() < _batchSize) {
+                    _buffer.drainTo(batch, _batchSize - batch.size());
+                    final long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= _batchSize || remaining <= 0) {
+                        break;
+                    }
+                    final Pending next = _buffer.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                deliver(batch);
+            } catch (InterruptedException e) {
+                s_logger.debug("Interrupted while waiting for events of " + _name);
+            } catch (Throwable e) {
+                s_logger.warn("Unexpected exception while publishing events of " + _name, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    protected void deliver(List<Pending> batch) {
+        final List<Event> events = new ArrayList<Event>(batch.size());
+        for (Pending pending : batch) {
+            events.add(pending.event);
+        }
+        // events queued after the spilled ones wait for them not to overtake them
+        if (isSpilling()) {
+            spill(events);
+            return;
+        }
+        try {
+            _sink.publish(events);
+        } catch (EventBusException | RuntimeException e) {
+            _failedBatches.incrementAndGet();
+            s_logger.warn("Failed to publish " + events.size() + " events of " + _name + ", retrying in " + _retryInterval + "ms: " + e.getMessage());
+            _nextRetry = System.currentTimeMillis() + _retryInterval;
+            spill(events);
+            return;
+        }
+        final long now = System.nanoTime();
+        for (Pending pending : batch) {
+            final long latency = now - pending.queued;
+            _latencySum.addAndGet(latency);
+            _latencyCount.incrementAndGet();
+            if (latency > _latencyMax.get()) {
+                _latencyMax.set(latency);
+            }
+        }
+        _published.addAndGet(events.size());
+    }
+
+    protected boolean isSpilling() {
+        return _spillSize > 0;
+    }
+
+    protected void spill(List<Event> events) {
+        if (_spillFile == null || _spillSize >= _maxSpillSize) {
+            _dropped.addAndGet(events.size());
+            s_logger.warn("Dropped " + events.size() + " events of " + _name + " as they cannot be spilled to disk: " + getStats());
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(_spillFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Event event : events) {
+                writer.write(_gson.toJson(event));
+                writer.newLine();
+            }
+            _spilled.addAndGet(events.size());
+        } catch (IOException e) {
+            _dropped.addAndGet(events.size());
+            s_logger.warn("Dropped " + events.size() + " events of " + _name + ", unable to spill them to " + _spillFile, e);
+        }
+        _spillSize = _spillFile.length();
+    }
+
+    /**
+     * Sends the spilled events again in batches.  The file keeps the events
+     * that could not be sent.
+     */
+    protected void replaySpill() {
+        final List<Event> events = new ArrayList<Event>();
+        try (BufferedReader reader = Files.newBufferedReader(_spillFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    events.add(_gson.fromJson(line, Event.class));
+                } catch (JsonParseException e) {
+                    s_logger.warn("Skipping unreadable spilled event of " + _name + ": " + line);
+                }
+            }
+        } catch (IOException e) {
+            s_logger.warn("Unable to read the spilled events of " + _name + " from " + _spillFile, e);
+            _nextRetry = System.currentTimeMillis() + _retryInterval;
+            return;
+        }
+
+        int sent = 0;
+        try {
+            while (sent < events.size()) {
+                final List<Event> batch = events.subList(sent, Math.min(sent + _batchSize, events.size()));
+                _sink.publish(batch);
+                sent += batch.size();
+                _published.addAndGet(batch.size());
+            }
+        } catch (EventBusException | RuntimeException e) {
+            _failedBatches.incrementAndGet();
+            s_logger.debug("Failed to publish the spilled events of " + _name + ", retrying in " + _retryInterval + "ms: " + e.getMessage());
+            _nextRetry = System.currentTimeMillis() + _retryInterval;
+        }
+
+        try {
+            if (sent == events.size()) {
+                Files.delete(_spillFile.toPath());
+                s_logger.info("Published the " + sent + " spilled events of " + _name);
+            } else if (sent > 0) {
+                final List<String> remaining = new ArrayList<String>();
+                for (Event event : events.subList(sent, events.size())) {
+                    remaining.add(_gson.toJson(event));
+                }
+                Files.write(_spillFile.toPath(), remaining, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            s_logger.warn("Unable to update the spilled events of " + _name + " in " + _spillFile + ", some of them may be published twice", e);
+        }
+        _spillSize = _spillFile.length();
+    }
+
+    public long getPublishedCount() {
+        return _published.get();
+    }
+
+    public long getDroppedCount() {
+        return _dropped.get();
+    }
+
+    public long getSpilledCount() {
+        return _spilled.get();
+    }
+
+    public long getFailedBatchCount() {
+        return _failedBatches.get();
+    }
+
+    public int getBufferedCount() {
+        return _buffer.size();
+    }
+
+    /**
+     * @return average time in milliseconds between the publishing of an event
+     *         and its delivery to the sink, spilled events not included.
+     */
+    public double getAverageLatency() {
+        final long count = _latencyCount.get();
+        return count > 0 ? _latencySum.get() / 1000000.0 / count : 0;
+    }
+
+    public double getMaxLatency() {
+        return _latencyMax.get() / 1000000.0;
+    }
+
+    public String getStats() {
+        return String.format("published=%d, dropped=%d, spilled=%d, failed batches=%d, buffered=%d, average latency=%.2fms, max latency=%.2fms", getPublishedCount(),
+                getDroppedCount(), getSpilledCount(), getFailedBatchCount(), getBufferedCount(), getAverageLatency(), getMaxLatency());
+    }
+}
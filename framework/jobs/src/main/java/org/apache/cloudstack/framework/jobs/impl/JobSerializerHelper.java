@@ -25,6 +25,8 @@ import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
@@ -48,6 +50,12 @@ public class JobSerializerHelper {
     private static final Logger s_logger = Logger.getLogger(JobSerializerHelper.class);
     public static final String token = "/";
 
+    // Objects may be serialized deflated, which is stored as this prefix followed by a version
+    // byte and the base64 encoded deflated java serialization. The prefix is not part of the
+    // base64 alphabet, so plain payloads are still told apart.
+    static final String DEFLATED_PREFIX = "~";
+    static final char DEFLATED_VERSION = '2';
+
     private static Gson s_gson;
     static {
         GsonBuilder gsonBuilder = new GsonBuilder();
@@ -102,38 +110,61 @@ public class JobSerializerHelper {
         }
     }
 
+    /**
+     * Serializes the object deflated if job.payload.deflate is set, as plain
+     * java serialization otherwise.
+     */
     public static String toObjectSerializedString(Serializable object) {
+        return toObjectSerializedString(object, AsyncJobManagerImpl.JobPayloadDeflate.value());
+    }
+
+    /**
+     * @param deflate whether to deflate the java serialization before it is
+     *        base64 encoded, which management servers that predate it can not
+     *        read.
+     */
+    static String toObjectSerializedString(Serializable object, boolean deflate) {
         assert (object != null);
 
         ByteArrayOutputStream bs = new ByteArrayOutputStream();
         try {
-            ObjectOutputStream os = new ObjectOutputStream(bs);
+            ObjectOutputStream os = new ObjectOutputStream(deflate ? new DeflaterOutputStream(bs) : bs);
             os.writeObject(object);
             os.close();
             bs.close();
 
-            return Base64.encodeBase64URLSafeString(bs.toByteArray());
+            final String payload = Base64.encodeBase64URLSafeString(bs.toByteArray());
+            return deflate ? DEFLATED_PREFIX + DEFLATED_VERSION + payload : payload;
         } catch (IOException e) {
             throw new CloudRuntimeException("Unable to serialize: " + object, e);
         }
     }
 
-    public static Object fromObjectSerializedString(String base64EncodedString) {
-        if (base64EncodedString == null)
+    /**
+     * Deserializes an object serialized by toObjectSerializedString, deflated
+     * or not.
+     */
+    public static Object fromObjectSerializedString(String serializedString) {
+        if (serializedString == null)
             return null;
 
-        byte[] content = Base64.decodeBase64(base64EncodedString);
+        final boolean deflated = serializedString.startsWith(DEFLATED_PREFIX);
+        if (deflated && (serializedString.length() < 2 || serializedString.charAt(1) != DEFLATED_VERSION)) {
+            throw new CloudRuntimeException("Unable to deserialize, unknown format: " + serializedString);
+        }
+
+        byte[] content = Base64.decodeBase64(deflated ? serializedString.substring(2) : serializedString);
         ByteArrayInputStream bs = new ByteArrayInputStream(content);
         try {
-            ObjectInputStream is = new ObjectInputStream(bs);
+            ObjectInputStream is = new ObjectInputStream(deflated ? new InflaterInputStream(bs) : bs);
             Object obj = is.readObject();
             is.close();
             bs.close();
             return obj;
         } catch (IOException e) {
-            throw new CloudRuntimeException("Unable to serialize: " + base64EncodedString, e);
+            throw new CloudRuntimeException("Unable to serialize: " + serializedString, e);
         } catch (ClassNotFoundException e) {
-            throw new CloudRuntimeException("Unable to serialize: " + base64EncodedString, e);
+            throw new CloudRuntimeException("Unable to serialize: " + serializedString, e);
         }
     }
 
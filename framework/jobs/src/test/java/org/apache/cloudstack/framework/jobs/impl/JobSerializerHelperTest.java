@@ -0,0 +1,143 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.framework.jobs.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cloud.utils.exception.CloudRuntimeException;
+
+public class JobSerializerHelperTest {
+
+    static class Work implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        long userId = 2;
+        long vmId = 1234;
+        String handlerName = "VirtualMachineManagerImpl";
+        Map<String, String> rawParams = new HashMap<String, String>();
+        Class<?> type = int.class;
+        Thread.State state = Thread.State.RUNNABLE;
+    }
+
+    // the same class before and after a field was added to it, without changing its serialVersionUID
+    static class WorkV1 implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        long vmId = 1234;
+    }
+
+    static class WorkV2 implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        long vmId;
+        String handlerName;
+    }
+
+    private static String toLegacySerializedString(Serializable object) throws IOException {
+        ByteArrayOutputStream bs = new ByteArrayOutputStream();
+        ObjectOutputStream os = new ObjectOutputStream(bs);
+        os.writeObject(object);
+        os.close();
+        return Base64.encodeBase64URLSafeString(bs.toByteArray());
+    }
+
+    private static Work work() {
+        Work work = new Work();
+        work.rawParams.put("BootIntoSetup", "false");
+        return work;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        String serialized = JobSerializerHelper.toObjectSerializedString(work(), true);
+        Assert.assertTrue(serialized.startsWith(JobSerializerHelper.DEFLATED_PREFIX + JobSerializerHelper.DEFLATED_VERSION));
+
+        Work work = (Work)JobSerializerHelper.fromObjectSerializedString(serialized);
+        Assert.assertEquals(1234, work.vmId);
+        Assert.assertEquals("false", work.rawParams.get("BootIntoSetup"));
+        Assert.assertEquals(int.class, work.type);
+        Assert.assertEquals(Thread.State.RUNNABLE, work.state);
+    }
+
+    @Test
+    public void testExceptionRoundTrip() {
+        String serialized = JobSerializerHelper.toObjectSerializedString(new CloudRuntimeException("Unable to start vm", new IOException("host is down")), true);
+
+        CloudRuntimeException e = (CloudRuntimeException)JobSerializerHelper.fromObjectSerializedString(serialized);
+        Assert.assertEquals("Unable to start vm", e.getMessage());
+        Assert.assertEquals("host is down", e.getCause().getMessage());
+    }
+
+    @Test
+    public void testLegacyPayloadsAreStillRead() throws IOException {
+        Work work = (Work)JobSerializerHelper.fromObjectSerializedString(toLegacySerializedString(work()));
+        Assert.assertEquals(1234, work.vmId);
+    }
+
+    @Test
+    public void testDeflatedPayloadIsSmaller() throws IOException {
+        Work work = work();
+        Assert.assertTrue(JobSerializerHelper.toObjectSerializedString(work, true).length() < toLegacySerializedString(work).length());
+
+        CloudRuntimeException e = new CloudRuntimeException("Unable to start vm");
+        Assert.assertTrue(JobSerializerHelper.toObjectSerializedString(e, true).length() < toLegacySerializedString(e).length());
+    }
+
+    @Test
+    public void testLegacyFormatIsWrittenByDefault() throws IOException {
+        // so that management servers that predate deflated payloads can still read them
+        String serialized = JobSerializerHelper.toObjectSerializedString(work());
+        Assert.assertEquals(toLegacySerializedString(work()), serialized);
+        Assert.assertEquals(1234, ((Work)JobSerializerHelper.fromObjectSerializedString(serialized)).vmId);
+    }
+
+    @Test
+    public void testFieldAddedUnderTheSameSerialVersionUID() throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ObjectOutputStream os = new ObjectOutputStream(plain);
+        os.writeObject(new WorkV1());
+        os.close();
+        // the payload of WorkV1 as if it had been written before WorkV2 got its new field
+        byte[] payload = new String(plain.toByteArray(), StandardCharsets.ISO_8859_1).replace(WorkV1.class.getName(), WorkV2.class.getName())
+                .getBytes(StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream bs = new ByteArrayOutputStream();
+        DeflaterOutputStream ds = new DeflaterOutputStream(bs);
+        ds.write(payload);
+        ds.close();
+
+        WorkV2 work = (WorkV2)JobSerializerHelper.fromObjectSerializedString(JobSerializerHelper.DEFLATED_PREFIX + JobSerializerHelper.DEFLATED_VERSION
+                + Base64.encodeBase64URLSafeString(bs.toByteArray()));
+        Assert.assertEquals(1234, work.vmId);
+        Assert.assertNull(work.handlerName);
+    }
+
+    @Test(expected = CloudRuntimeException.class)
+    public void testUnknownFormatVersion() {
+        JobSerializerHelper.fromObjectSerializedString(JobSerializerHelper.DEFLATED_PREFIX + "9abc");
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cloudstack.mom.inmemory;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cloudstack.framework.events.BufferedEventPublisher;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+/**
+ * Throughput of the BufferedEventPublisher, publishing from several threads
+ * into an InMemoryEventBus.  It takes too long for the unit tests and is
+ * excluded from the build, run it with -Dtest=BufferedEventPublisherPerfTest.
+ */
+public class BufferedEventPublisherPerfTest extends BufferedEventPublisherTest {
+    private static final Logger s_logger = Logger.getLogger(BufferedEventPublisherPerfTest.class);
+
+    @Test
+    public void testPublishingThroughput() throws Exception {
+        final int threads = 8;
+        final int eventsPerThread = 20000;
+        final BufferedEventPublisher publisher = new BufferedEventPublisher("throughput", sink, 10000, 500, 5, 1000, 100, null);
+        publisher.start();
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> publishers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * eventsPerThread;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < eventsPerThread; i++) {
+                        publisher.publish(event(offset + i));
+                    }
+                }
+            });
+            thread.start();
+            publishers.add(thread);
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : publishers) {
+            thread.join();
+        }
+        long published = System.nanoTime() - begin;
+        waitForEvents(threads * eventsPerThread);
+        long delivered = System.nanoTime() - begin;
+        publisher.stop(1000);
+
+        s_logger.info(String.format("Published %d events from %d threads in %dms, delivered in %dms: %s", threads * eventsPerThread, threads,
+                TimeUnit.NANOSECONDS.toMillis(published), TimeUnit.NANOSECONDS.toMillis(delivered), publisher.getStats()));
+        assertEquals(threads * eventsPerThread, received.size());
+        assertEquals(threads * eventsPerThread, publisher.getPublishedCount());
+        assertEquals(0, publisher.getDroppedCount());
+    }
+}
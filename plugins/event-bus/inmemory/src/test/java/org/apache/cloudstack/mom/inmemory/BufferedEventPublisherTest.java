@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cloudstack.mom.inmemory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.cloudstack.framework.events.BufferedEventPublisher;
+import org.apache.cloudstack.framework.events.Event;
+import org.apache.cloudstack.framework.events.EventBusException;
+import org.apache.cloudstack.framework.events.EventSubscriber;
+import org.apache.cloudstack.framework.events.EventTopic;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Publishes through a BufferedEventPublisher into an InMemoryEventBus, which
+ * stands for the message broker.
+ */
+public class BufferedEventPublisherTest {
+    protected InMemoryEventBus bus;
+    private UUID subscriptionId;
+    protected final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+    private volatile boolean brokerDown;
+    private File spillDirectory;
+
+    private final EventSubscriber subscriber = new EventSubscriber() {
+        @Override
+        public void onEvent(Event event) {
+            received.add(event.getResourceUUID());
+        }
+    };
+
+    protected final BufferedEventPublisher.Sink sink = new BufferedEventPublisher.Sink() {
+        @Override
+        public void publish(List<Event> events) throws EventBusException {
+            if (brokerDown) {
+                throw new EventBusException("broker is down");
+            }
+            for (Event event : events) {
+                bus.publish(event);
+            }
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        bus = new InMemoryEventBus();
+        bus.configure("test", null);
+        subscriptionId = bus.subscribe(new EventTopic(null, null, null, null, null), subscriber);
+        spillDirectory = Files.createTempDirectory("events").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bus.unsubscribe(subscriptionId, subscriber);
+        for (File file : spillDirectory.listFiles()) {
+            file.delete();
+        }
+        spillDirectory.delete();
+    }
+
+    protected static Event event(int i) {
+        Event event = new Event("test", "ActionEvent", "VM.CREATE", "VirtualMachine", String.valueOf(i));
+        event.setDescription("{\"id\":" + i + "}");
+        return event;
+    }
+
+    protected void waitForEvents(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (received.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testEventsAreSpilledWhileBrokerIsDown() throws Exception {
+        BufferedEventPublisher publisher = new BufferedEventPublisher("spill", sink, 100, 10, 1, 100, 50, spillDirectory.getPath());
+        brokerDown = true;
+        publisher.start();
+        for (int i = 0; i < 50; i++) {
+            assertTrue(publisher.publish(event(i)));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (publisher.getSpilledCount() < 50 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(50, publisher.getSpilledCount());
+        assertTrue(received.isEmpty());
+
+        brokerDown = false;
+        publisher.publish(event(50));
+        waitForEvents(51);
+        publisher.stop(1000);
+
+        assertEquals(51, received.size());
+        for (int i = 0; i <= 50; i++) {
+            assertEquals(String.valueOf(i), received.get(i));
+        }
+        assertFalse(new File(spillDirectory, "spill.events").exists());
+    }
+
+    @Test
+    public void testEventsAreDroppedWhenBufferIsFull() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        BufferedEventPublisher publisher = new BufferedEventPublisher("full", new BufferedEventPublisher.Sink() {
+            @Override
+            public void publish(List<Event> events) throws EventBusException {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new EventBusException("interrupted");
+                }
+                sink.publish(events);
+            }
+        }, 10, 10, 1, 1, 50, null);
+        publisher.start();
+
+        int queued = 0;
+        for (int i = 0; i < 100; i++) {
+            if (publisher.publish(event(i))) {
+                queued++;
+            }
+        }
+        blocked.countDown();
+        waitForEvents(queued);
+        publisher.stop(1000);
+
+        assertTrue(publisher.getDroppedCount() > 0);
+        assertEquals(100, queued + publisher.getDroppedCount());
+        assertEquals(queued, received.size());
+    }
+}
@@ -21,14 +21,19 @@ package org.apache.cloudstack.mom.kafka;
 
 import java.io.FileInputStream;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.naming.ConfigurationException;
 
 import org.apache.log4j.Logger;
 
+import org.apache.cloudstack.framework.events.BufferedEventPublisher;
 import org.apache.cloudstack.framework.events.Event;
 import org.apache.cloudstack.framework.events.EventBus;
 import org.apache.cloudstack.framework.events.EventBusException;
@@ -40,6 +45,7 @@ import com.cloud.utils.component.ManagerBase;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 
 import com.cloud.utils.PropertiesUtil;
 
@@ -50,6 +56,7 @@ public class KafkaEventBus extends ManagerBase implements EventBus {
 
     private String _topic = null;
     private Producer<String,String> _producer;
+    private BufferedEventPublisher _publisher;
     private static final Logger s_logger = Logger.getLogger(KafkaEventBus.class);
 
     @Override
@@ -72,6 +79,16 @@ public class KafkaEventBus extends ManagerBase implements EventBus {
             if (!props.containsKey("value.serializer")) {
                 props.put("value.serializer", DEFAULT_SERIALIZER);
             }
+
+            // settings of the event buffer, they are not producer settings
+            final int bufferSize = Integer.parseInt(props.getProperty("cloudstack.buffer.size", String.valueOf(BufferedEventPublisher.DEFAULT_CAPACITY)));
+            final int batchSize = Integer.parseInt(props.getProperty("cloudstack.batch.size", String.valueOf(BufferedEventPublisher.DEFAULT_BATCH_SIZE)));
+            final String spillDirectory = props.getProperty("cloudstack.spill.dir");
+            props.remove("cloudstack.buffer.size");
+            props.remove("cloudstack.batch.size");
+            props.remove("cloudstack.spill.dir");
+            _publisher = new BufferedEventPublisher(name, new KafkaSink(), bufferSize, batchSize, BufferedEventPublisher.DEFAULT_LINGER,
+                    BufferedEventPublisher.DEFAULT_MAX_BLOCK, BufferedEventPublisher.DEFAULT_RETRY_INTERVAL, spillDirectory);
         } catch (Exception e) {
             throw new ConfigurationException("Could not read kafka properties");
         }
@@ -98,10 +115,36 @@ public class KafkaEventBus extends ManagerBase implements EventBus {
         /* NOOP */
     }
 
+    /**
+     * Queues the event, it is sent to kafka by the publisher thread.
+     */
     @Override
     public void publish(Event event) throws EventBusException {
-        ProducerRecord<String, String> record = new ProducerRecord<String,String>(_topic, event.getResourceUUID(), event.getDescription());
-        _producer.send(record);
+        _publisher.publish(event);
+    }
+
+    /**
+     * Sends a batch of events and waits until kafka acknowledged all of
+     * them, so that a failed batch is spilled and sent again.
+     */
+    private class KafkaSink implements BufferedEventPublisher.Sink {
+        @Override
+        public void publish(List<Event> events) throws EventBusException {
+            final List<Future<RecordMetadata>> results = new ArrayList<Future<RecordMetadata>>(events.size());
+            for (Event event : events) {
+                results.add(_producer.send(new ProducerRecord<String,String>(_topic, event.getResourceUUID(), event.getDescription())));
+            }
+            _producer.flush();
+            try {
+                for (Future<RecordMetadata> result : results) {
+                    result.get();
+                }
+            } catch (ExecutionException e) {
+                throw new EventBusException("Failed to publish events to kafka due to " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                throw new EventBusException("Interrupted while publishing events to kafka");
+            }
+        }
     }
 
     @Override
@@ -111,11 +154,14 @@ public class KafkaEventBus extends ManagerBase implements EventBus {
 
     @Override
     public boolean start() {
+        _publisher.start();
         return true;
     }
 
     @Override
     public boolean stop() {
+        _publisher.stop(BufferedEventPublisher.DEFAULT_RETRY_INTERVAL);
+        _producer.close();
         return true;
     }
 }
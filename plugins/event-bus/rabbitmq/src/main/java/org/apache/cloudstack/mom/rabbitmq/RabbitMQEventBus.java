@@ -21,6 +21,7 @@ package org.apache.cloudstack.mom.rabbitmq;
 
 import java.io.IOException;
 import java.net.ConnectException;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -44,6 +45,7 @@ import com.rabbitmq.client.MessageProperties;
 import com.rabbitmq.client.ShutdownListener;
 import com.rabbitmq.client.ShutdownSignalException;
 
+import org.apache.cloudstack.framework.events.BufferedEventPublisher;
 import org.apache.cloudstack.framework.events.Event;
 import org.apache.cloudstack.framework.events.EventBus;
 import org.apache.cloudstack.framework.events.EventBusException;
@@ -82,6 +84,15 @@ public class RabbitMQEventBus extends ManagerBase implements EventBus {
 
     private static Integer retryInterval;
 
+    // number of events buffered while they are published and directory the events are spilled to while the AMQP server is unreachable
+    private static Integer publishBufferSize;
+    private static String spillDirectory;
+
+    // time in milliseconds to wait for the AMQP server to confirm a batch of published events
+    private static final long PUBLISH_CONFIRM_TIMEOUT = 30000;
+
+    private BufferedEventPublisher publisher;
+
     // hashmap to book keep the registered subscribers
     private static ConcurrentHashMap<String, Ternary<String, Channel, EventSubscriber>> s_subscribers;
 
@@ -136,6 +147,8 @@ public class RabbitMQEventBus extends ManagerBase implements EventBus {
 
         s_subscribers = new ConcurrentHashMap<String, Ternary<String, Channel, EventSubscriber>>();
         executorService = Executors.newCachedThreadPool();
+        publisher = new BufferedEventPublisher(name, new AmqpSink(), publishBufferSize != null ? publishBufferSize : BufferedEventPublisher.DEFAULT_CAPACITY,
+                BufferedEventPublisher.DEFAULT_BATCH_SIZE, BufferedEventPublisher.DEFAULT_LINGER, BufferedEventPublisher.DEFAULT_MAX_BLOCK, retryInterval, spillDirectory);
         disconnectHandler = new DisconnectHandler();
         blockedConnectionHandler = new BlockedConnectionHandler();
 
@@ -175,6 +188,14 @@ public class RabbitMQEventBus extends ManagerBase implements EventBus {
         RabbitMQEventBus.retryInterval = retryInterval;
     }
 
+    public static void setPublishBufferSize(Integer publishBufferSize) {
+        RabbitMQEventBus.publishBufferSize = publishBufferSize;
+    }
+
+    public static void setSpillDirectory(String spillDirectory) {
+        RabbitMQEventBus.spillDirectory = spillDirectory;
+    }
+
     /** Call to subscribe to interested set of events
      *
      * @param topic defines category and type of the events being subscribed to
@@ -261,24 +282,51 @@ public class RabbitMQEventBus extends ManagerBase implements EventBus {
         }
     }
 
-    // publish event on to the exchange created on AMQP server
+    // queue the event, it is published on to the exchange created on AMQP server by the publisher thread
     @Override
     public void publish(Event event) throws EventBusException {
+        publisher.publish(event);
+    }
 
-        String routingKey = createRoutingKey(event);
-        String eventDescription = event.getDescription();
+    /**
+     * Publishes batches of events on one channel, kept open between batches
+     * and only used by the publisher thread, and waits for the AMQP server
+     * to confirm them.
+     */
+    private class AmqpSink implements BufferedEventPublisher.Sink {
+        private Channel channel;
 
-        try {
-            Connection connection = getConnection();
-            Channel channel = createChannel(connection);
-            createExchange(channel, amqpExchangeName);
-            publishEventToExchange(channel, amqpExchangeName, routingKey, eventDescription);
-            channel.close();
-        } catch (AlreadyClosedException e) {
-            closeConnection();
-            throw new EventBusException("Failed to publish event to message broker as connection to AMQP broker in lost");
-        } catch (Exception e) {
-            throw new EventBusException("Failed to publish event to message broker due to " + e.getMessage());
+        @Override
+        public void publish(List<Event> events) throws EventBusException {
+            try {
+                if (channel == null || !channel.isOpen()) {
+                    channel = createChannel(getConnection());
+                    createExchange(channel, amqpExchangeName);
+                    channel.confirmSelect();
+                }
+                for (Event event : events) {
+                    publishEventToExchange(channel, amqpExchangeName, createRoutingKey(event), event.getDescription());
+                }
+                channel.waitForConfirmsOrDie(PUBLISH_CONFIRM_TIMEOUT);
+            } catch (AlreadyClosedException e) {
+                channel = null;
+                closeConnection();
+                throw new EventBusException("Failed to publish event to message broker as connection to AMQP broker in lost");
+            } catch (Exception e) {
+                closeChannel();
+                throw new EventBusException("Failed to publish event to message broker due to " + e.getMessage());
+            }
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.abort();
+                } catch (IOException e) {
+                    s_logger.debug("Failed to abort the publishing channel due to " + e.getMessage());
+                }
+                channel = null;
+            }
         }
     }
 
@@ -487,11 +535,18 @@ public class RabbitMQEventBus extends ManagerBase implements EventBus {
     public boolean start() {
         ReconnectionTask reconnect = new ReconnectionTask(); // initiate connection to AMQP server
         executorService.submit(reconnect);
+        publisher.start();
         return true;
     }
 
     @Override
-    public synchronized boolean stop() {
+    public boolean stop() {
+        // outside of the lock, the publisher thread needs it to get the connection
+        publisher.stop(retryInterval);
+        return stopSubscriptions();
+    }
+
+    private synchronized boolean stopSubscriptions() {
         if (s_connection.isOpen()) {
             for (String subscriberId : s_subscribers.keySet()) {
                 Ternary<String, Channel, EventSubscriber> subscriberDetails = s_subscribers.get(subscriberId);
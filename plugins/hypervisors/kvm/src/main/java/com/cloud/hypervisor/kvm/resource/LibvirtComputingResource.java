@@ -28,7 +28,6 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -282,6 +281,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
     private final Map <String, String> _pifs = new HashMap<String, String>();
     private final Map<String, VmStats> _vmStats = new ConcurrentHashMap<String, VmStats>();
+    private LibvirtVmStatsSampler _vmStatsSampler;
 
     protected static final HashMap<DomainState, PowerState> s_powerStatesTable;
     static {
@@ -1057,6 +1057,12 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
         configureDiskActivityChecks(params);
 
+        final int vmStatsSampleInterval = NumbersUtil.parseInt((String)params.get("vm.stats.sample.interval"), 0);
+        if (vmStatsSampleInterval > 0) {
+            _vmStatsSampler = new LibvirtVmStatsSampler(this, vmStatsSampleInterval * 1000L);
+            _vmStatsSampler.start();
+        }
+
         final KVMStorageProcessor storageProcessor = new KVMStorageProcessor(_storagePoolMgr, this);
         storageProcessor.configure(name, params);
         storageHandler = new StorageSubsystemCommandHandlerBase(storageProcessor);
@@ -1422,6 +1428,9 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
     @Override
     public boolean stop() {
+        if (_vmStatsSampler != null) {
+            _vmStatsSampler.stop();
+        }
         try {
             final Connect conn = LibvirtConnection.getConnection();
             conn.close();
@@ -3253,37 +3262,42 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
     }
 
     public List<VmDiskStatsEntry> getVmDiskStat(final Connect conn, final String vmName) throws LibvirtException {
-        Domain dm = null;
-        try {
-            dm = getDomain(conn, vmName);
-
-            final List<VmDiskStatsEntry> stats = new ArrayList<VmDiskStatsEntry>();
-
-            final List<DiskDef> disks = getDisks(conn, vmName);
-
-            for (final DiskDef disk : disks) {
-                if (disk.getDeviceType() != DeviceType.DISK) {
-                    break;
-                }
-                final DomainBlockStats blockStats = dm.blockStats(disk.getDiskLabel());
-                final String path = disk.getDiskPath(); // for example, path = /mnt/pool_uuid/disk_path/
-                String diskPath = null;
-                if (path != null) {
-                    final String[] token = path.split("/");
-                    if (token.length > 3) {
-                        diskPath = token[3];
-                        final VmDiskStatsEntry stat = new VmDiskStatsEntry(vmName, diskPath, blockStats.wr_req, blockStats.rd_req, blockStats.wr_bytes, blockStats.rd_bytes);
-                        stats.add(stat);
-                    }
+        final LibvirtVmStatsSampler.Sample sample = _vmStatsSampler != null ? _vmStatsSampler.getSample(vmName) : null;
+        final List<LibvirtVmStatsSampler.DiskSample> diskSamples;
+        if (sample != null) {
+            diskSamples = sample.disks;
+        } else {
+            Domain dm = null;
+            try {
+                dm = getDomain(conn, vmName);
+                diskSamples = LibvirtVmStatsSampler.sampleDisks(dm, getDisks(conn, vmName));
+            } finally {
+                if (dm != null) {
+                    dm.free();
                 }
             }
+        }
 
-            return stats;
-        } finally {
-            if (dm != null) {
-                dm.free();
+        final List<VmDiskStatsEntry> stats = new ArrayList<VmDiskStatsEntry>();
+        for (final LibvirtVmStatsSampler.DiskSample diskSample : diskSamples) {
+            final DiskDef disk = diskSample.disk;
+            if (disk.getDeviceType() != DeviceType.DISK) {
+                break;
+            }
+            final DomainBlockStats blockStats = diskSample.stats;
+            final String path = disk.getDiskPath(); // for example, path = /mnt/pool_uuid/disk_path/
+            String diskPath = null;
+            if (path != null) {
+                final String[] token = path.split("/");
+                if (token.length > 3) {
+                    diskPath = token[3];
+                    final VmDiskStatsEntry stat = new VmDiskStatsEntry(vmName, diskPath, blockStats.wr_req, blockStats.rd_req, blockStats.wr_bytes, blockStats.rd_bytes);
+                    stats.add(stat);
+                }
             }
         }
+
+        return stats;
     }
 
     private class VmStats {
@@ -3294,120 +3308,118 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
         long _ioWrote;
         long _bytesRead;
         long _bytesWrote;
-        Calendar _timestamp;
+        long _timestamp;
+        LibvirtVmStatsSampler.Sample _sample;
+        VmStatsEntry _entry;
     }
 
-    public VmStatsEntry getVmStat(final Connect conn, final String vmName) throws LibvirtException {
+    /**
+     * Returns the latest sample of the vm when the stats sampler is running,
+     * otherwise reads the counters of the vm from libvirt.
+     *
+     * @return null if the vm does not exist.
+     */
+    protected LibvirtVmStatsSampler.Sample getVmStatsSample(final Connect conn, final String vmName) throws LibvirtException {
+        if (_vmStatsSampler != null) {
+            final LibvirtVmStatsSampler.Sample sample = _vmStatsSampler.getSample(vmName);
+            if (sample != null) {
+                return sample;
+            }
+        }
+
         Domain dm = null;
         try {
             dm = getDomain(conn, vmName);
             if (dm == null) {
                 return null;
             }
-            DomainInfo info = dm.getInfo();
-            final VmStatsEntry stats = new VmStatsEntry();
-
-            stats.setNumCPUs(info.nrVirtCpu);
-            stats.setEntityType("vm");
+            return LibvirtVmStatsSampler.sample(dm, conn.nodeInfo().cpus, getInterfaces(conn, vmName), getDisks(conn, vmName), getMemoryFreeInKBs(dm));
+        } finally {
+            if (dm != null) {
+                dm.free();
+            }
+        }
+    }
 
-            stats.setMemoryKBs(info.maxMem);
-            stats.setTargetMemoryKBs(info.memory);
-            stats.setIntFreeMemoryKBs(getMemoryFreeInKBs(dm));
+    public VmStatsEntry getVmStat(final Connect conn, final String vmName) throws LibvirtException {
+        final LibvirtVmStatsSampler.Sample sample = getVmStatsSample(conn, vmName);
+        if (sample == null) {
+            return null;
+        }
+        final VmStats oldStats = _vmStats.get(vmName);
+        if (oldStats != null && oldStats._sample == sample) {
+            // asked again before the sampler took a new sample, the deltas to it were computed already
+            return oldStats._entry;
+        }
 
-            /* get cpu utilization */
-            VmStats oldStats = null;
+        final DomainInfo info = sample.info;
+        final VmStatsEntry stats = new VmStatsEntry();
 
-            final Calendar now = Calendar.getInstance();
+        stats.setNumCPUs(info.nrVirtCpu);
+        stats.setEntityType("vm");
 
-            oldStats = _vmStats.get(vmName);
+        stats.setMemoryKBs(info.maxMem);
+        stats.setTargetMemoryKBs(info.memory);
+        stats.setIntFreeMemoryKBs(sample.freeMemoryKBs);
 
-            long elapsedTime = 0;
-            if (oldStats != null) {
-                elapsedTime = now.getTimeInMillis() - oldStats._timestamp.getTimeInMillis();
+        /* get cpu utilization */
+        if (oldStats != null) {
+            final long elapsedTime = sample.timestamp - oldStats._timestamp;
+            if (elapsedTime > 0) {
                 double utilization = (info.cpuTime - oldStats._usedTime) / ((double)elapsedTime * 1000000);
-
-                final NodeInfo node = conn.nodeInfo();
-                utilization = utilization / node.cpus;
+                utilization = utilization / sample.hostCpus;
                 if (utilization > 0) {
                     stats.setCPUUtilization(utilization * 100);
                 }
             }
+        }
 
-            /* get network stats */
-
-            final List<InterfaceDef> vifs = getInterfaces(conn, vmName);
-            long rx = 0;
-            long tx = 0;
-            for (final InterfaceDef vif : vifs) {
-                final DomainInterfaceStats ifStats = dm.interfaceStats(vif.getDevName());
-                rx += ifStats.rx_bytes;
-                tx += ifStats.tx_bytes;
+        /* get network stats */
+        if (oldStats != null) {
+            final double deltarx = sample.rx - oldStats._rx;
+            if (deltarx > 0) {
+                stats.setNetworkReadKBs(deltarx / 1024);
             }
-
-            if (oldStats != null) {
-                final double deltarx = rx - oldStats._rx;
-                if (deltarx > 0) {
-                    stats.setNetworkReadKBs(deltarx / 1024);
-                }
-                final double deltatx = tx - oldStats._tx;
-                if (deltatx > 0) {
-                    stats.setNetworkWriteKBs(deltatx / 1024);
-                }
+            final double deltatx = sample.tx - oldStats._tx;
+            if (deltatx > 0) {
+                stats.setNetworkWriteKBs(deltatx / 1024);
             }
+        }
 
-            /* get disk stats */
-            final List<DiskDef> disks = getDisks(conn, vmName);
-            long io_rd = 0;
-            long io_wr = 0;
-            long bytes_rd = 0;
-            long bytes_wr = 0;
-            for (final DiskDef disk : disks) {
-                if (disk.getDeviceType() == DeviceType.CDROM || disk.getDeviceType() == DeviceType.FLOPPY) {
-                    continue;
-                }
-                final DomainBlockStats blockStats = dm.blockStats(disk.getDiskLabel());
-                io_rd += blockStats.rd_req;
-                io_wr += blockStats.wr_req;
-                bytes_rd += blockStats.rd_bytes;
-                bytes_wr += blockStats.wr_bytes;
-            }
-
-            if (oldStats != null) {
-                final long deltaiord = io_rd - oldStats._ioRead;
-                if (deltaiord > 0) {
-                    stats.setDiskReadIOs(deltaiord);
-                }
-                final long deltaiowr = io_wr - oldStats._ioWrote;
-                if (deltaiowr > 0) {
-                    stats.setDiskWriteIOs(deltaiowr);
-                }
-                final double deltabytesrd = bytes_rd - oldStats._bytesRead;
-                if (deltabytesrd > 0) {
-                    stats.setDiskReadKBs(deltabytesrd / 1024);
-                }
-                final double deltabyteswr = bytes_wr - oldStats._bytesWrote;
-                if (deltabyteswr > 0) {
-                    stats.setDiskWriteKBs(deltabyteswr / 1024);
-                }
-            }
-
-            /* save to Hashmap */
-            final VmStats newStat = new VmStats();
-            newStat._usedTime = info.cpuTime;
-            newStat._rx = rx;
-            newStat._tx = tx;
-            newStat._ioRead = io_rd;
-            newStat._ioWrote = io_wr;
-            newStat._bytesRead = bytes_rd;
-            newStat._bytesWrote = bytes_wr;
-            newStat._timestamp = now;
-            _vmStats.put(vmName, newStat);
-            return stats;
-        } finally {
-            if (dm != null) {
-                dm.free();
+        /* get disk stats */
+        if (oldStats != null) {
+            final long deltaiord = sample.ioRead - oldStats._ioRead;
+            if (deltaiord > 0) {
+                stats.setDiskReadIOs(deltaiord);
+            }
+            final long deltaiowr = sample.ioWrote - oldStats._ioWrote;
+            if (deltaiowr > 0) {
+                stats.setDiskWriteIOs(deltaiowr);
+            }
+            final double deltabytesrd = sample.bytesRead - oldStats._bytesRead;
+            if (deltabytesrd > 0) {
+                stats.setDiskReadKBs(deltabytesrd / 1024);
+            }
+            final double deltabyteswr = sample.bytesWrote - oldStats._bytesWrote;
+            if (deltabyteswr > 0) {
+                stats.setDiskWriteKBs(deltabyteswr / 1024);
             }
         }
+
+        /* save to Hashmap */
+        final VmStats newStat = new VmStats();
+        newStat._usedTime = info.cpuTime;
+        newStat._rx = sample.rx;
+        newStat._tx = sample.tx;
+        newStat._ioRead = sample.ioRead;
+        newStat._ioWrote = sample.ioWrote;
+        newStat._bytesRead = sample.bytesRead;
+        newStat._bytesWrote = sample.bytesWrote;
+        newStat._timestamp = sample.timestamp;
+        newStat._sample = sample;
+        newStat._entry = stats;
+        _vmStats.put(vmName, newStat);
+        return stats;
     }
 
     /**
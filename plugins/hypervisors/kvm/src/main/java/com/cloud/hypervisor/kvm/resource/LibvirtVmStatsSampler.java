@@ -0,0 +1,233 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.kvm.resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.libvirt.Connect;
+import org.libvirt.Domain;
+import org.libvirt.DomainBlockStats;
+import org.libvirt.DomainInfo;
+import org.libvirt.DomainInterfaceStats;
+import org.libvirt.LibvirtException;
+
+import com.cloud.hypervisor.kvm.resource.LibvirtVMDef.DiskDef;
+import com.cloud.hypervisor.kvm.resource.LibvirtVMDef.DiskDef.DeviceType;
+import com.cloud.hypervisor.kvm.resource.LibvirtVMDef.InterfaceDef;
+import com.cloud.utils.concurrency.NamedThreadFactory;
+
+/**
+ * LibvirtVmStatsSampler reads the counters of all the running domains in one
+ * sweep every interval, so that the vm stats commands are answered from the
+ * latest sample instead of looking up every domain and parsing its xml for
+ * every command.  The device lists of a domain are only parsed when the
+ * domain is new to the sampler, and again every few sweeps to pick up hot
+ * plugged nics and volumes.
+ */
+public class LibvirtVmStatsSampler {
+    private static final Logger s_logger = Logger.getLogger(LibvirtVmStatsSampler.class);
+
+    static final int DEVICE_REFRESH_SWEEPS = 10;
+
+    public static class DiskSample {
+        final DiskDef disk;
+        /** null for cdrom and floppy devices, which are not sampled */
+        final DomainBlockStats stats;
+
+        DiskSample(DiskDef disk, DomainBlockStats stats) {
+            this.disk = disk;
+            this.stats = stats;
+        }
+    }
+
+    /**
+     * The raw counters of one domain at one point in time.
+     */
+    public static class Sample {
+        final long timestamp = System.currentTimeMillis();
+        final int hostCpus;
+        final DomainInfo info;
+        final long freeMemoryKBs;
+        long rx;
+        long tx;
+        long ioRead;
+        long ioWrote;
+        long bytesRead;
+        long bytesWrote;
+        final List<DiskSample> disks = new ArrayList<DiskSample>();
+
+        Sample(int hostCpus, DomainInfo info, long freeMemoryKBs) {
+            this.hostCpus = hostCpus;
+            this.info = info;
+            this.freeMemoryKBs = freeMemoryKBs;
+        }
+    }
+
+    private static class Devices {
+        final String uuid;
+        final List<InterfaceDef> nics;
+        final List<DiskDef> disks;
+        int sweeps;
+
+        Devices(String uuid, List<InterfaceDef> nics, List<DiskDef> disks) {
+            this.uuid = uuid;
+            this.nics = nics;
+            this.disks = disks;
+        }
+    }
+
+    private final LibvirtComputingResource _resource;
+    private final long _interval;
+    private ScheduledExecutorService _executor;
+    private volatile Map<String, Sample> _samples = Collections.emptyMap();
+    // only used from the sampling thread
+    private final Map<String, Devices> _devices = new HashMap<String, Devices>();
+
+    /**
+     * @param interval time in milliseconds between two sweeps.
+     */
+    public LibvirtVmStatsSampler(LibvirtComputingResource resource, long interval) {
+        _resource = resource;
+        _interval = interval;
+    }
+
+    public void start() {
+        _executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("LibvirtVmStatsSampler"));
+        _executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep(LibvirtConnection.getConnection());
+                } catch (Throwable t) {
+                    s_logger.warn("Failed to sample vm stats: " + t.getMessage());
+                }
+            }
+        }, 0, _interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (_executor != null) {
+            _executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the latest sample of the vm, or null if the vm is not running
+     *         or the sampler has fallen behind and the sample is stale.
+     */
+    public Sample getSample(String vmName) {
+        final Sample sample = _samples.get(vmName);
+        if (sample == null || System.currentTimeMillis() - sample.timestamp > 2 * _interval) {
+            return null;
+        }
+        return sample;
+    }
+
+    void sweep(Connect conn) throws LibvirtException {
+        final long start = System.currentTimeMillis();
+        final int hostCpus = conn.nodeInfo().cpus;
+        final Map<String, Sample> samples = new HashMap<String, Sample>();
+        for (int id : conn.listDomains()) {
+            Domain dm = null;
+            try {
+                dm = conn.domainLookupByID(id);
+                final String vmName = dm.getName();
+                final Devices devices = getDevices(dm, vmName);
+                try {
+                    samples.put(vmName, sample(dm, hostCpus, devices.nics, devices.disks, _resource.getMemoryFreeInKBs(dm)));
+                } catch (LibvirtException e) {
+                    // a device went away under us, read them again on the next sweep
+                    _devices.remove(vmName);
+                    throw e;
+                }
+            } catch (LibvirtException e) {
+                s_logger.debug("Failed to sample stats of domain " + id + ": " + e.getMessage());
+            } finally {
+                if (dm != null) {
+                    try {
+                        dm.free();
+                    } catch (LibvirtException e) {
+                        s_logger.trace("Ignoring libvirt error.", e);
+                    }
+                }
+            }
+        }
+        _devices.keySet().retainAll(samples.keySet());
+        _samples = samples;
+        if (s_logger.isTraceEnabled()) {
+            s_logger.trace("Sampled stats of " + samples.size() + " domains in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private Devices getDevices(Domain dm, String vmName) throws LibvirtException {
+        final String uuid = dm.getUUIDString();
+        Devices devices = _devices.get(vmName);
+        if (devices == null || !devices.uuid.equals(uuid) || ++devices.sweeps >= DEVICE_REFRESH_SWEEPS) {
+            final LibvirtDomainXMLParser parser = new LibvirtDomainXMLParser();
+            parser.parseDomainXML(dm.getXMLDesc(0));
+            devices = new Devices(uuid, parser.getInterfaces(), parser.getDisks());
+            _devices.put(vmName, devices);
+        }
+        return devices;
+    }
+
+    /**
+     * Reads the counters of the domain for the given devices.
+     */
+    static Sample sample(Domain dm, int hostCpus, List<InterfaceDef> nics, List<DiskDef> disks, long freeMemoryKBs) throws LibvirtException {
+        final Sample sample = new Sample(hostCpus, dm.getInfo(), freeMemoryKBs);
+        for (final InterfaceDef nic : nics) {
+            final DomainInterfaceStats ifStats = dm.interfaceStats(nic.getDevName());
+            sample.rx += ifStats.rx_bytes;
+            sample.tx += ifStats.tx_bytes;
+        }
+        for (final DiskSample disk : sampleDisks(dm, disks)) {
+            if (disk.stats != null) {
+                sample.ioRead += disk.stats.rd_req;
+                sample.ioWrote += disk.stats.wr_req;
+                sample.bytesRead += disk.stats.rd_bytes;
+                sample.bytesWrote += disk.stats.wr_bytes;
+            }
+            sample.disks.add(disk);
+        }
+        return sample;
+    }
+
+    /**
+     * Reads the block stats of the disks of the domain, skipping cdrom and
+     * floppy devices.
+     */
+    static List<DiskSample> sampleDisks(Domain dm, List<DiskDef> disks) throws LibvirtException {
+        final List<DiskSample> samples = new ArrayList<DiskSample>(disks.size());
+        for (final DiskDef disk : disks) {
+            if (disk.getDeviceType() == DeviceType.CDROM || disk.getDeviceType() == DeviceType.FLOPPY) {
+                samples.add(new DiskSample(disk, null));
+            } else {
+                samples.add(new DiskSample(disk, dm.blockStats(disk.getDiskLabel())));
+            }
+        }
+        return samples;
+    }
+}
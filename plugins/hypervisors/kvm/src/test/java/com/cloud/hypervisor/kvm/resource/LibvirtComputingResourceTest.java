@@ -518,6 +518,34 @@ public class LibvirtComputingResourceTest {
         Assert.assertTrue(vmStat.getTargetMemoryKBs() >= vmStat.getMemoryKBs());
     }
 
+    @Test
+    public void testGetVmStatOfTheSameSampleTwice() throws LibvirtException {
+        final Connect connect = Mockito.mock(Connect.class);
+        final DomainInfo domainInfo = new DomainInfo();
+        final LibvirtVmStatsSampler.Sample first = new LibvirtVmStatsSampler.Sample(8, domainInfo, 0);
+        final LibvirtVmStatsSampler.Sample second = new LibvirtVmStatsSampler.Sample(8, domainInfo, 0);
+        second.rx = 4096;
+        second.bytesWrote = 8192;
+        final LibvirtVmStatsSampler.Sample[] latest = new LibvirtVmStatsSampler.Sample[] {first};
+
+        final LibvirtComputingResource libvirtComputingResource = new LibvirtComputingResource() {
+            @Override
+            protected LibvirtVmStatsSampler.Sample getVmStatsSample(final Connect conn, final String vmName) {
+                return latest[0];
+            }
+        };
+        libvirtComputingResource.getVmStat(connect, VMNAME);
+        latest[0] = second;
+        final VmStatsEntry vmStat = libvirtComputingResource.getVmStat(connect, VMNAME);
+        Assert.assertEquals(4, vmStat.getNetworkReadKBs(), 0);
+        Assert.assertEquals(8, vmStat.getDiskWriteKBs(), 0);
+
+        // no new sample was taken in between, the same stats are reported instead of zeros
+        final VmStatsEntry sameStat = libvirtComputingResource.getVmStat(connect, VMNAME);
+        Assert.assertEquals(4, sameStat.getNetworkReadKBs(), 0);
+        Assert.assertEquals(8, sameStat.getDiskWriteKBs(), 0);
+    }
+
     @Test
     public void getCpuSpeed() {
         Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
@@ -0,0 +1,122 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.kvm.resource;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.libvirt.Connect;
+import org.libvirt.Domain;
+import org.libvirt.DomainBlockStats;
+import org.libvirt.DomainInfo;
+import org.libvirt.DomainInterfaceStats;
+import org.libvirt.LibvirtException;
+import org.libvirt.NodeInfo;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+public class LibvirtVmStatsSamplerTest {
+    private static final String VMNAME = "i-2-3-VM";
+    private static final String DOMAIN_XML = "<domain type='kvm'><name>" + VMNAME + "</name><devices>"
+            + "<disk type='file' device='disk'><driver name='qemu' type='qcow2'/>"
+            + "<source file='/mnt/5b5ba2e4-2b8c-4e7a-a1e7-3d5e6b9a0f2a/a9e3b8b2-1f4c-4d0e-9a39-2f6b3e4d5c6b'/>"
+            + "<target dev='vda' bus='virtio'/></disk>"
+            + "<disk type='file' device='cdrom'><target dev='hdc' bus='ide'/></disk>"
+            + "<interface type='bridge'><mac address='06:00:00:00:00:01'/><source bridge='cloudbr0'/>"
+            + "<target dev='vnet0'/><model type='virtio'/></interface>"
+            + "</devices></domain>";
+
+    private Connect _conn;
+    private Domain _domain;
+    private LibvirtVmStatsSampler _sampler;
+
+    @Before
+    public void setUp() throws LibvirtException {
+        _conn = Mockito.mock(Connect.class);
+        _domain = Mockito.mock(Domain.class);
+
+        final NodeInfo nodeInfo = new NodeInfo();
+        nodeInfo.cpus = 8;
+        Mockito.when(_conn.nodeInfo()).thenReturn(nodeInfo);
+        Mockito.when(_conn.listDomains()).thenReturn(new int[] {1});
+        Mockito.when(_conn.domainLookupByID(1)).thenReturn(_domain);
+
+        Mockito.when(_domain.getName()).thenReturn(VMNAME);
+        Mockito.when(_domain.getUUIDString()).thenReturn("7b5a3f52-9d1e-4e6a-8c3a-0d4f2b1e6a90");
+        Mockito.when(_domain.getXMLDesc(0)).thenReturn(DOMAIN_XML);
+        Mockito.when(_domain.getInfo()).thenReturn(new DomainInfo());
+
+        final DomainInterfaceStats ifStats = new DomainInterfaceStats();
+        ifStats.rx_bytes = 2048;
+        ifStats.tx_bytes = 1024;
+        Mockito.when(_domain.interfaceStats("vnet0")).thenReturn(ifStats);
+
+        final DomainBlockStats blockStats = new DomainBlockStats();
+        blockStats.rd_req = 10;
+        blockStats.wr_req = 20;
+        blockStats.rd_bytes = 4096;
+        blockStats.wr_bytes = 8192;
+        Mockito.when(_domain.blockStats("vda")).thenReturn(blockStats);
+
+        _sampler = new LibvirtVmStatsSampler(Mockito.mock(LibvirtComputingResource.class), 60000L);
+    }
+
+    @Test
+    public void testSweepSamplesRunningDomains() throws LibvirtException {
+        _sampler.sweep(_conn);
+
+        final LibvirtVmStatsSampler.Sample sample = _sampler.getSample(VMNAME);
+        Assert.assertNotNull(sample);
+        Assert.assertEquals(8, sample.hostCpus);
+        Assert.assertEquals(2048, sample.rx);
+        Assert.assertEquals(1024, sample.tx);
+        Assert.assertEquals(10, sample.ioRead);
+        Assert.assertEquals(20, sample.ioWrote);
+        Assert.assertEquals(4096, sample.bytesRead);
+        Assert.assertEquals(8192, sample.bytesWrote);
+        Assert.assertEquals(2, sample.disks.size());
+        Assert.assertNull(sample.disks.get(1).stats);
+        Mockito.verify(_domain, Mockito.times(1)).blockStats(Matchers.anyString());
+    }
+
+    @Test
+    public void testDevicesAreParsedOnlyEveryFewSweeps() throws LibvirtException {
+        for (int i = 0; i < LibvirtVmStatsSampler.DEVICE_REFRESH_SWEEPS; i++) {
+            _sampler.sweep(_conn);
+        }
+        Mockito.verify(_domain, Mockito.times(1)).getXMLDesc(0);
+
+        _sampler.sweep(_conn);
+        Mockito.verify(_domain, Mockito.times(2)).getXMLDesc(0);
+    }
+
+    @Test
+    public void testDevicesAreParsedAgainForANewDomain() throws LibvirtException {
+        _sampler.sweep(_conn);
+        Mockito.when(_domain.getUUIDString()).thenReturn("0c7e6a1d-3b2f-4a5e-9d8c-7f6e5d4c3b2a");
+        _sampler.sweep(_conn);
+        Mockito.verify(_domain, Mockito.times(2)).getXMLDesc(0);
+    }
+
+    @Test
+    public void testStoppedDomainsAreDropped() throws LibvirtException {
+        _sampler.sweep(_conn);
+        Mockito.when(_conn.listDomains()).thenReturn(new int[0]);
+        _sampler.sweep(_conn);
+        Assert.assertNull(_sampler.getSample(VMNAME));
+    }
+}
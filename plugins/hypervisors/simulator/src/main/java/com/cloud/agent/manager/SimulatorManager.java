@@ -19,12 +19,15 @@ package com.cloud.agent.manager;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.cloudstack.framework.config.ConfigKey;
+
 import com.cloud.agent.api.Answer;
 import com.cloud.agent.api.Command;
 import com.cloud.agent.api.StoragePoolInfo;
 import com.cloud.simulator.MockConfigurationVO;
 import com.cloud.simulator.MockVMVO;
 import com.cloud.simulator.dao.MockConfigurationDao;
+import com.cloud.simulator.dao.MockStateStore;
 import com.cloud.utils.Pair;
 import com.cloud.utils.component.Manager;
 import com.cloud.vm.VirtualMachine.PowerState;
@@ -32,6 +35,17 @@ import com.cloud.vm.VirtualMachine.PowerState;
 public interface SimulatorManager extends Manager {
     public static final String Name = "simulator manager";
 
+    static final ConfigKey<String> MockStore = new ConfigKey<String>("Advanced", String.class, "simulator.mock.store", "database",
+            "Where the simulator keeps its mock hosts, vms, volumes and storage pools: database or memory. Changing it requires a restart "
+                    + "and does not move the existing mock state.", false);
+    static final ConfigKey<String> MockStoreSnapshotPath = new ConfigKey<String>("Advanced", String.class, "simulator.mock.store.snapshot.path", "",
+            "File the in-memory simulator state is saved to and loaded from at start, empty to keep it in memory only.", false);
+    static final ConfigKey<Integer> MockStoreSnapshotInterval = new ConfigKey<Integer>("Advanced", Integer.class, "simulator.mock.store.snapshot.interval", "300",
+            "Interval in seconds at which the in-memory simulator state is saved, 0 to save it only on shutdown.", false);
+    static final ConfigKey<String> CommandLatency = new ConfigKey<String>("Advanced", String.class, "simulator.command.latency", "",
+            "Latency added to simulated commands, as <command>=<distribution> separated by ';', where * stands for any command and a distribution is "
+                    + "fixed:<ms>, uniform:<min ms>-<max ms>, normal:<mean ms>,<stddev ms> or exponential:<mean ms>.", true);
+
     public enum AgentType {
         Computing(0), // not used anymore
         Routing(1),
@@ -71,4 +85,16 @@ public interface SimulatorManager extends Manager {
     boolean clearSimulatorMock(Long id);
 
     MockConfigurationDao getMockConfigurationDao();
+
+    MockStateStore getMockStore();
+
+    /**
+     * @return number of agent commands simulated since the management server started.
+     */
+    long getSimulatedCommandCount();
+
+    /**
+     * @return number of statements the database server executed since it started, for all clients.
+     */
+    long getDbQueryCount();
 }
@@ -17,11 +17,15 @@
 package com.cloud.agent.manager;
 
 import java.io.StringReader;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
@@ -34,6 +38,8 @@ import com.google.gson.stream.JsonReader;
 
 import org.apache.cloudstack.ca.SetupCertificateCommand;
 import org.apache.cloudstack.ca.SetupKeyStoreCommand;
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.Configurable;
 import org.apache.cloudstack.storage.command.DeleteCommand;
 import org.apache.cloudstack.storage.command.DownloadCommand;
 import org.apache.cloudstack.storage.command.DownloadProgressCommand;
@@ -120,15 +126,18 @@ import com.cloud.agent.api.storage.PrimaryStorageDownloadCommand;
 import com.cloud.api.commands.CleanupSimulatorMockCmd;
 import com.cloud.api.commands.ConfigureSimulatorCmd;
 import com.cloud.api.commands.ConfigureSimulatorHAProviderState;
+import com.cloud.api.commands.GetSimulatorServerStatsCmd;
 import com.cloud.api.commands.ListSimulatorHAStateTransitions;
 import com.cloud.api.commands.QuerySimulatorMockCmd;
 import com.cloud.resource.SimulatorStorageProcessor;
 import com.cloud.serializer.GsonHelper;
 import com.cloud.simulator.MockConfigurationVO;
 import com.cloud.simulator.MockHost;
+import com.cloud.simulator.MockLatency;
 import com.cloud.simulator.MockVMVO;
 import com.cloud.simulator.dao.MockConfigurationDao;
 import com.cloud.simulator.dao.MockHostDao;
+import com.cloud.simulator.dao.MockStateStore;
 import com.cloud.storage.resource.StorageSubsystemCommandHandler;
 import com.cloud.storage.resource.StorageSubsystemCommandHandlerBase;
 import com.cloud.utils.Pair;
@@ -140,9 +149,13 @@ import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.vm.VirtualMachine.PowerState;
 
 @Component
-public class SimulatorManagerImpl extends ManagerBase implements SimulatorManager, PluggableService {
+public class SimulatorManagerImpl extends ManagerBase implements SimulatorManager, PluggableService, Configurable {
     private static final Logger s_logger = Logger.getLogger(SimulatorManagerImpl.class);
     private static final Gson s_gson = GsonHelper.getGson();
+    // the simulated resources each inject an instance of their own
+    private static final AtomicLong s_simulatedCommands = new AtomicLong();
+    private static volatile String s_latencySpec = "";
+    private static volatile MockLatency s_latency = MockLatency.NONE;
     @Inject
     MockVmManager _mockVmMgr;
     @Inject
@@ -155,6 +168,8 @@ public class SimulatorManagerImpl extends ManagerBase implements SimulatorManage
     MockConfigurationDao _mockConfigDao;
     @Inject
     MockHostDao _mockHost = null;
+    @Inject
+    MockStateStore _mockStore;
     protected StorageSubsystemCommandHandler storageHandler;
 
     @Override
@@ -202,28 +217,67 @@ public class SimulatorManagerImpl extends ManagerBase implements SimulatorManage
         cmdList.add(CleanupSimulatorMockCmd.class);
         cmdList.add(ConfigureSimulatorHAProviderState.class);
         cmdList.add(ListSimulatorHAStateTransitions.class);
+        cmdList.add(GetSimulatorServerStatsCmd.class);
         return cmdList;
     }
 
+    @Override
+    public String getConfigComponentName() {
+        return SimulatorManagerImpl.class.getSimpleName();
+    }
+
+    @Override
+    public ConfigKey<?>[] getConfigKeys() {
+        return new ConfigKey<?>[] {MockStore, MockStoreSnapshotPath, MockStoreSnapshotInterval, CommandLatency};
+    }
+
+    private static MockLatency getLatency() {
+        final String spec = CommandLatency.value() == null ? "" : CommandLatency.value();
+        if (!spec.equals(s_latencySpec)) {
+            try {
+                s_latency = new MockLatency(spec);
+            } catch (final IllegalArgumentException e) {
+                s_logger.warn("Ignoring " + CommandLatency.key() + ": " + e.getMessage());
+                s_latency = MockLatency.NONE;
+            }
+            s_latencySpec = spec;
+        }
+        return s_latency;
+    }
+
     @DB
     @Override
     public Answer simulate(final Command cmd, final String hostGuid) {
         s_logger.debug("Simulate command " + cmd);
+        s_simulatedCommands.incrementAndGet();
+        String cmdName = cmd.toString();
+        final int index = cmdName.lastIndexOf(".");
+        if (index != -1) {
+            cmdName = cmdName.substring(index + 1);
+        }
+
+        final long latency = getLatency().sample(cmdName);
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (final InterruptedException e) {
+                s_logger.debug("thread is interrupted: " + e.toString());
+            }
+        }
+
         Answer answer = null;
         Exception exception = null;
         TransactionLegacy txn = TransactionLegacy.open(TransactionLegacy.SIMULATOR_DB);
         try {
             final MockHost host = _mockHost.findByGuid(hostGuid);
-            String cmdName = cmd.toString();
-            final int index = cmdName.lastIndexOf(".");
-            if (index != -1) {
-                cmdName = cmdName.substring(index + 1);
-            }
 
             final SimulatorInfo info = new SimulatorInfo();
             info.setHostUuid(hostGuid);
 
-            final MockConfigurationVO config = _mockConfigDao.findByNameBottomUP(host.getDataCenterId(), host.getPodId(), host.getClusterId(), host.getId(), cmdName);
+            MockConfigurationVO config = null;
+            if (_mockStore.isConfigured(cmdName)) {
+                config = _mockConfigDao.findByNameBottomUP(host.getDataCenterId(), host.getPodId(), host.getClusterId(), host.getId(), cmdName);
+            }
             if (config != null && (config.getCount() == null || config.getCount().intValue() > 0)) {
                 final Map<String, String> configParameters = config.getParameters();
                 for (final Map.Entry<String, String> entry : configParameters.entrySet()) {
@@ -520,6 +574,7 @@ public class SimulatorManagerImpl extends ManagerBase implements SimulatorManage
                 _mockConfigDao.update(config.getId(), config);
                 txn.commit();
             }
+            _mockStore.configurationChanged();
             id = config.getId();
         } catch (final Exception ex) {
             txn.rollback();
@@ -576,4 +631,28 @@ public class SimulatorManagerImpl extends ManagerBase implements SimulatorManage
     public MockConfigurationDao getMockConfigurationDao() {
         return _mockConfigDao;
     }
+
+    @Override
+    public MockStateStore getMockStore() {
+        return _mockStore;
+    }
+
+    @Override
+    public long getSimulatedCommandCount() {
+        return s_simulatedCommands.get();
+    }
+
+    @Override
+    public long getDbQueryCount() {
+        TransactionLegacy txn = TransactionLegacy.open(TransactionLegacy.CLOUD_DB);
+        try {
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement("SHOW GLOBAL STATUS LIKE 'Questions'");
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getLong(2) : 0;
+        } catch (final SQLException ex) {
+            throw new CloudRuntimeException("Unable to get the number of database queries because of " + ex.getMessage(), ex);
+        } finally {
+            txn.close();
+        }
+    }
 }
@@ -0,0 +1,78 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.cloud.api.commands;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import javax.inject.Inject;
+
+import org.apache.cloudstack.acl.RoleType;
+import org.apache.cloudstack.api.APICommand;
+import org.apache.cloudstack.api.BaseCmd;
+
+import com.cloud.agent.manager.SimulatorManager;
+import com.cloud.api.response.SimulatorServerStatsResponse;
+import com.cloud.user.Account;
+
+/**
+ * Reports counters of the management server, for benchmarks run against the
+ * simulator to compare them before and after a workload.
+ */
+@APICommand(name = GetSimulatorServerStatsCmd.APINAME,
+        description = "get garbage collection, database and agent command counters of the management server running the simulator",
+        responseObject = SimulatorServerStatsResponse.class,
+        since = "4.12", authorized = {RoleType.Admin})
+public final class GetSimulatorServerStatsCmd extends BaseCmd {
+    public static final String APINAME = "getSimulatorServerStats";
+
+    @Inject
+    private SimulatorManager _simMgr;
+
+    @Override
+    public void execute() {
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(gc.getCollectionCount(), 0);
+            gcTime += Math.max(gc.getCollectionTime(), 0);
+        }
+
+        final SimulatorServerStatsResponse response = new SimulatorServerStatsResponse();
+        response.setUptime(ManagementFactory.getRuntimeMXBean().getUptime());
+        response.setGcCount(gcCount);
+        response.setGcTime(gcTime);
+        response.setHeapUsed(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        response.setThreadCount(ManagementFactory.getThreadMXBean().getThreadCount());
+        response.setDbQueries(_simMgr.getDbQueryCount());
+        response.setAgentCommands(_simMgr.getSimulatedCommandCount());
+        response.setResponseName(getCommandName());
+        response.setObjectName("simulatorserverstats");
+        setResponseObject(response);
+    }
+
+    @Override
+    public String getCommandName() {
+        return APINAME.toLowerCase() + BaseCmd.RESPONSE_SUFFIX;
+    }
+
+    @Override
+    public long getEntityOwnerId() {
+        return Account.ACCOUNT_ID_SYSTEM;
+    }
+}
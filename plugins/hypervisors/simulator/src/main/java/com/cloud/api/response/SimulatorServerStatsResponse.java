@@ -0,0 +1,73 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.cloud.api.response;
+
+import com.cloud.serializer.Param;
+import com.google.gson.annotations.SerializedName;
+import org.apache.cloudstack.api.BaseResponse;
+
+public class SimulatorServerStatsResponse extends BaseResponse {
+    @SerializedName("uptime") @Param(description="the time in milliseconds since the management server started")
+    private Long uptime;
+
+    @SerializedName("gccount") @Param(description="the number of garbage collections since the management server started")
+    private Long gcCount;
+
+    @SerializedName("gctime") @Param(description="the time in milliseconds spent in garbage collections since the management server started")
+    private Long gcTime;
+
+    @SerializedName("heapused") @Param(description="the heap memory used in bytes")
+    private Long heapUsed;
+
+    @SerializedName("threadcount") @Param(description="the number of live threads")
+    private Integer threadCount;
+
+    @SerializedName("dbqueries") @Param(description="the number of statements executed by the database server since it started")
+    private Long dbQueries;
+
+    @SerializedName("agentcommands") @Param(description="the number of agent commands simulated since the management server started")
+    private Long agentCommands;
+
+    public void setUptime(Long uptime) {
+        this.uptime = uptime;
+    }
+
+    public void setGcCount(Long gcCount) {
+        this.gcCount = gcCount;
+    }
+
+    public void setGcTime(Long gcTime) {
+        this.gcTime = gcTime;
+    }
+
+    public void setHeapUsed(Long heapUsed) {
+        this.heapUsed = heapUsed;
+    }
+
+    public void setThreadCount(Integer threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public void setDbQueries(Long dbQueries) {
+        this.dbQueries = dbQueries;
+    }
+
+    public void setAgentCommands(Long agentCommands) {
+        this.agentCommands = agentCommands;
+    }
+}
@@ -0,0 +1,125 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * MockLatency draws the time a simulated command takes from the
+ * distribution configured for it in simulator.command.latency, e.g.
+ * "StartCommand=normal:2000,500;CopyCommand=uniform:500-5000;*=exponential:20".
+ */
+public class MockLatency {
+    public static final MockLatency NONE = new MockLatency("");
+
+    private static final String ANY_COMMAND = "*";
+
+    private final Map<String, Distribution> _distributions = new HashMap<String, Distribution>();
+
+    enum Kind {
+        fixed, uniform, normal, exponential
+    }
+
+    static class Distribution {
+        final Kind kind;
+        final double first;
+        final double second;
+
+        Distribution(Kind kind, double first, double second) {
+            this.kind = kind;
+            this.first = first;
+            this.second = second;
+        }
+
+        long sample() {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final double value;
+            switch (kind) {
+            case uniform:
+                value = first + random.nextDouble() * (second - first);
+                break;
+            case normal:
+                value = first + random.nextGaussian() * second;
+                break;
+            case exponential:
+                value = -first * Math.log(1 - random.nextDouble());
+                break;
+            default:
+                value = first;
+            }
+            return Math.max(0, Math.round(value));
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the spec cannot be parsed.
+     */
+    public MockLatency(String spec) {
+        for (String entry : (spec == null ? "" : spec).split(";")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            final int equals = entry.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected <command>=<distribution> but got " + entry);
+            }
+            _distributions.put(entry.substring(0, equals).trim(), parse(entry.substring(equals + 1).trim()));
+        }
+    }
+
+    private static Distribution parse(String distribution) {
+        final int colon = distribution.indexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected <kind>:<parameters> but got " + distribution);
+        }
+        final Kind kind;
+        try {
+            kind = Kind.valueOf(distribution.substring(0, colon).trim().toLowerCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown latency distribution " + distribution);
+        }
+        final String parameters = distribution.substring(colon + 1);
+        try {
+            switch (kind) {
+            case uniform:
+                final String[] range = parameters.split("-");
+                return new Distribution(kind, Double.parseDouble(range[0].trim()), Double.parseDouble(range[1].trim()));
+            case normal:
+                final String[] normal = parameters.split(",");
+                return new Distribution(kind, Double.parseDouble(normal[0].trim()), Double.parseDouble(normal[1].trim()));
+            default:
+                return new Distribution(kind, Double.parseDouble(parameters.trim()), 0);
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid parameters for latency distribution " + distribution);
+        }
+    }
+
+    /**
+     * @return the time in milliseconds the command should take, 0 if no
+     *         latency is configured for it.
+     */
+    public long sample(String command) {
+        Distribution distribution = _distributions.get(command);
+        if (distribution == null) {
+            distribution = _distributions.get(ANY_COMMAND);
+        }
+        return distribution == null ? 0 : distribution.sample();
+    }
+}
@@ -16,6 +16,7 @@
 // under the License.
 package com.cloud.simulator.dao;
 
+import javax.inject.Inject;
 
 import org.springframework.stereotype.Component;
 
@@ -28,6 +29,8 @@ import com.cloud.utils.db.SearchCriteria;
 @Component
 public class MockHostDaoImpl extends GenericDaoBase<MockHostVO, Long> implements MockHostDao {
     protected final SearchBuilder<MockHostVO> GuidSearch;
+    @Inject
+    MockStateStore _store;
 
     public MockHostDaoImpl() {
         GuidSearch = createSearchBuilder();
@@ -37,6 +40,9 @@ public class MockHostDaoImpl extends GenericDaoBase<MockHostVO, Long> implements
 
     @Override
     public MockHost findByGuid(String guid) {
+        if (_store.isEnabled()) {
+            return _store.hosts().findOneBy("guid", guid);
+        }
         SearchCriteria<MockHostVO> sc = GuidSearch.create();
         sc.setParameters("guid", guid);
         return findOneBy(sc);
@@ -57,4 +63,24 @@ public class MockHostDaoImpl extends GenericDaoBase<MockHostVO, Long> implements
         return this.remove(host.getId());
     }
 
+    @Override
+    public MockHostVO persist(MockHostVO host) {
+        return _store.isEnabled() ? _store.hosts().persist(host) : super.persist(host);
+    }
+
+    @Override
+    public MockHostVO findById(Long id) {
+        return _store.isEnabled() ? _store.hosts().findById(id) : super.findById(id);
+    }
+
+    @Override
+    public boolean update(Long id, MockHostVO host) {
+        return _store.isEnabled() ? _store.hosts().update(id, host) : super.update(id, host);
+    }
+
+    @Override
+    public boolean remove(Long id) {
+        return _store.isEnabled() ? _store.hosts().remove(id) : super.remove(id);
+    }
+
 }
@@ -0,0 +1,454 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.simulator.dao;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.inject.Inject;
+import javax.naming.ConfigurationException;
+
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
+import org.apache.log4j.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import com.cloud.agent.manager.SimulatorManager;
+import com.cloud.simulator.MockConfigurationVO;
+import com.cloud.simulator.MockHostVO;
+import com.cloud.simulator.MockStoragePoolVO;
+import com.cloud.simulator.MockVMVO;
+import com.cloud.simulator.MockVolumeVO;
+import com.cloud.utils.component.ManagerBase;
+import com.cloud.utils.concurrency.NamedThreadFactory;
+import com.cloud.utils.db.TransactionLegacy;
+import com.cloud.utils.exception.CloudRuntimeException;
+
+/**
+ * MockStateStore keeps the simulated hosts, vms, volumes and storage pools in
+ * memory instead of the simulator database, when simulator.mock.store is set
+ * to memory.  The mock DAOs hand their calls over to it while it is enabled.
+ *
+ * Rows are copied in and out of the store, so callers see the same semantics
+ * as with the database: a row changes only when it is updated.  Reads do not
+ * lock, writes to a table are serialized so that its indexes stay in step
+ * with its rows.  The store can be saved to a file periodically and is loaded
+ * from that file when the management server starts.
+ */
+public class MockStateStore extends ManagerBase {
+    private static final Logger s_logger = Logger.getLogger(MockStateStore.class);
+
+    public static final String STORE_MEMORY = "memory";
+    public static final String STORE_DATABASE = "database";
+
+    private static final Gson s_gson = new Gson();
+
+    @Inject
+    MockConfigurationDao _mockConfigDao;
+
+    private volatile boolean _enabled;
+    private volatile Set<String> _configuredCommands;
+    private ScheduledExecutorService _snapshotExecutor;
+
+    private final Table<MockHostVO> _hosts = new Table<MockHostVO>(MockHostVO.class);
+    private final Table<MockVMVO> _vms = new Table<MockVMVO>(MockVMVO.class);
+    private final Table<MockVolumeVO> _volumes = new Table<MockVolumeVO>(MockVolumeVO.class);
+    private final Table<MockStoragePoolVO> _pools = new Table<MockStoragePoolVO>(MockStoragePoolVO.class);
+
+    public MockStateStore() {
+        _hosts.index("guid", host -> host.getGuid());
+        _vms.index("name", vm -> vm.getName());
+        _vms.index("hostId", vm -> vm.getHostId());
+        _volumes.index("name", volume -> volume.getName());
+        _volumes.index("path", volume -> volume.getPath());
+        _volumes.index("poolId", volume -> volume.getPoolId());
+        _pools.index("uuid", pool -> pool.getUuid());
+        _pools.index("hostGuid", pool -> pool.getHostGuid());
+    }
+
+    /**
+     * A table of rows of one type, with an index on the columns the mock
+     * DAOs search by.
+     */
+    public static class Table<T> {
+        private final Class<T> _clazz;
+        private final Field _idField;
+        private final AtomicLong _sequence = new AtomicLong();
+        private final ConcurrentHashMap<Long, T> _rows = new ConcurrentHashMap<Long, T>();
+        private final Map<String, Function<T, Object>> _columns = new LinkedHashMap<String, Function<T, Object>>();
+        private final Map<String, ConcurrentHashMap<Object, Set<Long>>> _indexes = new HashMap<String, ConcurrentHashMap<Object, Set<Long>>>();
+
+        Table(Class<T> clazz) {
+            _clazz = clazz;
+            try {
+                _idField = clazz.getDeclaredField("id");
+                _idField.setAccessible(true);
+            } catch (NoSuchFieldException e) {
+                throw new CloudRuntimeException(clazz.getSimpleName() + " has no id", e);
+            }
+        }
+
+        void index(String column, Function<T, Object> value) {
+            _columns.put(column, value);
+            _indexes.put(column, new ConcurrentHashMap<Object, Set<Long>>());
+        }
+
+        private T copy(T row) {
+            return row == null ? null : s_gson.fromJson(s_gson.toJsonTree(row), _clazz);
+        }
+
+        private long getId(T row) {
+            try {
+                return _idField.getLong(row);
+            } catch (IllegalAccessException e) {
+                throw new CloudRuntimeException("Unable to read the id of " + row, e);
+            }
+        }
+
+        private void setId(T row, long id) {
+            try {
+                _idField.setLong(row, id);
+            } catch (IllegalAccessException e) {
+                throw new CloudRuntimeException("Unable to set the id of " + row, e);
+            }
+        }
+
+        private void addToIndexes(long id, T row) {
+            for (Map.Entry<String, Function<T, Object>> column : _columns.entrySet()) {
+                final Object value = column.getValue().apply(row);
+                if (value != null) {
+                    _indexes.get(column.getKey()).computeIfAbsent(value, v -> new ConcurrentSkipListSet<Long>()).add(id);
+                }
+            }
+        }
+
+        private void removeFromIndexes(long id, T row) {
+            for (Map.Entry<String, Function<T, Object>> column : _columns.entrySet()) {
+                final Object value = column.getValue().apply(row);
+                if (value == null) {
+                    continue;
+                }
+                final ConcurrentHashMap<Object, Set<Long>> index = _indexes.get(column.getKey());
+                final Set<Long> ids = index.get(value);
+                if (ids != null) {
+                    ids.remove(id);
+                    if (ids.isEmpty()) {
+                        index.remove(value, ids);
+                    }
+                }
+            }
+        }
+
+        private synchronized void put(long id, T row) {
+            final T previous = _rows.put(id, row);
+            if (previous != null) {
+                removeFromIndexes(id, previous);
+            }
+            addToIndexes(id, row);
+        }
+
+        public T persist(T entity) {
+            final T row = copy(entity);
+            long id = getId(row);
+            if (id == 0) {
+                id = _sequence.incrementAndGet();
+                setId(row, id);
+            } else {
+                _sequence.accumulateAndGet(id, Math::max);
+            }
+            put(id, row);
+            return copy(row);
+        }
+
+        public T findById(long id) {
+            return copy(_rows.get(id));
+        }
+
+        public boolean update(long id, T entity) {
+            final T row = copy(entity);
+            setId(row, id);
+            synchronized (this) {
+                if (!_rows.containsKey(id)) {
+                    return false;
+                }
+                put(id, row);
+            }
+            return true;
+        }
+
+        public synchronized boolean remove(long id) {
+            final T row = _rows.remove(id);
+            if (row == null) {
+                return false;
+            }
+            removeFromIndexes(id, row);
+            return true;
+        }
+
+        /**
+         * @return the rows which have the value in the indexed column, in the
+         *         order they were created.
+         */
+        public List<T> listBy(String column, Object value) {
+            final Set<Long> ids = value != null ? _indexes.get(column).get(value) : null;
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            final List<T> rows = new ArrayList<T>(ids.size());
+            for (Long id : ids) {
+                final T row = _rows.get(id);
+                if (row != null) {
+                    rows.add(copy(row));
+                }
+            }
+            return rows;
+        }
+
+        public T findOneBy(String column, Object value) {
+            final Set<Long> ids = value != null ? _indexes.get(column).get(value) : null;
+            if (ids != null) {
+                for (Long id : ids) {
+                    final T row = _rows.get(id);
+                    if (row != null) {
+                        return copy(row);
+                    }
+                }
+            }
+            return null;
+        }
+
+        public List<T> listAll() {
+            final List<T> rows = new ArrayList<T>(_rows.size());
+            for (T row : _rows.values()) {
+                rows.add(copy(row));
+            }
+            return rows;
+        }
+
+        public int size() {
+            return _rows.size();
+        }
+
+        synchronized void clear() {
+            _rows.clear();
+            for (ConcurrentHashMap<Object, Set<Long>> index : _indexes.values()) {
+                index.clear();
+            }
+            _sequence.set(0);
+        }
+
+        synchronized JsonElement save() {
+            final JsonObject table = new JsonObject();
+            table.addProperty("sequence", _sequence.get());
+            final JsonArray rows = new JsonArray();
+            for (T row : _rows.values()) {
+                rows.add(s_gson.toJsonTree(row));
+            }
+            table.add("rows", rows);
+            return table;
+        }
+
+        synchronized void load(JsonObject table) {
+            clear();
+            for (JsonElement element : table.getAsJsonArray("rows")) {
+                final T row = s_gson.fromJson(element, _clazz);
+                put(getId(row), row);
+            }
+            _sequence.set(Math.max(_sequence.get(), table.get("sequence").getAsLong()));
+        }
+    }
+
+    @Override
+    public boolean configure(String name, Map<String, Object> params) throws ConfigurationException {
+        _enabled = STORE_MEMORY.equalsIgnoreCase(SimulatorManager.MockStore.value());
+        if (_enabled) {
+            final File snapshot = getSnapshotFile();
+            if (snapshot != null && snapshot.exists()) {
+                try {
+                    restore(snapshot);
+                } catch (IOException e) {
+                    throw new ConfigurationException("Unable to load the simulator state from " + snapshot + ": " + e.getMessage());
+                }
+            }
+            s_logger.info("Simulator keeps the state of the mock hosts in memory");
+        }
+        return true;
+    }
+
+    @Override
+    public boolean start() {
+        final int interval = SimulatorManager.MockStoreSnapshotInterval.value();
+        if (_enabled && getSnapshotFile() != null && interval > 0) {
+            _snapshotExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("SimulatorStoreSnapshot"));
+            _snapshotExecutor.scheduleWithFixedDelay(new ManagedContextRunnable() {
+                @Override
+                protected void runInContext() {
+                    try {
+                        snapshot(getSnapshotFile());
+                    } catch (Exception e) {
+                        s_logger.warn("Unable to save the simulator state", e);
+                    }
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (_snapshotExecutor != null) {
+            _snapshotExecutor.shutdown();
+        }
+        final File snapshot = getSnapshotFile();
+        if (_enabled && snapshot != null) {
+            try {
+                snapshot(snapshot);
+            } catch (IOException e) {
+                s_logger.warn("Unable to save the simulator state to " + snapshot, e);
+            }
+        }
+        return true;
+    }
+
+    private File getSnapshotFile() {
+        final String path = SimulatorManager.MockStoreSnapshotPath.value();
+        return path == null || path.trim().isEmpty() ? null : new File(path.trim());
+    }
+
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    public Table<MockHostVO> hosts() {
+        return _hosts;
+    }
+
+    public Table<MockVMVO> vms() {
+        return _vms;
+    }
+
+    public Table<MockVolumeVO> volumes() {
+        return _volumes;
+    }
+
+    public Table<MockStoragePoolVO> pools() {
+        return _pools;
+    }
+
+    /**
+     * Tells whether a mock configuration may exist for the command, so that
+     * commands nobody configured do not need to look them up in the
+     * simulator database.  Only known while the store is enabled; the
+     * commands are loaded once and reloaded after a configuration changes.
+     */
+    public boolean isConfigured(String command) {
+        if (!_enabled) {
+            return true;
+        }
+        Set<String> commands = _configuredCommands;
+        if (commands == null) {
+            commands = new HashSet<String>();
+            TransactionLegacy txn = TransactionLegacy.open(TransactionLegacy.SIMULATOR_DB);
+            try {
+                for (MockConfigurationVO config : _mockConfigDao.listAll()) {
+                    commands.add(config.getName());
+                }
+            } finally {
+                txn.close();
+                txn = TransactionLegacy.open(TransactionLegacy.CLOUD_DB);
+                txn.close();
+            }
+            _configuredCommands = commands;
+        }
+        return commands.contains(command);
+    }
+
+    public void configurationChanged() {
+        _configuredCommands = null;
+    }
+
+    /**
+     * Saves the tables to the file, by writing a new file and moving it in
+     * place so that a crash leaves the previous snapshot intact.
+     */
+    public void snapshot(File file) throws IOException {
+        final long begin = System.currentTimeMillis();
+        final JsonObject state = new JsonObject();
+        state.add("hosts", _hosts.save());
+        state.add("vms", _vms.save());
+        state.add("volumes", _volumes.save());
+        state.add("pools", _pools.save());
+
+        final File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.exists()) {
+            directory.mkdirs();
+        }
+        final File temp = new File(file.getPath() + ".tmp");
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+            s_gson.toJson(state, writer);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Saved " + _hosts.size() + " mock hosts and " + _vms.size() + " mock vms to " + file + " in " + (System.currentTimeMillis() - begin) + "ms");
+        }
+    }
+
+    public void restore(File file) throws IOException {
+        final JsonObject state;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            state = new JsonParser().parse(reader).getAsJsonObject();
+        }
+        _hosts.load(state.getAsJsonObject("hosts"));
+        _vms.load(state.getAsJsonObject("vms"));
+        _volumes.load(state.getAsJsonObject("volumes"));
+        _pools.load(state.getAsJsonObject("pools"));
+        s_logger.info("Loaded " + _hosts.size() + " mock hosts and " + _vms.size() + " mock vms from " + file);
+    }
+}
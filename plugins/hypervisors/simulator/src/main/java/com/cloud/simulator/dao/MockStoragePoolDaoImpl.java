@@ -16,6 +16,7 @@
 // under the License.
 package com.cloud.simulator.dao;
 
+import javax.inject.Inject;
 
 import org.springframework.stereotype.Component;
 
@@ -29,9 +30,14 @@ import com.cloud.utils.db.SearchCriteria;
 public class MockStoragePoolDaoImpl extends GenericDaoBase<MockStoragePoolVO, Long> implements MockStoragePoolDao {
     protected final SearchBuilder<MockStoragePoolVO> uuidSearch;
     protected final SearchBuilder<MockStoragePoolVO> hostguidSearch;
+    @Inject
+    MockStateStore _store;
 
     @Override
     public MockStoragePoolVO findByUuid(String uuid) {
+        if (_store.isEnabled()) {
+            return _store.pools().findOneBy("uuid", uuid);
+        }
         SearchCriteria<MockStoragePoolVO> sc = uuidSearch.create();
         sc.setParameters("uuid", uuid);
         return findOneBy(sc);
@@ -50,10 +56,37 @@ public class MockStoragePoolDaoImpl extends GenericDaoBase<MockStoragePoolVO, Lo
 
     @Override
     public MockStoragePoolVO findByHost(String hostUuid) {
+        if (_store.isEnabled()) {
+            for (MockStoragePoolVO pool : _store.pools().listBy("hostGuid", hostUuid)) {
+                if (pool.getPoolType() == StoragePoolType.Filesystem) {
+                    return pool;
+                }
+            }
+            return null;
+        }
         SearchCriteria<MockStoragePoolVO> sc = hostguidSearch.create();
         sc.setParameters("hostguid", hostUuid);
         sc.setParameters("type", StoragePoolType.Filesystem.toString());
         return findOneBy(sc);
     }
 
+    @Override
+    public MockStoragePoolVO persist(MockStoragePoolVO pool) {
+        return _store.isEnabled() ? _store.pools().persist(pool) : super.persist(pool);
+    }
+
+    @Override
+    public MockStoragePoolVO findById(Long id) {
+        return _store.isEnabled() ? _store.pools().findById(id) : super.findById(id);
+    }
+
+    @Override
+    public boolean update(Long id, MockStoragePoolVO pool) {
+        return _store.isEnabled() ? _store.pools().update(id, pool) : super.update(id, pool);
+    }
+
+    @Override
+    public boolean remove(Long id) {
+        return _store.isEnabled() ? _store.pools().remove(id) : super.remove(id);
+    }
 }
@@ -40,6 +40,8 @@ public class MockVMDaoImpl extends GenericDaoBase<MockVMVO, Long> implements Moc
     protected SearchBuilder<MockVMVO> vmhostSearch;
     @Inject
     MockHostDao _mockHostDao;
+    @Inject
+    MockStateStore _store;
 
     @Override
     public List<MockVMVO> findByHostId(long hostId) {
@@ -48,6 +50,9 @@ public class MockVMDaoImpl extends GenericDaoBase<MockVMVO, Long> implements Moc
 
     @Override
     public MockVMVO findByVmName(String vmName) {
+        if (_store.isEnabled()) {
+            return _store.vms().findOneBy("name", vmName);
+        }
         SearchCriteria<MockVMVO> sc = vmNameSearch.create();
         sc.setParameters("name", vmName);
         return findOneBy(sc);
@@ -55,6 +60,18 @@ public class MockVMDaoImpl extends GenericDaoBase<MockVMVO, Long> implements Moc
 
     @Override
     public List<MockVMVO> findByHostGuid(String guid) {
+        if (_store.isEnabled()) {
+            final List<MockVMVO> vms = new ArrayList<MockVMVO>();
+            final MockHostVO host = _store.hosts().findOneBy("guid", guid);
+            if (host != null) {
+                for (MockVMVO vm : _store.vms().listBy("hostId", host.getId())) {
+                    if (vm.getPowerState() == VirtualMachine.PowerState.PowerOn) {
+                        vms.add(vm);
+                    }
+                }
+            }
+            return vms;
+        }
         SearchCriteria<MockVMVO> sc = GuidSearch.create();
         sc.setJoinParameters("host", "guid", guid);
         sc.setParameters("power_state", VirtualMachine.PowerState.PowerOn);
@@ -63,6 +80,17 @@ public class MockVMDaoImpl extends GenericDaoBase<MockVMVO, Long> implements Moc
 
     @Override
     public MockVMVO findByVmNameAndHost(String vmName, String hostGuid) {
+        if (_store.isEnabled()) {
+            final MockHostVO host = _store.hosts().findOneBy("guid", hostGuid);
+            if (host != null) {
+                for (MockVMVO vm : _store.vms().listBy("name", vmName)) {
+                    if (vm.getHostId() == host.getId()) {
+                        return vm;
+                    }
+                }
+            }
+            return null;
+        }
         SearchCriteria<MockVMVO> sc = vmhostSearch.create();
         sc.setJoinParameters("host", "guid", hostGuid);
         sc.setParameters("name", vmName);
@@ -92,4 +120,24 @@ public class MockVMDaoImpl extends GenericDaoBase<MockVMVO, Long> implements Moc
 
         return true;
     }
+
+    @Override
+    public MockVMVO persist(MockVMVO vm) {
+        return _store.isEnabled() ? _store.vms().persist(vm) : super.persist(vm);
+    }
+
+    @Override
+    public MockVMVO findById(Long id) {
+        return _store.isEnabled() ? _store.vms().findById(id) : super.findById(id);
+    }
+
+    @Override
+    public boolean update(Long id, MockVMVO vm) {
+        return _store.isEnabled() ? _store.vms().update(id, vm) : super.update(id, vm);
+    }
+
+    @Override
+    public boolean remove(Long id) {
+        return _store.isEnabled() ? _store.vms().remove(id) : super.remove(id);
+    }
 }
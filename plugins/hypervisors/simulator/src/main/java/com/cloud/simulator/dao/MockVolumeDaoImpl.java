@@ -16,8 +16,10 @@
 // under the License.
 package com.cloud.simulator.dao;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import javax.inject.Inject;
 
 import org.springframework.stereotype.Component;
 
@@ -36,9 +38,20 @@ public class MockVolumeDaoImpl extends GenericDaoBase<MockVolumeVO, Long> implem
     protected final SearchBuilder<MockVolumeVO> namePoolSearch;
     protected final SearchBuilder<MockVolumeVO> nameSearch;
     protected final GenericSearchBuilder<MockVolumeVO, Long> totalSearch;
+    @Inject
+    MockStateStore _store;
 
     @Override
     public List<MockVolumeVO> findByStorageIdAndType(long id, MockVolumeType type) {
+        if (_store.isEnabled()) {
+            final List<MockVolumeVO> volumes = new ArrayList<MockVolumeVO>();
+            for (MockVolumeVO volume : _store.volumes().listBy("poolId", id)) {
+                if (volume.getType() == type) {
+                    volumes.add(volume);
+                }
+            }
+            return volumes;
+        }
         SearchCriteria<MockVolumeVO> sc = idTypeSearch.create();
         sc.setParameters("storageId", id);
         sc.setParameters("type", type);
@@ -47,6 +60,13 @@ public class MockVolumeDaoImpl extends GenericDaoBase<MockVolumeVO, Long> implem
 
     @Override
     public Long findTotalStorageId(long id) {
+        if (_store.isEnabled()) {
+            long total = 0;
+            for (MockVolumeVO volume : _store.volumes().listBy("poolId", id)) {
+                total += volume.getSize();
+            }
+            return total;
+        }
         SearchCriteria<Long> sc = totalSearch.create();
 
         sc.setParameters("poolId", id);
@@ -55,6 +75,19 @@ public class MockVolumeDaoImpl extends GenericDaoBase<MockVolumeVO, Long> implem
 
     @Override
     public MockVolumeVO findByStoragePathAndType(String path) {
+        if (_store.isEnabled()) {
+            final MockVolumeVO volume = _store.volumes().findOneBy("path", path);
+            if (volume != null || path == null) {
+                return volume;
+            }
+            // the path is matched with like '%path%'
+            for (MockVolumeVO candidate : _store.volumes().listAll()) {
+                if (candidate.getPath() != null && candidate.getPath().contains(path)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
         SearchCriteria<MockVolumeVO> sc = pathTypeSearch.create();
         sc.setParameters("path", "%" + path + "%");
         return findOneBy(sc);
@@ -62,6 +95,14 @@ public class MockVolumeDaoImpl extends GenericDaoBase<MockVolumeVO, Long> implem
 
     @Override
     public MockVolumeVO findByNameAndPool(String volumeName, String poolUUID) {
+        if (_store.isEnabled()) {
+            for (MockVolumeVO volume : _store.volumes().listBy("name", volumeName)) {
+                if (String.valueOf(volume.getPoolId()).equals(poolUUID)) {
+                    return volume;
+                }
+            }
+            return null;
+        }
         SearchCriteria<MockVolumeVO> sc = namePoolSearch.create();
         sc.setParameters("name", volumeName);
         sc.setParameters("poolUuid", poolUUID);
@@ -70,6 +111,9 @@ public class MockVolumeDaoImpl extends GenericDaoBase<MockVolumeVO, Long> implem
 
     @Override
     public MockVolumeVO findByName(String volumeName) {
+        if (_store.isEnabled()) {
+            return _store.volumes().findOneBy("name", volumeName);
+        }
         SearchCriteria<MockVolumeVO> sc = nameSearch.create();
         sc.setParameters("name", volumeName);
         return findOneBy(sc);
@@ -100,4 +144,24 @@ public class MockVolumeDaoImpl extends GenericDaoBase<MockVolumeVO, Long> implem
         totalSearch.done();
 
     }
+
+    @Override
+    public MockVolumeVO persist(MockVolumeVO volume) {
+        return _store.isEnabled() ? _store.volumes().persist(volume) : super.persist(volume);
+    }
+
+    @Override
+    public MockVolumeVO findById(Long id) {
+        return _store.isEnabled() ? _store.volumes().findById(id) : super.findById(id);
+    }
+
+    @Override
+    public boolean update(Long id, MockVolumeVO volume) {
+        return _store.isEnabled() ? _store.volumes().update(id, volume) : super.update(id, volume);
+    }
+
+    @Override
+    public boolean remove(Long id) {
+        return _store.isEnabled() ? _store.volumes().remove(id) : super.remove(id);
+    }
 }
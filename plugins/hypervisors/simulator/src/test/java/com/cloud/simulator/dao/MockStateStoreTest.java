@@ -0,0 +1,137 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.simulator.dao;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cloud.simulator.MockHostVO;
+import com.cloud.simulator.MockLatency;
+import com.cloud.simulator.MockVMVO;
+import com.cloud.vm.VirtualMachine.PowerState;
+
+public class MockStateStoreTest {
+
+    private static MockVMVO vm(String name, long hostId) {
+        MockVMVO vm = new MockVMVO();
+        vm.setName(name);
+        vm.setHostId(hostId);
+        vm.setPowerState(PowerState.PowerOn);
+        return vm;
+    }
+
+    @Test
+    public void testRowsAreCopied() {
+        MockStateStore store = new MockStateStore();
+        MockVMVO vm = store.vms().persist(vm("i-2-3-VM", 1L));
+        Assert.assertEquals(1L, vm.getId());
+
+        vm.setPowerState(PowerState.PowerOff);
+        Assert.assertEquals(PowerState.PowerOn, store.vms().findById(vm.getId()).getPowerState());
+
+        Assert.assertTrue(store.vms().update(vm.getId(), vm));
+        Assert.assertEquals(PowerState.PowerOff, store.vms().findById(vm.getId()).getPowerState());
+        Assert.assertFalse(store.vms().update(42L, vm));
+    }
+
+    @Test
+    public void testIndexesFollowUpdates() {
+        MockStateStore store = new MockStateStore();
+        MockVMVO first = store.vms().persist(vm("i-2-3-VM", 1L));
+        store.vms().persist(vm("i-2-4-VM", 1L));
+
+        Assert.assertEquals(2, store.vms().listBy("hostId", 1L).size());
+
+        first.setHostId(2L);
+        store.vms().update(first.getId(), first);
+        Assert.assertEquals(1, store.vms().listBy("hostId", 1L).size());
+        Assert.assertEquals("i-2-3-VM", store.vms().listBy("hostId", 2L).get(0).getName());
+
+        Assert.assertTrue(store.vms().remove(first.getId()));
+        Assert.assertNull(store.vms().findOneBy("name", "i-2-3-VM"));
+        Assert.assertTrue(store.vms().listBy("hostId", 2L).isEmpty());
+    }
+
+    @Test
+    public void testConcurrentPersistsGetDistinctIds() throws Exception {
+        final MockStateStore store = new MockStateStore();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final long hostId = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        store.vms().persist(vm("i-" + hostId + "-" + i + "-VM", hostId));
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(8000, store.vms().size());
+        for (int t = 0; t < 8; t++) {
+            Assert.assertEquals(1000, store.vms().listBy("hostId", (long)t).size());
+        }
+    }
+
+    @Test
+    public void testSnapshotIsRestored() throws Exception {
+        MockStateStore store = new MockStateStore();
+        MockHostVO host = new MockHostVO();
+        host.setGuid("guid-1");
+        host = store.hosts().persist(host);
+        store.vms().persist(vm("i-2-3-VM", host.getId()));
+
+        File file = File.createTempFile("simulator", ".json");
+        try {
+            store.snapshot(file);
+            MockStateStore restored = new MockStateStore();
+            restored.restore(file);
+
+            Assert.assertEquals(host.getId(), restored.hosts().findOneBy("guid", "guid-1").getId());
+            Assert.assertEquals("i-2-3-VM", restored.vms().listBy("hostId", host.getId()).get(0).getName());
+            Assert.assertEquals(2L, restored.vms().persist(vm("i-2-4-VM", host.getId())).getId());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLatencyDistributions() {
+        MockLatency latency = new MockLatency("StartCommand=uniform:10-20; StopCommand=fixed:5; *=normal:100,0");
+        for (int i = 0; i < 100; i++) {
+            long start = latency.sample("StartCommand");
+            Assert.assertTrue(start >= 10 && start <= 20);
+        }
+        Assert.assertEquals(5L, latency.sample("StopCommand"));
+        Assert.assertEquals(100L, latency.sample("PingCommand"));
+        Assert.assertEquals(0L, MockLatency.NONE.sample("StartCommand"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLatencyIsRejected() {
+        new MockLatency("StartCommand=gamma:1");
+    }
+}
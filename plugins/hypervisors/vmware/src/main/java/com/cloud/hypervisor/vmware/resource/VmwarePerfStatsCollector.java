@@ -0,0 +1,412 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.vmware.resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.datatype.DatatypeFactory;
+
+import org.apache.log4j.Logger;
+
+import com.cloud.hypervisor.vmware.mo.PerfCounterInfoMapper;
+import com.cloud.hypervisor.vmware.util.VmwareContext;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.PerfCounterInfo;
+import com.vmware.vim25.PerfEntityMetric;
+import com.vmware.vim25.PerfEntityMetricBase;
+import com.vmware.vim25.PerfMetricId;
+import com.vmware.vim25.PerfMetricIntSeries;
+import com.vmware.vim25.PerfMetricSeries;
+import com.vmware.vim25.PerfQuerySpec;
+import com.vmware.vim25.PerfSampleInfo;
+import com.vmware.vim25.PerfSummaryType;
+
+/**
+ * VmwarePerfStatsCollector fetches the network and disk performance counters
+ * of the vms on a host with a single QueryPerf call for all of them, and keeps
+ * the result as a snapshot that the vm stats and the vm disk stats of the same
+ * collection round are both answered from.  The counter metadata is fetched
+ * once per vCenter, as the counter ids do not change while it runs.
+ *
+ * The disk counters are also added up per sample into cumulative counters,
+ * which is what the vm disk stats are expected to report, as they are on KVM.
+ * A sample is only counted once, however often it is queried.
+ */
+public class VmwarePerfStatsCollector {
+    private static final Logger s_logger = Logger.getLogger(VmwarePerfStatsCollector.class);
+
+    // the interval of the realtime counters, in seconds
+    static final int REALTIME_INTERVAL = 20;
+    // how long vCenter keeps the realtime counters, in milliseconds
+    static final long REALTIME_HISTORY = 3600 * 1000L;
+
+    private static final String NET = "net";
+    private static final String VIRTUAL_DISK = "virtualDisk";
+
+    // vCenter address -> its counter metadata
+    private static final Map<String, PerfCounterInfoMapper> s_counters = new ConcurrentHashMap<String, PerfCounterInfoMapper>();
+
+    private final int _samples;
+    private final long _maxAgeMs;
+
+    // vm mor value -> stats of the vm, as of _snapshotTime
+    private Map<String, VmPerfStats> _snapshot = new HashMap<String, VmPerfStats>();
+    private long _snapshotTime;
+
+    // vm mor value -> the cumulative disk counters of the vm
+    private final Map<String, VmDiskCounters> _diskCounters = new HashMap<String, VmDiskCounters>();
+
+    public static class DiskPerfStats {
+        private double _readKBs;
+        private double _writeKBs;
+        private double _readIOs;
+        private double _writeIOs;
+
+        public double getReadKBs() {
+            return _readKBs;
+        }
+
+        public double getWriteKBs() {
+            return _writeKBs;
+        }
+
+        public double getReadIOs() {
+            return _readIOs;
+        }
+
+        public double getWriteIOs() {
+            return _writeIOs;
+        }
+
+        private DiskPerfStats copy() {
+            final DiskPerfStats copy = new DiskPerfStats();
+            copy._readKBs = _readKBs;
+            copy._writeKBs = _writeKBs;
+            copy._readIOs = _readIOs;
+            copy._writeIOs = _writeIOs;
+            return copy;
+        }
+    }
+
+    // the disk samples of a vm added up so far
+    static class VmDiskCounters {
+        // vCenter time of the latest sample counted
+        private long _lastSampleTime;
+        // local time the counters were last updated
+        private long _lastUpdated;
+        private final Map<String, DiskPerfStats> _disks = new HashMap<String, DiskPerfStats>();
+    }
+
+    public static class VmPerfStats {
+        private double _networkReadKBs;
+        private double _networkWriteKBs;
+        // disk instance, e.g. scsi0:0 -> stats of the disk
+        private final Map<String, DiskPerfStats> _disks = new HashMap<String, DiskPerfStats>();
+        // disk instance -> cumulative counters of the disk
+        private final Map<String, DiskPerfStats> _diskCounters = new HashMap<String, DiskPerfStats>();
+
+        public double getNetworkReadKBs() {
+            return _networkReadKBs;
+        }
+
+        public double getNetworkWriteKBs() {
+            return _networkWriteKBs;
+        }
+
+        public Map<String, DiskPerfStats> getDisks() {
+            return _disks;
+        }
+
+        /**
+         * @return the disk reads and writes since the vm was first queried,
+         *         rather than over the sampled time
+         */
+        public Map<String, DiskPerfStats> getDiskCounters() {
+            return _diskCounters;
+        }
+
+        public DiskPerfStats getDiskTotals() {
+            final DiskPerfStats totals = new DiskPerfStats();
+            for (DiskPerfStats disk : _disks.values()) {
+                totals._readKBs += disk._readKBs;
+                totals._writeKBs += disk._writeKBs;
+                totals._readIOs += disk._readIOs;
+                totals._writeIOs += disk._writeIOs;
+            }
+            return totals;
+        }
+    }
+
+    /**
+     * @param samples the number of realtime samples the stats cover
+     * @param maxAgeMs how long a snapshot is handed out before it is fetched again
+     */
+    public VmwarePerfStatsCollector(int samples, long maxAgeMs) {
+        _samples = samples;
+        _maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * @return the stats of the given vms keyed by their mor value, from the
+     *         snapshot if it is recent enough, from one query otherwise.
+     *         Vms vCenter has no counters for are left out.
+     */
+    public synchronized Map<String, VmPerfStats> getVmPerfStats(VmwareContext context, Collection<ManagedObjectReference> vmMors) throws Exception {
+        final long now = System.currentTimeMillis();
+        final boolean fresh = now - _snapshotTime < _maxAgeMs;
+
+        final List<ManagedObjectReference> missing = new ArrayList<ManagedObjectReference>();
+        for (ManagedObjectReference vmMor : vmMors) {
+            if (!fresh || !_snapshot.containsKey(vmMor.getValue())) {
+                missing.add(vmMor);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            final Map<String, VmPerfStats> stats = query(context, missing);
+            if (fresh) {
+                // extend the snapshot, keeping its time so that it still expires with the others
+                _snapshot.putAll(stats);
+            } else {
+                _snapshot = stats;
+                _snapshotTime = now;
+                // forget the vms that left the host longer ago than vCenter keeps their samples
+                for (Iterator<VmDiskCounters> it = _diskCounters.values().iterator(); it.hasNext();) {
+                    if (now - it.next()._lastUpdated > REALTIME_HISTORY) {
+                        it.remove();
+                    }
+                }
+            }
+            // remember the vms without counters too, so that they are not queried again
+            for (ManagedObjectReference vmMor : missing) {
+                if (!_snapshot.containsKey(vmMor.getValue())) {
+                    _snapshot.put(vmMor.getValue(), null);
+                }
+            }
+        }
+
+        final Map<String, VmPerfStats> result = new HashMap<String, VmPerfStats>();
+        for (ManagedObjectReference vmMor : vmMors) {
+            final VmPerfStats stats = _snapshot.get(vmMor.getValue());
+            if (stats != null) {
+                result.put(vmMor.getValue(), stats);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, VmPerfStats> query(VmwareContext context, List<ManagedObjectReference> vmMors) throws Exception {
+        final PerfCounterInfoMapper counters = getCounters(context);
+        final List<PerfMetricId> metricIds = new ArrayList<PerfMetricId>();
+        addMetricId(metricIds, counters, NET, "received", "");
+        addMetricId(metricIds, counters, NET, "transmitted", "");
+        addMetricId(metricIds, counters, VIRTUAL_DISK, "read", "*");
+        addMetricId(metricIds, counters, VIRTUAL_DISK, "write", "*");
+        addMetricId(metricIds, counters, VIRTUAL_DISK, "numberReadAveraged", "*");
+        addMetricId(metricIds, counters, VIRTUAL_DISK, "numberWriteAveraged", "*");
+        if (metricIds.isEmpty()) {
+            return new HashMap<String, VmPerfStats>();
+        }
+
+        final List<PerfQuerySpec> specs = new ArrayList<PerfQuerySpec>(vmMors.size());
+        for (ManagedObjectReference vmMor : vmMors) {
+            final PerfQuerySpec spec = new PerfQuerySpec();
+            spec.setEntity(vmMor);
+            spec.getMetricId().addAll(metricIds);
+            spec.setIntervalId(REALTIME_INTERVAL);
+            final VmDiskCounters diskCounters = _diskCounters.get(vmMor.getValue());
+            if (diskCounters != null && diskCounters._lastSampleTime > 0) {
+                // every sample since the last one counted, and at least those of the stats
+                final GregorianCalendar startTime = new GregorianCalendar();
+                startTime.setTimeInMillis(diskCounters._lastSampleTime - _samples * REALTIME_INTERVAL * 1000L);
+                spec.setStartTime(DatatypeFactory.newInstance().newXMLGregorianCalendar(startTime));
+            } else {
+                spec.setMaxSample(_samples);
+            }
+            specs.add(spec);
+        }
+
+        final ManagedObjectReference perfMgr = context.getServiceContent().getPerfManager();
+        List<PerfEntityMetricBase> values;
+        try {
+            values = context.getService().queryPerf(perfMgr, specs);
+        } catch (Exception e) {
+            if (specs.size() == 1) {
+                throw e;
+            }
+            // a vm that went away fails the whole query, fall back to querying the vms one by one
+            s_logger.debug("Failed to query the performance counters of " + specs.size() + " vms at once, querying them one by one: " + e.getMessage());
+            values = new ArrayList<PerfEntityMetricBase>();
+            for (PerfQuerySpec spec : specs) {
+                try {
+                    values.addAll(context.getService().queryPerf(perfMgr, Collections.singletonList(spec)));
+                } catch (Exception vmException) {
+                    s_logger.debug("Failed to query the performance counters of vm " + spec.getEntity().getValue() + ": " + vmException.getMessage());
+                }
+            }
+        }
+
+        final Map<String, VmPerfStats> stats = new HashMap<String, VmPerfStats>();
+        if (values != null) {
+            for (PerfEntityMetricBase value : values) {
+                if (value instanceof PerfEntityMetric) {
+                    final String vm = value.getEntity().getValue();
+                    VmDiskCounters diskCounters = _diskCounters.get(vm);
+                    if (diskCounters == null) {
+                        diskCounters = new VmDiskCounters();
+                        _diskCounters.put(vm, diskCounters);
+                    }
+                    diskCounters._lastUpdated = System.currentTimeMillis();
+                    stats.put(vm, toVmPerfStats((PerfEntityMetric)value, counters, _samples, diskCounters));
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Turns the rates of the last samples into totals over the time they
+     * cover, and adds the disk samples that are newer than the ones counted
+     * before to the cumulative counters.
+     */
+    static VmPerfStats toVmPerfStats(PerfEntityMetric metric, PerfCounterInfoMapper counters, int samples, VmDiskCounters diskCounters) {
+        final VmPerfStats stats = new VmPerfStats();
+        final List<PerfSampleInfo> infos = metric.getSampleInfo();
+        if (infos == null || infos.isEmpty() || metric.getValue() == null) {
+            return stats;
+        }
+        final int first = Math.max(0, infos.size() - samples);
+        long duration = 0;
+        for (PerfSampleInfo info : infos.subList(first, infos.size())) {
+            duration += info.getInterval();
+        }
+        long lastSampleTime = diskCounters._lastSampleTime;
+
+        for (PerfMetricSeries series : metric.getValue()) {
+            if (!(series instanceof PerfMetricIntSeries)) {
+                continue;
+            }
+            final List<Long> values = ((PerfMetricIntSeries)series).getValue();
+            if (values == null || values.isEmpty()) {
+                continue;
+            }
+            long sum = 0;
+            int count = 0;
+            double cumulative = 0;
+            for (int i = 0; i < values.size() && i < infos.size(); i++) {
+                final Long sample = values.get(i);
+                final PerfSampleInfo info = infos.get(i);
+                final long sampleTime = info.getTimestamp() == null ? 0 : info.getTimestamp().toGregorianCalendar().getTimeInMillis();
+                final boolean counted = sampleTime <= diskCounters._lastSampleTime;
+                lastSampleTime = Math.max(lastSampleTime, sampleTime);
+                if (i >= first) {
+                    count++;
+                }
+                // -1 marks a sample that was not collected
+                if (sample == null || sample <= 0) {
+                    continue;
+                }
+                if (i >= first) {
+                    sum += sample;
+                }
+                if (!counted) {
+                    cumulative += (double)sample * info.getInterval();
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            // the counters are per second rates, turn them into totals over the sampled time
+            final double total = (double)sum / count * duration;
+
+            final int counterId = series.getId().getCounterId();
+            final String instance = series.getId().getInstance();
+            if (isCounter(counters, counterId, NET, "received")) {
+                stats._networkReadKBs = total;
+            } else if (isCounter(counters, counterId, NET, "transmitted")) {
+                stats._networkWriteKBs = total;
+            } else if (instance != null && !instance.isEmpty()) {
+                final DiskPerfStats disk = getDisk(stats._disks, instance);
+                final DiskPerfStats diskCounter = getDisk(diskCounters._disks, instance);
+                if (isCounter(counters, counterId, VIRTUAL_DISK, "read")) {
+                    disk._readKBs = total;
+                    diskCounter._readKBs += cumulative;
+                } else if (isCounter(counters, counterId, VIRTUAL_DISK, "write")) {
+                    disk._writeKBs = total;
+                    diskCounter._writeKBs += cumulative;
+                } else if (isCounter(counters, counterId, VIRTUAL_DISK, "numberReadAveraged")) {
+                    disk._readIOs = total;
+                    diskCounter._readIOs += cumulative;
+                } else if (isCounter(counters, counterId, VIRTUAL_DISK, "numberWriteAveraged")) {
+                    disk._writeIOs = total;
+                    diskCounter._writeIOs += cumulative;
+                }
+            }
+        }
+
+        diskCounters._lastSampleTime = lastSampleTime;
+        for (Map.Entry<String, DiskPerfStats> disk : diskCounters._disks.entrySet()) {
+            stats._diskCounters.put(disk.getKey(), disk.getValue().copy());
+        }
+        return stats;
+    }
+
+    private static DiskPerfStats getDisk(Map<String, DiskPerfStats> disks, String instance) {
+        DiskPerfStats disk = disks.get(instance);
+        if (disk == null) {
+            disk = new DiskPerfStats();
+            disks.put(instance, disk);
+        }
+        return disk;
+    }
+
+    private static PerfCounterInfoMapper getCounters(VmwareContext context) throws Exception {
+        PerfCounterInfoMapper counters = s_counters.get(context.getServerAddress());
+        if (counters == null) {
+            final ManagedObjectReference perfMgr = context.getServiceContent().getPerfManager();
+            final List<PerfCounterInfo> infos = context.getVimClient().getDynamicProperty(perfMgr, "perfCounter");
+            counters = new PerfCounterInfoMapper(infos == null ? null : infos.toArray(new PerfCounterInfo[infos.size()]));
+            s_counters.put(context.getServerAddress(), counters);
+        }
+        return counters;
+    }
+
+    private static void addMetricId(List<PerfMetricId> metricIds, PerfCounterInfoMapper counters, String group, String name, String instance) {
+        final PerfCounterInfo info = counters.lookupOne(group, name, PerfSummaryType.AVERAGE);
+        if (info == null) {
+            s_logger.debug("vCenter has no " + group + "." + name + " counter, it is not collected");
+            return;
+        }
+        final PerfMetricId metricId = new PerfMetricId();
+        metricId.setCounterId(info.getKey());
+        metricId.setInstance(instance);
+        metricIds.add(metricId);
+    }
+
+    private static boolean isCounter(PerfCounterInfoMapper counters, int counterId, String group, String name) {
+        final PerfCounterInfo info = counters.lookupOne(group, name, PerfSummaryType.AVERAGE);
+        return info != null && info.getKey() == counterId;
+    }
+}
@@ -51,6 +51,7 @@ import org.apache.log4j.NDC;
 import org.joda.time.Duration;
 import com.google.gson.Gson;
 import com.vmware.vim25.AboutInfo;
+import com.vmware.vim25.ArrayOfVirtualDevice;
 import com.vmware.vim25.BoolPolicy;
 import com.vmware.vim25.ComputeResourceSummary;
 import com.vmware.vim25.CustomFieldStringValue;
@@ -68,18 +69,9 @@ import com.vmware.vim25.HostInternetScsiHba;
 import com.vmware.vim25.ManagedObjectReference;
 import com.vmware.vim25.ObjectContent;
 import com.vmware.vim25.OptionValue;
-import com.vmware.vim25.PerfCounterInfo;
-import com.vmware.vim25.PerfEntityMetric;
-import com.vmware.vim25.PerfEntityMetricBase;
-import com.vmware.vim25.PerfMetricId;
-import com.vmware.vim25.PerfMetricIntSeries;
-import com.vmware.vim25.PerfMetricSeries;
-import com.vmware.vim25.PerfQuerySpec;
-import com.vmware.vim25.PerfSampleInfo;
 import com.vmware.vim25.RuntimeFaultFaultMsg;
 import com.vmware.vim25.ToolsUnavailableFaultMsg;
 import com.vmware.vim25.VMwareDVSPortSetting;
-import com.vmware.vim25.VimPortType;
 import com.vmware.vim25.VirtualDevice;
 import com.vmware.vim25.VirtualDeviceBackingInfo;
 import com.vmware.vim25.VirtualDeviceConfigSpec;
@@ -204,6 +196,7 @@ import com.cloud.agent.api.UnregisterVMCommand;
 import com.cloud.agent.api.UpgradeSnapshotCommand;
 import com.cloud.agent.api.ValidateSnapshotAnswer;
 import com.cloud.agent.api.ValidateSnapshotCommand;
+import com.cloud.agent.api.VmDiskStatsEntry;
 import com.cloud.agent.api.VmStatsEntry;
 import com.cloud.agent.api.VolumeStatsEntry;
 import com.cloud.agent.api.check.CheckSshAnswer;
@@ -265,6 +258,8 @@ import com.cloud.hypervisor.vmware.mo.VirtualSwitchType;
 import com.cloud.hypervisor.vmware.mo.VmwareHypervisorHost;
 import com.cloud.hypervisor.vmware.mo.VmwareHypervisorHostNetworkSummary;
 import com.cloud.hypervisor.vmware.mo.VmwareHypervisorHostResourceSummary;
+import com.cloud.hypervisor.vmware.resource.VmwarePerfStatsCollector.DiskPerfStats;
+import com.cloud.hypervisor.vmware.resource.VmwarePerfStatsCollector.VmPerfStats;
 import com.cloud.hypervisor.vmware.util.VmwareContext;
 import com.cloud.hypervisor.vmware.util.VmwareContextPool;
 import com.cloud.hypervisor.vmware.util.VmwareHelper;
@@ -359,6 +354,9 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
 
     protected VirtualRoutingResource _vrResource;
 
+    // the vm stats and vm disk stats of a collection round share one query, covering the last minute
+    private final VmwarePerfStatsCollector _perfStatsCollector = new VmwarePerfStatsCollector(3, VmwarePerfStatsCollector.REALTIME_INTERVAL * 1000L);
+
     protected final static HashMap<VirtualMachinePowerState, PowerState> s_powerStatesTable = new HashMap<VirtualMachinePowerState, PowerState>();
     static {
         s_powerStatesTable.put(VirtualMachinePowerState.POWERED_ON, PowerState.PowerOn);
@@ -3461,7 +3459,18 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
     }
 
     protected Answer execute(GetVmDiskStatsCommand cmd) {
-        return new GetVmDiskStatsAnswer(cmd, null, null, null);
+        try {
+            HashMap<String, List<VmDiskStatsEntry>> vmDiskStatsMap = getVmDiskStats(cmd.getVmNames() == null ? new ArrayList<String>() : cmd.getVmNames());
+            return new GetVmDiskStatsAnswer(cmd, "", cmd.getHostName(), vmDiskStatsMap);
+        } catch (Throwable e) {
+            if (e instanceof RemoteException) {
+                s_logger.warn("Encounter remote exception to vCenter, invalidate VMware session context");
+                invalidateServiceContext();
+            }
+
+            s_logger.error("Unable to execute GetVmDiskStatsCommand due to : " + VmwareHelper.getExceptionMessage(e), e);
+            return new GetVmDiskStatsAnswer(cmd, null, null, null);
+        }
     }
 
     protected Answer execute(GetVmNetworkStatsCommand cmd) {
@@ -5441,6 +5450,22 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
         return VirtualMachineGuestOsIdentifier.OTHER_GUEST;
     }
 
+    /**
+     * The power states are answered from the property collector session kept
+     * for the host, which only fetches what changed since the previous ping.
+     * If the session fails all the vms are read in a full sweep, and the next
+     * ping starts a new session.
+     */
+    private ObjectContent[] getVmPowerStateProperties(VmwareHypervisorHost hyperHost, String instanceNameCustomField) throws Exception {
+        String[] propertyPaths = new String[] {"name", "runtime.powerState", "config.template", instanceNameCustomField};
+        try {
+            return ((HostMO)hyperHost).getTrackedVmPropertiesOnHyperHost(propertyPaths);
+        } catch (Exception e) {
+            s_logger.info("Unable to get the changes of vm states on host " + hyperHost.getHyperHostName() + ", reading all vms: " + VmwareHelper.getExceptionMessage(e));
+            return hyperHost.getVmPropertiesOnHyperHost(propertyPaths);
+        }
+    }
+
     private HashMap<String, HostVmStateReportEntry> getHostVmStateReport() throws Exception {
         VmwareHypervisorHost hyperHost = getHyperHost(getServiceContext());
 
@@ -5452,7 +5477,7 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
 
         // CLOUD_VM_INTERNAL_NAME stores the internal CS generated vm name. This was earlier stored in name. Now, name can be either the hostname or
         // the internal CS name, but the custom field CLOUD_VM_INTERNAL_NAME always stores the internal CS name.
-        ObjectContent[] ocs = hyperHost.getVmPropertiesOnHyperHost(new String[] {"name", "runtime.powerState", "config.template", instanceNameCustomField});
+        ObjectContent[] ocs = getVmPowerStateProperties(hyperHost, instanceNameCustomField);
 
         HashMap<String, HostVmStateReportEntry> newStates = new HashMap<String, HostVmStateReportEntry>();
         if (ocs != null && ocs.length > 0) {
@@ -5504,7 +5529,7 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
 
         // CLOUD_VM_INTERNAL_NAME stores the internal CS generated vm name. This was earlier stored in name. Now, name can be either the hostname or
         // the internal CS name, but the custom field CLOUD_VM_INTERNAL_NAME always stores the internal CS name.
-        ObjectContent[] ocs = hyperHost.getVmPropertiesOnHyperHost(new String[] {"name", "runtime.powerState", "config.template", instanceNameCustomField});
+        ObjectContent[] ocs = getVmPowerStateProperties(hyperHost, instanceNameCustomField);
 
         HashMap<String, PowerState> newStates = new HashMap<String, PowerState>();
         if (ocs != null && ocs.length > 0) {
@@ -5545,25 +5570,76 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
         return newStates;
     }
 
-    private HashMap<String, VmStatsEntry> getVmStats(List<String> vmNames) throws Exception {
-        VmwareHypervisorHost hyperHost = getHyperHost(getServiceContext());
-        HashMap<String, VmStatsEntry> vmResponseMap = new HashMap<String, VmStatsEntry>();
-        ManagedObjectReference perfMgr = getServiceContext().getServiceContent().getPerfManager();
-        VimPortType service = getServiceContext().getService();
-        PerfCounterInfo rxPerfCounterInfo = null;
-        PerfCounterInfo txPerfCounterInfo = null;
-
-        List<PerfCounterInfo> cInfo = getServiceContext().getVimClient().getDynamicProperty(perfMgr, "perfCounter");
-        for (PerfCounterInfo info : cInfo) {
-            if ("net".equalsIgnoreCase(info.getGroupInfo().getKey())) {
-                if ("transmitted".equalsIgnoreCase(info.getNameInfo().getKey())) {
-                    txPerfCounterInfo = info;
+    private HashMap<String, List<VmDiskStatsEntry>> getVmDiskStats(List<String> vmNames) throws Exception {
+        VmwareContext context = getServiceContext();
+        VmwareHypervisorHost hyperHost = getHyperHost(context);
+        HashMap<String, List<VmDiskStatsEntry>> vmDiskStatsMap = new HashMap<String, List<VmDiskStatsEntry>>();
+
+        int key = ((HostMO)hyperHost).getCustomFieldKey("VirtualMachine", CustomFieldConstants.CLOUD_VM_INTERNAL_NAME);
+        if (key == 0) {
+            s_logger.warn("Custom field " + CustomFieldConstants.CLOUD_VM_INTERNAL_NAME + " is not registered ?!");
+        }
+        String instanceNameCustomField = "value[" + key + "]";
+
+        // the devices are read along with the vms, the counters are kept per bus name while
+        // the volumes are known by the name of their vmdk
+        Map<String, ManagedObjectReference> vmMors = new HashMap<String, ManagedObjectReference>();
+        Map<String, List<VirtualDevice>> vmDevices = new HashMap<String, List<VirtualDevice>>();
+        ObjectContent[] ocs = hyperHost.getVmPropertiesOnHyperHost(new String[] {"name", "config.hardware.device", instanceNameCustomField});
+        if (ocs != null) {
+            for (ObjectContent oc : ocs) {
+                String name = null;
+                String vmInternalCSName = null;
+                List<VirtualDevice> devices = null;
+                for (DynamicProperty objProp : oc.getPropSet()) {
+                    if (objProp.getName().equals("name")) {
+                        name = (String)objProp.getVal();
+                    } else if (objProp.getName().equals("config.hardware.device")) {
+                        if (objProp.getVal() != null)
+                            devices = ((ArrayOfVirtualDevice)objProp.getVal()).getVirtualDevice();
+                    } else if (objProp.getName().contains(instanceNameCustomField)) {
+                        if (objProp.getVal() != null)
+                            vmInternalCSName = ((CustomFieldStringValue)objProp.getVal()).getValue();
+                    }
+                }
+                if (vmInternalCSName != null) {
+                    name = vmInternalCSName;
+                }
+                if (name != null && vmNames.contains(name)) {
+                    vmMors.put(name, oc.getObj());
+                    vmDevices.put(name, devices);
                 }
-                if ("received".equalsIgnoreCase(info.getNameInfo().getKey())) {
-                    rxPerfCounterInfo = info;
+            }
+        }
+
+        Map<String, VmPerfStats> perfStats = _perfStatsCollector.getVmPerfStats(context, vmMors.values());
+        for (Map.Entry<String, ManagedObjectReference> vm : vmMors.entrySet()) {
+            VmPerfStats stats = perfStats.get(vm.getValue().getValue());
+            if (stats == null || stats.getDiskCounters().isEmpty()) {
+                continue;
+            }
+
+            Map<String, String> fileBaseNames = VirtualMachineMO.getDiskFileBaseNamesByBusName(vmDevices.get(vm.getKey()));
+            List<VmDiskStatsEntry> diskStats = new ArrayList<VmDiskStatsEntry>();
+            // the disk stats are cumulative counters, the consumers work out what changed since the last round
+            for (Map.Entry<String, DiskPerfStats> disk : stats.getDiskCounters().entrySet()) {
+                String path = fileBaseNames.get(disk.getKey());
+                if (path == null) {
+                    continue;
                 }
+                DiskPerfStats diskStat = disk.getValue();
+                diskStats.add(new VmDiskStatsEntry(vm.getKey(), path, (long)diskStat.getWriteIOs(), (long)diskStat.getReadIOs(), (long)(diskStat.getWriteKBs() * 1024),
+                        (long)(diskStat.getReadKBs() * 1024)));
             }
+            vmDiskStatsMap.put(vm.getKey(), diskStats);
         }
+        return vmDiskStatsMap;
+    }
+
+    private HashMap<String, VmStatsEntry> getVmStats(List<String> vmNames) throws Exception {
+        VmwareHypervisorHost hyperHost = getHyperHost(getServiceContext());
+        HashMap<String, VmStatsEntry> vmResponseMap = new HashMap<String, VmStatsEntry>();
+        Map<String, ManagedObjectReference> vmMors = new HashMap<String, ManagedObjectReference>();
 
         int key = ((HostMO)hyperHost).getCustomFieldKey("VirtualMachine", CustomFieldConstants.CLOUD_VM_INTERNAL_NAME);
         if (key == 0) {
@@ -5616,7 +5692,6 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
                     }
 
                     maxCpuUsage = (maxCpuUsage/allocatedCpu)*100;
-                    new VirtualMachineMO(hyperHost.getContext(), oc.getObj());
                     if (vmInternalCSName != null) {
                         name = vmInternalCSName;
                     } else {
@@ -5627,67 +5702,28 @@ public class VmwareResource implements StoragePoolResource, ServerResource, Vmwa
                         continue;
                     }
 
-                    ManagedObjectReference vmMor = hyperHost.findVmOnHyperHost(name).getMor();
-                    assert (vmMor != null);
-
-                    ArrayList<PerfMetricId> vmNetworkMetrics = new ArrayList<PerfMetricId>();
-                    // get all the metrics from the available sample period
-                    List<PerfMetricId> perfMetrics = service.queryAvailablePerfMetric(perfMgr, vmMor, null, null, null);
-                    if (perfMetrics != null) {
-                        for (int index = 0; index < perfMetrics.size(); ++index) {
-                            if (((rxPerfCounterInfo != null) && (perfMetrics.get(index).getCounterId() == rxPerfCounterInfo.getKey()))
-                                    || ((txPerfCounterInfo != null) && (perfMetrics.get(index).getCounterId() == txPerfCounterInfo.getKey()))) {
-                                vmNetworkMetrics.add(perfMetrics.get(index));
-                            }
-                        }
-                    }
-
-                    double networkReadKBs = 0;
-                    double networkWriteKBs = 0;
-                    long sampleDuration = 0;
-
-                    if (vmNetworkMetrics.size() != 0) {
-                        PerfQuerySpec qSpec = new PerfQuerySpec();
-                        qSpec.setEntity(vmMor);
-                        PerfMetricId[] availableMetricIds = vmNetworkMetrics.toArray(new PerfMetricId[0]);
-                        qSpec.getMetricId().addAll(Arrays.asList(availableMetricIds));
-                        List<PerfQuerySpec> qSpecs = new ArrayList<PerfQuerySpec>();
-                        qSpecs.add(qSpec);
-                        List<PerfEntityMetricBase> values = service.queryPerf(perfMgr, qSpecs);
-
-                        for (int i = 0; i < values.size(); ++i) {
-                            List<PerfSampleInfo> infos = ((PerfEntityMetric)values.get(i)).getSampleInfo();
-                            if (infos != null && infos.size() > 0) {
-                                int endMs = infos.get(infos.size() - 1).getTimestamp().getSecond() * 1000 + infos.get(infos.size() - 1).getTimestamp().getMillisecond();
-                                int beginMs = infos.get(0).getTimestamp().getSecond() * 1000 + infos.get(0).getTimestamp().getMillisecond();
-                                sampleDuration = (endMs - beginMs) / 1000;
-                                List<PerfMetricSeries> vals = ((PerfEntityMetric)values.get(i)).getValue();
-                                for (int vi = 0; ((vals != null) && (vi < vals.size())); ++vi) {
-                                    if (vals.get(vi) instanceof PerfMetricIntSeries) {
-                                        PerfMetricIntSeries val = (PerfMetricIntSeries)vals.get(vi);
-                                        List<Long> perfValues = val.getValue();
-                                        Long sumRate = 0L;
-                                        for (int j = 0; j < infos.size(); j++) { // Size of the array matches the size as the PerfSampleInfo
-                                            sumRate += perfValues.get(j);
-                                        }
-                                        Long averageRate = sumRate / infos.size();
-                                        if (vals.get(vi).getId().getCounterId() == rxPerfCounterInfo.getKey()) {
-                                            networkReadKBs = sampleDuration * averageRate; //get the average RX rate multiplied by sampled duration
-                                        }
-                                        if (vals.get(vi).getId().getCounterId() == txPerfCounterInfo.getKey()) {
-                                            networkWriteKBs = sampleDuration * averageRate;//get the average TX rate multiplied by sampled duration
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
+                    vmMors.put(name, oc.getObj());
                     vmResponseMap.put(name, new VmStatsEntry( NumberUtils.toDouble(memkb)*1024,NumberUtils.toDouble(guestMemusage)*1024,NumberUtils.toDouble(memlimit)*1024,
-                            maxCpuUsage, networkReadKBs, networkWriteKBs, NumberUtils.toInt(numberCPUs), "vm"));
-
+                            maxCpuUsage, 0, 0, NumberUtils.toInt(numberCPUs), "vm"));
                 }
             }
         }
+
+        // the network and disk counters of all the vms in one query
+        Map<String, VmPerfStats> perfStats = _perfStatsCollector.getVmPerfStats(getServiceContext(), vmMors.values());
+        for (Map.Entry<String, ManagedObjectReference> vm : vmMors.entrySet()) {
+            VmPerfStats stats = perfStats.get(vm.getValue().getValue());
+            if (stats != null) {
+                VmStatsEntry entry = vmResponseMap.get(vm.getKey());
+                entry.setNetworkReadKBs(stats.getNetworkReadKBs());
+                entry.setNetworkWriteKBs(stats.getNetworkWriteKBs());
+                DiskPerfStats diskTotals = stats.getDiskTotals();
+                entry.setDiskReadKBs(diskTotals.getReadKBs());
+                entry.setDiskWriteKBs(diskTotals.getWriteKBs());
+                entry.setDiskReadIOs(diskTotals.getReadIOs());
+                entry.setDiskWriteIOs(diskTotals.getWriteIOs());
+            }
+        }
         return vmResponseMap;
     }
 
@@ -0,0 +1,300 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.vmware.resource;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.datatype.DatatypeFactory;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.cloud.hypervisor.vmware.resource.VmwarePerfStatsCollector.DiskPerfStats;
+import com.cloud.hypervisor.vmware.resource.VmwarePerfStatsCollector.VmPerfStats;
+import com.cloud.hypervisor.vmware.util.VmwareClient;
+import com.cloud.hypervisor.vmware.util.VmwareContext;
+import com.vmware.vim25.ElementDescription;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.PerfCounterInfo;
+import com.vmware.vim25.PerfEntityMetric;
+import com.vmware.vim25.PerfEntityMetricBase;
+import com.vmware.vim25.PerfMetricId;
+import com.vmware.vim25.PerfMetricIntSeries;
+import com.vmware.vim25.PerfQuerySpec;
+import com.vmware.vim25.PerfSampleInfo;
+import com.vmware.vim25.PerfSummaryType;
+import com.vmware.vim25.RuntimeFault;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+import com.vmware.vim25.ServiceContent;
+import com.vmware.vim25.VimPortType;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VmwarePerfStatsCollectorTest {
+    // the counter metadata is cached per vCenter, give every test a vCenter of its own
+    private static final AtomicInteger s_vCenters = new AtomicInteger();
+
+    private static final int NET_RECEIVED = 1;
+    private static final int NET_TRANSMITTED = 2;
+    private static final int DISK_READ = 3;
+    private static final int DISK_WRITE = 4;
+    private static final int DISK_READS = 5;
+    private static final int DISK_WRITES = 6;
+
+    @Mock
+    VmwareContext context;
+    @Mock
+    VmwareClient vimClient;
+    @Mock
+    VimPortType service;
+
+    ManagedObjectReference perfMgr = mor("PerformanceManager", "PerfMgr");
+    ManagedObjectReference vm1 = mor("VirtualMachine", "vm-1");
+    ManagedObjectReference vm2 = mor("VirtualMachine", "vm-2");
+
+    // vCenter time of the latest sample the queries return
+    long latestSample = 1500000000000L;
+    List<PerfQuerySpec> queried = new ArrayList<PerfQuerySpec>();
+
+    private static ManagedObjectReference mor(String type, String value) {
+        ManagedObjectReference mor = new ManagedObjectReference();
+        mor.setType(type);
+        mor.setValue(value);
+        return mor;
+    }
+
+    private static PerfCounterInfo counter(int key, String group, String name) {
+        ElementDescription groupInfo = new ElementDescription();
+        groupInfo.setKey(group);
+        ElementDescription nameInfo = new ElementDescription();
+        nameInfo.setKey(name);
+        PerfCounterInfo info = new PerfCounterInfo();
+        info.setKey(key);
+        info.setGroupInfo(groupInfo);
+        info.setNameInfo(nameInfo);
+        info.setRollupType(PerfSummaryType.AVERAGE);
+        return info;
+    }
+
+    private static PerfMetricIntSeries series(int counterId, String instance, long... values) {
+        PerfMetricId id = new PerfMetricId();
+        id.setCounterId(counterId);
+        id.setInstance(instance);
+        PerfMetricIntSeries series = new PerfMetricIntSeries();
+        series.setId(id);
+        for (long value : values) {
+            series.getValue().add(value);
+        }
+        return series;
+    }
+
+    // three samples of 20 seconds up to latestSample, so every rate adds up to 60 times its average
+    private PerfEntityMetric metric(ManagedObjectReference vm) throws Exception {
+        PerfEntityMetric metric = new PerfEntityMetric();
+        metric.setEntity(vm);
+        for (int i = 2; i >= 0; i--) {
+            GregorianCalendar timestamp = new GregorianCalendar();
+            timestamp.setTimeInMillis(latestSample - i * 20000L);
+            PerfSampleInfo info = new PerfSampleInfo();
+            info.setInterval(20);
+            info.setTimestamp(DatatypeFactory.newInstance().newXMLGregorianCalendar(timestamp));
+            metric.getSampleInfo().add(info);
+        }
+        metric.getValue().add(series(NET_RECEIVED, "", 10, 20, 30));
+        metric.getValue().add(series(NET_TRANSMITTED, "", 1, 1, 1));
+        metric.getValue().add(series(DISK_READ, "scsi0:0", 5, 5, 5));
+        metric.getValue().add(series(DISK_WRITE, "scsi0:0", 2, 2, -1));
+        metric.getValue().add(series(DISK_READS, "scsi0:0", 1, 1, 1));
+        metric.getValue().add(series(DISK_WRITES, "scsi0:0", 3, 3, 3));
+        metric.getValue().add(series(DISK_READ, "scsi0:1", 1, 1, 1));
+        return metric;
+    }
+
+    private final Answer<List<PerfEntityMetricBase>> metricsOfTheQueriedVms = new Answer<List<PerfEntityMetricBase>>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public List<PerfEntityMetricBase> answer(InvocationOnMock invocation) throws Exception {
+            List<PerfEntityMetricBase> metrics = new ArrayList<PerfEntityMetricBase>();
+            for (PerfQuerySpec spec : (List<PerfQuerySpec>)invocation.getArguments()[1]) {
+                Assert.assertEquals(Integer.valueOf(VmwarePerfStatsCollector.REALTIME_INTERVAL), spec.getIntervalId());
+                queried.add(spec);
+                metrics.add(metric(spec.getEntity()));
+            }
+            return metrics;
+        }
+    };
+
+    @Before
+    public void setup() throws Exception {
+        ServiceContent serviceContent = new ServiceContent();
+        serviceContent.setPerfManager(perfMgr);
+        when(context.getServerAddress()).thenReturn("vcenter-" + s_vCenters.incrementAndGet());
+        when(context.getServiceContent()).thenReturn(serviceContent);
+        when(context.getService()).thenReturn(service);
+        when(context.getVimClient()).thenReturn(vimClient);
+        doReturn(Arrays.asList(counter(NET_RECEIVED, "net", "received"), counter(NET_TRANSMITTED, "net", "transmitted"), counter(DISK_READ, "virtualDisk", "read"),
+                counter(DISK_WRITE, "virtualDisk", "write"), counter(DISK_READS, "virtualDisk", "numberReadAveraged"),
+                counter(DISK_WRITES, "virtualDisk", "numberWriteAveraged"))).when(vimClient).getDynamicProperty(perfMgr, "perfCounter");
+    }
+
+    @Test
+    public void testAllVmsAreQueriedAtOnce() throws Exception {
+        when(service.queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class))).thenAnswer(metricsOfTheQueriedVms);
+        VmwarePerfStatsCollector collector = new VmwarePerfStatsCollector(3, 60000);
+
+        Map<String, VmPerfStats> stats = collector.getVmPerfStats(context, Arrays.asList(vm1, vm2));
+
+        verify(service, times(1)).queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class));
+        Assert.assertEquals(2, stats.size());
+        VmPerfStats vm = stats.get("vm-1");
+        Assert.assertEquals(1200, vm.getNetworkReadKBs(), 0.01);
+        Assert.assertEquals(60, vm.getNetworkWriteKBs(), 0.01);
+        Assert.assertEquals(2, vm.getDisks().size());
+        Assert.assertEquals(300, vm.getDisks().get("scsi0:0").getReadKBs(), 0.01);
+        // a sample that was not collected counts as nothing
+        Assert.assertEquals(80, vm.getDisks().get("scsi0:0").getWriteKBs(), 0.01);
+        Assert.assertEquals(60, vm.getDisks().get("scsi0:0").getReadIOs(), 0.01);
+        Assert.assertEquals(180, vm.getDisks().get("scsi0:0").getWriteIOs(), 0.01);
+        Assert.assertEquals(360, vm.getDiskTotals().getReadKBs(), 0.01);
+    }
+
+    @Test
+    public void testSnapshotIsShared() throws Exception {
+        when(service.queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class))).thenAnswer(metricsOfTheQueriedVms);
+        VmwarePerfStatsCollector collector = new VmwarePerfStatsCollector(3, 60000);
+
+        collector.getVmPerfStats(context, Arrays.asList(vm1, vm2));
+        Map<String, VmPerfStats> stats = collector.getVmPerfStats(context, Arrays.asList(vm2));
+
+        Assert.assertEquals(1, stats.size());
+        Assert.assertTrue(stats.containsKey("vm-2"));
+        verify(service, times(1)).queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class));
+        verify(vimClient, times(1)).getDynamicProperty(perfMgr, "perfCounter");
+    }
+
+    @Test
+    public void testExpiredSnapshotIsQueriedAgain() throws Exception {
+        when(service.queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class))).thenAnswer(metricsOfTheQueriedVms);
+        VmwarePerfStatsCollector collector = new VmwarePerfStatsCollector(3, 0);
+
+        collector.getVmPerfStats(context, Arrays.asList(vm1));
+        collector.getVmPerfStats(context, Arrays.asList(vm1));
+
+        verify(service, times(2)).queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class));
+        // the counter metadata is not fetched again
+        verify(vimClient, times(1)).getDynamicProperty(perfMgr, "perfCounter");
+    }
+
+    @Test
+    public void testVmsAreQueriedOneByOneWhenTheQueryFails() throws Exception {
+        when(service.queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class))).thenAnswer(new Answer<List<PerfEntityMetricBase>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<PerfEntityMetricBase> answer(InvocationOnMock invocation) throws Throwable {
+                List<PerfQuerySpec> specs = (List<PerfQuerySpec>)invocation.getArguments()[1];
+                if (specs.size() > 1 || specs.get(0).getEntity().getValue().equals("vm-2")) {
+                    throw new RuntimeFaultFaultMsg("vm-2 is gone", new RuntimeFault());
+                }
+                return metricsOfTheQueriedVms.answer(invocation);
+            }
+        });
+        VmwarePerfStatsCollector collector = new VmwarePerfStatsCollector(3, 60000);
+
+        Map<String, VmPerfStats> stats = collector.getVmPerfStats(context, Arrays.asList(vm1, vm2));
+
+        Assert.assertEquals(1, stats.size());
+        Assert.assertTrue(stats.containsKey("vm-1"));
+        verify(service, times(3)).queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class));
+
+        // the vm without counters is not queried again while the snapshot lasts
+        collector.getVmPerfStats(context, Arrays.asList(vm1, vm2));
+        verify(service, times(3)).queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class));
+    }
+
+    @Test(expected = RuntimeFaultFaultMsg.class)
+    public void testFailureOfASingleVmIsPassedOn() throws Exception {
+        when(service.queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class))).thenThrow(new RuntimeFaultFaultMsg("session lost", new RuntimeFault()));
+        new VmwarePerfStatsCollector(3, 60000).getVmPerfStats(context, Arrays.asList(vm1));
+    }
+
+    @Test
+    public void testMissingCountersAreNotQueried() throws Exception {
+        doReturn(new ArrayList<PerfCounterInfo>()).when(vimClient).getDynamicProperty(perfMgr, "perfCounter");
+        Map<String, VmPerfStats> stats = new VmwarePerfStatsCollector(3, 60000).getVmPerfStats(context, Arrays.asList(vm1));
+
+        Assert.assertTrue(stats.isEmpty());
+        verify(service, times(0)).queryPerf(any(ManagedObjectReference.class), anyListOf(PerfQuerySpec.class));
+    }
+
+    @Test
+    public void testDiskCountersAreCumulative() throws Exception {
+        when(service.queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class))).thenAnswer(metricsOfTheQueriedVms);
+        VmwarePerfStatsCollector collector = new VmwarePerfStatsCollector(3, 0);
+
+        DiskPerfStats disk = collector.getVmPerfStats(context, Arrays.asList(vm1)).get("vm-1").getDiskCounters().get("scsi0:0");
+        Assert.assertEquals(300, disk.getReadKBs(), 0.01);
+        Assert.assertEquals(80, disk.getWriteKBs(), 0.01);
+        Assert.assertEquals(Integer.valueOf(3), queried.get(0).getMaxSample());
+
+        // the next query overlaps the first one by two samples, only the new one is added
+        latestSample += 20000;
+        VmPerfStats stats = collector.getVmPerfStats(context, Arrays.asList(vm1)).get("vm-1");
+        disk = stats.getDiskCounters().get("scsi0:0");
+        Assert.assertEquals(400, disk.getReadKBs(), 0.01);
+        Assert.assertEquals(80, disk.getWriteKBs(), 0.01);
+        Assert.assertEquals(80, disk.getReadIOs(), 0.01);
+        Assert.assertEquals(240, disk.getWriteIOs(), 0.01);
+        Assert.assertEquals(80, stats.getDiskCounters().get("scsi0:1").getReadKBs(), 0.01);
+        // the stats still cover the last three samples
+        Assert.assertEquals(300, stats.getDisks().get("scsi0:0").getReadKBs(), 0.01);
+        // everything since the last sample counted is asked for, along with the samples of the stats
+        Assert.assertEquals(latestSample - 20000 - 60000, queried.get(1).getStartTime().toGregorianCalendar().getTimeInMillis());
+
+        // the same samples queried again add nothing
+        disk = collector.getVmPerfStats(context, Arrays.asList(vm1)).get("vm-1").getDiskCounters().get("scsi0:0");
+        Assert.assertEquals(400, disk.getReadKBs(), 0.01);
+    }
+
+    @Test
+    public void testSharedSnapshotIsNotCountedTwice() throws Exception {
+        when(service.queryPerf(eq(perfMgr), anyListOf(PerfQuerySpec.class))).thenAnswer(metricsOfTheQueriedVms);
+        VmwarePerfStatsCollector collector = new VmwarePerfStatsCollector(3, 60000);
+
+        collector.getVmPerfStats(context, Arrays.asList(vm1, vm2));
+        DiskPerfStats disk = collector.getVmPerfStats(context, Arrays.asList(vm1)).get("vm-1").getDiskCounters().get("scsi0:0");
+
+        Assert.assertEquals(300, disk.getReadKBs(), 0.01);
+    }
+}
@@ -0,0 +1,163 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.xenserver.resource;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The averages of the columns of an rrd_updates export of XenServer.  The
+ * export is read as a stream, adding up the rows as they come, so only the
+ * legend and two arrays per column are kept however many rows and vms it
+ * holds.
+ *
+ * A legend entry reads {@code <cf>:<type>:<uuid>:<param>}, e.g.
+ * {@code AVERAGE:vm:0f2c...:cpu0}; the type is either host or vm.
+ */
+public class XsRrdUpdates {
+    private static final Logger s_logger = Logger.getLogger(XsRrdUpdates.class);
+
+    private static final XMLInputFactory s_inputFactory = XMLInputFactory.newInstance();
+    static {
+        s_inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        s_inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final String[] _types;
+    private final String[] _uuids;
+    private final String[] _params;
+    private final double[] _sums;
+    private final int[] _counts;
+    private final int _rows;
+
+    private XsRrdUpdates(List<String> legend, double[] sums, int[] counts, int rows) {
+        final int columns = legend.size();
+        _types = new String[columns];
+        _uuids = new String[columns];
+        _params = new String[columns];
+        for (int col = 0; col < columns; col++) {
+            final String[] entry = legend.get(col).split(":");
+            // an entry that does not read <cf>:<type>:<uuid>:<param> keeps a null type
+            if (entry.length == 4) {
+                _types[col] = entry[1];
+                _uuids[col] = entry[2];
+                _params[col] = entry[3];
+            }
+        }
+        _sums = sums;
+        _counts = counts;
+        _rows = rows;
+    }
+
+    /**
+     * Reads the export, closing neither the reader nor the stream underneath.
+     */
+    public static XsRrdUpdates parse(Reader in) throws XMLStreamException {
+        final XMLStreamReader reader = s_inputFactory.createXMLStreamReader(in);
+        try {
+            final List<String> legend = new ArrayList<String>();
+            double[] sums = new double[0];
+            int[] counts = new int[0];
+            int rows = 0;
+            int col = 0;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                final String name = reader.getLocalName();
+                if ("entry".equals(name)) {
+                    legend.add(reader.getElementText().trim());
+                } else if ("row".equals(name)) {
+                    if (rows == 0) {
+                        // the legend comes before the data
+                        sums = new double[legend.size()];
+                        counts = new int[legend.size()];
+                    }
+                    rows++;
+                    col = 0;
+                } else if ("v".equals(name)) {
+                    final double value = parseValue(reader.getElementText());
+                    if (col < sums.length && !Double.isNaN(value)) {
+                        sums[col] += value;
+                        counts[col]++;
+                    }
+                    col++;
+                }
+            }
+            if (rows == 0) {
+                sums = new double[legend.size()];
+                counts = new int[legend.size()];
+            }
+            return new XsRrdUpdates(legend, sums, counts, rows);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static double parseValue(String text) {
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    public int getColumnCount() {
+        return _types.length;
+    }
+
+    public int getRowCount() {
+        return _rows;
+    }
+
+    /**
+     * @return host or vm, null if the legend entry of the column is not understood.
+     */
+    public String getType(int col) {
+        return _types[col];
+    }
+
+    public String getUuid(int col) {
+        return _uuids[col];
+    }
+
+    public String getParam(int col) {
+        return _params[col];
+    }
+
+    /**
+     * @return the average of the values of the column over all rows, leaving
+     *         out the values that are not known; 0 if the average is not a
+     *         number.
+     */
+    public double getAverage(int col) {
+        final double average = _counts[col] == 0 ? _sums[col] : _sums[col] / _counts[col];
+        if (Double.isInfinite(average) || Double.isNaN(average)) {
+            s_logger.warn("Found an invalid value (infinity/NaN) in the rrd updates of " + _types[col] + " " + _uuids[col] + " " + _params[col]);
+            return 0;
+        }
+        return average;
+    }
+}
@@ -16,7 +16,9 @@
 package com.cloud.hypervisor.xenserver.resource;
 
 import java.io.File;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -37,8 +39,10 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import com.cloud.agent.api.HostStatsEntry;
 import com.cloud.agent.api.StartupStorageCommand;
 import com.cloud.agent.api.StoragePoolInfo;
+import com.cloud.agent.api.VmStatsEntry;
 import com.cloud.hypervisor.xenserver.resource.CitrixResourceBase.SRType;
 import com.cloud.storage.Storage.StoragePoolType;
 import com.cloud.storage.Storage.StorageResourceType;
@@ -368,4 +372,28 @@ public class CitrixResourceBaseTest {
 
         Assert.assertEquals(1, startUpCommandsForLocalStorage.size());
     }
+
+    @Test
+    public void getHostAndVmStatsShareTheRrdUpdates() throws Exception {
+        XsRrdUpdates rrdUpdates = XsRrdUpdates.parse(new StringReader(XsRrdUpdatesTest.RRD_UPDATES));
+        Mockito.doReturn(rrdUpdates).when(citrixResourceBase).fetchRrdUpdates(connectionMock);
+
+        HostStatsEntry hostStats = citrixResourceBase.getHostStats(connectionMock, null, "hostGuid", 1L);
+        HashMap<String, VmStatsEntry> vmStats = citrixResourceBase.getVmStats(connectionMock, null, Arrays.asList("3f6a0c1d"), "hostGuid");
+
+        Assert.assertEquals(0.3, hostStats.getCpuUtilization(), 0.0001);
+        Assert.assertEquals(2048, hostStats.getFreeMemoryKBs(), 0.0001);
+        Assert.assertEquals(1, vmStats.get("3f6a0c1d").getNumCPUs());
+        Assert.assertEquals(30, vmStats.get("3f6a0c1d").getCPUUtilization(), 0.0001);
+        Mockito.verify(citrixResourceBase, Mockito.times(1)).fetchRrdUpdates(connectionMock);
+    }
+
+    @Test
+    public void getHostStatsFailedFetchIsNotKept() throws Exception {
+        Mockito.doReturn(null).when(citrixResourceBase).fetchRrdUpdates(connectionMock);
+
+        Assert.assertNull(citrixResourceBase.getHostStats(connectionMock, null, "hostGuid", 1L));
+        Assert.assertNull(citrixResourceBase.getHostStats(connectionMock, null, "hostGuid", 1L));
+        Mockito.verify(citrixResourceBase, Mockito.times(2)).fetchRrdUpdates(connectionMock);
+    }
 }
@@ -0,0 +1,73 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.xenserver.resource;
+
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class XsRrdUpdatesTest {
+
+    // hand written in the layout of /rrd_updates?host=true, rows newest first, with short uuids
+    // and the NaN, Infinity and exponent values the parser has to handle
+    static final String RRD_UPDATES = "<xport><meta><start>1500000000</start><step>60</step><end>1500000120</end><rows>3</rows><columns>5</columns>"
+            + "<legend><entry>AVERAGE:host:c2b5ba3e:cpu_avg</entry><entry>AVERAGE:host:c2b5ba3e:memory_free_kib</entry>"
+            + "<entry>AVERAGE:vm:3f6a0c1d:cpu0</entry><entry>AVERAGE:vm:3f6a0c1d:vif_0_rx</entry><entry>unknown</entry></legend></meta>"
+            + "<data><row><t>1500000120</t><v>0.5</v><v>1024</v><v>NaN</v><v>2048.0</v><v>1</v></row>"
+            + "<row><t>1500000060</t><v>0.3</v><v>2048</v><v>0.2</v><v>1.0E3</v><v>1</v></row>"
+            + "<row><t>1500000000</t><v>0.1</v><v>3072</v><v>0.4</v><v>Infinity</v><v>1</v></row></data></xport>";
+
+    @Test
+    public void testParse() throws Exception {
+        XsRrdUpdates updates = XsRrdUpdates.parse(new StringReader(RRD_UPDATES));
+
+        Assert.assertEquals(3, updates.getRowCount());
+        Assert.assertEquals(5, updates.getColumnCount());
+        Assert.assertEquals("host", updates.getType(0));
+        Assert.assertEquals("c2b5ba3e", updates.getUuid(0));
+        Assert.assertEquals("cpu_avg", updates.getParam(0));
+        Assert.assertEquals("vm", updates.getType(3));
+        Assert.assertEquals("vif_0_rx", updates.getParam(3));
+        Assert.assertNull(updates.getType(4));
+
+        Assert.assertEquals(0.3, updates.getAverage(0), 0.0001);
+        Assert.assertEquals(2048, updates.getAverage(1), 0.0001);
+    }
+
+    @Test
+    public void testUnknownValuesAreLeftOut() throws Exception {
+        XsRrdUpdates updates = XsRrdUpdates.parse(new StringReader(RRD_UPDATES));
+        Assert.assertEquals(0.3, updates.getAverage(2), 0.0001);
+    }
+
+    @Test
+    public void testInfiniteAverageIsZero() throws Exception {
+        XsRrdUpdates updates = XsRrdUpdates.parse(new StringReader(RRD_UPDATES));
+        Assert.assertEquals(0, updates.getAverage(3), 0);
+    }
+
+    @Test
+    public void testNoRows() throws Exception {
+        XsRrdUpdates updates = XsRrdUpdates.parse(new StringReader("<xport><meta><rows>0</rows><columns>1</columns>"
+                + "<legend><entry>AVERAGE:host:c2b5ba3e:cpu_avg</entry></legend></meta><data></data></xport>"));
+
+        Assert.assertEquals(0, updates.getRowCount());
+        Assert.assertEquals(1, updates.getColumnCount());
+        Assert.assertEquals(0, updates.getAverage(0), 0);
+    }
+}
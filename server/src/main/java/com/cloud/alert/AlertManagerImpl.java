@@ -265,6 +265,7 @@ public class AlertManagerImpl extends ManagerBase implements AlertManager, Confi
         //        per host accurate.
 
         try {
+            final long startTime = System.currentTimeMillis();
 
             if (s_logger.isDebugEnabled()) {
                 s_logger.debug("recalculating system capacity");
@@ -275,10 +276,9 @@ public class AlertManagerImpl extends ManagerBase implements AlertManager, Confi
             //     get all hosts...even if they are not in 'UP' state
             List<HostVO> hosts = _resourceMgr.listAllNotInMaintenanceHostsInOneZone(Host.Type.Routing, null);
             if (hosts != null) {
-                for (HostVO host : hosts) {
-                    _capacityMgr.updateCapacityForHost(host);
-                }
+                _capacityMgr.updateCapacityForHosts(hosts);
             }
+            final long hostsDoneTime = System.currentTimeMillis();
             if (s_logger.isDebugEnabled()) {
                 s_logger.debug("Done executing cpu/ram capacity update");
                 s_logger.debug("Executing storage capacity update");
@@ -294,6 +294,7 @@ public class AlertManagerImpl extends ManagerBase implements AlertManager, Confi
                 }
             }
 
+            final long storageDoneTime = System.currentTimeMillis();
             if (s_logger.isDebugEnabled()) {
                 s_logger.debug("Done executing storage capacity update");
                 s_logger.debug("Executing capacity updates for public ip and Vlans");
@@ -341,6 +342,9 @@ public class AlertManagerImpl extends ManagerBase implements AlertManager, Confi
                 s_logger.debug("Done executing capacity updates for private ip");
                 s_logger.debug("Done recalculating system capacity");
             }
+            final long endTime = System.currentTimeMillis();
+            s_logger.info("Recalculated system capacity in " + (endTime - startTime) + " ms (cpu/ram: " + (hostsDoneTime - startTime) + " ms, storage: "
+                    + (storageDoneTime - hostsDoneTime) + " ms, ip/vlan: " + (endTime - storageDoneTime) + " ms)");
 
         } catch (Throwable t) {
             s_logger.error("Caught exception in recalculating capacity", t);
@@ -292,6 +292,7 @@ import com.cloud.user.dao.UserStatisticsDao;
 import com.cloud.uservm.UserVm;
 import com.cloud.utils.EnumUtils;
 import com.cloud.utils.Pair;
+import com.cloud.utils.db.LookupContext;
 import com.cloud.vm.ConsoleProxyVO;
 import com.cloud.vm.DomainRouterVO;
 import com.cloud.vm.InstanceGroup;
@@ -792,7 +793,7 @@ public class ApiDBUtils {
     // ///////////////////////////////////////////////////////////
 
     public static VMInstanceVO findVMInstanceById(long vmId) {
-        return s_vmDao.findByIdIncludingRemoved(vmId);
+        return LookupContext.findByIdIncludingRemoved(s_vmDao, vmId);
     }
 
     public static long getStorageCapacitybyPool(Long poolId, short capacityType) {
@@ -954,11 +955,19 @@ public class ApiDBUtils {
     // ///////////////////////////////////////////////////////////
 
     public static Account findAccountById(Long accountId) {
-        return s_accountDao.findByIdIncludingRemoved(accountId);
+        return LookupContext.findByIdIncludingRemoved(s_accountDao, accountId);
     }
 
     public static Account findAccountByIdIncludingRemoved(Long accountId) {
-        return s_accountDao.findByIdIncludingRemoved(accountId);
+        return LookupContext.findByIdIncludingRemoved(s_accountDao, accountId);
+    }
+
+    public static void prefetchAccount(Long accountId) {
+        LookupContext.prefetch(s_accountDao, accountId);
+    }
+
+    public static void prefetchDomain(Long domainId) {
+        LookupContext.prefetch(s_domainDao, domainId);
     }
 
     public static Account findAccountByNameDomain(String accountName, Long domainId) {
@@ -987,7 +996,7 @@ public class ApiDBUtils {
     }
 
     public static DomainVO findDomainById(Long domainId) {
-        return s_domainDao.findByIdIncludingRemoved(domainId);
+        return LookupContext.findByIdIncludingRemoved(s_domainDao, domainId);
     }
 
     public static DomainJoinVO findDomainJoinVOById(Long domainId) {
@@ -995,7 +1004,7 @@ public class ApiDBUtils {
     }
 
     public static DomainVO findDomainByIdIncludingRemoved(Long domainId) {
-        return s_domainDao.findByIdIncludingRemoved(domainId);
+        return LookupContext.findByIdIncludingRemoved(s_domainDao, domainId);
     }
 
     public static boolean isChildDomain(long parentId, long childId) {
@@ -1015,7 +1024,7 @@ public class ApiDBUtils {
     }
 
     public static HostVO findHostById(Long hostId) {
-        return s_hostDao.findByIdIncludingRemoved(hostId);
+        return LookupContext.findByIdIncludingRemoved(s_hostDao, hostId);
     }
 
     public static IPAddressVO findIpAddressById(long addressId) {
@@ -1062,7 +1071,7 @@ public class ApiDBUtils {
     }
 
     public static ServiceOffering findServiceOfferingById(Long serviceOfferingId) {
-        return s_serviceOfferingDao.findByIdIncludingRemoved(serviceOfferingId);
+        return LookupContext.findByIdIncludingRemoved(s_serviceOfferingDao, serviceOfferingId);
     }
 
     public static ServiceOfferingDetailsVO findServiceOfferingDetail(long serviceOfferingId, String key) {
@@ -1105,7 +1114,7 @@ public class ApiDBUtils {
     }
 
     public static VolumeVO findVolumeById(Long volumeId) {
-        return s_volumeDao.findByIdIncludingRemoved(volumeId);
+        return LookupContext.findByIdIncludingRemoved(s_volumeDao, volumeId);
     }
 
     public static Site2SiteVpnGatewayVO findVpnGatewayById(Long vpnGatewayId) {
@@ -1238,7 +1247,7 @@ public class ApiDBUtils {
     }
 
     public static NetworkOfferingVO findNetworkOfferingById(long networkOfferingId) {
-        return s_networkOfferingDao.findByIdIncludingRemoved(networkOfferingId);
+        return LookupContext.findByIdIncludingRemoved(s_networkOfferingDao, networkOfferingId);
     }
 
     public static List<? extends Vlan> listVlanByNetworkId(long networkId) {
@@ -1254,7 +1263,7 @@ public class ApiDBUtils {
     }
 
     public static NetworkVO findNetworkById(long id) {
-        return s_networkDao.findByIdIncludingRemoved(id);
+        return LookupContext.findByIdIncludingRemoved(s_networkDao, id);
     }
 
     public static Map<Service, Map<Capability, String>> getNetworkCapabilities(long networkId, long zoneId) {
@@ -23,6 +23,7 @@ import javax.inject.Inject;
 
 import com.cloud.projects.Project;
 import com.cloud.utils.db.EntityManager;
+import com.cloud.utils.db.LookupContext;
 import org.apache.log4j.Logger;
 
 import org.apache.cloudstack.acl.ControlledEntity;
@@ -35,6 +36,7 @@ import org.apache.cloudstack.api.BaseAsyncCreateCmd;
 import org.apache.cloudstack.api.BaseAsyncCustomIdCmd;
 import org.apache.cloudstack.api.BaseCmd;
 import org.apache.cloudstack.api.BaseCustomIdCmd;
+import org.apache.cloudstack.api.BaseListCmd;
 import org.apache.cloudstack.context.CallContext;
 import org.apache.cloudstack.framework.jobs.AsyncJob;
 import org.apache.cloudstack.framework.jobs.AsyncJobManager;
@@ -147,7 +149,17 @@ public class ApiDispatcher {
             ((BaseCustomIdCmd)cmd).checkUuid();
         }
 
-        cmd.execute();
+        if (cmd instanceof BaseListCmd) {
+            // the response of a list API looks up the same accounts, domains, etc. for many items
+            final LookupContext lookupContext = LookupContext.open();
+            try {
+                cmd.execute();
+            } finally {
+                lookupContext.close();
+            }
+        } else {
+            cmd.execute();
+        }
                             }
 
 }
@@ -481,6 +481,14 @@ public class ApiResponseHelper implements ResponseGenerator {
         return cfgResponse;
     }
 
+    @Override
+    public void prefetchOwners(List<? extends ControlledEntity> entities) {
+        for (ControlledEntity entity : entities) {
+            ApiDBUtils.prefetchAccount(entity.getAccountId());
+            ApiDBUtils.prefetchDomain(entity.getDomainId());
+        }
+    }
+
     @Override
     public SnapshotResponse createSnapshotResponse(Snapshot snapshot) {
         SnapshotResponse snapshotResponse = new SnapshotResponse();
@@ -26,12 +26,16 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.text.SimpleDateFormat;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
 import com.google.common.base.Strings;
@@ -64,7 +68,9 @@ import com.cloud.user.Account;
 import com.cloud.user.AccountManager;
 import com.cloud.utils.DateUtil;
 import com.cloud.utils.db.EntityManager;
+import com.cloud.utils.db.UuidChanges;
 import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.utils.mgmt.JmxUtil;
 
 public class ParamProcessWorker implements DispatchWorker {
 
@@ -72,6 +78,12 @@ public class ParamProcessWorker implements DispatchWorker {
     public final DateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd");
     public final DateFormat newInputFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
+    private static final Pattern UUID_PATTERN = Pattern.compile("^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$");
+    private static final long UUID_CACHE_SIZE = 100000;
+    private static final long UUID_CACHE_EXPIRE_SECONDS = 3600;
+
+    protected UuidTranslationCache _uuidCache = new UuidTranslationCache(UUID_CACHE_SIZE, UUID_CACHE_EXPIRE_SECONDS);
+
     @Inject
     protected AccountManager _accountMgr;
 
@@ -89,6 +101,16 @@ public class ParamProcessWorker implements DispatchWorker {
         _secChecker = secChecker;
     }
 
+    @PostConstruct
+    void init() {
+        UuidChanges.addListener(_uuidCache);
+        try {
+            JmxUtil.registerMBean("ApiDispatcher", "UuidTranslationCache", _uuidCache);
+        } catch (final Exception e) {
+            s_logger.warn("Unable to register the uuid translation cache to JMX", e);
+        }
+    }
+
     @Override
     public void handle(final DispatchTask task) {
         processParameters(task.getCmd(), task.getParams());
@@ -218,14 +240,16 @@ public class ParamProcessWorker implements DispatchWorker {
                             switch (listType) {
                             case LONG:
                             case UUID:
-                                final List<Long> listParam = (List<Long>) field.get(cmd);
-                                for (final Long entityId : listParam) {
-                                    for (final Class entity : entityList) {
-                                        final Object entityObj = _entityMgr.findById(entity, entityId);
-                                        if(entityObj != null){
-                                            entitiesToAccess.put(entityObj, checkAccess.accessType());
-                                            break;
-                                        }
+                                final Set<Long> entityIds = new LinkedHashSet<Long>((List<Long>) field.get(cmd));
+                                // look the ids up together, taking each from the first entity type it is found for
+                                for (final Class entity : entityList) {
+                                    if (entityIds.isEmpty()) {
+                                        break;
+                                    }
+                                    final Map<Long, Object> entityObjs = _entityMgr.findByIds(entity, entityIds);
+                                    for (final Map.Entry<Long, Object> entityObj : entityObjs.entrySet()) {
+                                        entitiesToAccess.put(entityObj.getValue(), checkAccess.accessType());
+                                        entityIds.remove(entityObj.getKey());
                                     }
                                 }
                                 break;
@@ -363,6 +387,7 @@ public class ParamProcessWorker implements DispatchWorker {
             case LIST:
                 final List listParam = new ArrayList();
                 final StringTokenizer st = new StringTokenizer(paramObj.toString(), ",");
+                final List<String> uuids = new ArrayList<String>();
                 while (st.hasMoreTokens()) {
                     final String token = st.nextToken();
                     final CommandType listType = annotation.collectionType();
@@ -373,8 +398,7 @@ public class ParamProcessWorker implements DispatchWorker {
                     case UUID:
                         if (token.isEmpty())
                             break;
-                        final Long internalId = translateUuidToInternalId(token, annotation);
-                        listParam.add(internalId);
+                        uuids.add(token);
                         break;
                     case LONG: {
                         listParam.add(Long.valueOf(token));
@@ -388,6 +412,9 @@ public class ParamProcessWorker implements DispatchWorker {
                         break;
                     }
                 }
+                if (!uuids.isEmpty()) {
+                    listParam.addAll(translateUuidsToInternalIds(uuids, annotation));
+                }
                 field.set(cmdObj, listParam);
                 break;
             case UUID:
@@ -449,7 +476,7 @@ public class ParamProcessWorker implements DispatchWorker {
         // If annotation's empty, the cmd existed before 3.x try conversion to long
         final boolean isPre3x = annotation.since().isEmpty();
         // Match against Java's UUID regex to check if input is uuid string
-        final boolean isUuid = uuid.matches("^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$");
+        final boolean isUuid = UUID_PATTERN.matcher(uuid).matches();
         // Enforce that it's uuid for newly added apis from version 3.x
         if (!isPre3x && !isUuid)
             return null;
@@ -478,6 +505,11 @@ public class ParamProcessWorker implements DispatchWorker {
         // Go through each entity which is an interface to a VO class and get a VO object
         // Try to getId() for the object using reflection, break on first non-null value
         for (final Class<?> entity : entities) {
+            internalId = _uuidCache.getId(entity, uuid);
+            if (internalId != null) {
+                CallContext.current().putContextParameter(entity, uuid);
+                break;
+            }
             // For backward compatibility, we search within removed entities and let service layer deal
             // with removed ones, return empty response or error
             final Object objVO = _entityMgr.findByUuidIncludingRemoved(entity, uuid);
@@ -493,6 +525,7 @@ public class ParamProcessWorker implements DispatchWorker {
             }
             // Return on first non-null Id for the uuid entity
             if (internalId != null){
+                _uuidCache.put(entity, uuid, internalId);
                 CallContext.current().putContextParameter(entity, uuid);
                 break;
             }
@@ -506,4 +539,57 @@ public class ParamProcessWorker implements DispatchWorker {
         validateNaturalNumber(internalId, annotation.name());
         return internalId;
     }
+
+    /**
+     * Translates the uuids of a list parameter, looking up those that are not
+     * cached with one query per entity type rather than one per uuid.
+     */
+    private List<Long> translateUuidsToInternalIds(final List<String> uuids, final Parameter annotation) {
+        final Class<?>[] entities = annotation.entityType()[0].getAnnotation(EntityReference.class).value();
+        final Map<String, Long> internalIds = new HashMap<String, Long>();
+        final Set<String> missing = new LinkedHashSet<String>();
+        for (final String uuid : uuids) {
+            if (UUID_PATTERN.matcher(uuid).matches()) {
+                missing.add(uuid);
+            }
+        }
+        for (final Class<?> entity : entities) {
+            if (missing.isEmpty()) {
+                break;
+            }
+            final List<String> uncached = new ArrayList<String>();
+            for (final String uuid : missing) {
+                final Long internalId = _uuidCache.getId(entity, uuid);
+                if (internalId != null) {
+                    internalIds.put(uuid, internalId);
+                    CallContext.current().putContextParameter(entity, uuid);
+                } else {
+                    uncached.add(uuid);
+                }
+            }
+            if (!uncached.isEmpty()) {
+                final Map<String, ?> objVOs = _entityMgr.findByUuidsIncludingRemoved(entity, uncached);
+                for (final Map.Entry<String, ?> objVO : objVOs.entrySet()) {
+                    final long internalId = ((InternalIdentity)objVO.getValue()).getId();
+                    _uuidCache.put(entity, objVO.getKey(), internalId);
+                    internalIds.put(objVO.getKey(), internalId);
+                    CallContext.current().putContextParameter(entity, objVO.getKey());
+                }
+            }
+            missing.removeAll(internalIds.keySet());
+        }
+
+        final List<Long> result = new ArrayList<Long>(uuids.size());
+        for (final String uuid : uuids) {
+            final Long internalId = internalIds.get(uuid);
+            if (internalId != null) {
+                validateNaturalNumber(internalId, annotation.name());
+                result.add(internalId);
+            } else {
+                // not a uuid, or not found, which is reported the way a single uuid is
+                result.add(translateUuidToInternalId(uuid, annotation));
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,124 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api.dispatch;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.cloud.utils.db.UuidChanges;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * UuidTranslationCache remembers the internal id API parameters given as a
+ * uuid were translated to, per entity type, so a uuid seen again does not
+ * load its entity from the database again.
+ *
+ * A uuid keeps pointing to the same row, removed or not, unless the uuid is
+ * changed through a custom id or the row is deleted.  The cache listens to
+ * {@link UuidChanges} and drops the entries of a row as soon as the change is
+ * committed, here or on another management server.  Otherwise entries are
+ * only dropped to keep the cache bounded, or when they expire.
+ */
+public class UuidTranslationCache implements UuidTranslationCacheMBean, UuidChanges.Listener {
+
+    private static final class Key {
+        private final Class<?> _entityType;
+        private final String _uuid;
+
+        Key(Class<?> entityType, String uuid) {
+            _entityType = entityType;
+            _uuid = uuid;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key)obj;
+            return _entityType == that._entityType && _uuid.equals(that._uuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * _entityType.hashCode() + _uuid.hashCode();
+        }
+    }
+
+    private final Cache<Key, Long> _cache;
+
+    public UuidTranslationCache(long maxSize, long expireSeconds) {
+        _cache = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(expireSeconds, TimeUnit.SECONDS).recordStats().build();
+    }
+
+    /**
+     * @return the internal id of the entity, or null if it is not known.
+     */
+    public Long getId(Class<?> entityType, String uuid) {
+        return _cache.getIfPresent(new Key(entityType, uuid));
+    }
+
+    public void put(Class<?> entityType, String uuid, long id) {
+        _cache.put(new Key(entityType, uuid), id);
+    }
+
+    /**
+     * Drops the entries of the row, or of every row if id is null, under
+     * every entity type the VO class implements.
+     */
+    public void evict(Class<?> entityBeanType, Long id) {
+        final Iterator<Map.Entry<Key, Long>> it = _cache.asMap().entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Key, Long> entry = it.next();
+            if ((id == null || entry.getValue().equals(id)) && entry.getKey()._entityType.isAssignableFrom(entityBeanType)) {
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public void onUuidChanged(Class<?> entityBeanType, Long id) {
+        evict(entityBeanType, id);
+    }
+
+    @Override
+    public long getSize() {
+        return _cache.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return _cache.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return _cache.stats().missCount();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return _cache.stats().hitRate();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return _cache.stats().evictionCount();
+    }
+}
@@ -0,0 +1,83 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import com.cloud.exception.InvalidParameterValueException;
+
+/**
+ * Encodes the sort key of the last row of a page into the opaque cursor
+ * returned as nextcursor by the list APIs that support keyset pagination,
+ * and decodes it back into the values for {@link com.cloud.utils.db.Filter#setSeekAfter(Object...)}.
+ */
+public final class ListCursor {
+    private static final String SEPARATOR = ",";
+
+    private ListCursor() {
+    }
+
+    public static String encode(Object... values) {
+        StringBuilder str = new StringBuilder();
+        for (Object value : values) {
+            if (str.length() > 0) {
+                str.append(SEPARATOR);
+            }
+            if (value instanceof Date) {
+                str.append(((Date)value).getTime());
+            } else if (value instanceof Long || value instanceof Integer) {
+                str.append(value);
+            } else {
+                throw new IllegalArgumentException("Unsupported cursor value " + value);
+            }
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(str.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param types the type of each value, Long or Date.
+     */
+    public static Object[] decode(String cursor, Class<?>... types) {
+        String[] tokens;
+        try {
+            tokens = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParameterValueException("Invalid cursor " + cursor);
+        }
+        if (tokens.length != types.length) {
+            throw new InvalidParameterValueException("Invalid cursor " + cursor);
+        }
+        Object[] values = new Object[types.length];
+        try {
+            for (int i = 0; i < types.length; i++) {
+                long value = Long.parseLong(tokens[i]);
+                if (types[i] == Date.class) {
+                    values[i] = new Date(value);
+                } else if (types[i] == Long.class) {
+                    values[i] = value;
+                } else {
+                    throw new IllegalArgumentException("Unsupported cursor type " + types[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new InvalidParameterValueException("Invalid cursor " + cursor);
+        }
+        return values;
+    }
+}
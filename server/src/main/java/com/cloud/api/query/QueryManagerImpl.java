@@ -763,7 +763,7 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
 
     @Override
     public ListResponse<UserVmResponse> searchForUserVMs(ListVMsCmd cmd) {
-        Pair<List<UserVmJoinVO>, Integer> result = searchForUserVMsInternal(cmd);
+        Ternary<List<UserVmJoinVO>, Integer, String> result = searchForUserVMsInternal(cmd);
         ListResponse<UserVmResponse> response = new ListResponse<UserVmResponse>();
         ResponseView respView = ResponseView.Restricted;
         if (cmd instanceof ListVMsCmdByAdmin) {
@@ -773,10 +773,14 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
                 result.first().toArray(new UserVmJoinVO[result.first().size()]));
 
         response.setResponses(vmResponses, result.second());
+        response.setNextCursor(result.third());
         return response;
     }
 
-    private Pair<List<UserVmJoinVO>, Integer> searchForUserVMsInternal(ListVMsCmd cmd) {
+    /**
+     * @return the vms of the page, the total count and the cursor of the next page.
+     */
+    private Ternary<List<UserVmJoinVO>, Integer, String> searchForUserVMsInternal(ListVMsCmd cmd) {
         Account caller = CallContext.current().getCallingAccount();
         List<Long> permittedAccounts = new ArrayList<Long>();
 
@@ -795,6 +799,9 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
 
         Filter searchFilter = new Filter(UserVmJoinVO.class, "id", true, cmd.getStartIndex(),
                 cmd.getPageSizeVal());
+        if (cmd.getCursor() != null) {
+            searchFilter.setSeekAfter(ListCursor.decode(cmd.getCursor(), Long.class));
+        }
 
         List<Long> ids = null;
         if (cmd.getId() != null) {
@@ -1025,7 +1032,7 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
         Integer count = uniqueVmPair.second();
         if (count.intValue() == 0) {
             // handle empty result cases
-            return uniqueVmPair;
+            return new Ternary<List<UserVmJoinVO>, Integer, String>(uniqueVmPair.first(), count, null);
         }
         List<UserVmJoinVO> uniqueVms = uniqueVmPair.first();
         Long[] vmIds = new Long[uniqueVms.size()];
@@ -1034,7 +1041,11 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
             vmIds[i++] = v.getId();
         }
         List<UserVmJoinVO> vms = _userVmJoinDao.searchByIds(vmIds);
-        return new Pair<List<UserVmJoinVO>, Integer>(vms, count);
+        String nextCursor = null;
+        if (cmd.getPageSizeVal() != null && uniqueVms.size() == cmd.getPageSizeVal()) {
+            nextCursor = ListCursor.encode(vmIds[vmIds.length - 1]);
+        }
+        return new Ternary<List<UserVmJoinVO>, Integer, String>(vms, count, nextCursor);
     }
 
     @Override
@@ -1695,7 +1706,7 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
 
     @Override
     public ListResponse<VolumeResponse> searchForVolumes(ListVolumesCmd cmd) {
-        Pair<List<VolumeJoinVO>, Integer> result = searchForVolumesInternal(cmd);
+        Ternary<List<VolumeJoinVO>, Integer, String> result = searchForVolumesInternal(cmd);
         ListResponse<VolumeResponse> response = new ListResponse<VolumeResponse>();
 
         ResponseView respView = ResponseView.Restricted;
@@ -1729,10 +1740,14 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
             }
         }
         response.setResponses(volumeResponses, result.second());
+        response.setNextCursor(result.third());
         return response;
     }
 
-    private Pair<List<VolumeJoinVO>, Integer> searchForVolumesInternal(ListVolumesCmd cmd) {
+    /**
+     * @return the volumes of the page, the total count and the cursor of the next page.
+     */
+    private Ternary<List<VolumeJoinVO>, Integer, String> searchForVolumesInternal(ListVolumesCmd cmd) {
 
         Account caller = CallContext.current().getCallingAccount();
         List<Long> permittedAccounts = new ArrayList<Long>();
@@ -1761,6 +1776,11 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
         Boolean isRecursive = domainIdRecursiveListProject.second();
         ListProjectResourcesCriteria listProjectResourcesCriteria = domainIdRecursiveListProject.third();
         Filter searchFilter = new Filter(VolumeJoinVO.class, "created", false, cmd.getStartIndex(), cmd.getPageSizeVal());
+        // volumes created in the same second must not move between pages
+        searchFilter.addOrderBy(VolumeJoinVO.class, "id", false);
+        if (cmd.getCursor() != null) {
+            searchFilter.setSeekAfter(ListCursor.decode(cmd.getCursor(), Date.class, Long.class));
+        }
 
         // hack for now, this should be done better but due to needing a join I
         // opted to
@@ -1868,7 +1888,7 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
         Integer count = uniqueVolPair.second();
         if (count.intValue() == 0) {
             // empty result
-            return uniqueVolPair;
+            return new Ternary<List<VolumeJoinVO>, Integer, String>(uniqueVolPair.first(), count, null);
         }
         List<VolumeJoinVO> uniqueVols = uniqueVolPair.first();
         Long[] vrIds = new Long[uniqueVols.size()];
@@ -1877,7 +1897,18 @@ public class QueryManagerImpl extends MutualExclusiveIdsManagerBase implements Q
             vrIds[i++] = v.getId();
         }
         List<VolumeJoinVO> vrs = _volumeJoinDao.searchByIds(vrIds);
-        return new Pair<List<VolumeJoinVO>, Integer>(vrs, count);
+        String nextCursor = null;
+        if (cmd.getPageSizeVal() != null && uniqueVols.size() == cmd.getPageSizeVal()) {
+            // only the ids were selected, take the creation date of the last one from the details
+            long lastId = vrIds[vrIds.length - 1];
+            for (VolumeJoinVO vr : vrs) {
+                if (vr.getId() == lastId && vr.getCreated() != null) {
+                    nextCursor = ListCursor.encode(vr.getCreated(), lastId);
+                    break;
+                }
+            }
+        }
+        return new Ternary<List<VolumeJoinVO>, Integer, String>(vrs, count, nextCursor);
     }
 
     @Override
@@ -99,6 +99,11 @@ public class ApiResponseSerializer {
                 if (nonZeroCount) {
                     sb.append("{\"").append(ApiConstants.COUNT).append("\":").append(count);
                     log.append("{\"").append(ApiConstants.COUNT).append("\":").append(count);
+                    String nextCursor = ((ListResponse)result).getNextCursor();
+                    if (nextCursor != null) {
+                        sb.append(",\"").append(ApiConstants.NEXT_CURSOR).append("\":\"").append(nextCursor).append("\"");
+                        log.append(",\"").append(ApiConstants.NEXT_CURSOR).append("\":\"").append(nextCursor).append("\"");
+                    }
                 }
 
                 if ((responses != null) && !responses.isEmpty()) {
@@ -180,6 +185,11 @@ public class ApiResponseSerializer {
                 if (count != null && count != 0) {
                     sb.append("<").append(ApiConstants.COUNT).append(">").append(((ListResponse)result).getCount()).append("</").append(ApiConstants.COUNT).append(">");
                     log.append("<").append(ApiConstants.COUNT).append(">").append(((ListResponse)result).getCount()).append("</").append(ApiConstants.COUNT).append(">");
+                    String nextCursor = ((ListResponse)result).getNextCursor();
+                    if (nextCursor != null) {
+                        sb.append("<").append(ApiConstants.NEXT_CURSOR).append(">").append(nextCursor).append("</").append(ApiConstants.NEXT_CURSOR).append(">");
+                        log.append("<").append(ApiConstants.NEXT_CURSOR).append(">").append(nextCursor).append("</").append(ApiConstants.NEXT_CURSOR).append(">");
+                    }
                 }
                 List<? extends ResponseObject> responses = ((ListResponse)result).getResponses();
                 if ((responses != null) && !responses.isEmpty()) {
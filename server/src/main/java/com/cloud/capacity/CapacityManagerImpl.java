@@ -17,6 +17,9 @@
 package com.cloud.capacity;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -83,7 +86,6 @@ import com.cloud.utils.db.TransactionStatus;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.fsm.StateListener;
 import com.cloud.utils.fsm.StateMachine2;
-import com.cloud.vm.UserVmDetailVO;
 import com.cloud.vm.UserVmVO;
 import com.cloud.vm.VMInstanceVO;
 import com.cloud.vm.VirtualMachine;
@@ -97,6 +99,10 @@ import com.cloud.vm.snapshot.dao.VMSnapshotDao;
 public class CapacityManagerImpl extends ManagerBase implements CapacityManager, StateListener<State, VirtualMachine.Event, VirtualMachine>, Listener, ResourceListener,
         Configurable {
     private static final Logger s_logger = Logger.getLogger(CapacityManagerImpl.class);
+
+    private static final int HOST_CAPACITY_UPDATE_BATCH_SIZE = 100;
+    private static final List<Short> HOST_COMPUTE_CAPACITY_TYPES = Arrays.asList(Capacity.CAPACITY_TYPE_CPU, Capacity.CAPACITY_TYPE_MEMORY,
+            CapacityVO.CAPACITY_TYPE_CPU_CORE);
     @Inject
     CapacityDao _capacityDao;
     @Inject
@@ -571,13 +577,143 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
     @DB
     @Override
     public void updateCapacityForHost(final Host host) {
-        // prepare the service offerings
+        List<VMInstanceVO> vms = _vmDao.listUpByHostId(host.getId());
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Found " + vms.size() + " VMs on host " + host.getId());
+        }
+        List<VMInstanceVO> vmsByLastHostId = _vmDao.listByLastHostId(host.getId());
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Found " + vmsByLastHostId.size() + " VM, not running on host " + host.getId());
+        }
+        List<Long> vmIds = new ArrayList<Long>(vms.size() + vmsByLastHostId.size());
+        for (VMInstanceVO vm : vms) {
+            vmIds.add(vm.getId());
+        }
+        for (VMInstanceVO vm : vmsByLastHostId) {
+            vmIds.add(vm.getId());
+        }
+
+        updateCapacityForHost(host, getServiceOfferingsMap(), vms, vmsByLastHostId, _userVmDetailsDao.listDetailsKeyPairs(vmIds),
+                getClusterOvercommitRatios(host.getClusterId()), _capacityDao.findByHostIdType(host.getId(), Capacity.CAPACITY_TYPE_CPU),
+                _capacityDao.findByHostIdType(host.getId(), Capacity.CAPACITY_TYPE_MEMORY), _capacityDao.findByHostIdType(host.getId(), CapacityVO.CAPACITY_TYPE_CPU_CORE));
+    }
+
+    @DB
+    @Override
+    public void updateCapacityForHosts(final List<? extends Host> hosts) {
+        final long startTime = System.currentTimeMillis();
+        final Map<Long, ServiceOfferingVO> offeringsMap = getServiceOfferingsMap();
+        final Map<Long, Pair<Float, Float>> clusterOvercommitRatios = new HashMap<Long, Pair<Float, Float>>();
+        for (int i = 0; i < hosts.size(); i += HOST_CAPACITY_UPDATE_BATCH_SIZE) {
+            updateCapacityForHostBatch(hosts.subList(i, Math.min(i + HOST_CAPACITY_UPDATE_BATCH_SIZE, hosts.size())), offeringsMap, clusterOvercommitRatios);
+        }
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Updated the cpu/ram capacity of " + hosts.size() + " hosts in " + (System.currentTimeMillis() - startTime) + " ms");
+        }
+    }
+
+    /**
+     * Loads the vms, their details and the capacities of all hosts of the
+     * batch with a few queries and updates the capacities of each host in a
+     * transaction of its own.
+     */
+    private void updateCapacityForHostBatch(final List<? extends Host> hosts, final Map<Long, ServiceOfferingVO> offeringsMap,
+            final Map<Long, Pair<Float, Float>> clusterOvercommitRatios) {
+        List<Long> hostIds = new ArrayList<Long>(hosts.size());
+        for (Host host : hosts) {
+            hostIds.add(host.getId());
+        }
+
+        List<Long> vmIds = new ArrayList<Long>();
+        final Map<Long, List<VMInstanceVO>> vmsByHostId = new HashMap<Long, List<VMInstanceVO>>();
+        for (VMInstanceVO vm : _vmDao.listUpByHostIds(hostIds)) {
+            getOrCreateList(vmsByHostId, vm.getHostId()).add(vm);
+            vmIds.add(vm.getId());
+        }
+        final Map<Long, List<VMInstanceVO>> vmsByLastHostId = new HashMap<Long, List<VMInstanceVO>>();
+        for (VMInstanceVO vm : _vmDao.listByLastHostIds(hostIds)) {
+            getOrCreateList(vmsByLastHostId, vm.getLastHostId()).add(vm);
+            vmIds.add(vm.getId());
+        }
+        final Map<Long, Map<String, String>> vmDetails = _userVmDetailsDao.listDetailsKeyPairs(vmIds);
+
+        final Map<Long, Map<Short, CapacityVO>> capacities = new HashMap<Long, Map<Short, CapacityVO>>();
+        for (CapacityVO capacity : _capacityDao.listByHostIdsTypes(hostIds, HOST_COMPUTE_CAPACITY_TYPES)) {
+            Map<Short, CapacityVO> hostCapacities = capacities.get(capacity.getHostOrPoolId());
+            if (hostCapacities == null) {
+                hostCapacities = new HashMap<Short, CapacityVO>();
+                capacities.put(capacity.getHostOrPoolId(), hostCapacities);
+            }
+            hostCapacities.put(capacity.getCapacityType(), capacity);
+        }
+
+        for (final Host host : hosts) {
+            Map<Short, CapacityVO> hostCapacities = capacities.get(host.getId());
+            if (hostCapacities == null) {
+                hostCapacities = Collections.emptyMap();
+            }
+            final CapacityVO cpuCap = hostCapacities.get(Capacity.CAPACITY_TYPE_CPU);
+            final CapacityVO memCap = hostCapacities.get(Capacity.CAPACITY_TYPE_MEMORY);
+            final CapacityVO cpuCoreCap = hostCapacities.get(CapacityVO.CAPACITY_TYPE_CPU_CORE);
+            try {
+                Pair<Float, Float> ratios = clusterOvercommitRatios.get(host.getClusterId());
+                if (ratios == null) {
+                    ratios = getClusterOvercommitRatios(host.getClusterId());
+                    clusterOvercommitRatios.put(host.getClusterId(), ratios);
+                }
+                final Pair<Float, Float> hostRatios = ratios;
+                // a transaction per host, so that a failure on one host neither rolls back nor breaks the others
+                Transaction.execute(new TransactionCallbackNoReturn() {
+                    @Override
+                    public void doInTransactionWithoutResult(TransactionStatus status) {
+                        updateCapacityForHost(host, offeringsMap, getOrCreateList(vmsByHostId, host.getId()), getOrCreateList(vmsByLastHostId, host.getId()), vmDetails,
+                                hostRatios, cpuCap, memCap, cpuCoreCap);
+                    }
+                });
+            } catch (RuntimeException e) {
+                s_logger.warn("Unable to update the cpu/ram capacity of host " + host.getId(), e);
+            }
+        }
+    }
+
+    private static <T> List<T> getOrCreateList(Map<Long, List<T>> map, Long key) {
+        List<T> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<T>();
+            map.put(key, list);
+        }
+        return list;
+    }
+
+    private Map<Long, ServiceOfferingVO> getServiceOfferingsMap() {
         List<ServiceOfferingVO> offerings = _offeringsDao.listAllIncludingRemoved();
         Map<Long, ServiceOfferingVO> offeringsMap = new HashMap<Long, ServiceOfferingVO>();
         for (ServiceOfferingVO offering : offerings) {
             offeringsMap.put(offering.getId(), offering);
         }
+        return offeringsMap;
+    }
+
+    /**
+     * @return the cpu and the memory overcommit ratio of the cluster
+     */
+    private Pair<Float, Float> getClusterOvercommitRatios(Long clusterId) {
+        ClusterVO cluster = _clusterDao.findById(clusterId);
+        ClusterDetailsVO clusterDetailCpu = _clusterDetailsDao.findDetail(cluster.getId(), "cpuOvercommitRatio");
+        ClusterDetailsVO clusterDetailRam = _clusterDetailsDao.findDetail(cluster.getId(), "memoryOvercommitRatio");
+        return new Pair<Float, Float>(Float.parseFloat(clusterDetailCpu.getValue()), Float.parseFloat(clusterDetailRam.getValue()));
+    }
 
+    /**
+     * Calibrates the cpu, cpu core and memory capacity of the host to the vms
+     * running on it and those that last ran on it, creating the capacities
+     * that do not exist yet.
+     *
+     * @param vmDetails the details of the vms, vms without details may be left out
+     * @param clusterOvercommitRatios the cpu and the memory overcommit ratio of the cluster of the host
+     */
+    private void updateCapacityForHost(final Host host, Map<Long, ServiceOfferingVO> offeringsMap, List<VMInstanceVO> vms, List<VMInstanceVO> vmsByLastHostId,
+            Map<Long, Map<String, String>> vmDetails, Pair<Float, Float> clusterOvercommitRatios, CapacityVO cpuCap, CapacityVO memCap, CapacityVO cpuCoreCap) {
         long usedCpuCore = 0;
         long reservedCpuCore = 0;
         long usedCpu = 0;
@@ -586,22 +722,14 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
         long reservedCpu = 0;
         final CapacityState capacityState = (host.getResourceState() == ResourceState.Enabled) ? CapacityState.Enabled : CapacityState.Disabled;
 
-        List<VMInstanceVO> vms = _vmDao.listUpByHostId(host.getId());
-        if (s_logger.isDebugEnabled()) {
-            s_logger.debug("Found " + vms.size() + " VMs on host " + host.getId());
-        }
-
-        ClusterVO cluster = _clusterDao.findById(host.getClusterId());
-        ClusterDetailsVO clusterDetailCpu = _clusterDetailsDao.findDetail(cluster.getId(), "cpuOvercommitRatio");
-        ClusterDetailsVO clusterDetailRam = _clusterDetailsDao.findDetail(cluster.getId(), "memoryOvercommitRatio");
-        Float clusterCpuOvercommitRatio = Float.parseFloat(clusterDetailCpu.getValue());
-        Float clusterRamOvercommitRatio = Float.parseFloat(clusterDetailRam.getValue());
-        Float cpuOvercommitRatio = 1f;
-        Float ramOvercommitRatio = 1f;
+        Float clusterCpuOvercommitRatio = clusterOvercommitRatios.first();
+        Float clusterRamOvercommitRatio = clusterOvercommitRatios.second();
         for (VMInstanceVO vm : vms) {
-            Map<String, String> vmDetails = _userVmDetailsDao.listDetailsKeyPairs(vm.getId());
-            String vmDetailCpu = vmDetails.get("cpuOvercommitRatio");
-            String vmDetailRam = vmDetails.get("memoryOvercommitRatio");
+            Float cpuOvercommitRatio = 1f;
+            Float ramOvercommitRatio = 1f;
+            Map<String, String> details = getVmDetails(vmDetails, vm);
+            String vmDetailCpu = details.get("cpuOvercommitRatio");
+            String vmDetailRam = details.get("memoryOvercommitRatio");
             if (vmDetailCpu != null) {
                 //if vmDetail_cpu is not null it means it is running in a overcommited cluster.
                 cpuOvercommitRatio = Float.parseFloat(vmDetailCpu);
@@ -610,12 +738,12 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
             ServiceOffering so = offeringsMap.get(vm.getServiceOfferingId());
             if (so.isDynamic()) {
                 usedMemory +=
-                    ((Integer.parseInt(vmDetails.get(UsageEventVO.DynamicParameters.memory.name())) * 1024L * 1024L) / ramOvercommitRatio) *
+                    ((Integer.parseInt(details.get(UsageEventVO.DynamicParameters.memory.name())) * 1024L * 1024L) / ramOvercommitRatio) *
                         clusterRamOvercommitRatio;
                 usedCpu +=
-                    ((Integer.parseInt(vmDetails.get(UsageEventVO.DynamicParameters.cpuNumber.name())) * Integer.parseInt(vmDetails.get(UsageEventVO.DynamicParameters.cpuSpeed.name()))) / cpuOvercommitRatio) *
+                    ((Integer.parseInt(details.get(UsageEventVO.DynamicParameters.cpuNumber.name())) * Integer.parseInt(details.get(UsageEventVO.DynamicParameters.cpuSpeed.name()))) / cpuOvercommitRatio) *
                         clusterCpuOvercommitRatio;
-                usedCpuCore += Integer.parseInt(vmDetails.get(UsageEventVO.DynamicParameters.cpuNumber.name()));
+                usedCpuCore += Integer.parseInt(details.get(UsageEventVO.DynamicParameters.cpuNumber.name()));
             } else {
                 usedMemory += ((so.getRamSize() * 1024L * 1024L) / ramOvercommitRatio) * clusterRamOvercommitRatio;
                 usedCpu += ((so.getCpu() * so.getSpeed()) / cpuOvercommitRatio) * clusterCpuOvercommitRatio;
@@ -623,30 +751,28 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
             }
         }
 
-        List<VMInstanceVO> vmsByLastHostId = _vmDao.listByLastHostId(host.getId());
-        if (s_logger.isDebugEnabled()) {
-            s_logger.debug("Found " + vmsByLastHostId.size() + " VM, not running on host " + host.getId());
-        }
         for (VMInstanceVO vm : vmsByLastHostId) {
             long secondsSinceLastUpdate = (DateUtil.currentGMTTime().getTime() - vm.getUpdateTime().getTime()) / 1000;
             if (secondsSinceLastUpdate < _vmCapacityReleaseInterval) {
-                UserVmDetailVO vmDetailCpu = _userVmDetailsDao.findDetail(vm.getId(), "cpuOvercommitRatio");
-                UserVmDetailVO vmDetailRam = _userVmDetailsDao.findDetail(vm.getId(), "memoryOvercommitRatio");
+                Float cpuOvercommitRatio = 1f;
+                Float ramOvercommitRatio = 1f;
+                Map<String, String> details = getVmDetails(vmDetails, vm);
+                String vmDetailCpu = details.get("cpuOvercommitRatio");
+                String vmDetailRam = details.get("memoryOvercommitRatio");
                 if (vmDetailCpu != null) {
                     //if vmDetail_cpu is not null it means it is running in a overcommited cluster.
-                    cpuOvercommitRatio = Float.parseFloat(vmDetailCpu.getValue());
-                    ramOvercommitRatio = Float.parseFloat(vmDetailRam.getValue());
+                    cpuOvercommitRatio = Float.parseFloat(vmDetailCpu);
+                    ramOvercommitRatio = Float.parseFloat(vmDetailRam);
                 }
                 ServiceOffering so = offeringsMap.get(vm.getServiceOfferingId());
-                Map<String, String> vmDetails = _userVmDetailsDao.listDetailsKeyPairs(vm.getId());
                 if (so.isDynamic()) {
                     reservedMemory +=
-                        ((Integer.parseInt(vmDetails.get(UsageEventVO.DynamicParameters.memory.name())) * 1024L * 1024L) / ramOvercommitRatio) *
+                        ((Integer.parseInt(details.get(UsageEventVO.DynamicParameters.memory.name())) * 1024L * 1024L) / ramOvercommitRatio) *
                             clusterRamOvercommitRatio;
                     reservedCpu +=
-                        ((Integer.parseInt(vmDetails.get(UsageEventVO.DynamicParameters.cpuNumber.name())) * Integer.parseInt(vmDetails.get(UsageEventVO.DynamicParameters.cpuSpeed.name()))) / cpuOvercommitRatio) *
+                        ((Integer.parseInt(details.get(UsageEventVO.DynamicParameters.cpuNumber.name())) * Integer.parseInt(details.get(UsageEventVO.DynamicParameters.cpuSpeed.name()))) / cpuOvercommitRatio) *
                             clusterCpuOvercommitRatio;
-                    reservedCpuCore += Integer.parseInt(vmDetails.get(UsageEventVO.DynamicParameters.cpuNumber.name()));
+                    reservedCpuCore += Integer.parseInt(details.get(UsageEventVO.DynamicParameters.cpuNumber.name()));
                 } else {
                     reservedMemory += ((so.getRamSize() * 1024L * 1024L) / ramOvercommitRatio) * clusterRamOvercommitRatio;
                     reservedCpu += (so.getCpu() * so.getSpeed() / cpuOvercommitRatio) * clusterCpuOvercommitRatio;
@@ -655,8 +781,8 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
             } else {
                 // signal if not done already, that the VM has been stopped for skip.counting.hours,
                 // hence capacity will not be reserved anymore.
-                UserVmDetailVO messageSentFlag = _userVmDetailsDao.findDetail(vm.getId(), MESSAGE_RESERVED_CAPACITY_FREED_FLAG);
-                if (messageSentFlag == null || !Boolean.valueOf(messageSentFlag.getValue())) {
+                String messageSentFlag = getVmDetails(vmDetails, vm).get(MESSAGE_RESERVED_CAPACITY_FREED_FLAG);
+                if (messageSentFlag == null || !Boolean.valueOf(messageSentFlag)) {
                     _messageBus.publish(_name, "VM_ReservedCapacity_Free", PublishScope.LOCAL, vm);
 
                     if (vm.getType() == VirtualMachine.Type.User) {
@@ -669,10 +795,6 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
             }
         }
 
-        CapacityVO cpuCap = _capacityDao.findByHostIdType(host.getId(), Capacity.CAPACITY_TYPE_CPU);
-        CapacityVO memCap = _capacityDao.findByHostIdType(host.getId(), Capacity.CAPACITY_TYPE_MEMORY);
-        CapacityVO cpuCoreCap = _capacityDao.findByHostIdType(host.getId(), CapacityVO.CAPACITY_TYPE_CPU_CORE);
-
         if (cpuCoreCap != null) {
             long hostTotalCpuCore = host.getCpus().longValue();
 
@@ -817,6 +939,11 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
 
     }
 
+    private static Map<String, String> getVmDetails(Map<Long, Map<String, String>> vmDetails, VMInstanceVO vm) {
+        Map<String, String> details = vmDetails.get(vm.getId());
+        return details == null ? Collections.<String, String>emptyMap() : details;
+    }
+
     @Override
     public boolean preStateTransitionEvent(State oldState, Event event, State newState, VirtualMachine vm, boolean transitionStatus, Object opaque) {
         return true;
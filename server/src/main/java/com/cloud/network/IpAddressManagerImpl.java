@@ -23,7 +23,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
 
@@ -152,6 +151,7 @@ import com.cloud.utils.db.JoinBuilder.JoinType;
 import com.cloud.utils.db.SearchBuilder;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.SearchCriteria.Op;
+import com.cloud.utils.db.ShardedFreeList;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallback;
 import com.cloud.utils.db.TransactionCallbackNoReturn;
@@ -812,36 +812,38 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
                     }
                 }
 
-                IPAddressVO finalAddr = null;
-                for (final IPAddressVO possibleAddr: addrs) {
-                    if (possibleAddr.getState() != IpAddress.State.Free) {
-                        continue;
-                    }
-                    final IPAddressVO addr = possibleAddr;
-                    addr.setSourceNat(sourceNat);
-                    addr.setAllocatedTime(new Date());
-                    addr.setAllocatedInDomainId(owner.getDomainId());
-                    addr.setAllocatedToAccountId(owner.getId());
-                    addr.setSystem(isSystem);
-
-                    if (displayIp != null) {
-                        addr.setDisplay(displayIp);
-                    }
+                final ShardedFreeList.Claim claim = new ShardedFreeList.Claim() {
+                    @Override
+                    public boolean claim(long id) {
+                        IPAddressVO addr = _ipAddressDao.createForUpdate();
+                        addr.setSourceNat(sourceNat);
+                        addr.setAllocatedTime(new Date());
+                        addr.setAllocatedInDomainId(owner.getDomainId());
+                        addr.setAllocatedToAccountId(owner.getId());
+                        addr.setSystem(isSystem);
+
+                        if (displayIp != null) {
+                            addr.setDisplay(displayIp);
+                        }
 
-                    if (vlanUse != VlanType.DirectAttached) {
-                        addr.setAssociatedWithNetworkId(guestNetworkId);
-                        addr.setVpcId(vpcId);
-                    }
-                    if (_ipAddressDao.lockRow(possibleAddr.getId(), true) != null) {
-                        final IPAddressVO userIp = _ipAddressDao.findById(addr.getId());
-                        if (userIp.getState() == IpAddress.State.Free) {
-                            addr.setState(IpAddress.State.Allocating);
-                            if (_ipAddressDao.update(addr.getId(), addr)) {
-                                finalAddr = addr;
-                                break;
-                            }
+                        if (vlanUse != VlanType.DirectAttached) {
+                            addr.setAssociatedWithNetworkId(guestNetworkId);
+                            addr.setVpcId(vpcId);
                         }
+                        addr.setState(IpAddress.State.Allocating);
+                        return _ipAddressDao.takeIfFree(id, addr);
                     }
+                };
+
+                IPAddressVO finalAddr = null;
+                final IPAddressVO possibleAddr = addrs.get(0);
+                if (requestedIp != null) {
+                    if (possibleAddr.getState() == IpAddress.State.Free && claim.claim(possibleAddr.getId())) {
+                        finalAddr = _ipAddressDao.findById(possibleAddr.getId());
+                    }
+                } else {
+                    // Concurrent allocations all find the same first address, so any free address of its vlan is taken instead
+                    finalAddr = _ipAddressDao.takeFreeIp(possibleAddr.getVlanId(), possibleAddr.isForSystemVms(), claim);
                 }
 
                 if (finalAddr == null) {
@@ -1811,6 +1813,14 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
             return null;
         }
 
+        if (requestedIp == null) {
+            String ip = _networkModel.allocateGuestIp(network);
+            if (ip == null) {
+                s_logger.debug("There are no free ips in the  network " + network);
+            }
+            return ip;
+        }
+
         Set<Long> availableIps = _networkModel.getAvailableIps(network, requestedIp);
 
         if (availableIps == null || availableIps.isEmpty()) {
@@ -1820,25 +1830,20 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
 
         Long[] array = availableIps.toArray(new Long[availableIps.size()]);
 
-        if (requestedIp != null) {
-            // check that requested ip has the same cidr
-            String[] cidr = network.getCidr().split("/");
-            boolean isSameCidr = NetUtils.sameSubnetCIDR(requestedIp, NetUtils.long2Ip(array[0]), Integer.parseInt(cidr[1]));
-            if (!isSameCidr) {
-                s_logger.warn("Requested ip address " + requestedIp + " doesn't belong to the network " + network + " cidr");
-                return null;
-            } else if (NetUtils.IsIpEqualToNetworkOrBroadCastIp(requestedIp, cidr[0], Integer.parseInt(cidr[1]))) {
-                s_logger.warn("Requested ip address " + requestedIp + " is equal to the to the network/broadcast ip of the network" + network);
-                return null;
-            }
-            return requestedIp;
+        // check that requested ip has the same cidr
+        String[] cidr = network.getCidr().split("/");
+        boolean isSameCidr = NetUtils.sameSubnetCIDR(requestedIp, NetUtils.long2Ip(array[0]), Integer.parseInt(cidr[1]));
+        if (!isSameCidr) {
+            s_logger.warn("Requested ip address " + requestedIp + " doesn't belong to the network " + network + " cidr");
+            return null;
+        } else if (NetUtils.IsIpEqualToNetworkOrBroadCastIp(requestedIp, cidr[0], Integer.parseInt(cidr[1]))) {
+            s_logger.warn("Requested ip address " + requestedIp + " is equal to the to the network/broadcast ip of the network" + network);
+            return null;
         }
-
-        return NetUtils.long2Ip(array[_rand.nextInt(array.length)]);
+        _networkModel.markGuestIpUsed(network.getId(), requestedIp);
+        return requestedIp;
     }
 
-    Random _rand = new Random(System.currentTimeMillis());
-
     /**
      * Get the list of public IPs that need to be applied for a static NAT enable/disable operation.
      * Manipulating only these ips prevents concurrency issues when disabling static nat at the same time.
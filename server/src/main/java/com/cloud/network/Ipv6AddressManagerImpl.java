@@ -19,6 +19,8 @@ package com.cloud.network;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
@@ -39,8 +41,10 @@ import com.cloud.network.dao.NetworkDao;
 import com.cloud.network.dao.UserIpv6AddressDao;
 import com.cloud.user.Account;
 import com.cloud.utils.NumbersUtil;
+import com.cloud.utils.Pair;
 import com.cloud.utils.component.ManagerBase;
 import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.utils.net.IpAddressBitmap;
 import com.cloud.utils.net.NetUtils;
 
 public class Ipv6AddressManagerImpl extends ManagerBase implements Ipv6AddressManager {
@@ -49,6 +53,13 @@ public class Ipv6AddressManagerImpl extends ManagerBase implements Ipv6AddressMa
     String _name = null;
     int _ipv6RetryMax = 0;
 
+    /**
+     * allocation bitmap of the ip6 range of a vlan and the range it was built
+     * for, by vlan id.  Ranges too large for a bitmap are searched as before.
+     */
+    private final ConcurrentHashMap<Long, Pair<String, IpAddressBitmap>> _ip6Bitmaps = new ConcurrentHashMap<Long, Pair<String, IpAddressBitmap>>();
+    private final Random _ip6Random = new Random();
+
     @Inject
     DataCenterDao _dcDao;
     @Inject
@@ -92,19 +103,25 @@ public class Ipv6AddressManagerImpl extends ManagerBase implements Ipv6AddressMa
                 if (!_networkModel.isIP6AddressAvailableInVlan(vlan.getId())) {
                     continue;
                 }
-                ip = NetUtils.getIp6FromRange(vlan.getIp6Range());
-                int count = 0;
-                while (_ipv6Dao.findByNetworkIdAndIp(networkId, ip) != null) {
-                    ip = NetUtils.getNextIp6InRange(ip, vlan.getIp6Range());
-                    count++;
-                    // It's an arbitrate number to prevent the infinite loop
-                    if (count > _ipv6RetryMax) {
-                        ip = null;
-                        break;
+                IpAddressBitmap bitmap = getIp6Bitmap(vlan, false);
+                if (bitmap != null) {
+                    ip = allocateIp6(networkId, vlan, bitmap);
+                } else {
+                    ip = NetUtils.getIp6FromRange(vlan.getIp6Range());
+                    int count = 0;
+                    while (_ipv6Dao.findByNetworkIdAndIp(networkId, ip) != null) {
+                        ip = NetUtils.getNextIp6InRange(ip, vlan.getIp6Range());
+                        count++;
+                        // It's an arbitrate number to prevent the infinite loop
+                        if (count > _ipv6RetryMax) {
+                            ip = null;
+                            break;
+                        }
                     }
                 }
                 if (ip != null) {
                     ipVlan = vlan;
+                    break;
                 }
             }
             if (ip == null) {
@@ -125,6 +142,7 @@ public class Ipv6AddressManagerImpl extends ManagerBase implements Ipv6AddressMa
             if (_ipv6Dao.findByNetworkIdAndIp(networkId, ip) != null) {
                 throw new CloudRuntimeException("The requested IP is already taken!");
             }
+            markIp6Used(ipVlan.getId(), ip);
         }
         DataCenterVO dc = _dcDao.findById(dcId);
         Long mac = dc.getMacAddress();
@@ -148,6 +166,62 @@ public class Ipv6AddressManagerImpl extends ManagerBase implements Ipv6AddressMa
         UserIpv6AddressVO ip = _ipv6Dao.findByNetworkIdAndIp(networkId, ip6Address);
         if (ip != null) {
             _ipv6Dao.remove(ip.getId());
+            Pair<String, IpAddressBitmap> entry = _ip6Bitmaps.get(ip.getVlanId());
+            if (entry != null) {
+                entry.second().markFree(ip.getAddress());
+            }
+        }
+    }
+
+    protected void markIp6Used(long vlanId, String ip) {
+        Pair<String, IpAddressBitmap> entry = _ip6Bitmaps.get(vlanId);
+        if (entry != null) {
+            entry.second().markUsed(ip);
+        }
+    }
+
+    /**
+     * Picks a free address of the vlan from the bitmap and checks it against
+     * the database, the bitmap is reloaded once if the range looks full.
+     */
+    protected String allocateIp6(long networkId, Vlan vlan, IpAddressBitmap bitmap) {
+        for (int attempt = 0; bitmap != null && attempt < 2; attempt++) {
+            String ip;
+            while ((ip = bitmap.allocate(_ip6Random)) != null) {
+                if (_ipv6Dao.findByNetworkIdAndIp(networkId, ip) == null) {
+                    return ip;
+                }
+            }
+            if (attempt == 0) {
+                bitmap = getIp6Bitmap(vlan, true);
+            }
+        }
+        return null;
+    }
+
+    protected IpAddressBitmap getIp6Bitmap(Vlan vlan, boolean reload) {
+        final String range = vlan.getIp6Range();
+        if (range == null) {
+            return null;
+        }
+        Pair<String, IpAddressBitmap> entry = _ip6Bitmaps.get(vlan.getId());
+        if (!reload && entry != null && entry.first().equals(range)) {
+            return entry.second();
+        }
+        synchronized (_ip6Bitmaps) {
+            entry = _ip6Bitmaps.get(vlan.getId());
+            if (entry != null && entry.first().equals(range) && (!reload || entry.second().getFreeCount() > 0)) {
+                return entry.second();
+            }
+            IpAddressBitmap bitmap = IpAddressBitmap.forIp6Range(range);
+            if (bitmap == null) {
+                return null;
+            }
+            for (UserIpv6AddressVO used : _ipv6Dao.listByVlanId(vlan.getId())) {
+                bitmap.markUsed(used.getAddress());
+            }
+            _ip6Bitmaps.put(vlan.getId(), new Pair<String, IpAddressBitmap>(range, bitmap));
+            return bitmap;
         }
     }
 }
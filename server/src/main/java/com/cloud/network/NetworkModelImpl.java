@@ -28,8 +28,9 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
@@ -107,6 +108,7 @@ import com.cloud.user.AccountManager;
 import com.cloud.user.AccountVO;
 import com.cloud.user.DomainManager;
 import com.cloud.user.dao.AccountDao;
+import com.cloud.utils.Pair;
 import com.cloud.utils.StringUtils;
 import com.cloud.utils.component.AdapterBase;
 import com.cloud.utils.component.ManagerBase;
@@ -118,6 +120,8 @@ import com.cloud.utils.db.SearchBuilder;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.SearchCriteria.Op;
 import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.utils.net.Ip;
+import com.cloud.utils.net.IpAddressBitmap;
 import com.cloud.utils.net.NetUtils;
 import com.cloud.vm.Nic;
 import com.cloud.vm.NicProfile;
@@ -217,6 +221,12 @@ public class NetworkModelImpl extends ManagerBase implements NetworkModel, Confi
 
     HashMap<Long, Long> _lastNetworkIdsToFree = new HashMap<Long, Long>();
 
+    /**
+     * guest ip allocation bitmap and the cidr it was built for, by network id
+     */
+    private final ConcurrentHashMap<Long, Pair<String, IpAddressBitmap>> _guestIpBitmaps = new ConcurrentHashMap<Long, Pair<String, IpAddressBitmap>>();
+    private final Random _guestIpRandom = new Random();
+
     static HashMap<Service, List<Provider>> s_serviceToImplementedProvidersMap = new HashMap<Service, List<Provider>>();
     static HashMap<String, String> s_providerToNetworkElementMap = new HashMap<String, String>();
 
@@ -1837,26 +1847,93 @@ public class NetworkModelImpl extends ManagerBase implements NetworkModel, Confi
         if (network.getCidr() == null) {
             return Collections.emptySet();
         }
-        String[] cidr = network.getCidr().split("/");
-        List<String> ips = getUsedIpsInNetwork(network);
-        Set<Long> usedIps = new TreeSet<Long>();
+        if (requestedIp != null && isGuestIpUsed(network.getId(), requestedIp)) {
+            s_logger.warn("Requested ip address " + requestedIp + " is already in use in network" + network);
+            markGuestIpUsed(network.getId(), requestedIp);
+            return null;
+        }
 
-        for (String ip : ips) {
-            if (requestedIp != null && requestedIp.equals(ip)) {
-                s_logger.warn("Requested ip address " + requestedIp + " is already in use in network" + network);
-                return null;
+        IpAddressBitmap bitmap = getGuestIpBitmap(network, false);
+        if (bitmap == null) {
+            return Collections.emptySet();
+        }
+        return bitmap.getFreeIp4s(255);
+    }
+
+    @Override
+    public String allocateGuestIp(Network network) {
+        if (network.getCidr() == null) {
+            return null;
+        }
+        IpAddressBitmap bitmap = getGuestIpBitmap(network, false);
+        for (int attempt = 0; bitmap != null && attempt < 2; attempt++) {
+            String ip;
+            while ((ip = bitmap.allocate(_guestIpRandom)) != null) {
+                if (!isGuestIpUsed(network.getId(), ip)) {
+                    return ip;
+                }
+                // taken by another management server, the bit stays set
             }
+            // everything looks used, ips may have been released by another management server
+            if (attempt == 0) {
+                bitmap = getGuestIpBitmap(network, true);
+            }
+        }
+        return null;
+    }
 
-            usedIps.add(NetUtils.ip2Long(ip));
+    @Override
+    public void markGuestIpUsed(long networkId, String ip) {
+        Pair<String, IpAddressBitmap> entry = _guestIpBitmaps.get(networkId);
+        if (entry != null && ip != null) {
+            entry.second().markUsed(ip);
         }
+    }
 
-        Set<Long> allPossibleIps = NetUtils.getAllIpsFromCidr(cidr[0], Integer.parseInt(cidr[1]), usedIps);
+    @Override
+    public void markGuestIpFree(long networkId, String ip) {
+        Pair<String, IpAddressBitmap> entry = _guestIpBitmaps.get(networkId);
+        if (entry != null && ip != null) {
+            entry.second().markFree(ip);
+        }
+    }
 
-        String gateway = network.getGateway();
-        if ((gateway != null) && (allPossibleIps.contains(NetUtils.ip2Long(gateway))))
-            allPossibleIps.remove(NetUtils.ip2Long(gateway));
+    /**
+     * @return the allocation bitmap of the guest cidr of the network, loaded
+     *         from the database the first time, when the cidr changed or when
+     *         reload is set.  Null if the cidr is too large for a bitmap.
+     */
+    protected IpAddressBitmap getGuestIpBitmap(Network network, boolean reload) {
+        final String cidr = network.getCidr();
+        Pair<String, IpAddressBitmap> entry = _guestIpBitmaps.get(network.getId());
+        if (!reload && entry != null && entry.first().equals(cidr)) {
+            return entry.second();
+        }
+        synchronized (_guestIpBitmaps) {
+            entry = _guestIpBitmaps.get(network.getId());
+            if (entry != null && entry.first().equals(cidr) && (!reload || entry.second().getFreeCount() > 0)) {
+                // loaded by another thread in the meantime
+                return entry.second();
+            }
+            String[] cidrPair = cidr.split("/");
+            IpAddressBitmap bitmap = NetUtils.getIpBitmapFromCidr(cidrPair[0], Integer.parseInt(cidrPair[1]));
+            if (bitmap == null) {
+                return null;
+            }
+            for (String ip : getUsedIpsInNetwork(network)) {
+                bitmap.markUsed(ip);
+            }
+            if (network.getGateway() != null) {
+                bitmap.markUsed(network.getGateway());
+            }
+            _guestIpBitmaps.put(network.getId(), new Pair<String, IpAddressBitmap>(cidr, bitmap));
+            return bitmap;
+        }
+    }
 
-        return allPossibleIps;
+    protected boolean isGuestIpUsed(long networkId, String ip) {
+        return _nicDao.findByIp4AddressAndNetworkId(ip, networkId) != null || _nicSecondaryIpDao.findByIp4AddressAndNetworkId(ip, networkId) != null
+                || _appLbRuleDao.countBySourceIp(new Ip(ip), networkId) > 0;
     }
 
     @Override
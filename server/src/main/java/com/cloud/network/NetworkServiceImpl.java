@@ -867,6 +867,7 @@ public class NetworkServiceImpl extends ManagerBase implements  NetworkService {
         _nicSecondaryIpDao.remove(ipVO.getId());
             }
         });
+        _networkModel.markGuestIpFree(ipVO.getNetworkId(), ipVO.getIp4Address());
 
         return true;
     }
@@ -16,8 +16,13 @@
 // under the License.
 package com.cloud.network.as;
 
+import org.apache.cloudstack.framework.config.ConfigKey;
+
 public interface AutoScaleManager extends AutoScaleService {
 
+    ConfigKey<Integer> AutoScaleVmDeployPoolSize = new ConfigKey<Integer>(Integer.class, "autoscale.vm.deploy.pool.size", "Advanced", "10",
+            "Number of vms an AutoScale vm group scaling up deploys and starts at a time", false, ConfigKey.Scope.Global, null);
+
     void cleanUpAutoScaleResources(Long accountId);
 
     void doScaleUp(long groupId, Integer numVm);
@@ -19,11 +19,16 @@ package com.cloud.network.as;
 import java.security.InvalidParameterException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -56,7 +61,10 @@ import org.apache.cloudstack.api.command.user.autoscale.UpdateAutoScaleVmProfile
 import org.apache.cloudstack.api.command.user.vm.DeployVMCmd;
 import org.apache.cloudstack.config.ApiServiceConfiguration;
 import org.apache.cloudstack.context.CallContext;
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.Configurable;
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
 
 import com.cloud.api.ApiDBUtils;
 import com.cloud.api.dispatch.DispatchChainFactory;
@@ -109,6 +117,7 @@ import com.cloud.utils.Pair;
 import com.cloud.utils.Ternary;
 import com.cloud.utils.component.ComponentContext;
 import com.cloud.utils.component.ManagerBase;
+import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.DB;
 import com.cloud.utils.db.EntityManager;
 import com.cloud.utils.db.Filter;
@@ -119,14 +128,18 @@ import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.TransactionCallback;
 import com.cloud.utils.db.SearchCriteria.Op;
 import com.cloud.utils.db.Transaction;
+import com.cloud.utils.db.TransactionCallbackNoReturn;
 import com.cloud.utils.db.TransactionStatus;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.net.NetUtils;
 import com.cloud.vm.UserVmManager;
 import com.cloud.vm.UserVmService;
 
-public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScaleManager, AutoScaleService {
+public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScaleManager, AutoScaleService, Configurable {
     private static final Logger s_logger = Logger.getLogger(AutoScaleManagerImpl.class);
     private ScheduledExecutorService _executor = Executors.newScheduledThreadPool(1);
+    private ExecutorService _vmDeployExecutor;
+    private final ConcurrentHashMap<Long, AutoScaleVmGroupMetrics> _vmGroupMetrics = new ConcurrentHashMap<Long, AutoScaleVmGroupMetrics>();
 
     @Inject
     protected DispatchChainFactory dispatchChainFactory = null;
@@ -183,6 +196,23 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
     @Inject
     LoadBalancingRulesService _loadBalancingRulesService;
 
+    @Override
+    public boolean start() {
+        _vmDeployExecutor = Executors.newFixedThreadPool(Math.max(AutoScaleVmDeployPoolSize.value(), 1), new NamedThreadFactory("AutoScale-VmDeploy"));
+        return true;
+    }
+
+    @Override
+    public boolean stop() {
+        if (_vmDeployExecutor != null) {
+            _vmDeployExecutor.shutdownNow();
+        }
+        for (final Long vmGroupId : _vmGroupMetrics.keySet()) {
+            removeVmGroupMetrics(vmGroupId);
+        }
+        return true;
+    }
+
     public List<AutoScaleCounter> getSupportedAutoScaleCounters(long networkid) {
         String capability = _lbRulesMgr.getLBCapability(networkid, Capability.AutoScaleCounters.getName());
         if (capability == null) {
@@ -847,7 +877,7 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
             }
         }
 
-        return Transaction.execute(new TransactionCallback<Boolean>() {
+        final boolean removed = Transaction.execute(new TransactionCallback<Boolean>() {
             @Override
             public Boolean doInTransaction(TransactionStatus status) {
                 boolean success = _autoScaleVmGroupDao.remove(id);
@@ -867,7 +897,10 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
                 return success; // Successfull
             }
         });
-
+        if (removed) {
+            removeVmGroupMetrics(id);
+        }
+        return removed;
     }
 
     @Override
@@ -1264,7 +1297,7 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
         }
     }
 
-    private boolean checkConditionUp(AutoScaleVmGroupVO asGroup, Integer numVm) {
+    protected boolean checkConditionUp(AutoScaleVmGroupVO asGroup, Integer numVm) {
         // check maximum
         Integer currentVM = _autoScaleVmGroupVmMapDao.countByGroup(asGroup.getId());
         Integer maxVm = asGroup.getMaxMembers();
@@ -1285,7 +1318,7 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
         return true;
     }
 
-    private long createNewVM(AutoScaleVmGroupVO asGroup) {
+    protected long createNewVM(AutoScaleVmGroupVO asGroup, String vmName) {
         AutoScaleVmProfileVO profileVo = _autoScaleVmProfileDao.findById(asGroup.getProfileId());
         long templateId = profileVo.getTemplateId();
         long serviceOfferingId = profileVo.getServiceOfferingId();
@@ -1322,20 +1355,18 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
             UserVm vm = null;
             IpAddresses addrs = new IpAddresses(null, null);
             if (zone.getNetworkType() == NetworkType.Basic) {
-                vm = _userVmService.createBasicSecurityGroupVirtualMachine(zone, serviceOffering, template, null, owner, "autoScaleVm-" + asGroup.getId() + "-" +
-                    getCurrentTimeStampString(),
-                    "autoScaleVm-" + asGroup.getId() + "-" + getCurrentTimeStampString(), null, null, null, HypervisorType.XenServer, HTTPMethod.GET, null, null, null,
+                vm = _userVmService.createBasicSecurityGroupVirtualMachine(zone, serviceOffering, template, null, owner, vmName,
+                    vmName, null, null, null, HypervisorType.XenServer, HTTPMethod.GET, null, null, null,
                     null, true, null, null, null, null, null, null);
             } else {
                 if (zone.isSecurityGroupEnabled()) {
                     vm = _userVmService.createAdvancedSecurityGroupVirtualMachine(zone, serviceOffering, template, null, null,
-                        owner, "autoScaleVm-" + asGroup.getId() + "-" + getCurrentTimeStampString(),
-                        "autoScaleVm-" + asGroup.getId() + "-" + getCurrentTimeStampString(), null, null, null, HypervisorType.XenServer, HTTPMethod.GET, null, null,
+                        owner, vmName,
+                        vmName, null, null, null, HypervisorType.XenServer, HTTPMethod.GET, null, null,
                         null, null, true, null, null, null, null, null, null);
 
                 } else {
-                    vm = _userVmService.createAdvancedVirtualMachine(zone, serviceOffering, template, null, owner, "autoScaleVm-" + asGroup.getId() + "-" +
-                        getCurrentTimeStampString(), "autoScaleVm-" + asGroup.getId() + "-" + getCurrentTimeStampString(),
+                    vm = _userVmService.createAdvancedVirtualMachine(zone, serviceOffering, template, null, owner, vmName, vmName,
                         null, null, null, HypervisorType.XenServer, HTTPMethod.GET, null, null, null, addrs, true, null, null, null, null, null, null);
 
                 }
@@ -1369,7 +1400,7 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
         return sdf.format(current);
     }
 
-    private boolean startNewVM(long vmId) {
+    protected boolean startNewVM(long vmId) {
         try {
             CallContext.current().setEventDetails("Vm Id: " + vmId);
             _userVmManager.startVirtualMachine(vmId, null, null, null);
@@ -1393,23 +1424,41 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
         return true;
     }
 
-    private boolean assignLBruleToNewVm(long vmId, AutoScaleVmGroupVO asGroup) {
-        List<Long> lstVmId = new ArrayList<Long>();
+    /**
+     * Assigns the new vms to the load balancer rule of the group, all at once
+     * or, if that fails, one by one.
+     *
+     * @return the vms that are assigned to the rule
+     */
+    private List<Long> assignLBruleToNewVms(List<Long> vmIds, AutoScaleVmGroupVO asGroup) {
+        List<Long> lstVmId = new ArrayList<Long>(vmIds);
         long lbId = asGroup.getLoadBalancerId();
 
         List<LoadBalancerVMMapVO> LbVmMapVos = _lbVmMapDao.listByLoadBalancerId(lbId);
         if ((LbVmMapVos != null) && (LbVmMapVos.size() > 0)) {
             for (LoadBalancerVMMapVO LbVmMapVo : LbVmMapVos) {
                 long instanceId = LbVmMapVo.getInstanceId();
-                if (instanceId == vmId) {
-                    s_logger.warn("the new VM is already mapped to LB rule. What's wrong?");
-                    return true;
+                if (lstVmId.remove(Long.valueOf(instanceId))) {
+                    s_logger.warn("the new VM " + instanceId + " is already mapped to LB rule. What's wrong?");
                 }
             }
         }
-        lstVmId.add(new Long(vmId));
-        return _loadBalancingRulesService.assignToLoadBalancer(lbId, lstVmId, new HashMap<Long, List<String>>());
-
+        final List<Long> assigned = new ArrayList<Long>(vmIds);
+        if (lstVmId.isEmpty() || _loadBalancingRulesService.assignToLoadBalancer(lbId, lstVmId, new HashMap<Long, List<String>>())) {
+            return assigned;
+        }
+        if (lstVmId.size() == 1) {
+            assigned.removeAll(lstVmId);
+            return assigned;
+        }
+        // one vm the rule can not take fails all of them, try them one by one
+        s_logger.warn("Can not assign LB rule for the " + lstVmId.size() + " new VMs of the group " + asGroup.getId() + " at once, assigning them one by one");
+        for (final Long vmId : lstVmId) {
+            if (!_loadBalancingRulesService.assignToLoadBalancer(lbId, Collections.singletonList(vmId), new HashMap<Long, List<String>>())) {
+                assigned.remove(vmId);
+            }
+        }
+        return assigned;
     }
 
     private long removeLBrule(AutoScaleVmGroupVO asGroup) {
@@ -1431,9 +1480,32 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
             return -1;
     }
 
+    /**
+     * Deploys and starts a vm of the group on the deploy pool.
+     */
+    private class VmDeploy extends ManagedContextRunnable {
+        private final AutoScaleVmGroupVO _asGroup;
+        private final String _vmName;
+        private Future<?> _future;
+        private volatile long _vmId = -1;
+
+        VmDeploy(AutoScaleVmGroupVO asGroup, String vmName) {
+            _asGroup = asGroup;
+            _vmName = vmName;
+        }
+
+        @Override
+        protected void runInContext() {
+            final long vmId = createNewVM(_asGroup, _vmName);
+            if (vmId != -1 && startNewVM(vmId)) {
+                _vmId = vmId;
+            }
+        }
+    }
+
     @Override
-    public void doScaleUp(long groupId, Integer numVm) {
-        AutoScaleVmGroupVO asGroup = _autoScaleVmGroupDao.findById(groupId);
+    public void doScaleUp(final long groupId, Integer numVm) {
+        final AutoScaleVmGroupVO asGroup = _autoScaleVmGroupDao.findById(groupId);
         if (asGroup == null) {
             s_logger.error("Can not find the groupid " + groupId + " for scaling up");
             return;
@@ -1441,40 +1513,112 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
         if (!checkConditionUp(asGroup, numVm)) {
             return;
         }
+        final long startTime = System.currentTimeMillis();
+        // the vms are deployed at the same time, so the time stamp alone does not tell them apart
+        final String vmName = "autoScaleVm-" + asGroup.getId() + "-" + getCurrentTimeStampString();
+        final List<VmDeploy> deploys = new ArrayList<VmDeploy>(numVm);
         for (int i = 0; i < numVm; i++) {
-            long vmId = createNewVM(asGroup);
-            if (vmId == -1) {
-                s_logger.error("Can not deploy new VM for scaling up in the group "
-                    + asGroup.getId() + ". Waiting for next round");
-                break;
+            final VmDeploy deploy = new VmDeploy(asGroup, numVm > 1 ? vmName + "-" + i : vmName);
+            deploy._future = _vmDeployExecutor.submit(deploy);
+            deploys.add(deploy);
+        }
+
+        final List<Long> deployedVmIds = new ArrayList<Long>();
+        for (final VmDeploy deploy : deploys) {
+            try {
+                deploy._future.get();
+            } catch (final InterruptedException e) {
+                s_logger.warn("Interrupted while waiting for the new VM " + deploy._vmName + " of the group " + asGroup.getId());
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                s_logger.warn("Can not deploy new VM " + deploy._vmName + " for scaling up in the group " + asGroup.getId(), e.getCause());
             }
-            if (startNewVM(vmId)) {
-                if (assignLBruleToNewVm(vmId, asGroup)) {
-                    // persist to DB
-                    AutoScaleVmGroupVmMapVO GroupVmVO = new AutoScaleVmGroupVmMapVO(
-                        asGroup.getId(), vmId);
-                    _autoScaleVmGroupVmMapDao.persist(GroupVmVO);
-                    // update last_quiettime
-                    List<AutoScaleVmGroupPolicyMapVO> GroupPolicyVOs = _autoScaleVmGroupPolicyMapDao
-                        .listByVmGroupId(groupId);
-                    for (AutoScaleVmGroupPolicyMapVO GroupPolicyVO : GroupPolicyVOs) {
-                        AutoScalePolicyVO vo = _autoScalePolicyDao
-                            .findById(GroupPolicyVO.getPolicyId());
-                        if (vo.getAction().equals("scaleup")) {
-                            vo.setLastQuiteTime(new Date());
-                            _autoScalePolicyDao.persist(vo);
-                            break;
-                        }
+            if (deploy._vmId != -1) {
+                deployedVmIds.add(deploy._vmId);
+            }
+        }
+        if (deployedVmIds.size() < numVm) {
+            s_logger.error("Can not deploy " + (numVm - deployedVmIds.size()) + " of " + numVm + " new VMs for scaling up in the group "
+                + asGroup.getId() + ". Waiting for next round");
+        }
+        if (deployedVmIds.isEmpty()) {
+            scaledUp(groupId, numVm, 0, startTime);
+            return;
+        }
+
+        final List<Long> vmIds = assignLBruleToNewVms(deployedVmIds, asGroup);
+        // a vm that does not get traffic is of no use to the group, do not leave it running unaccounted for
+        for (final Long vmId : deployedVmIds) {
+            if (!vmIds.contains(vmId)) {
+                s_logger.error("Can not assign LB rule for the new VM " + vmId + " of the group " + asGroup.getId() + ", destroying it");
+                destroyNewVM(vmId);
+            }
+        }
+        if (vmIds.isEmpty()) {
+            scaledUp(groupId, numVm, 0, startTime);
+            return;
+        }
+        Transaction.execute(new TransactionCallbackNoReturn() {
+            @Override
+            public void doInTransactionWithoutResult(TransactionStatus status) {
+                // persist to DB
+                for (final Long vmId : vmIds) {
+                    _autoScaleVmGroupVmMapDao.persist(new AutoScaleVmGroupVmMapVO(asGroup.getId(), vmId));
+                }
+                // update last_quiettime
+                List<AutoScaleVmGroupPolicyMapVO> GroupPolicyVOs = _autoScaleVmGroupPolicyMapDao.listByVmGroupId(groupId);
+                for (AutoScaleVmGroupPolicyMapVO GroupPolicyVO : GroupPolicyVOs) {
+                    AutoScalePolicyVO vo = _autoScalePolicyDao.findById(GroupPolicyVO.getPolicyId());
+                    if (vo.getAction().equals("scaleup")) {
+                        vo.setLastQuiteTime(new Date());
+                        _autoScalePolicyDao.persist(vo);
+                        break;
                     }
-                } else {
-                    s_logger.error("Can not assign LB rule for this new VM");
-                    break;
                 }
-            } else {
-                s_logger.error("Can not deploy new VM for scaling up in the group "
-                    + asGroup.getId() + ". Waiting for next round");
-                break;
             }
+        });
+        scaledUp(groupId, numVm, vmIds.size(), startTime);
+    }
+
+    private void destroyNewVM(long vmId) {
+        try {
+            _userVmManager.destroyVm(vmId, false);
+        } catch (final Exception e) {
+            s_logger.warn("Unable to destroy the new VM " + vmId, e);
+        }
+    }
+
+    private void scaledUp(long groupId, int requested, int deployed, long startTime) {
+        final long duration = System.currentTimeMillis() - startTime;
+        getVmGroupMetrics(groupId).scaledUp(requested, deployed, duration);
+        s_logger.info("Scaled up the group " + groupId + " by " + deployed + " of " + requested + " VMs in " + duration + " ms");
+    }
+
+    private AutoScaleVmGroupMetrics getVmGroupMetrics(long groupId) {
+        AutoScaleVmGroupMetrics metrics = _vmGroupMetrics.get(groupId);
+        if (metrics == null) {
+            metrics = new AutoScaleVmGroupMetrics(groupId);
+            final AutoScaleVmGroupMetrics existing = _vmGroupMetrics.putIfAbsent(groupId, metrics);
+            if (existing != null) {
+                return existing;
+            }
+            try {
+                JmxUtil.registerMBean("AutoScaleVmGroup", "AutoScaleVmGroup-" + groupId, metrics);
+            } catch (final Exception e) {
+                s_logger.warn("Unable to register the metrics of AutoScale vm group " + groupId + " to JMX", e);
+            }
+        }
+        return metrics;
+    }
+
+    private void removeVmGroupMetrics(long groupId) {
+        if (_vmGroupMetrics.remove(groupId) == null) {
+            return;
+        }
+        try {
+            JmxUtil.unregisterMBean("AutoScaleVmGroup", "AutoScaleVmGroup-" + groupId);
+        } catch (final Exception e) {
+            s_logger.warn("Unable to unregister the metrics of AutoScale vm group " + groupId + " from JMX", e);
         }
     }
 
@@ -1529,4 +1673,13 @@ public class AutoScaleManagerImpl<Type> extends ManagerBase implements AutoScale
         }
     }
 
+    @Override
+    public String getConfigComponentName() {
+        return AutoScaleManager.class.getSimpleName();
+    }
+
+    @Override
+    public ConfigKey<?>[] getConfigKeys() {
+        return new ConfigKey<?>[] {AutoScaleVmDeployPoolSize};
+    }
 }
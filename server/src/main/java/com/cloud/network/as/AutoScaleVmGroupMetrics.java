@@ -0,0 +1,97 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.as;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scale up figures of an AutoScale vm group, to see how long it takes a
+ * group to get the vms it asks for and how many of them it does not get.
+ */
+public class AutoScaleVmGroupMetrics implements AutoScaleVmGroupMetricsMBean {
+    private final long _vmGroupId;
+
+    private volatile long _lastScaleUpDuration;
+    private volatile long _maxScaleUpDuration;
+    private volatile int _lastRequested;
+    private volatile int _lastDeployed;
+    private final AtomicLong _scaleUps = new AtomicLong();
+    private final AtomicLong _totalScaleUpDuration = new AtomicLong();
+    private final AtomicLong _deployedVms = new AtomicLong();
+    private final AtomicLong _failedVms = new AtomicLong();
+
+    public AutoScaleVmGroupMetrics(long vmGroupId) {
+        _vmGroupId = vmGroupId;
+    }
+
+    public synchronized void scaledUp(int requested, int deployed, long durationMillis) {
+        _lastScaleUpDuration = durationMillis;
+        _maxScaleUpDuration = Math.max(_maxScaleUpDuration, durationMillis);
+        _lastRequested = requested;
+        _lastDeployed = deployed;
+        _scaleUps.incrementAndGet();
+        _totalScaleUpDuration.addAndGet(durationMillis);
+        _deployedVms.addAndGet(deployed);
+        _failedVms.addAndGet(requested - deployed);
+    }
+
+    @Override
+    public long getVmGroupId() {
+        return _vmGroupId;
+    }
+
+    @Override
+    public long getScaleUpCount() {
+        return _scaleUps.get();
+    }
+
+    @Override
+    public long getLastScaleUpDurationMillis() {
+        return _lastScaleUpDuration;
+    }
+
+    @Override
+    public long getMaxScaleUpDurationMillis() {
+        return _maxScaleUpDuration;
+    }
+
+    @Override
+    public long getAverageScaleUpDurationMillis() {
+        final long scaleUps = _scaleUps.get();
+        return scaleUps == 0 ? 0 : _totalScaleUpDuration.get() / scaleUps;
+    }
+
+    @Override
+    public int getLastScaleUpRequestedVmCount() {
+        return _lastRequested;
+    }
+
+    @Override
+    public int getLastScaleUpDeployedVmCount() {
+        return _lastDeployed;
+    }
+
+    @Override
+    public long getDeployedVmCount() {
+        return _deployedVms.get();
+    }
+
+    @Override
+    public long getFailedVmCount() {
+        return _failedVms.get();
+    }
+}
@@ -0,0 +1,45 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.as;
+
+public interface AutoScaleVmGroupMetricsMBean {
+    long getVmGroupId();
+
+    long getScaleUpCount();
+
+    /**
+     * @return the time, in milliseconds, the last scale up took, from the
+     *         first vm being deployed to the load balancer rule being assigned.
+     */
+    long getLastScaleUpDurationMillis();
+
+    long getMaxScaleUpDurationMillis();
+
+    long getAverageScaleUpDurationMillis();
+
+    int getLastScaleUpRequestedVmCount();
+
+    int getLastScaleUpDeployedVmCount();
+
+    long getDeployedVmCount();
+
+    /**
+     * @return the number of vms that could not be deployed, started or
+     *         assigned to the load balancer rule.
+     */
+    long getFailedVmCount();
+}
@@ -0,0 +1,321 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.router;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
+import org.apache.log4j.Logger;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
+import com.cloud.vm.DomainRouterVO;
+
+/**
+ * RouterSweep visits a list of routers, e.g. to collect their network usage,
+ * on a pool of threads instead of one router after the other.
+ *
+ * No more than a few routers of the same host are visited at a time, so a
+ * host is not flooded with commands, and a visit that takes longer than the
+ * timeout is given up on, so one hung router does not hold up the sweep.
+ * The routers whose data was gotten longest ago, or never, are visited
+ * first, so when a sweep does not get to every router, the ones it left
+ * out are the first to be visited by the next sweep and no router starves.
+ */
+public class RouterSweep implements RouterSweepMBean {
+    private static final Logger s_logger = Logger.getLogger(RouterSweep.class);
+
+    public interface Visitor {
+        /**
+         * @return true if the data of the router was gotten.
+         */
+        boolean visit(DomainRouterVO router);
+    }
+
+    private final String _name;
+    private final int _poolSize;
+    private final int _maxPerHost;
+    private final long _timeoutMillis;
+    private final ExecutorService _executor;
+    private final long _createdTime = System.currentTimeMillis();
+
+    // router id -> the time the data of the router was last gotten
+    private final Map<Long, Long> _lastVisited = new ConcurrentHashMap<Long, Long>();
+
+    private volatile long _lastSweepDuration;
+    private volatile long _maxSweepDuration;
+    private volatile int _lastSweepRouterCount;
+    private volatile long _stalestDataAge;
+    private final AtomicLong _sweeps = new AtomicLong();
+    private final AtomicLong _visits = new AtomicLong();
+    private final AtomicLong _failedVisits = new AtomicLong();
+    private final AtomicLong _timedOutVisits = new AtomicLong();
+
+    /**
+     * @param poolSize the number of routers visited at a time
+     * @param maxPerHost the number of routers of a host visited at a time
+     * @param timeoutMillis the time after which a visit is given up on
+     */
+    public RouterSweep(String name, int poolSize, int maxPerHost, long timeoutMillis) {
+        _name = name;
+        _poolSize = Math.max(poolSize, 1);
+        _maxPerHost = Math.max(maxPerHost, 1);
+        _timeoutMillis = timeoutMillis;
+        _executor = Executors.newFixedThreadPool(_poolSize, new NamedThreadFactory(name));
+    }
+
+    private class Visit extends ManagedContextRunnable {
+        private final DomainRouterVO _router;
+        private final Visitor _visitor;
+        private final Sweep _sweep;
+        private final long _deadline;
+        // set by whoever gets to the visit first, the thread running it or the sweep giving up on it
+        private final AtomicBoolean _claimed = new AtomicBoolean();
+        private Future<?> _future;
+        private volatile boolean _timedOut;
+
+        Visit(DomainRouterVO router, Visitor visitor, Sweep sweep) {
+            _router = router;
+            _visitor = visitor;
+            _sweep = sweep;
+            _deadline = System.currentTimeMillis() + _timeoutMillis;
+        }
+
+        @Override
+        protected void runInContext() {
+            if (!_claimed.compareAndSet(false, true)) {
+                return;
+            }
+            boolean visited = false;
+            try {
+                visited = _visitor.visit(_router);
+            } catch (final Exception e) {
+                s_logger.warn("Error while visiting router " + _router.getInstanceName() + " for " + _name, e);
+            } finally {
+                if (visited) {
+                    _lastVisited.put(_router.getId(), System.currentTimeMillis());
+                } else if (!_timedOut) {
+                    _failedVisits.incrementAndGet();
+                }
+                _visits.incrementAndGet();
+                _sweep.done(this);
+            }
+        }
+    }
+
+    private class Sweep {
+        private final List<Visit> _running = new ArrayList<Visit>();
+        private final Map<Long, Integer> _inFlightPerHost = new HashMap<Long, Integer>();
+        private int _busy;
+
+        synchronized boolean canStart(DomainRouterVO router) {
+            return _busy < _poolSize && getInFlight(router.getHostId()) < _maxPerHost;
+        }
+
+        synchronized void started(Visit visit) {
+            _running.add(visit);
+            _inFlightPerHost.put(visit._router.getHostId(), getInFlight(visit._router.getHostId()) + 1);
+            _busy++;
+        }
+
+        synchronized void done(Visit visit) {
+            if (!visit._timedOut) {
+                _running.remove(visit);
+                _busy--;
+            }
+            // a visit given up on keeps its host from being sent more until it really is done
+            _inFlightPerHost.put(visit._router.getHostId(), getInFlight(visit._router.getHostId()) - 1);
+            notifyAll();
+        }
+
+        private int getInFlight(Long hostId) {
+            final Integer count = _inFlightPerHost.get(hostId);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * Gives up on the visits that are past their deadline and waits for
+         * one to be done or to be past its deadline.
+         */
+        synchronized void await() throws InterruptedException {
+            long wait = Long.MAX_VALUE;
+            final long now = System.currentTimeMillis();
+            for (final Iterator<Visit> it = _running.iterator(); it.hasNext();) {
+                final Visit visit = it.next();
+                if (visit._deadline <= now) {
+                    s_logger.warn("Giving up on visiting router " + visit._router.getInstanceName() + " for " + _name + " after " + _timeoutMillis + " ms");
+                    visit._timedOut = true;
+                    visit._future.cancel(true);
+                    it.remove();
+                    _busy--;
+                    _timedOutVisits.incrementAndGet();
+                    if (visit._claimed.compareAndSet(false, true)) {
+                        // never started, so it will not be done either
+                        _inFlightPerHost.put(visit._router.getHostId(), getInFlight(visit._router.getHostId()) - 1);
+                    }
+                } else {
+                    wait = Math.min(wait, visit._deadline - now);
+                }
+            }
+            if (!_running.isEmpty()) {
+                wait(wait);
+            }
+        }
+
+        synchronized boolean isRunning() {
+            return !_running.isEmpty();
+        }
+    }
+
+    /**
+     * Visits the routers, returning once every visit is done or given up on.
+     */
+    public synchronized void sweep(List<DomainRouterVO> routers, Visitor visitor) {
+        final long startTime = System.currentTimeMillis();
+        // visits given up on by an earlier sweep may still be updating the times
+        final Map<Long, Long> lastVisited = new HashMap<Long, Long>();
+        for (final DomainRouterVO router : routers) {
+            lastVisited.put(router.getId(), getLastVisited(router));
+        }
+        final LinkedList<DomainRouterVO> pending = new LinkedList<DomainRouterVO>(routers);
+        Collections.sort(pending, new Comparator<DomainRouterVO>() {
+            @Override
+            public int compare(DomainRouterVO r1, DomainRouterVO r2) {
+                final int result = Long.compare(lastVisited.get(r1.getId()), lastVisited.get(r2.getId()));
+                return result != 0 ? result : Long.compare(r1.getId(), r2.getId());
+            }
+        });
+
+        final Sweep sweep = new Sweep();
+        try {
+            while (true) {
+                boolean started = false;
+                for (final Iterator<DomainRouterVO> it = pending.iterator(); it.hasNext();) {
+                    final DomainRouterVO router = it.next();
+                    if (!sweep.canStart(router)) {
+                        continue;
+                    }
+                    it.remove();
+                    final Visit visit = new Visit(router, visitor, sweep);
+                    sweep.started(visit);
+                    visit._future = _executor.submit(visit);
+                    started = true;
+                }
+                if (!sweep.isRunning()) {
+                    if (!started) {
+                        // what is left waits on a host whose visits were given up on
+                        break;
+                    }
+                    continue;
+                }
+                sweep.await();
+            }
+        } catch (final InterruptedException e) {
+            s_logger.warn("Interrupted while visiting routers for " + _name);
+            Thread.currentThread().interrupt();
+        }
+        if (!pending.isEmpty()) {
+            s_logger.warn("Did not visit " + pending.size() + " routers for " + _name + " as their host does not respond");
+        }
+
+        final long endTime = System.currentTimeMillis();
+        final Set<Long> routerIds = new HashSet<Long>();
+        long stalest = endTime;
+        for (final DomainRouterVO router : routers) {
+            routerIds.add(router.getId());
+            stalest = Math.min(stalest, getLastVisited(router));
+        }
+        _lastVisited.keySet().retainAll(routerIds);
+
+        _lastSweepDuration = endTime - startTime;
+        _maxSweepDuration = Math.max(_maxSweepDuration, _lastSweepDuration);
+        _lastSweepRouterCount = routers.size();
+        _stalestDataAge = (endTime - Math.max(stalest, _createdTime)) / 1000;
+        _sweeps.incrementAndGet();
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Visited " + routers.size() + " routers for " + _name + " in " + _lastSweepDuration + " ms");
+        }
+    }
+
+    private long getLastVisited(DomainRouterVO router) {
+        final Long lastVisited = _lastVisited.get(router.getId());
+        return lastVisited == null ? 0 : lastVisited;
+    }
+
+    public void shutdown() {
+        _executor.shutdownNow();
+    }
+
+    @Override
+    public String getName() {
+        return _name;
+    }
+
+    @Override
+    public long getLastSweepDurationMillis() {
+        return _lastSweepDuration;
+    }
+
+    @Override
+    public long getMaxSweepDurationMillis() {
+        return _maxSweepDuration;
+    }
+
+    @Override
+    public int getLastSweepRouterCount() {
+        return _lastSweepRouterCount;
+    }
+
+    @Override
+    public long getSweepCount() {
+        return _sweeps.get();
+    }
+
+    @Override
+    public long getVisitCount() {
+        return _visits.get();
+    }
+
+    @Override
+    public long getFailedVisitCount() {
+        return _failedVisits.get();
+    }
+
+    @Override
+    public long getTimedOutVisitCount() {
+        return _timedOutVisits.get();
+    }
+
+    @Override
+    public long getStalestDataAgeSeconds() {
+        return _stalestDataAge;
+    }
+}
@@ -0,0 +1,50 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.router;
+
+public interface RouterSweepMBean {
+    String getName();
+
+    /**
+     * @return the time, in milliseconds, the last sweep took.
+     */
+    long getLastSweepDurationMillis();
+
+    long getMaxSweepDurationMillis();
+
+    int getLastSweepRouterCount();
+
+    long getSweepCount();
+
+    long getVisitCount();
+
+    /**
+     * @return the number of visits that did not get the data of the router.
+     */
+    long getFailedVisitCount();
+
+    /**
+     * @return the number of visits given up on because they took longer than the timeout.
+     */
+    long getTimedOutVisitCount();
+
+    /**
+     * @return the time, in seconds, since the data of the router that was
+     *         gotten longest ago was gotten, as of the end of the last sweep.
+     */
+    long getStalestDataAgeSeconds();
+}
@@ -44,6 +44,9 @@ public interface VirtualNetworkApplianceManager extends Manager, VirtualNetworkA
     static final String RouterTemplateOvm3CK = "router.template.ovm3";
     static final String SetServiceMonitorCK = "network.router.EnableServiceMonitoring";
     static final String RouterAlertsCheckIntervalCK = "router.alerts.check.interval";
+    static final String RouterMonitorPoolSizeCK = "router.monitor.pool.size";
+    static final String RouterMonitorMaxPerHostCK = "router.monitor.max.per.host";
+    static final String RouterMonitorTimeoutCK = "router.monitor.timeout";
 
     static final ConfigKey<String> RouterTemplateXen = new ConfigKey<String>(String.class, RouterTemplateXenCK, "Advanced", "SystemVM Template (XenServer)",
             "Name of the default router template on Xenserver.", true, ConfigKey.Scope.Zone, null);
@@ -63,6 +66,12 @@ public interface VirtualNetworkApplianceManager extends Manager, VirtualNetworkA
 
     static final ConfigKey<Integer> RouterAlertsCheckInterval = new ConfigKey<Integer>(Integer.class, RouterAlertsCheckIntervalCK, "Advanced", "1800",
             "Interval (in seconds) to check for alerts in Virtual Router.", false, ConfigKey.Scope.Global, null);
+    static final ConfigKey<Integer> RouterMonitorPoolSize = new ConfigKey<Integer>(Integer.class, RouterMonitorPoolSizeCK, "Advanced", "10",
+            "Number of routers whose network usage, vpn connection state or alerts are collected at a time.", false, ConfigKey.Scope.Global, null);
+    static final ConfigKey<Integer> RouterMonitorMaxPerHost = new ConfigKey<Integer>(Integer.class, RouterMonitorMaxPerHostCK, "Advanced", "2",
+            "Number of routers on the same host whose network usage, vpn connection state or alerts are collected at a time.", false, ConfigKey.Scope.Global, null);
+    static final ConfigKey<Integer> RouterMonitorTimeout = new ConfigKey<Integer>(Integer.class, RouterMonitorTimeoutCK, "Advanced", "120",
+            "Time (in seconds) after which collecting the network usage, vpn connection state or alerts of a router is given up on.", false, ConfigKey.Scope.Global, null);
     static final ConfigKey<Boolean> routerVersionCheckEnabled = new ConfigKey<Boolean>("Advanced", Boolean.class, "router.version.check", "true",
             "If true, router minimum required version is checked before sending command", false);
     static final ConfigKey<Boolean> UseExternalDnsServers = new ConfigKey<Boolean>(Boolean.class, "use.external.dns", "Advanced", "false",
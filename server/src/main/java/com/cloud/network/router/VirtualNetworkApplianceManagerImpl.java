@@ -221,6 +221,7 @@ import com.cloud.utils.db.TransactionStatus;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.fsm.StateListener;
 import com.cloud.utils.fsm.StateMachine2;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.net.Ip;
 import com.cloud.utils.net.MacAddress;
 import com.cloud.utils.net.NetUtils;
@@ -342,6 +343,9 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
     private ScheduledExecutorService _checkExecutor;
     private ScheduledExecutorService _networkStatsUpdateExecutor;
     private ExecutorService _rvrStatusUpdateExecutor;
+    private RouterSweep _networkUsageSweep;
+    private RouterSweep _checkRouterSweep;
+    private RouterSweep _routerAlertsSweep;
 
     private BlockingQueue<Long> _vrUpdateQueue;
 
@@ -591,6 +595,20 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
 
     @Override
     public boolean start() {
+        final int poolSize = RouterMonitorPoolSize.value();
+        final int maxPerHost = RouterMonitorMaxPerHost.value();
+        final long timeout = RouterMonitorTimeout.value() * 1000L;
+        _networkUsageSweep = new RouterSweep("RouterNetworkUsage", poolSize, maxPerHost, timeout);
+        _checkRouterSweep = new RouterSweep("RouterStatusCheck", poolSize, maxPerHost, timeout);
+        _routerAlertsSweep = new RouterSweep("RouterAlertsCheck", poolSize, maxPerHost, timeout);
+        for (final RouterSweep sweep : new RouterSweep[] {_networkUsageSweep, _checkRouterSweep, _routerAlertsSweep}) {
+            try {
+                JmxUtil.registerMBean("VirtualRouterMonitor", sweep.getName(), sweep);
+            } catch (final Exception e) {
+                s_logger.warn("Unable to register router sweep " + sweep.getName() + " to JMX monitoring due to " + e.toString());
+            }
+        }
+
         if (_routerStatsInterval > 0) {
             _executor.scheduleAtFixedRate(new NetworkUsageTask(), _routerStatsInterval, _routerStatsInterval, TimeUnit.SECONDS);
         } else {
@@ -666,6 +684,11 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
 
     @Override
     public boolean stop() {
+        for (final RouterSweep sweep : new RouterSweep[] {_networkUsageSweep, _checkRouterSweep, _routerAlertsSweep}) {
+            if (sweep != null) {
+                sweep.shutdown();
+            }
+        }
         return true;
     }
 
@@ -683,105 +706,124 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
                 final List<DomainRouterVO> routers = _routerDao.listByStateAndNetworkType(VirtualMachine.State.Running, GuestType.Isolated, mgmtSrvrId);
                 s_logger.debug("Found " + routers.size() + " running routers. ");
 
-                for (final DomainRouterVO router : routers) {
-                    final String privateIP = router.getPrivateIpAddress();
+                _networkUsageSweep.sweep(routers, new RouterSweep.Visitor() {
+                    @Override
+                    public boolean visit(final DomainRouterVO router) {
+                        return collectNetworkUsage(router);
+                    }
+                });
+            } catch (final Exception e) {
+                s_logger.warn("Error while collecting network stats", e);
+            }
+        }
+
+        /**
+         * @return true if the network usage of all nics of the router was collected
+         */
+        private boolean collectNetworkUsage(final DomainRouterVO router) {
+            final String privateIP = router.getPrivateIpAddress();
+            if (privateIP == null) {
+                return false;
+            }
 
-                    if (privateIP != null) {
-                        final boolean forVpc = router.getVpcId() != null;
-                        final List<? extends Nic> routerNics = _nicDao.listByVmId(router.getId());
-                        for (final Nic routerNic : routerNics) {
-                            final Network network = _networkModel.getNetwork(routerNic.getNetworkId());
-                            // Send network usage command for public nic in VPC VR
-                            // Send network usage command for isolated guest nic of non) VPC VR
+            boolean collected = true;
+            final boolean forVpc = router.getVpcId() != null;
+            final List<? extends Nic> routerNics = _nicDao.listByVmId(router.getId());
+            for (final Nic routerNic : routerNics) {
+                final Network network = _networkModel.getNetwork(routerNic.getNetworkId());
+                // Send network usage command for public nic in VPC VR
+                // Send network usage command for isolated guest nic of non) VPC VR
 
-                            //[TODO] Avoiding the NPE now, but I have to find out what is going on with the network. - Wilder Rodrigues
-                            if (network == null) {
-                                s_logger.error("Could not find a network with ID => " + routerNic.getNetworkId() + ". It might be a problem!");
+                //[TODO] Avoiding the NPE now, but I have to find out what is going on with the network. - Wilder Rodrigues
+                if (network == null) {
+                    s_logger.error("Could not find a network with ID => " + routerNic.getNetworkId() + ". It might be a problem!");
+                    collected = false;
+                    continue;
+                }
+                if (forVpc && network.getTrafficType() == TrafficType.Public || !forVpc && network.getTrafficType() == TrafficType.Guest
+                        && network.getGuestType() == Network.GuestType.Isolated) {
+                    final NetworkUsageCommand usageCmd = new NetworkUsageCommand(privateIP, router.getHostName(), forVpc, routerNic.getIPv4Address());
+                    final String routerType = router.getType().toString();
+                    final UserStatisticsVO previousStats = _userStatsDao.findBy(router.getAccountId(), router.getDataCenterId(), network.getId(),
+                            forVpc ? routerNic.getIPv4Address() : null, router.getId(), routerType);
+                    NetworkUsageAnswer answer = null;
+                    try {
+                        answer = (NetworkUsageAnswer) _agentMgr.easySend(router.getHostId(), usageCmd);
+                    } catch (final Exception e) {
+                        s_logger.warn("Error while collecting network stats from router: " + router.getInstanceName() + " from host: " + router.getHostId(), e);
+                        collected = false;
+                        continue;
+                    }
+
+                    if (answer != null) {
+                        if (!answer.getResult()) {
+                            s_logger.warn("Error while collecting network stats from router: " + router.getInstanceName() + " from host: " + router.getHostId()
+                                    + "; details: " + answer.getDetails());
+                            collected = false;
+                            continue;
+                        }
+                        try {
+                            if (answer.getBytesReceived() == 0 && answer.getBytesSent() == 0) {
+                                s_logger.debug("Recieved and Sent bytes are both 0. Not updating user_statistics");
                                 continue;
                             }
-                            if (forVpc && network.getTrafficType() == TrafficType.Public || !forVpc && network.getTrafficType() == TrafficType.Guest
-                                    && network.getGuestType() == Network.GuestType.Isolated) {
-                                final NetworkUsageCommand usageCmd = new NetworkUsageCommand(privateIP, router.getHostName(), forVpc, routerNic.getIPv4Address());
-                                final String routerType = router.getType().toString();
-                                final UserStatisticsVO previousStats = _userStatsDao.findBy(router.getAccountId(), router.getDataCenterId(), network.getId(),
-                                        forVpc ? routerNic.getIPv4Address() : null, router.getId(), routerType);
-                                NetworkUsageAnswer answer = null;
-                                try {
-                                    answer = (NetworkUsageAnswer) _agentMgr.easySend(router.getHostId(), usageCmd);
-                                } catch (final Exception e) {
-                                    s_logger.warn("Error while collecting network stats from router: " + router.getInstanceName() + " from host: " + router.getHostId(), e);
-                                    continue;
-                                }
+                            final NetworkUsageAnswer answerFinal = answer;
+                            Transaction.execute(new TransactionCallbackNoReturn() {
+                                @Override
+                                public void doInTransactionWithoutResult(final TransactionStatus status) {
+                                    final UserStatisticsVO stats = _userStatsDao.lock(router.getAccountId(), router.getDataCenterId(), network.getId(),
+                                            forVpc ? routerNic.getIPv4Address() : null, router.getId(), routerType);
+                                    if (stats == null) {
+                                        s_logger.warn("unable to find stats for account: " + router.getAccountId());
+                                        return;
+                                    }
 
-                                if (answer != null) {
-                                    if (!answer.getResult()) {
-                                        s_logger.warn("Error while collecting network stats from router: " + router.getInstanceName() + " from host: " + router.getHostId()
-                                                + "; details: " + answer.getDetails());
-                                        continue;
+                                    if (previousStats != null
+                                            && (previousStats.getCurrentBytesReceived() != stats.getCurrentBytesReceived() || previousStats.getCurrentBytesSent() != stats
+                                            .getCurrentBytesSent())) {
+                                        s_logger.debug("Router stats changed from the time NetworkUsageCommand was sent. " + "Ignoring current answer. Router: "
+                                                + answerFinal.getRouterName() + " Rcvd: " + answerFinal.getBytesReceived() + "Sent: " + answerFinal.getBytesSent());
+                                        return;
                                     }
-                                    try {
-                                        if (answer.getBytesReceived() == 0 && answer.getBytesSent() == 0) {
-                                            s_logger.debug("Recieved and Sent bytes are both 0. Not updating user_statistics");
-                                            continue;
+
+                                    if (stats.getCurrentBytesReceived() > answerFinal.getBytesReceived()) {
+                                        if (s_logger.isDebugEnabled()) {
+                                            s_logger.debug("Received # of bytes that's less than the last one.  "
+                                                    + "Assuming something went wrong and persisting it. Router: " + answerFinal.getRouterName() + " Reported: "
+                                                    + answerFinal.getBytesReceived() + " Stored: " + stats.getCurrentBytesReceived());
                                         }
-                                        final NetworkUsageAnswer answerFinal = answer;
-                                        Transaction.execute(new TransactionCallbackNoReturn() {
-                                            @Override
-                                            public void doInTransactionWithoutResult(final TransactionStatus status) {
-                                                final UserStatisticsVO stats = _userStatsDao.lock(router.getAccountId(), router.getDataCenterId(), network.getId(),
-                                                        forVpc ? routerNic.getIPv4Address() : null, router.getId(), routerType);
-                                                if (stats == null) {
-                                                    s_logger.warn("unable to find stats for account: " + router.getAccountId());
-                                                    return;
-                                                }
-
-                                                if (previousStats != null
-                                                        && (previousStats.getCurrentBytesReceived() != stats.getCurrentBytesReceived() || previousStats.getCurrentBytesSent() != stats
-                                                        .getCurrentBytesSent())) {
-                                                    s_logger.debug("Router stats changed from the time NetworkUsageCommand was sent. " + "Ignoring current answer. Router: "
-                                                            + answerFinal.getRouterName() + " Rcvd: " + answerFinal.getBytesReceived() + "Sent: " + answerFinal.getBytesSent());
-                                                    return;
-                                                }
-
-                                                if (stats.getCurrentBytesReceived() > answerFinal.getBytesReceived()) {
-                                                    if (s_logger.isDebugEnabled()) {
-                                                        s_logger.debug("Received # of bytes that's less than the last one.  "
-                                                                + "Assuming something went wrong and persisting it. Router: " + answerFinal.getRouterName() + " Reported: "
-                                                                + answerFinal.getBytesReceived() + " Stored: " + stats.getCurrentBytesReceived());
-                                                    }
-                                                    stats.setNetBytesReceived(stats.getNetBytesReceived() + stats.getCurrentBytesReceived());
-                                                }
-                                                stats.setCurrentBytesReceived(answerFinal.getBytesReceived());
-                                                if (stats.getCurrentBytesSent() > answerFinal.getBytesSent()) {
-                                                    if (s_logger.isDebugEnabled()) {
-                                                        s_logger.debug("Received # of bytes that's less than the last one.  "
-                                                                + "Assuming something went wrong and persisting it. Router: " + answerFinal.getRouterName() + " Reported: "
-                                                                + answerFinal.getBytesSent() + " Stored: " + stats.getCurrentBytesSent());
-                                                    }
-                                                    stats.setNetBytesSent(stats.getNetBytesSent() + stats.getCurrentBytesSent());
-                                                }
-                                                stats.setCurrentBytesSent(answerFinal.getBytesSent());
-                                                if (!_dailyOrHourly) {
-                                                    // update agg bytes
-                                                    stats.setAggBytesSent(stats.getNetBytesSent() + stats.getCurrentBytesSent());
-                                                    stats.setAggBytesReceived(stats.getNetBytesReceived() + stats.getCurrentBytesReceived());
-                                                }
-                                                _userStatsDao.update(stats.getId(), stats);
-                                            }
-                                        });
-
-                                    } catch (final Exception e) {
-                                        s_logger.warn("Unable to update user statistics for account: " + router.getAccountId() + " Rx: " + answer.getBytesReceived() + "; Tx: "
-                                                + answer.getBytesSent());
+                                        stats.setNetBytesReceived(stats.getNetBytesReceived() + stats.getCurrentBytesReceived());
                                     }
+                                    stats.setCurrentBytesReceived(answerFinal.getBytesReceived());
+                                    if (stats.getCurrentBytesSent() > answerFinal.getBytesSent()) {
+                                        if (s_logger.isDebugEnabled()) {
+                                            s_logger.debug("Received # of bytes that's less than the last one.  "
+                                                    + "Assuming something went wrong and persisting it. Router: " + answerFinal.getRouterName() + " Reported: "
+                                                    + answerFinal.getBytesSent() + " Stored: " + stats.getCurrentBytesSent());
+                                        }
+                                        stats.setNetBytesSent(stats.getNetBytesSent() + stats.getCurrentBytesSent());
+                                    }
+                                    stats.setCurrentBytesSent(answerFinal.getBytesSent());
+                                    if (!_dailyOrHourly) {
+                                        // update agg bytes
+                                        stats.setAggBytesSent(stats.getNetBytesSent() + stats.getCurrentBytesSent());
+                                        stats.setAggBytesReceived(stats.getNetBytesReceived() + stats.getCurrentBytesReceived());
+                                    }
+                                    _userStatsDao.update(stats.getId(), stats);
                                 }
-                            }
+                            });
+
+                        } catch (final Exception e) {
+                            s_logger.warn("Unable to update user statistics for account: " + router.getAccountId() + " Rx: " + answer.getBytesReceived() + "; Tx: "
+                                    + answer.getBytesSent());
+                            collected = false;
                         }
+                    } else {
+                        collected = false;
                     }
                 }
-            } catch (final Exception e) {
-                s_logger.warn("Error while collecting network stats", e);
             }
+            return collected;
         }
     }
 
@@ -840,88 +882,97 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
     @DB
     protected void updateSite2SiteVpnConnectionState(final List<DomainRouterVO> routers) {
         for (final DomainRouterVO router : routers) {
-            final List<Site2SiteVpnConnectionVO> conns = _s2sVpnMgr.getConnectionsForRouter(router);
-            if (conns == null || conns.isEmpty()) {
-                continue;
+            updateSite2SiteVpnConnectionState(router);
+        }
+    }
+
+    /**
+     * @return false if the state of the vpn connections of the router could not be gotten
+     */
+    @DB
+    protected boolean updateSite2SiteVpnConnectionState(final DomainRouterVO router) {
+        final List<Site2SiteVpnConnectionVO> conns = _s2sVpnMgr.getConnectionsForRouter(router);
+        if (conns == null || conns.isEmpty()) {
+            return true;
+        }
+        if (router.getIsRedundantRouter() && router.getRedundantState() != RedundantState.MASTER){
+            return true;
+        }
+        if (router.getState() != VirtualMachine.State.Running) {
+            for (final Site2SiteVpnConnectionVO conn : conns) {
+                if (conn.getState() != Site2SiteVpnConnection.State.Error) {
+                    conn.setState(Site2SiteVpnConnection.State.Disconnected);
+                    _s2sVpnConnectionDao.persist(conn);
+                }
             }
-            if (router.getIsRedundantRouter() && router.getRedundantState() != RedundantState.MASTER){
+            return true;
+        }
+        final List<String> ipList = new ArrayList<String>();
+        for (final Site2SiteVpnConnectionVO conn : conns) {
+            if (conn.getState() != Site2SiteVpnConnection.State.Connected && conn.getState() != Site2SiteVpnConnection.State.Disconnected) {
                 continue;
             }
-            if (router.getState() != VirtualMachine.State.Running) {
-                for (final Site2SiteVpnConnectionVO conn : conns) {
-                    if (conn.getState() != Site2SiteVpnConnection.State.Error) {
-                        conn.setState(Site2SiteVpnConnection.State.Disconnected);
-                        _s2sVpnConnectionDao.persist(conn);
-                    }
-                }
-                continue;
+            final Site2SiteCustomerGateway gw = _s2sCustomerGatewayDao.findById(conn.getCustomerGatewayId());
+            ipList.add(gw.getGatewayIp());
+        }
+        final String privateIP = router.getPrivateIpAddress();
+        final HostVO host = _hostDao.findById(router.getHostId());
+        if (host == null || host.getState() != Status.Up) {
+            return true;
+        } else if (host.getManagementServerId() != ManagementServerNode.getManagementServerId()) {
+            /* Only cover hosts managed by this management server */
+            return true;
+        } else if (privateIP != null) {
+            final CheckS2SVpnConnectionsCommand command = new CheckS2SVpnConnectionsCommand(ipList);
+            command.setAccessDetail(NetworkElementCommand.ROUTER_IP, _routerControlHelper.getRouterControlIp(router.getId()));
+            command.setAccessDetail(NetworkElementCommand.ROUTER_NAME, router.getInstanceName());
+            command.setWait(30);
+            final Answer origAnswer = _agentMgr.easySend(router.getHostId(), command);
+            CheckS2SVpnConnectionsAnswer answer = null;
+            if (origAnswer instanceof CheckS2SVpnConnectionsAnswer) {
+                answer = (CheckS2SVpnConnectionsAnswer) origAnswer;
+            } else {
+                s_logger.warn("Unable to update router " + router.getHostName() + "'s VPN connection status");
+                return false;
             }
-            final List<String> ipList = new ArrayList<String>();
-            for (final Site2SiteVpnConnectionVO conn : conns) {
-                if (conn.getState() != Site2SiteVpnConnection.State.Connected && conn.getState() != Site2SiteVpnConnection.State.Disconnected) {
-                    continue;
-                }
-                final Site2SiteCustomerGateway gw = _s2sCustomerGatewayDao.findById(conn.getCustomerGatewayId());
-                ipList.add(gw.getGatewayIp());
+            if (!answer.getResult()) {
+                s_logger.warn("Unable to update router " + router.getHostName() + "'s VPN connection status");
+                return false;
             }
-            final String privateIP = router.getPrivateIpAddress();
-            final HostVO host = _hostDao.findById(router.getHostId());
-            if (host == null || host.getState() != Status.Up) {
-                continue;
-            } else if (host.getManagementServerId() != ManagementServerNode.getManagementServerId()) {
-                /* Only cover hosts managed by this management server */
-                continue;
-            } else if (privateIP != null) {
-                final CheckS2SVpnConnectionsCommand command = new CheckS2SVpnConnectionsCommand(ipList);
-                command.setAccessDetail(NetworkElementCommand.ROUTER_IP, _routerControlHelper.getRouterControlIp(router.getId()));
-                command.setAccessDetail(NetworkElementCommand.ROUTER_NAME, router.getInstanceName());
-                command.setWait(30);
-                final Answer origAnswer = _agentMgr.easySend(router.getHostId(), command);
-                CheckS2SVpnConnectionsAnswer answer = null;
-                if (origAnswer instanceof CheckS2SVpnConnectionsAnswer) {
-                    answer = (CheckS2SVpnConnectionsAnswer) origAnswer;
-                } else {
-                    s_logger.warn("Unable to update router " + router.getHostName() + "'s VPN connection status");
-                    continue;
-                }
-                if (!answer.getResult()) {
-                    s_logger.warn("Unable to update router " + router.getHostName() + "'s VPN connection status");
-                    continue;
+            for (final Site2SiteVpnConnectionVO conn : conns) {
+                final Site2SiteVpnConnectionVO lock = _s2sVpnConnectionDao.acquireInLockTable(conn.getId());
+                if (lock == null) {
+                    throw new CloudRuntimeException("Unable to acquire lock for site to site vpn connection id " + conn.getId());
                 }
-                for (final Site2SiteVpnConnectionVO conn : conns) {
-                    final Site2SiteVpnConnectionVO lock = _s2sVpnConnectionDao.acquireInLockTable(conn.getId());
-                    if (lock == null) {
-                        throw new CloudRuntimeException("Unable to acquire lock for site to site vpn connection id " + conn.getId());
+                try {
+                    if (conn.getState() != Site2SiteVpnConnection.State.Connected && conn.getState() != Site2SiteVpnConnection.State.Disconnected) {
+                        continue;
                     }
-                    try {
-                        if (conn.getState() != Site2SiteVpnConnection.State.Connected && conn.getState() != Site2SiteVpnConnection.State.Disconnected) {
-                            continue;
-                        }
-                        final Site2SiteVpnConnection.State oldState = conn.getState();
-                        final Site2SiteCustomerGateway gw = _s2sCustomerGatewayDao.findById(conn.getCustomerGatewayId());
+                    final Site2SiteVpnConnection.State oldState = conn.getState();
+                    final Site2SiteCustomerGateway gw = _s2sCustomerGatewayDao.findById(conn.getCustomerGatewayId());
 
-                        if (answer.isIPPresent(gw.getGatewayIp())) {
-                            if (answer.isConnected(gw.getGatewayIp())) {
-                                conn.setState(Site2SiteVpnConnection.State.Connected);
-                            } else {
-                                conn.setState(Site2SiteVpnConnection.State.Disconnected);
-                            }
-                            _s2sVpnConnectionDao.persist(conn);
-                            if (oldState != conn.getState()) {
-                                final String title = "Site-to-site Vpn Connection to " + gw.getName() + " just switched from " + oldState + " to " + conn.getState();
-                                final String context =
-                                        "Site-to-site Vpn Connection to " + gw.getName() + " on router " + router.getHostName() + "(id: " + router.getId() + ") " +
-                                                " just switched from " + oldState + " to " + conn.getState();
-                                s_logger.info(context);
-                                _alertMgr.sendAlert(AlertManager.AlertType.ALERT_TYPE_DOMAIN_ROUTER, router.getDataCenterId(), router.getPodIdToDeployIn(), title, context);
-                            }
+                    if (answer.isIPPresent(gw.getGatewayIp())) {
+                        if (answer.isConnected(gw.getGatewayIp())) {
+                            conn.setState(Site2SiteVpnConnection.State.Connected);
+                        } else {
+                            conn.setState(Site2SiteVpnConnection.State.Disconnected);
+                        }
+                        _s2sVpnConnectionDao.persist(conn);
+                        if (oldState != conn.getState()) {
+                            final String title = "Site-to-site Vpn Connection to " + gw.getName() + " just switched from " + oldState + " to " + conn.getState();
+                            final String context =
+                                    "Site-to-site Vpn Connection to " + gw.getName() + " on router " + router.getHostName() + "(id: " + router.getId() + ") " +
+                                            " just switched from " + oldState + " to " + conn.getState();
+                            s_logger.info(context);
+                            _alertMgr.sendAlert(AlertManager.AlertType.ALERT_TYPE_DOMAIN_ROUTER, router.getDataCenterId(), router.getPodIdToDeployIn(), title, context);
                         }
-                    } finally {
-                        _s2sVpnConnectionDao.releaseFromLockTable(lock.getId());
                     }
+                } finally {
+                    _s2sVpnConnectionDao.releaseFromLockTable(lock.getId());
                 }
             }
         }
+        return true;
     }
 
     protected void updateRoutersRedundantState(final List<DomainRouterVO> routers) {
@@ -1162,7 +1213,12 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
                 final List<DomainRouterVO> routers = _routerDao.listIsolatedByHostId(null);
                 s_logger.debug("Found " + routers.size() + " routers to update status. ");
 
-                updateSite2SiteVpnConnectionState(routers);
+                _checkRouterSweep.sweep(routers, new RouterSweep.Visitor() {
+                    @Override
+                    public boolean visit(final DomainRouterVO router) {
+                        return updateSite2SiteVpnConnectionState(router);
+                    }
+                });
 
                 List<NetworkVO> networks = _networkDao.listVpcNetworks();
                 s_logger.debug("Found " + networks.size() + " VPC networks to update Redundant State. ");
@@ -1206,82 +1262,93 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
 
             s_logger.debug("Found " + routers.size() + " running routers. ");
 
-            for (final DomainRouterVO router : routers) {
-                final String serviceMonitoringFlag = SetServiceMonitor.valueIn(router.getDataCenterId());
-                // Skip the routers in VPC network or skip the routers where
-                // Monitor service is not enabled in the corresponding Zone
-                if (!Boolean.parseBoolean(serviceMonitoringFlag) || router.getVpcId() != null) {
-                    continue;
+            _routerAlertsSweep.sweep(routers, new RouterSweep.Visitor() {
+                @Override
+                public boolean visit(final DomainRouterVO router) {
+                    return getRouterAlerts(router);
                 }
-                String controlIP = getRouterControlIP(router);
+            });
+        } catch (final Exception e) {
+            s_logger.warn("Error while collecting alerts from router", e);
+        }
+    }
 
-                if (controlIP != null && !controlIP.equals("0.0.0.0")) {
-                    OpRouterMonitorServiceVO opRouterMonitorServiceVO = _opRouterMonitorServiceDao.findById(router.getId());
+    /**
+     * @return false if the alerts of the router could not be gotten
+     */
+    protected boolean getRouterAlerts(final DomainRouterVO router) {
+        final String serviceMonitoringFlag = SetServiceMonitor.valueIn(router.getDataCenterId());
+        // Skip the routers in VPC network or skip the routers where
+        // Monitor service is not enabled in the corresponding Zone
+        if (!Boolean.parseBoolean(serviceMonitoringFlag) || router.getVpcId() != null) {
+            return true;
+        }
+        String controlIP = getRouterControlIP(router);
 
-                    GetRouterAlertsCommand command = null;
-                    if (opRouterMonitorServiceVO == null) {
-                        command = new GetRouterAlertsCommand(new String("1970-01-01 00:00:00")); // To
-                        // avoid
-                        // sending
-                        // null
-                        // value
-                    } else {
-                        command = new GetRouterAlertsCommand(opRouterMonitorServiceVO.getLastAlertTimestamp());
-                    }
+        if (controlIP != null && !controlIP.equals("0.0.0.0")) {
+            OpRouterMonitorServiceVO opRouterMonitorServiceVO = _opRouterMonitorServiceDao.findById(router.getId());
 
-                    command.setAccessDetail(NetworkElementCommand.ROUTER_IP, controlIP);
+            GetRouterAlertsCommand command = null;
+            if (opRouterMonitorServiceVO == null) {
+                command = new GetRouterAlertsCommand(new String("1970-01-01 00:00:00")); // To
+                // avoid
+                // sending
+                // null
+                // value
+            } else {
+                command = new GetRouterAlertsCommand(opRouterMonitorServiceVO.getLastAlertTimestamp());
+            }
 
-                    try {
-                        final Answer origAnswer = _agentMgr.easySend(router.getHostId(), command);
-                        GetRouterAlertsAnswer answer = null;
+            command.setAccessDetail(NetworkElementCommand.ROUTER_IP, controlIP);
 
-                        if (origAnswer == null) {
-                            s_logger.warn("Unable to get alerts from router " + router.getHostName());
-                            continue;
-                        }
-                        if (origAnswer instanceof GetRouterAlertsAnswer) {
-                            answer = (GetRouterAlertsAnswer) origAnswer;
-                        } else {
-                            s_logger.warn("Unable to get alerts from router " + router.getHostName());
-                            continue;
-                        }
-                        if (!answer.getResult()) {
-                            s_logger.warn("Unable to get alerts from router " + router.getHostName() + " " + answer.getDetails());
-                            continue;
-                        }
+            try {
+                final Answer origAnswer = _agentMgr.easySend(router.getHostId(), command);
+                GetRouterAlertsAnswer answer = null;
 
-                        final String alerts[] = answer.getAlerts();
-                        if (alerts != null) {
-                            final String lastAlertTimeStamp = answer.getTimeStamp();
-                            final SimpleDateFormat sdfrmt = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
-                            sdfrmt.setLenient(false);
-                            try {
-                                sdfrmt.parse(lastAlertTimeStamp);
-                            } catch (final ParseException e) {
-                                s_logger.warn("Invalid last alert timestamp received while collecting alerts from router: " + router.getInstanceName());
-                                continue;
-                            }
-                            for (final String alert : alerts) {
-                                _alertMgr.sendAlert(AlertType.ALERT_TYPE_DOMAIN_ROUTER, router.getDataCenterId(), router.getPodIdToDeployIn(), "Monitoring Service on VR "
-                                        + router.getInstanceName(), alert);
-                            }
-                            if (opRouterMonitorServiceVO == null) {
-                                opRouterMonitorServiceVO = new OpRouterMonitorServiceVO(router.getId(), router.getHostName(), lastAlertTimeStamp);
-                                _opRouterMonitorServiceDao.persist(opRouterMonitorServiceVO);
-                            } else {
-                                opRouterMonitorServiceVO.setLastAlertTimestamp(lastAlertTimeStamp);
-                                _opRouterMonitorServiceDao.update(opRouterMonitorServiceVO.getId(), opRouterMonitorServiceVO);
-                            }
-                        }
-                    } catch (final Exception e) {
-                        s_logger.warn("Error while collecting alerts from router: " + router.getInstanceName(), e);
-                        continue;
+                if (origAnswer == null) {
+                    s_logger.warn("Unable to get alerts from router " + router.getHostName());
+                    return false;
+                }
+                if (origAnswer instanceof GetRouterAlertsAnswer) {
+                    answer = (GetRouterAlertsAnswer) origAnswer;
+                } else {
+                    s_logger.warn("Unable to get alerts from router " + router.getHostName());
+                    return false;
+                }
+                if (!answer.getResult()) {
+                    s_logger.warn("Unable to get alerts from router " + router.getHostName() + " " + answer.getDetails());
+                    return false;
+                }
+
+                final String alerts[] = answer.getAlerts();
+                if (alerts != null) {
+                    final String lastAlertTimeStamp = answer.getTimeStamp();
+                    final SimpleDateFormat sdfrmt = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
+                    sdfrmt.setLenient(false);
+                    try {
+                        sdfrmt.parse(lastAlertTimeStamp);
+                    } catch (final ParseException e) {
+                        s_logger.warn("Invalid last alert timestamp received while collecting alerts from router: " + router.getInstanceName());
+                        return false;
+                    }
+                    for (final String alert : alerts) {
+                        _alertMgr.sendAlert(AlertType.ALERT_TYPE_DOMAIN_ROUTER, router.getDataCenterId(), router.getPodIdToDeployIn(), "Monitoring Service on VR "
+                                + router.getInstanceName(), alert);
+                    }
+                    if (opRouterMonitorServiceVO == null) {
+                        opRouterMonitorServiceVO = new OpRouterMonitorServiceVO(router.getId(), router.getHostName(), lastAlertTimeStamp);
+                        _opRouterMonitorServiceDao.persist(opRouterMonitorServiceVO);
+                    } else {
+                        opRouterMonitorServiceVO.setLastAlertTimestamp(lastAlertTimeStamp);
+                        _opRouterMonitorServiceDao.update(opRouterMonitorServiceVO.getId(), opRouterMonitorServiceVO);
                     }
                 }
+            } catch (final Exception e) {
+                s_logger.warn("Error while collecting alerts from router: " + router.getInstanceName(), e);
+                return false;
             }
-        } catch (final Exception e) {
-            s_logger.warn("Error while collecting alerts from router", e);
         }
+        return true;
     }
 
     private String getRouterControlIP(DomainRouterVO router){
@@ -2594,7 +2661,8 @@ Configurable, StateListener<VirtualMachine.State, VirtualMachine.Event, VirtualM
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] { UseExternalDnsServers, routerVersionCheckEnabled, SetServiceMonitor, RouterAlertsCheckInterval };
+        return new ConfigKey<?>[] { UseExternalDnsServers, routerVersionCheckEnabled, SetServiceMonitor, RouterAlertsCheckInterval, RouterMonitorPoolSize,
+                RouterMonitorMaxPerHost, RouterMonitorTimeout };
     }
 
     @Override
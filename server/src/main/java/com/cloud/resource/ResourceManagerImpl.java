@@ -2632,7 +2632,17 @@ public class ResourceManagerImpl extends ManagerBase implements ResourceManager,
 
     @Override
     public HostStats getHostStatistics(final long hostId) {
-        final Answer answer = _agentMgr.easySend(hostId, new GetHostStatsCommand(_hostDao.findById(hostId).getGuid(), _hostDao.findById(hostId).getName(), hostId));
+        return getHostStatistics(hostId, 0);
+    }
+
+    @Override
+    public HostStats getHostStatistics(final long hostId, final int timeout) {
+        final HostVO host = _hostDao.findById(hostId);
+        final GetHostStatsCommand cmd = new GetHostStatsCommand(host.getGuid(), host.getName(), hostId);
+        if (timeout > 0) {
+            cmd.setWait(timeout / 1000);
+        }
+        final Answer answer = _agentMgr.easySend(hostId, cmd);
 
         if (answer != null && answer instanceof UnsupportedAnswer) {
             return null;
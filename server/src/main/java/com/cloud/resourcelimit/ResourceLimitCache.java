@@ -0,0 +1,126 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.resourcelimit;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cloud.configuration.Resource.ResourceOwnerType;
+import com.cloud.configuration.Resource.ResourceType;
+import com.cloud.configuration.ResourceLimitVO;
+import com.cloud.configuration.dao.ResourceLimitDao;
+import com.cloud.domain.DomainVO;
+import com.cloud.domain.dao.DomainDao;
+import com.cloud.utils.Pair;
+
+/**
+ * ResourceLimitCache keeps the limits set on accounts and domains and the
+ * parents of the domains, so that resolving the limit of a domain does not
+ * look up every domain up to ROOT.  The limits of an owner are loaded at once
+ * and kept for the given time, which is how long a limit changed on another
+ * management server takes to be seen here; changes made here invalidate the
+ * owner once they are written.  Limits loaded while an invalidation happens
+ * are not kept, so a load that read the limits before the write can not put
+ * them back after it.  The parent of a domain never changes and is kept until
+ * the cache is cleared.
+ */
+public class ResourceLimitCache {
+    private static final Long NO_PARENT = -1L;
+
+    private final ResourceLimitDao _resourceLimitDao;
+    private final DomainDao _domainDao;
+    private final long _ttl;
+    private final ConcurrentHashMap<Long, Long> _domainParents = new ConcurrentHashMap<Long, Long>();
+    private final ConcurrentHashMap<Pair<ResourceOwnerType, Long>, OwnerLimits> _limits = new ConcurrentHashMap<Pair<ResourceOwnerType, Long>, OwnerLimits>();
+    private final AtomicLong _generation = new AtomicLong();
+
+    private static class OwnerLimits {
+        final long loaded = System.currentTimeMillis();
+        final Map<ResourceType, Long> limits = new EnumMap<ResourceType, Long>(ResourceType.class);
+    }
+
+    /**
+     * @param ttl time in milliseconds the limits of an owner are kept.
+     */
+    public ResourceLimitCache(ResourceLimitDao resourceLimitDao, DomainDao domainDao, long ttl) {
+        _resourceLimitDao = resourceLimitDao;
+        _domainDao = domainDao;
+        _ttl = ttl;
+    }
+
+    /**
+     * @return the limit set on the owner for the type, null if there is none.
+     */
+    public Long getLimit(long ownerId, ResourceOwnerType ownerType, ResourceType type) {
+        final Pair<ResourceOwnerType, Long> key = new Pair<ResourceOwnerType, Long>(ownerType, ownerId);
+        OwnerLimits owner = _limits.get(key);
+        if (owner == null || System.currentTimeMillis() - owner.loaded > _ttl) {
+            final long generation = _generation.get();
+            owner = new OwnerLimits();
+            for (ResourceLimitVO limit : _resourceLimitDao.listByOwner(ownerId, ownerType)) {
+                if (limit.getMax() != null) {
+                    owner.limits.put(limit.getType(), limit.getMax());
+                }
+            }
+            if (_generation.get() == generation) {
+                _limits.put(key, owner);
+            }
+        }
+        return owner.limits.get(type);
+    }
+
+    /**
+     * @return the id of the domain followed by the ids of its parents, the
+     *         last one being ROOT.  Empty if the domain does not exist.
+     */
+    public List<Long> getDomainPath(long domainId) {
+        final List<Long> path = new ArrayList<Long>();
+        Long id = domainId;
+        while (id != null) {
+            Long parent = _domainParents.get(id);
+            if (parent == null) {
+                final DomainVO domain = _domainDao.findById(id);
+                if (domain == null) {
+                    break;
+                }
+                parent = domain.getParent() != null ? domain.getParent() : NO_PARENT;
+                _domainParents.put(id, parent);
+            }
+            path.add(id);
+            id = parent.equals(NO_PARENT) ? null : parent;
+        }
+        return path;
+    }
+
+    /**
+     * Call once the change of the limits of the owner is committed.
+     */
+    public void invalidate(long ownerId, ResourceOwnerType ownerType) {
+        _generation.incrementAndGet();
+        _limits.remove(new Pair<ResourceOwnerType, Long>(ownerType, ownerId));
+    }
+
+    public void clear() {
+        _generation.incrementAndGet();
+        _limits.clear();
+        _domainParents.clear();
+    }
+}
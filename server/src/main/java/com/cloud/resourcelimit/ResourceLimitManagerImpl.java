@@ -89,6 +89,7 @@ import com.cloud.utils.db.DB;
 import com.cloud.utils.db.EntityManager;
 import com.cloud.utils.db.Filter;
 import com.cloud.utils.db.GenericSearchBuilder;
+import com.cloud.utils.db.GlobalLock;
 import com.cloud.utils.db.JoinBuilder;
 import com.cloud.utils.db.SearchBuilder;
 import com.cloud.utils.db.SearchCriteria;
@@ -106,6 +107,9 @@ import com.cloud.vm.dao.VMInstanceDao;
 public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLimitService, Configurable {
     public static final Logger s_logger = Logger.getLogger(ResourceLimitManagerImpl.class);
 
+    // number of resource count deltas folded in by one transaction of the compaction task
+    private static final int DELTA_COMPACTION_BATCH_SIZE = 1000;
+
     @Inject
     private DomainDao _domainDao;
     @Inject
@@ -156,7 +160,10 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
 
     protected SearchBuilder<ResourceCountVO> ResourceCountSearch;
     ScheduledExecutorService _rcExecutor;
+    ScheduledExecutorService _compactionExecutor;
     long _resourceCountCheckInterval = 0;
+    long _resourceCountCompactionInterval = 0;
+    ResourceLimitCache _limitCache;
     Map<ResourceType, Long> accountResourceLimitMap = new EnumMap<ResourceType, Long>(ResourceType.class);
     Map<ResourceType, Long> domainResourceLimitMap = new EnumMap<ResourceType, Long>(ResourceType.class);
     Map<ResourceType, Long> projectResourceLimitMap = new EnumMap<ResourceType, Long>(ResourceType.class);
@@ -166,6 +173,9 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         if (_resourceCountCheckInterval > 0) {
             _rcExecutor.scheduleAtFixedRate(new ResourceCountCheckTask(), _resourceCountCheckInterval, _resourceCountCheckInterval, TimeUnit.SECONDS);
         }
+        if (_resourceCountCompactionInterval > 0) {
+            _compactionExecutor.scheduleWithFixedDelay(new ResourceCountCompactionTask(), _resourceCountCompactionInterval, _resourceCountCompactionInterval, TimeUnit.SECONDS);
+        }
         return true;
     }
 
@@ -205,6 +215,11 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         if (_resourceCountCheckInterval > 0) {
             _rcExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("ResourceCountChecker"));
         }
+        _resourceCountCompactionInterval = ResourceCountCompactionInterval.value();
+        if (_resourceCountCompactionInterval > 0) {
+            _compactionExecutor = Executors.newScheduledThreadPool(1, new NamedThreadFactory("ResourceCountCompactor"));
+        }
+        _limitCache = new ResourceLimitCache(_resourceLimitDao, _domainDao, ResourceLimitCacheTtl.value() * 1000);
 
         try {
             projectResourceLimitMap.put(Resource.ResourceType.public_ip, Long.parseLong(_configDao.getValue(Config.DefaultMaxProjectPublicIPs.key())));
@@ -291,11 +306,11 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
             return max;
         }
 
-        ResourceLimitVO limit = _resourceLimitDao.findByOwnerIdAndType(account.getId(), ResourceOwnerType.Account, type);
+        Long limit = _limitCache.getLimit(account.getId(), ResourceOwnerType.Account, type);
 
         // Check if limit is configured for account
         if (limit != null) {
-            max = limit.getMax().longValue();
+            max = limit.longValue();
         } else {
             // If the account has an no limit set, then return global default account limits
             Long value = null;
@@ -361,43 +376,43 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
 
     @Override
     public long findCorrectResourceLimitForDomain(Domain domain, ResourceType type) {
-        long max = Resource.RESOURCE_UNLIMITED;
-
         // no limits on ROOT domain
         if (domain.getId() == Domain.ROOT_DOMAIN) {
             return Resource.RESOURCE_UNLIMITED;
         }
-        // Check account
-        ResourceLimitVO limit = _resourceLimitDao.findByOwnerIdAndType(domain.getId(), ResourceOwnerType.Domain, type);
+        return findCorrectResourceLimitForDomain(_limitCache.getDomainPath(domain.getId()), 0, type);
+    }
+
+    /**
+     * @param domainPath a domain followed by its parents, as returned by
+     *            {@link ResourceLimitCache#getDomainPath(long)}
+     * @param index the position of the domain to get the limit of in the path
+     */
+    protected long findCorrectResourceLimitForDomain(List<Long> domainPath, int index, ResourceType type) {
+        long max = Resource.RESOURCE_UNLIMITED;
+
+        // the limit of the domain or of its closest parent that has one, ROOT excluded
+        Long limit = null;
+        for (int i = index; i < domainPath.size() && limit == null; i++) {
+            if (domainPath.get(i) == Domain.ROOT_DOMAIN) {
+                break;
+            }
+            limit = _limitCache.getLimit(domainPath.get(i), ResourceOwnerType.Domain, type);
+        }
 
         if (limit != null) {
-            max = limit.getMax().longValue();
+            max = limit.longValue();
         } else {
-            // check domain hierarchy
-            Long domainId = domain.getParent();
-            while ((domainId != null) && (limit == null)) {
-                if (domainId == Domain.ROOT_DOMAIN) {
-                    break;
+            Long value = null;
+            value = domainResourceLimitMap.get(type);
+            if (value != null) {
+                if (value < 0) { // return unlimit if value is set to negative
+                    return max;
                 }
-                limit = _resourceLimitDao.findByOwnerIdAndType(domainId, ResourceOwnerType.Domain, type);
-                DomainVO tmpDomain = _domainDao.findById(domainId);
-                domainId = tmpDomain.getParent();
-            }
-
-            if (limit != null) {
-                max = limit.getMax().longValue();
-            } else {
-                Long value = null;
-                value = domainResourceLimitMap.get(type);
-                if (value != null) {
-                    if (value < 0) { // return unlimit if value is set to negative
-                        return max;
-                    }
-                    if (type == ResourceType.primary_storage || type == ResourceType.secondary_storage) {
-                        value = value * ResourceType.bytesToGiB;
-                    }
-                    return value;
+                if (type == ResourceType.primary_storage || type == ResourceType.secondary_storage) {
+                    value = value * ResourceType.bytesToGiB;
                 }
+                return value;
             }
         }
 
@@ -413,12 +428,17 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
             domainId = account.getDomainId();
         }
 
-        while (domainId != null) {
-            DomainVO domain = _domainDao.findById(domainId);
+        // the counts of the whole hierarchy are read at once, pending deltas included
+        List<Long> domainPath = _limitCache.getDomainPath(domainId);
+        Map<Long, Long> domainResourceCounts = _resourceCountDao.getDomainResourceCounts(domainPath, type);
+
+        for (int i = 0; i < domainPath.size(); i++) {
+            domainId = domainPath.get(i);
             // no limit check if it is ROOT domain
             if (domainId != Domain.ROOT_DOMAIN) {
-                long domainResourceLimit = findCorrectResourceLimitForDomain(domain, type);
-                long currentDomainResourceCount = _resourceCountDao.getResourceCount(domainId, ResourceOwnerType.Domain, type);
+                long domainResourceLimit = findCorrectResourceLimitForDomain(domainPath, i, type);
+                Long domainResourceCount = domainResourceCounts.get(domainId);
+                long currentDomainResourceCount = domainResourceCount != null ? domainResourceCount : 0;
                 long requestedDomainResourceCount = currentDomainResourceCount + numResources;
                 String messageSuffix = " domain resource limits of Type '" + type + "'" + " for Domain Id = " + domainId + " is exceeded: Domain Resource Limit = " + domainResourceLimit
                         + ", Current Domain Resource Amount = " + currentDomainResourceCount + ", Requested Resource Amount = " + numResources + ".";
@@ -434,7 +454,6 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
                     throw e;
                 }
             }
-            domainId = domain.getParent();
         }
     }
 
@@ -738,12 +757,17 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         }
 
         ResourceLimitVO limit = _resourceLimitDao.findByOwnerIdAndType(ownerId, ownerType, resourceType);
-        if (limit != null) {
-            // Update the existing limit
-            _resourceLimitDao.update(limit.getId(), max);
-            return _resourceLimitDao.findById(limit.getId());
-        } else {
-            return _resourceLimitDao.persist(new ResourceLimitVO(resourceType, max, ownerId, ownerType));
+        try {
+            if (limit != null) {
+                // Update the existing limit
+                _resourceLimitDao.update(limit.getId(), max);
+                return _resourceLimitDao.findById(limit.getId());
+            } else {
+                return _resourceLimitDao.persist(new ResourceLimitVO(resourceType, max, ownerId, ownerType));
+            }
+        } finally {
+            // the dao commits the write, the limits of the owner loaded until then are stale
+            _limitCache.invalidate(ownerId, ownerType);
         }
     }
 
@@ -803,6 +827,13 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
             s_logger.debug("Updating resource Type = " + type + " count for Account = " + accountId + " Operation = " + (increment ? "increasing" : "decreasing") + " Amount = " + delta);
         }
         try {
+            if (_resourceCountCompactionInterval > 0) {
+                // the change is logged for the account and all its domains without locking their rows, see ResourceCountCompactionTask
+                Set<Long> rowsToUpdate = _resourceCountDao.listAllRowsToUpdate(accountId, ResourceOwnerType.Account, type);
+                _resourceCountDao.appendDelta(rowsToUpdate, increment ? delta : -delta);
+                return true;
+            }
+            // nothing would fold the deltas in, update the rows themselves
             return Transaction.execute(new TransactionCallback<Boolean>() {
                 @Override
                 public Boolean doInTransaction(TransactionStatus status) {
@@ -823,37 +854,53 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
         }
     }
 
+    /**
+     * The sub-domains and accounts are recalculated each in their own
+     * transaction first, so the rows of the domain are only locked while its
+     * new count is stored instead of during the whole recalculation of the
+     * sub-tree.  The new count is the sum of the counts of the sub-domains
+     * and accounts as they are once the rows of the domain are locked and its
+     * pending deltas removed: from then on no delta can be logged for the
+     * domain or any of its sub-domains and accounts until the new count is
+     * stored.
+     */
     @DB
     protected long recalculateDomainResourceCount(final long domainId, final ResourceType type) {
+        final List<Long> childDomainIds = new ArrayList<Long>();
+        if (type.supportsOwner(ResourceOwnerType.Domain)) {
+            for (DomainVO childDomain : _domainDao.findImmediateChildrenForParent(domainId)) {
+                recalculateDomainResourceCount(childDomain.getId(), type);
+                childDomainIds.add(childDomain.getId());
+            }
+        }
+
+        final List<Long> accountIds = new ArrayList<Long>();
+        if (type.supportsOwner(ResourceOwnerType.Account)) {
+            for (AccountVO account : _accountDao.findActiveAccountsForDomain(domainId)) {
+                recalculateAccountResourceCount(account.getId(), type);
+                accountIds.add(account.getId());
+            }
+        }
+
         return Transaction.execute(new TransactionCallback<Long>() {
             @Override
             public Long doInTransaction(TransactionStatus status) {
-                long newResourceCount = 0;
                 lockDomainRows(domainId, type);
                 ResourceCountVO domainRC = _resourceCountDao.findByOwnerAndType(domainId, ResourceOwnerType.Domain, type);
-                long oldResourceCount = domainRC.getCount();
-
-                List<DomainVO> domainChildren = _domainDao.findImmediateChildrenForParent(domainId);
-                // for each child domain update the resource count
-                if (type.supportsOwner(ResourceOwnerType.Domain)) {
-
-                    // calculate project count here
-                    if (type == ResourceType.project) {
-                        newResourceCount += _projectDao.countProjectsForDomain(domainId);
-                    }
+                long oldResourceCount = _resourceCountDao.getResourceCount(domainId, ResourceOwnerType.Domain, type);
+                _resourceCountDao.removeDeltas(domainRC.getId());
 
-                    for (DomainVO childDomain : domainChildren) {
-                        long childDomainResourceCount = recalculateDomainResourceCount(childDomain.getId(), type);
-                        newResourceCount += childDomainResourceCount; // add the child domain count to parent domain count
-                    }
+                long newResourceCount = 0;
+                // calculate project count here
+                if (type == ResourceType.project) {
+                    newResourceCount += _projectDao.countProjectsForDomain(domainId);
                 }
-
-                if (type.supportsOwner(ResourceOwnerType.Account)) {
-                    List<AccountVO> accounts = _accountDao.findActiveAccountsForDomain(domainId);
-                    for (AccountVO account : accounts) {
-                        long accountResourceCount = recalculateAccountResourceCount(account.getId(), type);
-                        newResourceCount += accountResourceCount; // add account's resource count to parent domain count
-                    }
+                // add the child domain and account counts to parent domain count
+                for (Long count : _resourceCountDao.getDomainResourceCounts(childDomainIds, type).values()) {
+                    newResourceCount += count;
+                }
+                for (Long count : _resourceCountDao.getAccountResourceCounts(accountIds, type).values()) {
+                    newResourceCount += count;
                 }
                 _resourceCountDao.setResourceCount(domainId, ResourceOwnerType.Domain, type, newResourceCount);
 
@@ -877,7 +924,9 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
                 ResourceCountVO accountRC = _resourceCountDao.findByOwnerAndType(accountId, ResourceOwnerType.Account, type);
                 long oldCount = 0;
                 if (accountRC != null) {
-                    oldCount = accountRC.getCount();
+                    oldCount = _resourceCountDao.getResourceCount(accountId, ResourceOwnerType.Account, type);
+                    // the resources are counted below, no delta can be logged for the account until the new count is stored
+                    _resourceCountDao.removeDeltas(accountRC.getId());
                 }
 
                 if (type == Resource.ResourceType.user_vm) {
@@ -1034,7 +1083,7 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {ResourceCountCheckInterval};
+        return new ConfigKey<?>[] {ResourceCountCheckInterval, ResourceCountCompactionInterval, ResourceLimitCacheTtl};
     }
 
     protected class ResourceCountCheckTask extends ManagedContextRunnable {
@@ -1068,4 +1117,31 @@ public class ResourceLimitManagerImpl extends ManagerBase implements ResourceLim
             }
         }
     }
+
+    /**
+     * Folds the resource count deltas logged by incrementResourceCount and
+     * decrementResourceCount into the resource_count rows, one management
+     * server at a time.
+     */
+    protected class ResourceCountCompactionTask extends ManagedContextRunnable {
+        @Override
+        protected void runInContext() {
+            GlobalLock lock = GlobalLock.getInternLock("resourcecount.compaction");
+            try {
+                if (lock.lock(0)) {
+                    try {
+                        while (_resourceCountDao.compactDeltas(DELTA_COMPACTION_BATCH_SIZE) == DELTA_COMPACTION_BATCH_SIZE) {
+                            // more deltas are waiting
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch (Exception e) {
+                s_logger.warn("Failed to compact the resource count deltas", e);
+            } finally {
+                lock.releaseRef();
+            }
+        }
+    }
 }
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,8 +44,9 @@ import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
 import org.apache.cloudstack.managed.context.ManagedContextRunnable;
 import org.apache.cloudstack.storage.datastore.db.PrimaryDataStoreDao;
 import org.apache.cloudstack.storage.datastore.db.StoragePoolVO;
-import org.apache.cloudstack.utils.graphite.GraphiteClient;
-import org.apache.cloudstack.utils.graphite.GraphiteException;
+import org.apache.cloudstack.utils.metrics.MetricPoint;
+import org.apache.cloudstack.utils.metrics.MetricsExporter;
+import org.apache.cloudstack.utils.metrics.MetricsFormat;
 import org.apache.cloudstack.utils.usage.UsageUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -112,6 +114,7 @@ import com.cloud.user.dao.UserStatisticsDao;
 import com.cloud.user.dao.VmDiskStatisticsDao;
 import com.cloud.utils.NumbersUtil;
 import com.cloud.utils.Pair;
+import com.cloud.utils.backoff.impl.ConstantTimeBackoff;
 import com.cloud.utils.component.ComponentMethodInterceptable;
 import com.cloud.utils.component.ManagerBase;
 import com.cloud.utils.concurrency.NamedThreadFactory;
@@ -140,7 +143,7 @@ import com.cloud.vm.dao.VMInstanceDao;
 public class StatsCollector extends ManagerBase implements ComponentMethodInterceptable, Configurable {
 
     public static enum ExternalStatsProtocol {
-        NONE("none"), GRAPHITE("graphite");
+        NONE("none"), GRAPHITE("graphite"), INFLUXDB("influxdb");
         String _type;
 
         ExternalStatsProtocol(String type) {
@@ -165,10 +168,22 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
             "Minimal Interval (in seconds) to report vm network statistics (for Shared networks). If vm.network.stats.interval is smaller than this, use this to report vm network statistics.", false);
     static final ConfigKey<Integer> StatsTimeout = new ConfigKey<Integer>("Advanced", Integer.class, "stats.timeout", "60000",
             "The timeout for stats call in milli seconds.", true, ConfigKey.Scope.Cluster);
+    static final ConfigKey<Integer> StatsMaxInFlight = new ConfigKey<Integer>("Advanced", Integer.class, "stats.max.inflight", "50",
+            "The maximum number of host and vm stats calls waiting for an answer at the same time.", false);
+    static final ConfigKey<Integer> StatsOutputQueueSize = new ConfigKey<Integer>("Advanced", Integer.class, "stats.output.queue.size", "10000",
+            "The maximum number of metric points waiting to be sent to stats.output.uri, points are dropped when it is reached.", false);
+
+    // metric points sent to the external stats collector in one batch
+    private static final int EXTERNAL_STATS_BATCH_SIZE = 500;
+    private static final int EXTERNAL_STATS_RETRIES = 3;
+
+    // stats not updated for this many sweeps are dropped
+    private static final int STALE_SWEEPS = 3;
 
     private static StatsCollector s_instance = null;
 
     private ScheduledExecutorService _executor = null;
+    private StatsFanOut _statsFanOut = null;
     @Inject
     private AgentManager _agentMgr;
     @Inject
@@ -230,8 +245,11 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     @Inject
     private ImageStoreDetailsUtil imageStoreDetailsUtil;
 
-    private ConcurrentHashMap<Long, HostStats> _hostStats = new ConcurrentHashMap<Long, HostStats>();
+    private final ConcurrentHashMap<Long, HostStats> _hostStats = new ConcurrentHashMap<Long, HostStats>();
     private final ConcurrentHashMap<Long, VmStats> _VmStats = new ConcurrentHashMap<Long, VmStats>();
+    // when the host stats and the vm stats of a host were last collected
+    private final ConcurrentHashMap<Long, Long> _hostStatsCollected = new ConcurrentHashMap<Long, Long>();
+    private final ConcurrentHashMap<Long, Long> _vmStatsCollected = new ConcurrentHashMap<Long, Long>();
     private final Map<String, VolumeStats> _volumeStats = new ConcurrentHashMap<String, VolumeStats>();
     private ConcurrentHashMap<Long, StorageStats> _storageStats = new ConcurrentHashMap<Long, StorageStats>();
     private ConcurrentHashMap<Long, StorageStats> _storagePoolStats = new ConcurrentHashMap<Long, StorageStats>();
@@ -250,6 +268,9 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     int externalStatsPort = -1;
     boolean externalStatsEnabled = false;
     ExternalStatsProtocol externalStatsType = ExternalStatsProtocol.NONE;
+    MetricsExporter.Transport externalStatsTransport = MetricsExporter.Transport.UDP;
+    private MetricsExporter _externalStatsExporter = null;
+    private long _externalStatsLost = 0;
 
     private ScheduledExecutorService _diskStatsUpdateExecutor;
     private int _usageAggregationRange = 1440;
@@ -279,8 +300,23 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
         return true;
     }
 
+    @Override
+    public boolean stop() {
+        if (_externalStatsExporter != null) {
+            _externalStatsExporter.stop(5000);
+        }
+        if (_statsFanOut != null) {
+            _statsFanOut.shutdown();
+            _statsFanOut = null;
+        }
+        return true;
+    }
+
     private void init(Map<String, String> configs) {
         _executor = Executors.newScheduledThreadPool(6, new NamedThreadFactory("StatsCollector"));
+        if (_statsFanOut == null) {
+            _statsFanOut = new StatsFanOut("StatsCollectorFanOut", Math.max(1, StatsMaxInFlight.value()));
+        }
 
         hostStatsInterval = NumbersUtil.parseLong(configs.get("host.stats.interval"), 60000L);
         hostAndVmStatsInterval = NumbersUtil.parseLong(configs.get("vm.stats.interval"), 60000L);
@@ -288,7 +324,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
         volumeStatsInterval = NumbersUtil.parseLong(configs.get("volume.stats.interval"), 600000L);
         autoScaleStatsInterval = NumbersUtil.parseLong(configs.get("autoscale.stats.interval"), 60000L);
 
-        /* URI to send statistics to. Currently only Graphite is supported */
+        /* URI to send statistics to, e.g. graphite://host:2003/prefix or influxdb://host:8089/prefix?transport=tcp */
         String externalStatsUri = configs.get("stats.output.uri");
         if (externalStatsUri != null && !externalStatsUri.equals("")) {
             try {
@@ -307,6 +343,10 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
 
                 externalStatsPort = uri.getPort();
 
+                if (uri.getQuery() != null && uri.getQuery().toLowerCase().contains("transport=tcp")) {
+                    externalStatsTransport = MetricsExporter.Transport.TCP;
+                }
+
                 if (!StringUtils.isEmpty(uri.getPath())) {
                     externalStatsPrefix = uri.getPath().substring(1);
                 }
@@ -324,6 +364,10 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
             }
         }
 
+        if (externalStatsEnabled && externalStatsType != ExternalStatsProtocol.NONE) {
+            startExternalStatsExporter();
+        }
+
         if (hostStatsInterval > 0) {
             _executor.scheduleWithFixedDelay(new HostCollector(), 15000L, hostStatsInterval, TimeUnit.MILLISECONDS);
         }
@@ -432,17 +476,25 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                 sc.addAnd("type", SearchCriteria.Op.NEQ, Host.Type.L2Networking.toString());
                 sc.addAnd("type", SearchCriteria.Op.NEQ, Host.Type.BaremetalDhcp.toString());
                 sc.addAnd("type", SearchCriteria.Op.NEQ, Host.Type.BaremetalPxe.toString());
-                ConcurrentHashMap<Long, HostStats> hostStats = new ConcurrentHashMap<Long, HostStats>();
                 List<HostVO> hosts = _hostDao.search(sc, null);
-                for (HostVO host : hosts) {
-                    HostStatsEntry stats = (HostStatsEntry)_resourceMgr.getHostStatistics(host.getId());
-                    if (stats != null) {
-                        hostStats.put(host.getId(), stats);
-                    } else {
-                        s_logger.warn("Received invalid host stats for host: " + host.getId());
+                StatsFanOut.Sweep sweep = _statsFanOut.collect("host stats", hosts, new StatsFanOut.Call<HostVO>() {
+                    @Override
+                    public boolean collect(HostVO host) {
+                        HostStatsEntry stats = (HostStatsEntry)_resourceMgr.getHostStatistics(host.getId(), StatsTimeout.valueIn(host.getClusterId()));
+                        if (stats == null) {
+                            s_logger.warn("Received invalid host stats for host: " + host.getId());
+                            return false;
+                        }
+                        _hostStats.put(host.getId(), stats);
+                        _hostStatsCollected.put(host.getId(), System.currentTimeMillis());
+                        return true;
                     }
+                });
+                retainCollected(hosts, _hostStatsCollected);
+                for (Long hostId : reportSweep("Host stats", sweep, _hostStatsCollected, hostStatsInterval)) {
+                    _hostStats.remove(hostId);
                 }
-                _hostStats = hostStats;
+                _hostStats.keySet().retainAll(_hostStatsCollected.keySet());
                 // Get a subset of hosts with GPU support from the list of "hosts"
                 List<HostVO> gpuEnabledHosts = new ArrayList<HostVO>();
                 if (hostIds != null) {
@@ -485,108 +537,174 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                 sc.addAnd("type", SearchCriteria.Op.NEQ, Host.Type.SecondaryStorageVM.toString());
                 List<HostVO> hosts = _hostDao.search(sc, null);
 
-                /* HashMap for metrics to be send to Graphite */
-                HashMap metrics = new HashMap<String, Integer>();
-
-                for (HostVO host : hosts) {
-                    List<UserVmVO> vms = _userVmDao.listRunningByHostId(host.getId());
-                    List<Long> vmIds = new ArrayList<Long>();
-
-                    for (UserVmVO vm : vms) {
-                        vmIds.add(vm.getId());
+                StatsFanOut.Sweep sweep = _statsFanOut.collect("vm stats", hosts, new StatsFanOut.Call<HostVO>() {
+                    @Override
+                    public boolean collect(HostVO host) {
+                        return collectVmStats(host);
                     }
+                });
+                retainCollected(hosts, _vmStatsCollected);
+                reportSweep("VM stats", sweep, _vmStatsCollected, hostAndVmStatsInterval);
+                reportExternalStats();
+            } catch (Throwable t) {
+                s_logger.error("Error trying to retrieve VM stats", t);
+            }
+        }
+    }
 
-                    try {
-                        HashMap<Long, VmStatsEntry> vmStatsById = _userVmMgr.getVirtualMachineStatistics(host.getId(), host.getName(), vmIds);
-
-                        if (vmStatsById != null) {
-                            VmStatsEntry statsInMemory = null;
-
-                            Set<Long> vmIdSet = vmStatsById.keySet();
-                            for (Long vmId : vmIdSet) {
-                                VmStatsEntry statsForCurrentIteration = vmStatsById.get(vmId);
-                                statsInMemory = (VmStatsEntry)_VmStats.get(vmId);
-
-                                if (statsInMemory == null) {
-                                    //no stats exist for this vm, directly persist
-                                    _VmStats.put(vmId, statsForCurrentIteration);
-                                } else {
-                                    //update each field
-                                    statsInMemory.setCPUUtilization(statsForCurrentIteration.getCPUUtilization());
-                                    statsInMemory.setNumCPUs(statsForCurrentIteration.getNumCPUs());
-                                    statsInMemory.setNetworkReadKBs(statsInMemory.getNetworkReadKBs() + statsForCurrentIteration.getNetworkReadKBs());
-                                    statsInMemory.setNetworkWriteKBs(statsInMemory.getNetworkWriteKBs() + statsForCurrentIteration.getNetworkWriteKBs());
-                                    statsInMemory.setDiskWriteKBs(statsInMemory.getDiskWriteKBs() + statsForCurrentIteration.getDiskWriteKBs());
-                                    statsInMemory.setDiskReadIOs(statsInMemory.getDiskReadIOs() + statsForCurrentIteration.getDiskReadIOs());
-                                    statsInMemory.setDiskWriteIOs(statsInMemory.getDiskWriteIOs() + statsForCurrentIteration.getDiskWriteIOs());
-                                    statsInMemory.setDiskReadKBs(statsInMemory.getDiskReadKBs() + statsForCurrentIteration.getDiskReadKBs());
-                                    statsInMemory.setMemoryKBs(statsForCurrentIteration.getMemoryKBs());
-                                    statsInMemory.setIntFreeMemoryKBs(statsForCurrentIteration.getIntFreeMemoryKBs());
-                                    statsInMemory.setTargetMemoryKBs(statsForCurrentIteration.getTargetMemoryKBs());
-
-                                    _VmStats.put(vmId, statsInMemory);
-                                }
-
-                                /**
-                                 * Add statistics to HashMap only when they should be send to a external stats collector
-                                 * Performance wise it seems best to only append to the HashMap when needed
-                                 */
-                                if (externalStatsEnabled) {
-                                    VMInstanceVO vmVO = _vmInstance.findById(vmId);
-                                    String vmName = vmVO.getUuid();
-
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".cpu.num", statsForCurrentIteration.getNumCPUs());
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".cpu.utilization", statsForCurrentIteration.getCPUUtilization());
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".network.read_kbs", statsForCurrentIteration.getNetworkReadKBs());
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".network.write_kbs", statsForCurrentIteration.getNetworkWriteKBs());
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".disk.write_kbs", statsForCurrentIteration.getDiskWriteKBs());
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".disk.read_kbs", statsForCurrentIteration.getDiskReadKBs());
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".disk.write_iops", statsForCurrentIteration.getDiskWriteIOs());
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".disk.read_iops", statsForCurrentIteration.getDiskReadIOs());
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".memory.total_kbs", statsForCurrentIteration.getMemoryKBs());
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".memory.internalfree_kbs", statsForCurrentIteration.getIntFreeMemoryKBs());
-                                    metrics.put(externalStatsPrefix + "cloudstack.stats.instances." + vmName + ".memory.target_kbs", statsForCurrentIteration.getTargetMemoryKBs());
+    /**
+     * Collects the stats of the vms running on the host and adds them to the
+     * stats kept of those vms.
+     */
+    private boolean collectVmStats(HostVO host) {
+        List<UserVmVO> vms = _userVmDao.listRunningByHostId(host.getId());
+        List<Long> vmIds = new ArrayList<Long>();
 
-                                }
+        for (UserVmVO vm : vms) {
+            vmIds.add(vm.getId());
+        }
 
-                            }
+        HashMap<Long, VmStatsEntry> vmStatsById;
+        try {
+            vmStatsById = _userVmMgr.getVirtualMachineStatistics(host.getId(), host.getName(), vmIds, StatsTimeout.valueIn(host.getClusterId()));
+        } catch (Exception e) {
+            s_logger.debug("Failed to get VM stats for host with ID: " + host.getId());
+            return false;
+        }
+        if (vmStatsById == null) {
+            return false;
+        }
 
-                            /**
-                             * Send the metrics to a external stats collector
-                             * We send it on a per-host basis to prevent that we flood the host
-                             * Currently only Graphite is supported
-                             */
-                            if (!metrics.isEmpty()) {
-                                if (externalStatsType != null && externalStatsType == ExternalStatsProtocol.GRAPHITE) {
+        final long now = System.currentTimeMillis();
+        for (Map.Entry<Long, VmStatsEntry> entry : vmStatsById.entrySet()) {
+            final Long vmId = entry.getKey();
+            final VmStatsEntry statsForCurrentIteration = entry.getValue();
+            _VmStats.compute(vmId, (id, stats) -> {
+                if (stats == null) {
+                    //no stats exist for this vm, directly persist
+                    return statsForCurrentIteration;
+                }
+                //update each field
+                VmStatsEntry statsInMemory = (VmStatsEntry)stats;
+                statsInMemory.setCPUUtilization(statsForCurrentIteration.getCPUUtilization());
+                statsInMemory.setNumCPUs(statsForCurrentIteration.getNumCPUs());
+                statsInMemory.setNetworkReadKBs(statsInMemory.getNetworkReadKBs() + statsForCurrentIteration.getNetworkReadKBs());
+                statsInMemory.setNetworkWriteKBs(statsInMemory.getNetworkWriteKBs() + statsForCurrentIteration.getNetworkWriteKBs());
+                statsInMemory.setDiskWriteKBs(statsInMemory.getDiskWriteKBs() + statsForCurrentIteration.getDiskWriteKBs());
+                statsInMemory.setDiskReadIOs(statsInMemory.getDiskReadIOs() + statsForCurrentIteration.getDiskReadIOs());
+                statsInMemory.setDiskWriteIOs(statsInMemory.getDiskWriteIOs() + statsForCurrentIteration.getDiskWriteIOs());
+                statsInMemory.setDiskReadKBs(statsInMemory.getDiskReadKBs() + statsForCurrentIteration.getDiskReadKBs());
+                statsInMemory.setMemoryKBs(statsForCurrentIteration.getMemoryKBs());
+                statsInMemory.setIntFreeMemoryKBs(statsForCurrentIteration.getIntFreeMemoryKBs());
+                statsInMemory.setTargetMemoryKBs(statsForCurrentIteration.getTargetMemoryKBs());
+                return statsInMemory;
+            });
+
+            /**
+             * Queue the statistics only when they should be send to a external stats collector,
+             * they are sent from the exporter's own thread so a slow collector does not hold up this one
+             */
+            if (_externalStatsExporter != null) {
+                VMInstanceVO vmVO = _vmInstance.findById(vmId);
+                String vmName = vmVO.getUuid();
+
+                _externalStatsExporter.offer(new MetricPoint("cloudstack.stats.instances", now).tag("instance", vmName)
+                        .field("cpu.num", statsForCurrentIteration.getNumCPUs())
+                        .field("cpu.utilization", statsForCurrentIteration.getCPUUtilization())
+                        .field("network.read_kbs", statsForCurrentIteration.getNetworkReadKBs())
+                        .field("network.write_kbs", statsForCurrentIteration.getNetworkWriteKBs())
+                        .field("disk.write_kbs", statsForCurrentIteration.getDiskWriteKBs())
+                        .field("disk.read_kbs", statsForCurrentIteration.getDiskReadKBs())
+                        .field("disk.write_iops", statsForCurrentIteration.getDiskWriteIOs())
+                        .field("disk.read_iops", statsForCurrentIteration.getDiskReadIOs())
+                        .field("memory.total_kbs", statsForCurrentIteration.getMemoryKBs())
+                        .field("memory.internalfree_kbs", statsForCurrentIteration.getIntFreeMemoryKBs())
+                        .field("memory.target_kbs", statsForCurrentIteration.getTargetMemoryKBs()));
+            }
+        }
 
-                                    if (externalStatsPort == -1) {
-                                        externalStatsPort = 2003;
-                                    }
+        _vmStatsCollected.put(host.getId(), System.currentTimeMillis());
+        return true;
+    }
 
-                                    s_logger.debug("Sending VmStats of host " + host.getId() + " to Graphite host " + externalStatsHost + ":" + externalStatsPort);
+    private void startExternalStatsExporter() {
+        if (externalStatsPort == -1) {
+            externalStatsPort = externalStatsType == ExternalStatsProtocol.INFLUXDB ? 8089 : 2003;
+        }
+        if (_externalStatsExporter != null) {
+            _externalStatsExporter.stop(0);
+        }
 
-                                    try {
-                                        GraphiteClient g = new GraphiteClient(externalStatsHost, externalStatsPort);
-                                        g.sendMetrics(metrics);
-                                    } catch (GraphiteException e) {
-                                        s_logger.debug("Failed sending VmStats to Graphite host " + externalStatsHost + ":" + externalStatsPort + ": " + e.getMessage());
-                                    }
+        final ConstantTimeBackoff backoff = new ConstantTimeBackoff();
+        backoff.configure("StatsCollectorBackoff", new HashMap<String, Object>());
+        _externalStatsExporter = new MetricsExporter(MetricsFormat.valueOf(externalStatsType.name()), externalStatsTransport, externalStatsHost, externalStatsPort,
+                externalStatsPrefix, Math.max(1, StatsOutputQueueSize.value()), EXTERNAL_STATS_BATCH_SIZE, backoff, EXTERNAL_STATS_RETRIES);
+        _externalStatsExporter.start();
+        s_logger.info("Sending stats to " + externalStatsType + " host " + externalStatsHost + ":" + externalStatsPort + " over " + externalStatsTransport);
+    }
 
-                                    metrics.clear();
-                                }
-                            }
-                        }
+    /**
+     * Sends the counters of the exporter along with the stats, and warns
+     * when points were lost since the last sweep.
+     */
+    private void reportExternalStats() {
+        if (_externalStatsExporter == null) {
+            return;
+        }
+        final long dropped = _externalStatsExporter.getDropped();
+        final long failed = _externalStatsExporter.getFailed();
+        if (dropped + failed > _externalStatsLost) {
+            s_logger.warn("Lost " + (dropped + failed - _externalStatsLost) + " metric points for " + externalStatsType + " host " + externalStatsHost + ":" + externalStatsPort
+                    + ", " + dropped + " dropped as the queue was full and " + failed + " failed to send in total");
+        }
+        _externalStatsLost = dropped + failed;
+        _externalStatsExporter.offer(new MetricPoint("cloudstack.stats.export").tag("msid", String.valueOf(mgmtSrvrId))
+                .field("sent", _externalStatsExporter.getSent())
+                .field("dropped", dropped)
+                .field("failed", failed)
+                .field("queued", _externalStatsExporter.getQueued()));
+    }
 
-                    } catch (Exception e) {
-                        s_logger.debug("Failed to get VM stats for host with ID: " + host.getId());
-                        continue;
-                    }
-                }
+    /**
+     * Forgets when the stats of hosts that are no longer swept were collected.
+     */
+    private void retainCollected(List<HostVO> hosts, ConcurrentHashMap<Long, Long> collected) {
+        Set<Long> hostIds = new HashSet<Long>();
+        for (HostVO host : hosts) {
+            hostIds.add(host.getId());
+        }
+        collected.keySet().retainAll(hostIds);
+    }
 
-            } catch (Throwable t) {
-                s_logger.error("Error trying to retrieve VM stats", t);
+    /**
+     * Logs how long the sweep took and how stale the stats of the hosts are.
+     *
+     * @return the hosts whose stats were not collected for STALE_SWEEPS sweeps.
+     */
+    private List<Long> reportSweep(String what, StatsFanOut.Sweep sweep, ConcurrentHashMap<Long, Long> collected, long interval) {
+        final long now = System.currentTimeMillis();
+        final List<Long> stale = new ArrayList<Long>();
+        Long stalestHost = null;
+        long stalest = 0;
+        for (Map.Entry<Long, Long> entry : collected.entrySet()) {
+            final long age = now - entry.getValue();
+            if (age > stalest) {
+                stalest = age;
+                stalestHost = entry.getKey();
             }
+            if (age > STALE_SWEEPS * interval) {
+                stale.add(entry.getKey());
+            }
+        }
+        final String report = what + " sweep " + sweep + ", stalest host " + stalestHost + " collected " + stalest + "ms ago";
+        if (!stale.isEmpty()) {
+            s_logger.warn(report + ", no " + what.toLowerCase() + " for " + STALE_SWEEPS + " sweeps from hosts " + stale);
+        } else if (sweep.getDuration() > interval) {
+            s_logger.warn(report + ", longer than the interval of " + interval + "ms");
+        } else if (s_logger.isDebugEnabled()) {
+            s_logger.debug(report);
         }
+        return stale;
     }
 
     public VmStats getVmStats(long id) {
@@ -1334,6 +1452,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] { vmDiskStatsInterval, vmDiskStatsIntervalMin, vmNetworkStatsInterval, vmNetworkStatsIntervalMin, StatsTimeout };
+        return new ConfigKey<?>[] { vmDiskStatsInterval, vmDiskStatsIntervalMin, vmNetworkStatsInterval, vmNetworkStatsIntervalMin, StatsTimeout, StatsMaxInFlight,
+                StatsOutputQueueSize };
     }
 }
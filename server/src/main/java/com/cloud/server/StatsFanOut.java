@@ -0,0 +1,126 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.server;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
+import org.apache.log4j.Logger;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
+
+/**
+ * StatsFanOut sends the stats commands of a sweep to many hosts at once, so
+ * that a slow agent only holds up its own answer.  The pool it runs the
+ * calls on is the window of calls in flight, shared by all the sweeps; how
+ * long a single call may take is up to the command's wait.
+ */
+public class StatsFanOut {
+    private static final Logger s_logger = Logger.getLogger(StatsFanOut.class);
+
+    public interface Call<T> {
+        /**
+         * Collects the stats of one target and merges them, returns false
+         * if it got none.
+         */
+        boolean collect(T target) throws Exception;
+    }
+
+    public static class Sweep {
+        final int targets;
+        final AtomicInteger collected = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        long duration;
+
+        Sweep(int targets) {
+            this.targets = targets;
+        }
+
+        public int getTargets() {
+            return targets;
+        }
+
+        public int getCollected() {
+            return collected.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * @return time in milliseconds from the start of the sweep until the
+         *         last call returned.
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return "collected " + collected.get() + " of " + targets + ", " + failed.get() + " failed, in " + duration + "ms";
+        }
+    }
+
+    private final ExecutorService _executor;
+
+    public StatsFanOut(String name, int window) {
+        _executor = new ThreadPoolExecutor(window, window, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(name));
+        ((ThreadPoolExecutor)_executor).allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the call for every target and waits for all of them to return.
+     */
+    public <T> Sweep collect(final String what, Collection<T> targets, final Call<T> call) throws InterruptedException {
+        final Sweep sweep = new Sweep(targets.size());
+        final long start = System.currentTimeMillis();
+        final CountDownLatch done = new CountDownLatch(targets.size());
+        for (final T target : targets) {
+            _executor.execute(new ManagedContextRunnable() {
+                @Override
+                protected void runInContext() {
+                    try {
+                        if (call.collect(target)) {
+                            sweep.collected.incrementAndGet();
+                        } else {
+                            sweep.failed.incrementAndGet();
+                        }
+                    } catch (Throwable t) {
+                        sweep.failed.incrementAndGet();
+                        s_logger.debug("Failed to collect " + what + " of " + target + ": " + t.getMessage());
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+        sweep.duration = System.currentTimeMillis() - start;
+        return sweep;
+    }
+
+    public void shutdown() {
+        _executor.shutdownNow();
+    }
+}
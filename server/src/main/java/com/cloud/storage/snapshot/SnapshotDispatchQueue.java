@@ -0,0 +1,199 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.storage.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cloud.storage.SnapshotScheduleVO;
+
+/**
+ * SnapshotDispatchQueue decides which of the due recurring snapshots a poll
+ * of the snapshot scheduler starts.
+ *
+ * Every schedule is started at a fixed offset within the dispatch window
+ * after its scheduled time, derived from its volume and policy, so that the
+ * snapshots of policies set to the same time are spread over the window
+ * instead of all starting in the same poll.  Of the snapshots whose time has
+ * come, the accounts take turns, so that an account with many volumes does
+ * not hold back the others, and no primary storage pool or zone is given more
+ * snapshots than its limit allows.  Whatever is held back stays due and is
+ * looked at again by the next poll.
+ */
+public class SnapshotDispatchQueue implements SnapshotDispatchQueueMBean {
+
+    public static class Entry {
+        private final SnapshotScheduleVO _schedule;
+        private final long _poolId;
+        private final long _zoneId;
+        private final long _accountId;
+
+        public Entry(SnapshotScheduleVO schedule, long poolId, long zoneId, long accountId) {
+            _schedule = schedule;
+            _poolId = poolId;
+            _zoneId = zoneId;
+            _accountId = accountId;
+        }
+
+        public SnapshotScheduleVO getSchedule() {
+            return _schedule;
+        }
+
+        public long getPoolId() {
+            return _poolId;
+        }
+
+        public long getZoneId() {
+            return _zoneId;
+        }
+
+        public long getAccountId() {
+            return _accountId;
+        }
+    }
+
+    private static final Comparator<Entry> SCHEDULED_FIRST = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            int result = e1.getSchedule().getScheduledTimestamp().compareTo(e2.getSchedule().getScheduledTimestamp());
+            if (result == 0) {
+                result = Long.compare(e1.getSchedule().getId(), e2.getSchedule().getId());
+            }
+            return result;
+        }
+    };
+
+    // the account the next poll starts with, so that every account gets to go first in turn
+    private long _nextAccountId;
+
+    private volatile int _queueDepth;
+    private volatile long _startLagSeconds;
+    private final AtomicLong _dispatched = new AtomicLong();
+    private final AtomicLong _deferred = new AtomicLong();
+
+    /**
+     * @return the offset within the window at which the snapshot of the
+     *         schedule is started, the same for every run of the schedule.
+     */
+    static long getOffsetSeconds(SnapshotScheduleVO schedule, int windowSeconds) {
+        if (windowSeconds <= 0) {
+            return 0;
+        }
+        // mix the bits, volume ids are handed out in sequence
+        long hash = (schedule.getVolumeId() * 31 + schedule.getPolicyId()) * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return Math.floorMod(hash, (long)windowSeconds);
+    }
+
+    /**
+     * @param due the due schedules, with the volumes they are for
+     * @param runningPerPool the number of snapshots running per primary storage pool
+     * @param maxPerPool the maximum number of snapshots running on a pool, 0 for no limit
+     * @param runningPerZone the number of snapshots running per zone
+     * @param maxPerZone the maximum number of snapshots running in a zone, zones without a limit are left out
+     * @return the schedules to start now, in the order to start them.
+     */
+    public synchronized List<Entry> select(List<Entry> due, Date now, int windowSeconds, Map<Long, Integer> runningPerPool, int maxPerPool,
+            Map<Long, Integer> runningPerZone, Map<Long, Integer> maxPerZone) {
+        // account id -> the ready schedules of the account, those scheduled first in front
+        final TreeMap<Long, LinkedList<Entry>> ready = new TreeMap<Long, LinkedList<Entry>>();
+        for (Entry entry : due) {
+            final long startTime = entry.getSchedule().getScheduledTimestamp().getTime() + getOffsetSeconds(entry.getSchedule(), windowSeconds) * 1000L;
+            if (startTime > now.getTime()) {
+                continue;
+            }
+            LinkedList<Entry> entries = ready.get(entry.getAccountId());
+            if (entries == null) {
+                entries = new LinkedList<Entry>();
+                ready.put(entry.getAccountId(), entries);
+            }
+            entries.add(entry);
+        }
+
+        final List<Long> accounts = new ArrayList<Long>(ready.tailMap(_nextAccountId).keySet());
+        accounts.addAll(ready.headMap(_nextAccountId).keySet());
+        for (LinkedList<Entry> entries : ready.values()) {
+            Collections.sort(entries, SCHEDULED_FIRST);
+        }
+
+        final Map<Long, Integer> poolCounts = new HashMap<Long, Integer>(runningPerPool);
+        final Map<Long, Integer> zoneCounts = new HashMap<Long, Integer>(runningPerZone);
+        final List<Entry> selected = new ArrayList<Entry>();
+        long startLag = 0;
+        boolean more = true;
+        while (more) {
+            more = false;
+            for (Long accountId : accounts) {
+                final Entry entry = ready.get(accountId).poll();
+                if (entry == null) {
+                    continue;
+                }
+                more = true;
+                final int poolCount = getCount(poolCounts, entry.getPoolId());
+                final int zoneCount = getCount(zoneCounts, entry.getZoneId());
+                final Integer zoneLimit = maxPerZone.get(entry.getZoneId());
+                if ((maxPerPool > 0 && poolCount >= maxPerPool) || (zoneLimit != null && zoneCount >= zoneLimit)) {
+                    _deferred.incrementAndGet();
+                    continue;
+                }
+                poolCounts.put(entry.getPoolId(), poolCount + 1);
+                zoneCounts.put(entry.getZoneId(), zoneCount + 1);
+                selected.add(entry);
+                _nextAccountId = accountId + 1;
+                startLag = Math.max(startLag, (now.getTime() - entry.getSchedule().getScheduledTimestamp().getTime()) / 1000);
+            }
+        }
+
+        _queueDepth = due.size() - selected.size();
+        _startLagSeconds = startLag;
+        _dispatched.addAndGet(selected.size());
+        return selected;
+    }
+
+    private static int getCount(Map<Long, Integer> counts, long id) {
+        final Integer count = counts.get(id);
+        return count == null ? 0 : count;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return _queueDepth;
+    }
+
+    @Override
+    public long getStartLagSeconds() {
+        return _startLagSeconds;
+    }
+
+    @Override
+    public long getDispatched() {
+        return _dispatched.get();
+    }
+
+    @Override
+    public long getDeferred() {
+        return _deferred.get();
+    }
+}
@@ -16,6 +16,7 @@
 // under the License.
 package com.cloud.storage.snapshot;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -32,6 +33,11 @@ import org.springframework.stereotype.Component;
 
 import org.apache.cloudstack.api.ApiConstants;
 import org.apache.cloudstack.api.command.user.snapshot.CreateSnapshotCmd;
+import org.apache.cloudstack.engine.subsystem.api.storage.DataStore;
+import org.apache.cloudstack.engine.subsystem.api.storage.DataStoreManager;
+import org.apache.cloudstack.engine.subsystem.api.storage.ZoneScope;
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.apache.cloudstack.framework.config.Configurable;
 import org.apache.cloudstack.framework.config.dao.ConfigurationDao;
 import org.apache.cloudstack.framework.jobs.AsyncJobDispatcher;
 import org.apache.cloudstack.framework.jobs.AsyncJobManager;
@@ -65,14 +71,23 @@ import com.cloud.utils.db.DB;
 import com.cloud.utils.db.GlobalLock;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.TransactionLegacy;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.vm.snapshot.VMSnapshotManager;
 import com.cloud.vm.snapshot.VMSnapshotVO;
 import com.cloud.vm.snapshot.dao.VMSnapshotDao;
 
 @Component
-public class SnapshotSchedulerImpl extends ManagerBase implements SnapshotScheduler {
+public class SnapshotSchedulerImpl extends ManagerBase implements SnapshotScheduler, Configurable {
     private static final Logger s_logger = Logger.getLogger(SnapshotSchedulerImpl.class);
 
+    static final ConfigKey<Integer> SnapshotDispatchWindow = new ConfigKey<Integer>("Snapshots", Integer.class, "snapshot.dispatch.window", "0",
+            "The time in seconds over which recurring snapshots due at the same time are spread, every volume starting at a fixed offset within it. 0 starts them all when they are due.",
+            true);
+    static final ConfigKey<Integer> SnapshotDispatchMaxPerPrimaryStorage = new ConfigKey<Integer>("Snapshots", Integer.class, "snapshot.dispatch.max.per.primary.storage", "0",
+            "The maximum number of recurring snapshots running at the same time on a primary storage pool, the others wait for the next snapshot poll. 0 for no limit.", true);
+    static final ConfigKey<Integer> SnapshotDispatchMaxPerImageStore = new ConfigKey<Integer>("Snapshots", Integer.class, "snapshot.dispatch.max.per.image.store", "0",
+            "The maximum number of recurring snapshots running at the same time per image store of a zone, the others wait for the next snapshot poll. 0 for no limit.", true);
+
     @Inject
     protected AsyncJobDao _asyncJobDao;
     @Inject
@@ -97,6 +112,8 @@ public class SnapshotSchedulerImpl extends ManagerBase implements SnapshotSchedu
     protected VMSnapshotDao _vmSnapshotDao;
     @Inject
     protected VMSnapshotManager _vmSnaphostManager;
+    @Inject
+    protected DataStoreManager _dataStoreMgr;
 
     protected AsyncJobDispatcher _asyncDispatcher;
 
@@ -105,6 +122,7 @@ public class SnapshotSchedulerImpl extends ManagerBase implements SnapshotSchedu
     private Timer _testClockTimer;
     private Date _currentTimestamp;
     private TestClock _testTimerTask;
+    private final SnapshotDispatchQueue _dispatchQueue = new SnapshotDispatchQueue();
 
     public AsyncJobDispatcher getAsyncJobDispatcher() {
         return _asyncDispatcher;
@@ -265,25 +283,38 @@ public class SnapshotSchedulerImpl extends ManagerBase implements SnapshotSchedu
         final List<SnapshotScheduleVO> snapshotsToBeExecuted = _snapshotScheduleDao.getSchedulesToExecute(_currentTimestamp);
         s_logger.debug("Got " + snapshotsToBeExecuted.size() + " snapshots to be executed at " + displayTime);
 
+        final List<SnapshotDispatchQueue.Entry> dueSnapshots = new ArrayList<SnapshotDispatchQueue.Entry>();
         for (final SnapshotScheduleVO snapshotToBeExecuted : snapshotsToBeExecuted) {
+            final VolumeVO volume = _volsDao.findById(snapshotToBeExecuted.getVolumeId());
+            if (volume == null || volume.getPoolId() == null) {
+                // this volume is not attached
+                continue;
+            }
+            Account volAcct = _acctDao.findById(volume.getAccountId());
+            if (volAcct == null || volAcct.getState() == Account.State.disabled) {
+                // this account has been removed, so don't trigger recurring snapshot
+                if (s_logger.isDebugEnabled()) {
+                    s_logger.debug("Skip snapshot for volume " + volume.getUuid() + " since its account has been removed or disabled");
+                }
+                continue;
+            }
+            dueSnapshots.add(new SnapshotDispatchQueue.Entry(snapshotToBeExecuted, volume.getPoolId(), volume.getDataCenterId(), volume.getAccountId()));
+        }
+
+        final List<SnapshotDispatchQueue.Entry> snapshotsToStart = selectSnapshotsToStart(dueSnapshots);
+        if (snapshotsToStart.size() < dueSnapshots.size()) {
+            s_logger.debug("Starting " + snapshotsToStart.size() + " of the " + dueSnapshots.size() + " due snapshots at " + displayTime
+                    + ", the others are spread over the dispatch window or wait for a snapshot to finish");
+        }
+
+        for (final SnapshotDispatchQueue.Entry snapshotToStart : snapshotsToStart) {
+            final SnapshotScheduleVO snapshotToBeExecuted = snapshotToStart.getSchedule();
             SnapshotScheduleVO tmpSnapshotScheduleVO = null;
             final long snapshotScheId = snapshotToBeExecuted.getId();
             final long policyId = snapshotToBeExecuted.getPolicyId();
             final long volumeId = snapshotToBeExecuted.getVolumeId();
             try {
                 final VolumeVO volume = _volsDao.findById(volumeId);
-                if (volume.getPoolId() == null) {
-                    // this volume is not attached
-                    continue;
-                }
-                Account volAcct = _acctDao.findById(volume.getAccountId());
-                if (volAcct == null || volAcct.getState() == Account.State.disabled) {
-                    // this account has been removed, so don't trigger recurring snapshot
-                    if (s_logger.isDebugEnabled()) {
-                        s_logger.debug("Skip snapshot for volume " + volume.getUuid() + " since its account has been removed or disabled");
-                    }
-                    continue;
-                }
                 if (_snapshotPolicyDao.findById(policyId) == null) {
                     _snapshotScheduleDao.remove(snapshotToBeExecuted.getId());
                 }
@@ -332,6 +363,48 @@ public class SnapshotSchedulerImpl extends ManagerBase implements SnapshotSchedu
         }
     }
 
+    /**
+     * Spreads the due snapshots over the dispatch window and holds back those
+     * that would exceed the concurrency limits of their primary storage pool
+     * or of the image stores of their zone.
+     */
+    protected List<SnapshotDispatchQueue.Entry> selectSnapshotsToStart(final List<SnapshotDispatchQueue.Entry> dueSnapshots) {
+        final int maxPerPool = SnapshotDispatchMaxPerPrimaryStorage.value();
+        final int maxPerImageStore = SnapshotDispatchMaxPerImageStore.value();
+
+        final Map<Long, Integer> runningPerPool = new HashMap<Long, Integer>();
+        final Map<Long, Integer> runningPerZone = new HashMap<Long, Integer>();
+        final Map<Long, Integer> maxPerZone = new HashMap<Long, Integer>();
+        if (maxPerPool > 0 || maxPerImageStore > 0) {
+            // the snapshots still running were left with their job by checkStatusOfCurrentlyExecutingSnapshots
+            final SearchCriteria<SnapshotScheduleVO> sc = _snapshotScheduleDao.createSearchCriteria();
+            sc.addAnd("asyncJobId", SearchCriteria.Op.NNULL);
+            for (final SnapshotScheduleVO runningSchedule : _snapshotScheduleDao.search(sc, null)) {
+                final VolumeVO volume = _volsDao.findById(runningSchedule.getVolumeId());
+                if (volume != null && volume.getPoolId() != null) {
+                    increment(runningPerPool, volume.getPoolId());
+                    increment(runningPerZone, volume.getDataCenterId());
+                }
+            }
+        }
+        if (maxPerImageStore > 0) {
+            for (final SnapshotDispatchQueue.Entry dueSnapshot : dueSnapshots) {
+                final long zoneId = dueSnapshot.getZoneId();
+                if (!maxPerZone.containsKey(zoneId)) {
+                    final List<DataStore> imageStores = _dataStoreMgr.getImageStoresByScope(new ZoneScope(zoneId));
+                    maxPerZone.put(zoneId, maxPerImageStore * Math.max(1, imageStores == null ? 0 : imageStores.size()));
+                }
+            }
+        }
+
+        return _dispatchQueue.select(dueSnapshots, _currentTimestamp, SnapshotDispatchWindow.value(), runningPerPool, maxPerPool, runningPerZone, maxPerZone);
+    }
+
+    private static void increment(final Map<Long, Integer> counts, final long id) {
+        final Integer count = counts.get(id);
+        counts.put(id, count == null ? 1 : count + 1);
+    }
+
     private Date scheduleNextSnapshotJob(final SnapshotScheduleVO snapshotSchedule) {
         if (snapshotSchedule == null) {
             return null;
@@ -453,6 +526,12 @@ public class SnapshotSchedulerImpl extends ManagerBase implements SnapshotSchedu
                 scheduleNextSnapshotJob(policyInstance);
             }
         }
+        try {
+            JmxUtil.registerMBean("SnapshotScheduler", "DispatchQueue", _dispatchQueue);
+        } catch (final Exception e) {
+            s_logger.warn("Unable to register the snapshot dispatch queue to JMX monitoring due to " + e.toString());
+        }
+
         if (_testTimerTask != null) {
             _testClockTimer = new Timer("TestClock");
             // Run the test clock every 60s. Because every tick is counted as 1 minute.
@@ -481,4 +560,14 @@ public class SnapshotSchedulerImpl extends ManagerBase implements SnapshotSchedu
     public boolean stop() {
         return true;
     }
+
+    @Override
+    public String getConfigComponentName() {
+        return SnapshotScheduler.class.getSimpleName();
+    }
+
+    @Override
+    public ConfigKey<?>[] getConfigKeys() {
+        return new ConfigKey<?>[] {SnapshotDispatchWindow, SnapshotDispatchMaxPerPrimaryStorage, SnapshotDispatchMaxPerImageStore};
+    }
 }
@@ -1844,6 +1844,11 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
 
     @Override
     public HashMap<Long, VmStatsEntry> getVirtualMachineStatistics(long hostId, String hostName, List<Long> vmIds) throws CloudRuntimeException {
+        return getVirtualMachineStatistics(hostId, hostName, vmIds, 0);
+    }
+
+    @Override
+    public HashMap<Long, VmStatsEntry> getVirtualMachineStatistics(long hostId, String hostName, List<Long> vmIds, int timeout) throws CloudRuntimeException {
         HashMap<Long, VmStatsEntry> vmStatsById = new HashMap<Long, VmStatsEntry>();
 
         if (vmIds.isEmpty()) {
@@ -1857,7 +1862,11 @@ public class UserVmManagerImpl extends ManagerBase implements UserVmManager, Vir
             vmNames.add(vm.getInstanceName());
         }
 
-        Answer answer = _agentMgr.easySend(hostId, new GetVmStatsCommand(vmNames, _hostDao.findById(hostId).getGuid(), hostName));
+        GetVmStatsCommand cmd = new GetVmStatsCommand(vmNames, _hostDao.findById(hostId).getGuid(), hostName);
+        if (timeout > 0) {
+            cmd.setWait(timeout / 1000);
+        }
+        Answer answer = _agentMgr.easySend(hostId, cmd);
         if (answer == null || !answer.getResult()) {
             s_logger.warn("Unable to obtain VM statistics.");
             return null;
@@ -19,6 +19,8 @@
 package com.cloud.api.dispatch;
 
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -32,6 +34,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.apache.cloudstack.api.BaseCmd;
 import org.apache.cloudstack.api.Parameter;
 import org.apache.cloudstack.api.ServerApiException;
+import org.apache.cloudstack.api.response.UserVmResponse;
 import org.apache.cloudstack.context.CallContext;
 
 import com.cloud.exception.ConcurrentOperationException;
@@ -42,6 +45,11 @@ import com.cloud.exception.ResourceUnavailableException;
 import com.cloud.user.Account;
 import com.cloud.user.AccountManager;
 import com.cloud.user.User;
+import com.cloud.network.dao.NetworkVO;
+import com.cloud.utils.db.EntityManager;
+import com.cloud.utils.db.UuidChanges;
+import com.cloud.vm.UserVmVO;
+import com.cloud.vm.VirtualMachine;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ParamProcessWorkerTest {
@@ -49,6 +57,9 @@ public class ParamProcessWorkerTest {
     @Mock
     protected AccountManager accountManager;
 
+    @Mock
+    protected EntityManager entityManager;
+
     protected ParamProcessWorker paramProcessWorker;
 
     public static class TestCmd extends BaseCmd {
@@ -65,6 +76,9 @@ public class ParamProcessWorkerTest {
         @Parameter(name = "doubleparam1", type = CommandType.DOUBLE)
         double doubleparam1;
 
+        @Parameter(name = "vmids", type = CommandType.LIST, collectionType = CommandType.UUID, entityType = UserVmResponse.class)
+        List<Long> vmids;
+
         @Override
         public void execute() throws ResourceUnavailableException, InsufficientCapacityException, ServerApiException, ConcurrentOperationException,
             ResourceAllocationException, NetworkRuleConflictException {
@@ -88,6 +102,7 @@ public class ParamProcessWorkerTest {
         CallContext.register(Mockito.mock(User.class), Mockito.mock(Account.class));
         paramProcessWorker = new ParamProcessWorker();
         paramProcessWorker._accountMgr = accountManager;
+        paramProcessWorker._entityMgr = entityManager;
     }
 
     @After
@@ -109,4 +124,81 @@ public class ParamProcessWorkerTest {
         Assert.assertTrue(Double.compare(cmd.doubleparam1, 11.89) == 0);
     }
 
+    private static VirtualMachine vm(long id) {
+        final VirtualMachine vm = Mockito.mock(VirtualMachine.class);
+        Mockito.when(vm.getId()).thenReturn(id);
+        return vm;
+    }
+
+    @Test
+    public void processListOfUuidsTranslatesThemTogether() {
+        final String uuid1 = "0a1b2c3d-0000-4000-8000-000000000001";
+        final String uuid2 = "0a1b2c3d-0000-4000-8000-000000000002";
+        final Map<String, VirtualMachine> vms = new HashMap<String, VirtualMachine>();
+        vms.put(uuid1, vm(1L));
+        vms.put(uuid2, vm(2L));
+        Mockito.doReturn(vms).when(entityManager).findByUuidsIncludingRemoved(Mockito.eq(VirtualMachine.class), Mockito.anyCollection());
+
+        final HashMap<String, String> params = new HashMap<String, String>();
+        params.put("vmids", uuid2 + "," + uuid1 + ",3");
+        final TestCmd cmd = new TestCmd();
+        paramProcessWorker.processParameters(cmd, params);
+        Assert.assertEquals(3, cmd.vmids.size());
+        Assert.assertEquals(Long.valueOf(2), cmd.vmids.get(0));
+        Assert.assertEquals(Long.valueOf(1), cmd.vmids.get(1));
+        Assert.assertEquals(Long.valueOf(3), cmd.vmids.get(2));
+
+        // the second time the uuids are known already
+        final TestCmd cmd2 = new TestCmd();
+        params.put("vmids", uuid1);
+        paramProcessWorker.processParameters(cmd2, params);
+        Assert.assertEquals(Long.valueOf(1), cmd2.vmids.get(0));
+        Mockito.verify(entityManager, Mockito.times(1)).findByUuidsIncludingRemoved(Mockito.eq(VirtualMachine.class), Mockito.anyCollection());
+        Mockito.verify(entityManager, Mockito.never()).findByUuidIncludingRemoved(Mockito.any(Class.class), Mockito.anyString());
+        Assert.assertEquals(1, paramProcessWorker._uuidCache.getHitCount());
+    }
+
+    @Test
+    public void changedUuidIsNoLongerTranslated() {
+        final String uuid1 = "0a1b2c3d-0000-4000-8000-000000000001";
+        final String uuid2 = "0a1b2c3d-0000-4000-8000-000000000002";
+        final Map<String, VirtualMachine> vms = new HashMap<String, VirtualMachine>();
+        vms.put(uuid1, vm(1L));
+        vms.put(uuid2, vm(2L));
+        Mockito.doReturn(vms).when(entityManager).findByUuidsIncludingRemoved(Mockito.eq(VirtualMachine.class), Mockito.anyCollection());
+
+        final HashMap<String, String> params = new HashMap<String, String>();
+        params.put("vmids", uuid1 + "," + uuid2);
+        paramProcessWorker.processParameters(new TestCmd(), params);
+        Assert.assertEquals(Long.valueOf(1), paramProcessWorker._uuidCache.getId(VirtualMachine.class, uuid1));
+
+        UuidChanges.addListener(paramProcessWorker._uuidCache);
+        try {
+            // vm 1 got a custom id, network 2 is another row than vm 2
+            UuidChanges.changedLocal(UserVmVO.class, 1L);
+            UuidChanges.changedLocal(NetworkVO.class, 2L);
+        } finally {
+            UuidChanges.removeListener(paramProcessWorker._uuidCache);
+        }
+        Assert.assertNull(paramProcessWorker._uuidCache.getId(VirtualMachine.class, uuid1));
+        Assert.assertEquals(Long.valueOf(2), paramProcessWorker._uuidCache.getId(VirtualMachine.class, uuid2));
+    }
+
+    @Test
+    public void deletedRowsAreNoLongerTranslated() {
+        final String uuid1 = "0a1b2c3d-0000-4000-8000-000000000001";
+        final String uuid2 = "0a1b2c3d-0000-4000-8000-000000000002";
+        paramProcessWorker._uuidCache.put(VirtualMachine.class, uuid1, 1L);
+        paramProcessWorker._uuidCache.put(VirtualMachine.class, uuid2, 2L);
+
+        UuidChanges.addListener(paramProcessWorker._uuidCache);
+        try {
+            // vms deleted by search criteria, the ids are not known
+            UuidChanges.changedLocal(UserVmVO.class, null);
+        } finally {
+            UuidChanges.removeListener(paramProcessWorker._uuidCache);
+        }
+        Assert.assertNull(paramProcessWorker._uuidCache.getId(VirtualMachine.class, uuid1));
+        Assert.assertNull(paramProcessWorker._uuidCache.getId(VirtualMachine.class, uuid2));
+    }
 }
@@ -0,0 +1,62 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api.query;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cloud.exception.InvalidParameterValueException;
+
+public class ListCursorTest {
+
+    @Test
+    public void encodeDecodeRoundTrip() {
+        Date created = new Date(1500000000000L);
+        String cursor = ListCursor.encode(created, 42L);
+        Object[] values = ListCursor.decode(cursor, Date.class, Long.class);
+        Assert.assertEquals(created, values[0]);
+        Assert.assertEquals(42L, values[1]);
+    }
+
+    @Test
+    public void cursorIsUrlSafe() {
+        String cursor = ListCursor.encode(Long.MAX_VALUE, Long.MAX_VALUE);
+        Assert.assertTrue(cursor.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsUnsupportedValues() {
+        ListCursor.encode("name");
+    }
+
+    @Test(expected = InvalidParameterValueException.class)
+    public void decodeRejectsWrongNumberOfValues() {
+        ListCursor.decode(ListCursor.encode(1L, 2L), Long.class);
+    }
+
+    @Test(expected = InvalidParameterValueException.class)
+    public void decodeRejectsInvalidBase64() {
+        ListCursor.decode("not a cursor!", Long.class);
+    }
+
+    @Test(expected = InvalidParameterValueException.class)
+    public void decodeRejectsNonNumericValues() {
+        ListCursor.decode("YWJj", Long.class);
+    }
+}
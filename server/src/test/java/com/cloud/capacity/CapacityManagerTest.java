@@ -18,20 +18,40 @@
 package com.cloud.capacity;
 
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import com.cloud.capacity.dao.CapacityDao;
 import com.cloud.dc.ClusterDetailsDao;
 import com.cloud.dc.ClusterDetailsVO;
+import com.cloud.dc.ClusterVO;
+import com.cloud.dc.dao.ClusterDao;
+import com.cloud.host.HostVO;
+import com.cloud.resource.ResourceState;
 import com.cloud.service.ServiceOfferingVO;
 import com.cloud.service.dao.ServiceOfferingDao;
+import com.cloud.utils.DateUtil;
+import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.vm.VMInstanceVO;
 import com.cloud.vm.VirtualMachine;
+import com.cloud.vm.dao.UserVmDetailsDao;
+import com.cloud.vm.dao.VMInstanceDao;
 
 public class CapacityManagerTest {
     CapacityDao CDao = mock(CapacityDao.class);
@@ -76,4 +96,146 @@ public class CapacityManagerTest {
         Assert.assertTrue(hasCapacity);
 
     }
+
+    private VMInstanceVO mockVm(long id) {
+        VMInstanceVO vm = mock(VMInstanceVO.class);
+        when(vm.getId()).thenReturn(id);
+        when(vm.getServiceOfferingId()).thenReturn(2l);
+        when(vm.getUpdateTime()).thenReturn(DateUtil.currentGMTTime());
+        return vm;
+    }
+
+    @Test
+    public void updateCapacityForHostTest() {
+        capMgr = setUp();
+        VMInstanceDao vmDao = mock(VMInstanceDao.class);
+        UserVmDetailsDao vmDetailsDao = mock(UserVmDetailsDao.class);
+        ClusterDao clusterDao = mock(ClusterDao.class);
+        capMgr._vmDao = vmDao;
+        capMgr._userVmDetailsDao = vmDetailsDao;
+        capMgr._clusterDao = clusterDao;
+        ReflectionTestUtils.setField(capMgr, "_vmCapacityReleaseInterval", 3600);
+
+        HostVO host = mock(HostVO.class);
+        when(host.getId()).thenReturn(1l);
+        when(host.getClusterId()).thenReturn(1l);
+        when(host.getResourceState()).thenReturn(ResourceState.Enabled);
+        when(host.getCpus()).thenReturn(4);
+        when(host.getSpeed()).thenReturn(2000l);
+        when(host.getTotalMemory()).thenReturn(8l * 1024 * 1024 * 1024);
+        ClusterVO cluster = mock(ClusterVO.class);
+        when(cluster.getId()).thenReturn(1l);
+        when(clusterDao.findById(1l)).thenReturn(cluster);
+        when(ClusterDetailsDao.findDetail(1l, "cpuOvercommitRatio")).thenReturn(clusterDetailCpu);
+        when(ClusterDetailsDao.findDetail(1l, "memoryOvercommitRatio")).thenReturn(clusterDetailRam);
+        when(clusterDetailCpu.getValue()).thenReturn("2");
+        when(clusterDetailRam.getValue()).thenReturn("1.5");
+
+        when(svo.getId()).thenReturn(2l);
+        when(svo.getCpu()).thenReturn(2);
+        when(svo.getSpeed()).thenReturn(1000);
+        when(svo.getRamSize()).thenReturn(1024);
+        when(SOfferingDao.listAllIncludingRemoved()).thenReturn(Arrays.asList(svo));
+
+        // vm 10 was started with the overcommit ratios of its cluster, vm 11 before there were any
+        List<VMInstanceVO> vms = Arrays.asList(mockVm(10l), mockVm(11l));
+        List<VMInstanceVO> stoppedVms = Arrays.asList(mockVm(12l));
+        when(vmDao.listUpByHostId(1l)).thenReturn(vms);
+        when(vmDao.listByLastHostId(1l)).thenReturn(stoppedVms);
+        Map<String, String> details = new HashMap<String, String>();
+        details.put("cpuOvercommitRatio", "2");
+        details.put("memoryOvercommitRatio", "2");
+        when(vmDetailsDao.listDetailsKeyPairs(Arrays.asList(10l, 11l, 12l))).thenReturn(Collections.singletonMap(10l, details));
+
+        CapacityVO cpu = new CapacityVO(1l, 1l, 1l, 1l, 0, 8000, Capacity.CAPACITY_TYPE_CPU);
+        CapacityVO memory = new CapacityVO(1l, 1l, 1l, 1l, 0, 8l * 1024 * 1024 * 1024, Capacity.CAPACITY_TYPE_MEMORY);
+        CapacityVO cpuCore = new CapacityVO(1l, 1l, 1l, 1l, 0, 4, Capacity.CAPACITY_TYPE_CPU_CORE);
+        when(CDao.findByHostIdType(1l, Capacity.CAPACITY_TYPE_CPU)).thenReturn(cpu);
+        when(CDao.findByHostIdType(1l, Capacity.CAPACITY_TYPE_MEMORY)).thenReturn(memory);
+        when(CDao.findByHostIdType(1l, Capacity.CAPACITY_TYPE_CPU_CORE)).thenReturn(cpuCore);
+
+        capMgr.updateCapacityForHost(host);
+
+        Assert.assertEquals(2000 + 4000, cpu.getUsedCapacity());
+        Assert.assertEquals(4000, cpu.getReservedCapacity());
+        Assert.assertEquals(768l * 1024 * 1024 + 1536l * 1024 * 1024, memory.getUsedCapacity());
+        Assert.assertEquals(1536l * 1024 * 1024, memory.getReservedCapacity());
+        Assert.assertEquals(4, cpuCore.getUsedCapacity());
+        Assert.assertEquals(2, cpuCore.getReservedCapacity());
+        // the details of all vms are read with one query
+        verify(vmDetailsDao, never()).listDetailsKeyPairs(anyLong());
+    }
+
+    private HostVO mockHost(long id, long clusterId) {
+        HostVO host = mock(HostVO.class);
+        when(host.getId()).thenReturn(id);
+        when(host.getClusterId()).thenReturn(clusterId);
+        when(host.getResourceState()).thenReturn(ResourceState.Enabled);
+        when(host.getCpus()).thenReturn(4);
+        when(host.getSpeed()).thenReturn(2000l);
+        when(host.getTotalMemory()).thenReturn(8l * 1024 * 1024 * 1024);
+        return host;
+    }
+
+    @Test
+    public void updateCapacityForHostsTest() {
+        capMgr = setUp();
+        VMInstanceDao vmDao = mock(VMInstanceDao.class);
+        UserVmDetailsDao vmDetailsDao = mock(UserVmDetailsDao.class);
+        ClusterDao clusterDao = mock(ClusterDao.class);
+        capMgr._vmDao = vmDao;
+        capMgr._userVmDetailsDao = vmDetailsDao;
+        capMgr._clusterDao = clusterDao;
+        ReflectionTestUtils.setField(capMgr, "_vmCapacityReleaseInterval", 3600);
+
+        // the update of host 2 fails, host 1 and 3 are updated all the same
+        HostVO host1 = mockHost(1l, 1l);
+        HostVO host2 = mockHost(2l, 2l);
+        HostVO host3 = mockHost(3l, 1l);
+        ClusterVO cluster = mock(ClusterVO.class);
+        when(cluster.getId()).thenReturn(1l);
+        when(clusterDao.findById(1l)).thenReturn(cluster);
+        when(clusterDao.findById(2l)).thenThrow(new CloudRuntimeException("Lost connection to the database"));
+        when(ClusterDetailsDao.findDetail(1l, "cpuOvercommitRatio")).thenReturn(clusterDetailCpu);
+        when(ClusterDetailsDao.findDetail(1l, "memoryOvercommitRatio")).thenReturn(clusterDetailRam);
+        when(clusterDetailCpu.getValue()).thenReturn("1");
+        when(clusterDetailRam.getValue()).thenReturn("1");
+
+        when(svo.getId()).thenReturn(2l);
+        when(svo.getCpu()).thenReturn(2);
+        when(svo.getSpeed()).thenReturn(1000);
+        when(svo.getRamSize()).thenReturn(1024);
+        when(SOfferingDao.listAllIncludingRemoved()).thenReturn(Arrays.asList(svo));
+
+        VMInstanceVO vm1 = mockVm(10l);
+        when(vm1.getHostId()).thenReturn(1l);
+        VMInstanceVO vm3 = mockVm(11l);
+        when(vm3.getHostId()).thenReturn(3l);
+        when(vmDao.listUpByHostIds(Arrays.asList(2l, 1l, 3l))).thenReturn(Arrays.asList(vm1, vm3));
+        when(vmDao.listByLastHostIds(Arrays.asList(2l, 1l, 3l))).thenReturn(Collections.<VMInstanceVO>emptyList());
+        when(vmDetailsDao.listDetailsKeyPairs(Arrays.asList(10l, 11l))).thenReturn(Collections.<Long, Map<String, String>>emptyMap());
+
+        CapacityVO cpu1 = new CapacityVO(1l, 1l, 1l, 1l, 0, 8000, Capacity.CAPACITY_TYPE_CPU);
+        CapacityVO memory1 = new CapacityVO(1l, 1l, 1l, 1l, 0, 8l * 1024 * 1024 * 1024, Capacity.CAPACITY_TYPE_MEMORY);
+        CapacityVO cpuCore1 = new CapacityVO(1l, 1l, 1l, 1l, 0, 4, Capacity.CAPACITY_TYPE_CPU_CORE);
+        CapacityVO cpu2 = new CapacityVO(2l, 1l, 1l, 2l, 0, 8000, Capacity.CAPACITY_TYPE_CPU);
+        CapacityVO cpu3 = new CapacityVO(3l, 1l, 1l, 1l, 0, 8000, Capacity.CAPACITY_TYPE_CPU);
+        CapacityVO memory3 = new CapacityVO(3l, 1l, 1l, 1l, 0, 8l * 1024 * 1024 * 1024, Capacity.CAPACITY_TYPE_MEMORY);
+        CapacityVO cpuCore3 = new CapacityVO(3l, 1l, 1l, 1l, 0, 4, Capacity.CAPACITY_TYPE_CPU_CORE);
+        when(CDao.listByHostIdsTypes(eq(Arrays.asList(2l, 1l, 3l)), anyListOf(Short.class))).thenReturn(
+                Arrays.asList(cpu1, memory1, cpuCore1, cpu2, cpu3, memory3, cpuCore3));
+
+        capMgr.updateCapacityForHosts(Arrays.asList(host2, host1, host3));
+
+        Assert.assertEquals(2000, cpu1.getUsedCapacity());
+        Assert.assertEquals(1024l * 1024 * 1024, memory1.getUsedCapacity());
+        Assert.assertEquals(2, cpuCore1.getUsedCapacity());
+        Assert.assertEquals(0, cpu2.getUsedCapacity());
+        Assert.assertEquals(2000, cpu3.getUsedCapacity());
+        Assert.assertEquals(2, cpuCore3.getUsedCapacity());
+        // the vms and capacities of the batch are read at once, the ratios once per cluster
+        verify(vmDao, never()).listUpByHostId(anyLong());
+        verify(CDao, never()).findByHostIdType(anyLong(), eq(Capacity.CAPACITY_TYPE_CPU));
+        verify(clusterDao, times(1)).findById(1l);
+    }
 }
@@ -767,6 +767,22 @@ public class MockNetworkModelImpl extends ManagerBase implements NetworkModel {
         return null;
     }
 
+    @Override
+    public String allocateGuestIp(Network network) {
+        // TODO Auto-generated method stub
+        return null;
+    }
+
+    @Override
+    public void markGuestIpUsed(long networkId, String ip) {
+        // TODO Auto-generated method stub
+    }
+
+    @Override
+    public void markGuestIpFree(long networkId, String ip) {
+        // TODO Auto-generated method stub
+    }
+
     /* (non-Javadoc)
      * @see com.cloud.network.NetworkModel#getDomainNetworkDomain(long, long)
      */
@@ -0,0 +1,156 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.as;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.cloud.network.as.dao.AutoScalePolicyDao;
+import com.cloud.network.as.dao.AutoScaleVmGroupDao;
+import com.cloud.network.as.dao.AutoScaleVmGroupPolicyMapDao;
+import com.cloud.network.as.dao.AutoScaleVmGroupVmMapDao;
+import com.cloud.network.dao.LoadBalancerVMMapDao;
+import com.cloud.network.dao.LoadBalancerVMMapVO;
+import com.cloud.network.lb.LoadBalancingRulesService;
+import com.cloud.vm.UserVmManager;
+
+public class AutoScaleManagerImplTest {
+    private static final long GROUP_ID = 1L;
+    private static final long LB_ID = 5L;
+
+    AutoScaleManagerImpl<?> manager;
+    AutoScaleVmGroupVO group = mock(AutoScaleVmGroupVO.class);
+    AutoScaleVmGroupDao vmGroupDao = mock(AutoScaleVmGroupDao.class);
+    AutoScaleVmGroupVmMapDao vmGroupVmMapDao = mock(AutoScaleVmGroupVmMapDao.class);
+    AutoScaleVmGroupPolicyMapDao vmGroupPolicyMapDao = mock(AutoScaleVmGroupPolicyMapDao.class);
+    AutoScalePolicyDao policyDao = mock(AutoScalePolicyDao.class);
+    LoadBalancerVMMapDao lbVmMapDao = mock(LoadBalancerVMMapDao.class);
+    LoadBalancingRulesService lbService = mock(LoadBalancingRulesService.class);
+    UserVmManager userVmManager = mock(UserVmManager.class);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @Before
+    public void setup() {
+        manager = spy(new AutoScaleManagerImpl<Object>());
+        manager._autoScaleVmGroupDao = vmGroupDao;
+        manager._autoScaleVmGroupVmMapDao = vmGroupVmMapDao;
+        manager._autoScaleVmGroupPolicyMapDao = vmGroupPolicyMapDao;
+        manager._autoScalePolicyDao = policyDao;
+        manager._lbVmMapDao = lbVmMapDao;
+        manager._loadBalancingRulesService = lbService;
+        manager._userVmManager = userVmManager;
+        ReflectionTestUtils.setField(manager, "_vmDeployExecutor", executor);
+
+        when(group.getId()).thenReturn(GROUP_ID);
+        when(group.getLoadBalancerId()).thenReturn(LB_ID);
+        when(vmGroupDao.findById(GROUP_ID)).thenReturn(group);
+        when(lbVmMapDao.listByLoadBalancerId(LB_ID)).thenReturn(Collections.<LoadBalancerVMMapVO>emptyList());
+        when(vmGroupPolicyMapDao.listByVmGroupId(GROUP_ID)).thenReturn(Collections.<AutoScaleVmGroupPolicyMapVO>emptyList());
+        doReturn(true).when(manager).checkConditionUp(group, 4);
+
+        // the vms are numbered by their name, vm 3 can not be created and vm 2 does not start
+        doAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                String name = (String)invocation.getArguments()[1];
+                int i = Integer.parseInt(name.substring(name.lastIndexOf('-') + 1));
+                return i == 3 ? -1L : 10L + i;
+            }
+        }).when(manager).createNewVM(eq(group), anyString());
+        doReturn(true).when(manager).startNewVM(anyLong());
+        doReturn(false).when(manager).startNewVM(12L);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private AutoScaleVmGroupMetrics metrics() {
+        return ((Map<Long, AutoScaleVmGroupMetrics>)ReflectionTestUtils.getField(manager, "_vmGroupMetrics")).get(GROUP_ID);
+    }
+
+    @Test
+    public void testScaleUpMapsTheVmsThatCameUp() throws Exception {
+        when(lbService.assignToLoadBalancer(eq(LB_ID), eq(Arrays.asList(10L, 11L)), anyMap())).thenReturn(true);
+
+        manager.doScaleUp(GROUP_ID, 4);
+
+        verify(manager, times(4)).createNewVM(eq(group), anyString());
+        verify(vmGroupVmMapDao, times(2)).persist(any(AutoScaleVmGroupVmMapVO.class));
+        verify(userVmManager, never()).destroyVm(anyLong(), anyBoolean());
+        Assert.assertEquals(4, metrics().getLastScaleUpRequestedVmCount());
+        Assert.assertEquals(2, metrics().getLastScaleUpDeployedVmCount());
+        Assert.assertEquals(2, metrics().getFailedVmCount());
+    }
+
+    @Test
+    public void testScaleUpDestroysTheVmsTheRuleCanNotTake() throws Exception {
+        when(lbService.assignToLoadBalancer(eq(LB_ID), eq(Arrays.asList(10L, 11L)), anyMap())).thenReturn(false);
+        when(lbService.assignToLoadBalancer(eq(LB_ID), eq(Collections.singletonList(10L)), anyMap())).thenReturn(true);
+        when(lbService.assignToLoadBalancer(eq(LB_ID), eq(Collections.singletonList(11L)), anyMap())).thenReturn(false);
+
+        manager.doScaleUp(GROUP_ID, 4);
+
+        // vm 10 is assigned on its own and mapped, vm 11 is not left running outside of the group
+        verify(vmGroupVmMapDao, times(1)).persist(any(AutoScaleVmGroupVmMapVO.class));
+        verify(userVmManager).destroyVm(11L, false);
+        verify(userVmManager, never()).destroyVm(10L, false);
+        Assert.assertEquals(1, metrics().getLastScaleUpDeployedVmCount());
+        Assert.assertEquals(3, metrics().getFailedVmCount());
+    }
+
+    @Test
+    public void testScaleUpWithoutAnyVmAssigned() throws Exception {
+        when(lbService.assignToLoadBalancer(eq(LB_ID), any(List.class), anyMap())).thenReturn(false);
+
+        manager.doScaleUp(GROUP_ID, 4);
+
+        verify(vmGroupVmMapDao, never()).persist(any(AutoScaleVmGroupVmMapVO.class));
+        verify(userVmManager).destroyVm(10L, false);
+        verify(userVmManager).destroyVm(11L, false);
+        Assert.assertEquals(0, metrics().getLastScaleUpDeployedVmCount());
+    }
+}
@@ -0,0 +1,41 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.as;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AutoScaleVmGroupMetricsTest {
+
+    @Test
+    public void testScaleUps() {
+        AutoScaleVmGroupMetrics metrics = new AutoScaleVmGroupMetrics(1L);
+        Assert.assertEquals(0, metrics.getAverageScaleUpDurationMillis());
+
+        metrics.scaledUp(3, 3, 1000);
+        metrics.scaledUp(4, 1, 3000);
+
+        Assert.assertEquals(2, metrics.getScaleUpCount());
+        Assert.assertEquals(3000, metrics.getLastScaleUpDurationMillis());
+        Assert.assertEquals(3000, metrics.getMaxScaleUpDurationMillis());
+        Assert.assertEquals(2000, metrics.getAverageScaleUpDurationMillis());
+        Assert.assertEquals(4, metrics.getLastScaleUpRequestedVmCount());
+        Assert.assertEquals(1, metrics.getLastScaleUpDeployedVmCount());
+        Assert.assertEquals(4, metrics.getDeployedVmCount());
+        Assert.assertEquals(3, metrics.getFailedVmCount());
+    }
+}
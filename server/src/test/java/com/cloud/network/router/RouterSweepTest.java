@@ -0,0 +1,149 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network.router;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cloud.vm.DomainRouterVO;
+
+public class RouterSweepTest {
+
+    private RouterSweep sweep;
+
+    @After
+    public void tearDown() {
+        if (sweep != null) {
+            sweep.shutdown();
+        }
+    }
+
+    private static DomainRouterVO router(long id, long hostId) {
+        DomainRouterVO router = mock(DomainRouterVO.class);
+        when(router.getId()).thenReturn(id);
+        when(router.getHostId()).thenReturn(hostId);
+        when(router.getInstanceName()).thenReturn("r-" + id + "-VM");
+        return router;
+    }
+
+    @Test
+    public void testRoutersOfAHostAreVisitedAFewAtATime() {
+        sweep = new RouterSweep("RouterSweepTest", 8, 2, 10000);
+        List<DomainRouterVO> routers = new ArrayList<DomainRouterVO>();
+        for (long id = 1; id <= 40; id++) {
+            routers.add(router(id, id % 4));
+        }
+        final Map<Long, AtomicInteger> inFlight = new ConcurrentHashMap<Long, AtomicInteger>();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger visited = new AtomicInteger();
+        for (long hostId = 0; hostId < 4; hostId++) {
+            inFlight.put(hostId, new AtomicInteger());
+        }
+
+        sweep.sweep(routers, new RouterSweep.Visitor() {
+            @Override
+            public boolean visit(DomainRouterVO router) {
+                int count = inFlight.get(router.getHostId()).incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), count));
+                }
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return false;
+                } finally {
+                    inFlight.get(router.getHostId()).decrementAndGet();
+                }
+                visited.incrementAndGet();
+                return true;
+            }
+        });
+
+        Assert.assertEquals(40, visited.get());
+        Assert.assertTrue(maxInFlight.get() <= 2);
+        Assert.assertEquals(1, sweep.getSweepCount());
+        Assert.assertEquals(40, sweep.getVisitCount());
+        Assert.assertEquals(0, sweep.getFailedVisitCount());
+        Assert.assertEquals(40, sweep.getLastSweepRouterCount());
+    }
+
+    @Test
+    public void testHungVisitIsGivenUpOn() {
+        sweep = new RouterSweep("RouterSweepTest", 2, 2, 200);
+        final CountDownLatch hung = new CountDownLatch(1);
+        List<DomainRouterVO> routers = new ArrayList<DomainRouterVO>();
+        routers.add(router(1, 1));
+        routers.add(router(2, 2));
+
+        long startTime = System.currentTimeMillis();
+        sweep.sweep(routers, new RouterSweep.Visitor() {
+            @Override
+            public boolean visit(DomainRouterVO router) {
+                if (router.getId() == 1) {
+                    try {
+                        hung.await();
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+
+        Assert.assertTrue(System.currentTimeMillis() - startTime < 5000);
+        Assert.assertEquals(1, sweep.getTimedOutVisitCount());
+        Assert.assertEquals(0, sweep.getFailedVisitCount());
+    }
+
+    @Test
+    public void testStaleRoutersAreVisitedFirst() {
+        sweep = new RouterSweep("RouterSweepTest", 1, 1, 10000);
+        List<DomainRouterVO> routers = new ArrayList<DomainRouterVO>();
+        for (long id = 1; id <= 5; id++) {
+            routers.add(router(id, 1));
+        }
+        final List<Long> order = Collections.synchronizedList(new ArrayList<Long>());
+        RouterSweep.Visitor visitor = new RouterSweep.Visitor() {
+            @Override
+            public boolean visit(DomainRouterVO router) {
+                order.add(router.getId());
+                // the data of router 4 can not be gotten the first time
+                return router.getId() != 4 || order.size() > 5;
+            }
+        };
+
+        sweep.sweep(routers, visitor);
+        Assert.assertEquals(1, sweep.getFailedVisitCount());
+
+        order.clear();
+        sweep.sweep(routers, visitor);
+        Assert.assertEquals(Long.valueOf(4), order.get(0));
+        Assert.assertEquals(5, order.size());
+    }
+}
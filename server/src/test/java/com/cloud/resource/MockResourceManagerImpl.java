@@ -450,6 +450,11 @@ public class MockResourceManagerImpl extends ManagerBase implements ResourceMana
         return null;
     }
 
+    @Override
+    public HostStats getHostStatistics(final long hostId, final int timeout) {
+        return null;
+    }
+
     /* (non-Javadoc)
      * @see com.cloud.resource.ResourceManager#getGuestOSCategoryId(long)
      */
@@ -0,0 +1,130 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.resourcelimit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.cloud.configuration.Resource.ResourceOwnerType;
+import com.cloud.configuration.Resource.ResourceType;
+import com.cloud.configuration.ResourceLimitVO;
+import com.cloud.configuration.dao.ResourceLimitDao;
+import com.cloud.domain.DomainVO;
+import com.cloud.domain.dao.DomainDao;
+
+public class ResourceLimitCacheTest {
+    private ResourceLimitDao _resourceLimitDao;
+    private DomainDao _domainDao;
+    private ResourceLimitCache _cache;
+
+    @Before
+    public void setUp() {
+        _resourceLimitDao = mock(ResourceLimitDao.class);
+        _domainDao = mock(DomainDao.class);
+        _cache = new ResourceLimitCache(_resourceLimitDao, _domainDao, 60000L);
+    }
+
+    private DomainVO domain(long id, Long parent) {
+        DomainVO domain = mock(DomainVO.class);
+        when(domain.getId()).thenReturn(id);
+        when(domain.getParent()).thenReturn(parent);
+        when(_domainDao.findById(id)).thenReturn(domain);
+        return domain;
+    }
+
+    @Test
+    public void testLimitsOfAnOwnerAreLoadedOnce() {
+        when(_resourceLimitDao.listByOwner(2L, ResourceOwnerType.Domain)).thenReturn(Arrays.asList(
+                new ResourceLimitVO(ResourceType.user_vm, 10L, 2L, ResourceOwnerType.Domain),
+                new ResourceLimitVO(ResourceType.cpu, 40L, 2L, ResourceOwnerType.Domain)));
+
+        Assert.assertEquals(Long.valueOf(10L), _cache.getLimit(2L, ResourceOwnerType.Domain, ResourceType.user_vm));
+        Assert.assertEquals(Long.valueOf(40L), _cache.getLimit(2L, ResourceOwnerType.Domain, ResourceType.cpu));
+        Assert.assertNull(_cache.getLimit(2L, ResourceOwnerType.Domain, ResourceType.volume));
+        verify(_resourceLimitDao, times(1)).listByOwner(2L, ResourceOwnerType.Domain);
+    }
+
+    @Test
+    public void testInvalidatedOwnerIsReloaded() {
+        when(_resourceLimitDao.listByOwner(3L, ResourceOwnerType.Account)).thenReturn(Collections.<ResourceLimitVO>emptyList());
+        Assert.assertNull(_cache.getLimit(3L, ResourceOwnerType.Account, ResourceType.user_vm));
+
+        when(_resourceLimitDao.listByOwner(3L, ResourceOwnerType.Account)).thenReturn(Arrays.asList(
+                new ResourceLimitVO(ResourceType.user_vm, 5L, 3L, ResourceOwnerType.Account)));
+        Assert.assertNull(_cache.getLimit(3L, ResourceOwnerType.Account, ResourceType.user_vm));
+        _cache.invalidate(3L, ResourceOwnerType.Account);
+        Assert.assertEquals(Long.valueOf(5L), _cache.getLimit(3L, ResourceOwnerType.Account, ResourceType.user_vm));
+    }
+
+    @Test
+    public void testLimitsLoadedDuringAnInvalidationAreNotKept() {
+        final ResourceLimitVO oldLimit = new ResourceLimitVO(ResourceType.user_vm, 10L, 3L, ResourceOwnerType.Account);
+        when(_resourceLimitDao.listByOwner(3L, ResourceOwnerType.Account)).thenAnswer(new Answer<List<ResourceLimitVO>>() {
+            @Override
+            public List<ResourceLimitVO> answer(InvocationOnMock invocation) {
+                // the limit is lowered and invalidated while the old one is being loaded
+                _cache.invalidate(3L, ResourceOwnerType.Account);
+                return Arrays.asList(oldLimit);
+            }
+        });
+        Assert.assertEquals(Long.valueOf(10L), _cache.getLimit(3L, ResourceOwnerType.Account, ResourceType.user_vm));
+
+        when(_resourceLimitDao.listByOwner(3L, ResourceOwnerType.Account)).thenReturn(Arrays.asList(
+                new ResourceLimitVO(ResourceType.user_vm, 5L, 3L, ResourceOwnerType.Account)));
+        Assert.assertEquals(Long.valueOf(5L), _cache.getLimit(3L, ResourceOwnerType.Account, ResourceType.user_vm));
+    }
+
+    @Test
+    public void testExpiredOwnerIsReloaded() {
+        _cache = new ResourceLimitCache(_resourceLimitDao, _domainDao, -1L);
+        when(_resourceLimitDao.listByOwner(3L, ResourceOwnerType.Account)).thenReturn(Collections.<ResourceLimitVO>emptyList());
+        _cache.getLimit(3L, ResourceOwnerType.Account, ResourceType.user_vm);
+        _cache.getLimit(3L, ResourceOwnerType.Account, ResourceType.user_vm);
+        verify(_resourceLimitDao, times(2)).listByOwner(3L, ResourceOwnerType.Account);
+    }
+
+    @Test
+    public void testDomainPathIsCached() {
+        domain(1L, null);
+        domain(2L, 1L);
+        domain(3L, 2L);
+
+        Assert.assertEquals(Arrays.asList(3L, 2L, 1L), _cache.getDomainPath(3L));
+        Assert.assertEquals(Arrays.asList(2L, 1L), _cache.getDomainPath(2L));
+        Assert.assertEquals(Arrays.asList(3L, 2L, 1L), _cache.getDomainPath(3L));
+        verify(_domainDao, times(1)).findById(3L);
+        verify(_domainDao, times(1)).findById(2L);
+        verify(_domainDao, times(1)).findById(1L);
+    }
+
+    @Test
+    public void testPathOfMissingDomainIsEmpty() {
+        Assert.assertTrue(_cache.getDomainPath(42L).isEmpty());
+    }
+}
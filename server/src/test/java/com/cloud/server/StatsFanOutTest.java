@@ -0,0 +1,104 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatsFanOutTest {
+    private StatsFanOut _fanOut;
+
+    @Before
+    public void setUp() {
+        _fanOut = new StatsFanOut("StatsFanOutTest", 4);
+    }
+
+    @After
+    public void tearDown() {
+        _fanOut.shutdown();
+    }
+
+    private static List<Long> hosts(int count) {
+        List<Long> hosts = new ArrayList<Long>();
+        for (long i = 1; i <= count; i++) {
+            hosts.add(i);
+        }
+        return hosts;
+    }
+
+    @Test
+    public void testCallsStayWithinTheWindow() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final ConcurrentHashMap<Long, Long> stats = new ConcurrentHashMap<Long, Long>();
+
+        StatsFanOut.Sweep sweep = _fanOut.collect("test stats", hosts(20), new StatsFanOut.Call<Long>() {
+            @Override
+            public boolean collect(Long host) throws Exception {
+                int current = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet(current, Math::max);
+                Thread.sleep(20);
+                inFlight.decrementAndGet();
+                stats.put(host, host * 10);
+                return true;
+            }
+        });
+
+        Assert.assertEquals(20, sweep.getCollected());
+        Assert.assertEquals(0, sweep.getFailed());
+        Assert.assertEquals(20, stats.size());
+        Assert.assertTrue(maxInFlight.get() <= 4);
+        Assert.assertTrue(maxInFlight.get() > 1);
+        // 20 calls of 20ms through 4 threads take about 100ms, one after another 400ms
+        Assert.assertTrue(sweep.getDuration() < 400);
+    }
+
+    @Test
+    public void testSlowAndFailingHostsDoNotHoldUpOthers() throws Exception {
+        final ConcurrentHashMap<Long, Long> collectedAt = new ConcurrentHashMap<Long, Long>();
+        final long start = System.currentTimeMillis();
+
+        StatsFanOut.Sweep sweep = _fanOut.collect("test stats", hosts(10), new StatsFanOut.Call<Long>() {
+            @Override
+            public boolean collect(Long host) throws Exception {
+                if (host == 1L) {
+                    Thread.sleep(500);
+                    return false;
+                }
+                if (host == 2L) {
+                    throw new Exception("agent is unavailable");
+                }
+                collectedAt.put(host, System.currentTimeMillis());
+                return true;
+            }
+        });
+
+        Assert.assertEquals(8, sweep.getCollected());
+        Assert.assertEquals(2, sweep.getFailed());
+        Assert.assertTrue(sweep.getDuration() >= 500);
+        for (long collected : collectedAt.values()) {
+            Assert.assertTrue(collected - start < 500);
+        }
+    }
+}
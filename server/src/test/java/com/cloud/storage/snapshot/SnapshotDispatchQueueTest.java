@@ -0,0 +1,144 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.storage.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cloud.storage.SnapshotScheduleVO;
+
+public class SnapshotDispatchQueueTest {
+
+    private static final long SCHEDULED = 1500000000000L;
+    private static final Map<Long, Integer> NONE = Collections.<Long, Integer>emptyMap();
+
+    private final SnapshotDispatchQueue queue = new SnapshotDispatchQueue();
+
+    private static SnapshotDispatchQueue.Entry entry(long volumeId, long poolId, long zoneId, long accountId) {
+        return new SnapshotDispatchQueue.Entry(new SnapshotScheduleVO(volumeId, 1L, new Date(SCHEDULED)), poolId, zoneId, accountId);
+    }
+
+    private static Set<Long> volumes(List<SnapshotDispatchQueue.Entry> entries) {
+        Set<Long> volumes = new HashSet<Long>();
+        for (SnapshotDispatchQueue.Entry entry : entries) {
+            volumes.add(entry.getSchedule().getVolumeId());
+        }
+        return volumes;
+    }
+
+    @Test
+    public void testOffsetsAreFixedAndSpreadOverTheWindow() {
+        Set<Long> offsets = new HashSet<Long>();
+        for (long volumeId = 1; volumeId <= 100; volumeId++) {
+            SnapshotScheduleVO schedule = new SnapshotScheduleVO(volumeId, 1L, new Date(SCHEDULED));
+            long offset = SnapshotDispatchQueue.getOffsetSeconds(schedule, 600);
+            Assert.assertTrue(offset >= 0 && offset < 600);
+            Assert.assertEquals(offset, SnapshotDispatchQueue.getOffsetSeconds(new SnapshotScheduleVO(volumeId, 1L, new Date()), 600));
+            offsets.add(offset);
+        }
+        Assert.assertTrue(offsets.size() > 50);
+        Assert.assertEquals(0, SnapshotDispatchQueue.getOffsetSeconds(new SnapshotScheduleVO(1L, 1L, new Date()), 0));
+    }
+
+    @Test
+    public void testSnapshotsAreStartedAsTheirOffsetComes() {
+        List<SnapshotDispatchQueue.Entry> due = new ArrayList<SnapshotDispatchQueue.Entry>();
+        for (long volumeId = 1; volumeId <= 100; volumeId++) {
+            due.add(entry(volumeId, 1, 1, volumeId));
+        }
+
+        List<SnapshotDispatchQueue.Entry> started = queue.select(due, new Date(SCHEDULED + 300 * 1000L), 600, NONE, 0, NONE, NONE);
+        Assert.assertTrue(started.size() > 0 && started.size() < 100);
+        Assert.assertEquals(100 - started.size(), queue.getQueueDepth());
+        Assert.assertEquals(300, queue.getStartLagSeconds());
+
+        started = queue.select(due, new Date(SCHEDULED + 600 * 1000L), 600, NONE, 0, NONE, NONE);
+        Assert.assertEquals(100, started.size());
+        Assert.assertEquals(0, queue.getQueueDepth());
+    }
+
+    @Test
+    public void testAllAreStartedWithoutAWindow() {
+        List<SnapshotDispatchQueue.Entry> due = new ArrayList<SnapshotDispatchQueue.Entry>();
+        for (long volumeId = 1; volumeId <= 10; volumeId++) {
+            due.add(entry(volumeId, 1, 1, 1));
+        }
+        Assert.assertEquals(10, queue.select(due, new Date(SCHEDULED), 0, NONE, 0, NONE, NONE).size());
+    }
+
+    @Test
+    public void testPoolLimitTakesTheRunningSnapshotsIntoAccount() {
+        List<SnapshotDispatchQueue.Entry> due = new ArrayList<SnapshotDispatchQueue.Entry>();
+        for (long volumeId = 1; volumeId <= 10; volumeId++) {
+            due.add(entry(volumeId, volumeId <= 5 ? 1 : 2, 1, 1));
+        }
+        Map<Long, Integer> runningPerPool = new HashMap<Long, Integer>();
+        runningPerPool.put(1L, 2);
+
+        List<SnapshotDispatchQueue.Entry> started = queue.select(due, new Date(SCHEDULED), 0, runningPerPool, 3, NONE, NONE);
+
+        Assert.assertEquals(4, started.size());
+        Assert.assertEquals(6, queue.getQueueDepth());
+        Assert.assertEquals(6, queue.getDeferred());
+    }
+
+    @Test
+    public void testZoneLimit() {
+        List<SnapshotDispatchQueue.Entry> due = new ArrayList<SnapshotDispatchQueue.Entry>();
+        for (long volumeId = 1; volumeId <= 10; volumeId++) {
+            due.add(entry(volumeId, volumeId, volumeId <= 5 ? 1 : 2, 1));
+        }
+        Map<Long, Integer> maxPerZone = new HashMap<Long, Integer>();
+        maxPerZone.put(1L, 2);
+
+        List<SnapshotDispatchQueue.Entry> started = queue.select(due, new Date(SCHEDULED), 0, NONE, 0, NONE, maxPerZone);
+
+        // zone 2 has no limit
+        Assert.assertEquals(7, started.size());
+    }
+
+    @Test
+    public void testAccountsTakeTurns() {
+        List<SnapshotDispatchQueue.Entry> due = new ArrayList<SnapshotDispatchQueue.Entry>();
+        // account 1 has many more volumes than account 2 and 3
+        for (long volumeId = 1; volumeId <= 20; volumeId++) {
+            due.add(entry(volumeId, 1, 1, 1));
+        }
+        due.add(entry(21, 1, 1, 2));
+        due.add(entry(22, 1, 1, 3));
+
+        Set<Long> started = volumes(queue.select(due, new Date(SCHEDULED), 0, NONE, 3, NONE, NONE));
+        Assert.assertEquals(3, started.size());
+        Assert.assertTrue(started.contains(21L));
+        Assert.assertTrue(started.contains(22L));
+
+        // the next poll starts after the account served last
+        due.add(entry(23, 1, 1, 3));
+        List<SnapshotDispatchQueue.Entry> next = queue.select(due, new Date(SCHEDULED), 0, NONE, 1, NONE, NONE);
+        Assert.assertEquals(1, next.size());
+        Assert.assertEquals(1L, next.get(0).getAccountId());
+    }
+}
@@ -17,6 +17,7 @@
 package com.cloud.user;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +56,16 @@ public class MockUsageEventDao implements UsageEventDao{
         return null;
     }
 
+    @Override
+    public Map<Long, UsageEventVO> findByIds(Collection<Long> ids) {
+        return null;
+    }
+
+    @Override
+    public Map<Long, UsageEventVO> findByIdsIncludingRemoved(Collection<Long> ids) {
+        return null;
+    }
+
     @Override
     public UsageEventVO findByUuid(String uuid) {
         return null;
@@ -65,6 +76,11 @@ public class MockUsageEventDao implements UsageEventDao{
         return null;
     }
 
+    @Override
+    public Map<String, UsageEventVO> findByUuidsIncludingRemoved(Collection<String> uuids) {
+        return null;
+    }
+
     @Override
     public UsageEventVO createForUpdate() {
         return null;
@@ -0,0 +1,418 @@
+# Licensed to the Apache Software Foundation (ASF) under one
+# or more contributor license agreements.  See the NOTICE file
+# distributed with this work for additional information
+# regarding copyright ownership.  The ASF licenses this file
+# to you under the Apache License, Version 2.0 (the
+# "License"); you may not use this file except in compliance
+# with the License.  You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing,
+# software distributed under the License is distributed on an
+# "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+# KIND, either express or implied.  See the License for the
+# specific language governing permissions and limitations
+# under the License.
+
+'''
+Scale benchmark of the management server, run against the simulator
+hypervisor.  The management server is built and started the way the
+simulator CI runs do:
+
+    mvn -Pdeveloper -Dsimulator clean install -DskipTests
+    mvn -Pdeveloper -pl developer -Ddeploydb
+    mvn -Pdeveloper -pl developer -Ddeploydb-simulator
+    mvn -Dsimulator -pl :cloud-client-ui jetty:run
+    python tools/marvin/marvin/deployDataCenter.py -i setup/dev/advanced.cfg
+
+after which the benchmark is pointed at the same config:
+
+    marvinbench -c setup/dev/advanced.cfg --hosts 200 --vms 1000
+
+The management server reads ping.interval only when it starts.  To run the
+ping scenario at --ping-interval give the command restarting the server,
+e.g. --restart-command "systemctl restart cloudstack-management"; without
+it the scenario runs at the interval the server was started with.
+
+It registers the requested number of simulated hosts in the first simulator
+cluster of the zone and runs the scenarios in order.  For every scenario it
+reports the operations per second, latency percentiles and the database
+queries, garbage collections and simulated agent commands the management
+server went through, as returned by getSimulatorServerStats.
+'''
+
+from __future__ import print_function
+
+import subprocess
+import sys
+import threading
+import time
+from optparse import OptionParser
+from Queue import Queue, Empty
+
+from marvin.marvinInit import MarvinInit
+from marvin.codes import FAILED
+from marvin.cloudstackException import GetDetailExceptionInfo
+from marvin.cloudstackAPI import (addHost,
+                                  deployVirtualMachine,
+                                  destroyVirtualMachine,
+                                  listClusters,
+                                  listConfigurations,
+                                  listHosts,
+                                  listNetworks,
+                                  listServiceOfferings,
+                                  listVirtualMachines,
+                                  listVolumes,
+                                  stopVirtualMachine,
+                                  updateConfiguration)
+from marvin.lib.common import get_zone, get_template
+
+try:
+    from marvin.cloudstackAPI import getSimulatorServerStats
+except ImportError:
+    # the API classes are generated from a management server built with
+    # -Dsimulator, without it the server side counters are not reported
+    getSimulatorServerStats = None
+
+SCENARIOS = ["hosts", "deploy", "list", "ping", "stop", "destroy"]
+SERVER_COUNTERS = ["dbqueries", "gccount", "gctime", "agentcommands"]
+
+
+class Result(object):
+
+    def __init__(self, name):
+        self.name = name
+        self.latencies = []
+        self.errors = 0
+        self.elapsed = 0.0
+        self.counters = {}
+        self.__lock = threading.Lock()
+
+    def record(self, latency, failed):
+        with self.__lock:
+            self.latencies.append(latency)
+            if failed:
+                self.errors += 1
+
+    def percentile(self, p):
+        if not self.latencies:
+            return 0.0
+        ordered = sorted(self.latencies)
+        index = min(len(ordered) - 1, int(round(p / 100.0 * len(ordered))) - 1)
+        return ordered[max(index, 0)]
+
+    def report(self):
+        ops = len(self.latencies)
+        rate = ops / self.elapsed if self.elapsed > 0 else 0.0
+        line = "%-8s ops=%-6d errors=%-4d ops/s=%-8.1f " \
+               "p50=%.3fs p90=%.3fs p99=%.3fs max=%.3fs" % (
+                   self.name, ops, self.errors, rate,
+                   self.percentile(50), self.percentile(90),
+                   self.percentile(99), self.percentile(100))
+        for counter in SERVER_COUNTERS:
+            if counter in self.counters:
+                line += " %s=%d" % (counter, self.counters[counter])
+        return line
+
+
+class Benchmark(object):
+
+    def __init__(self, options):
+        self.options = options
+        self.apiclient = None
+        self.zone = None
+        self.cluster = None
+        self.vms = []
+        self.results = []
+
+    def connect(self):
+        marvin = MarvinInit(self.options.config)
+        if marvin.init() == FAILED:
+            raise Exception("Failed to initialize marvin with %s" %
+                            self.options.config)
+        self.apiclient = marvin.getTestClient().getApiClient()
+        self.zone = get_zone(self.apiclient, zone_name=self.options.zone)
+        cmd = listClusters.listClustersCmd()
+        cmd.zoneid = self.zone.id
+        cmd.hypervisor = "Simulator"
+        clusters = self.apiclient.listClusters(cmd)
+        if not clusters:
+            raise Exception("Zone %s has no simulator cluster" %
+                            self.zone.name)
+        self.cluster = clusters[0]
+
+    def serverStats(self):
+        if getSimulatorServerStats is None:
+            return None
+        try:
+            cmd = getSimulatorServerStats.getSimulatorServerStatsCmd()
+            return self.apiclient.getSimulatorServerStats(cmd)
+        except Exception as e:
+            print("getSimulatorServerStats failed: %s" % e)
+            return None
+
+    def run(self, name, tasks, until=None):
+        '''
+        Runs the calls in tasks from a pool of threads, timing every call,
+        and keeps the result of the scenario.  With until the calls are
+        repeated until that time.
+        '''
+        result = Result(name)
+        queue = Queue()
+        for task in tasks:
+            queue.put(task)
+
+        def worker():
+            while True:
+                try:
+                    task = queue.get_nowait()
+                except Empty:
+                    return
+                if until is not None:
+                    if time.time() >= until:
+                        return
+                    queue.put(task)
+                begin = time.time()
+                failed = False
+                try:
+                    task()
+                except Exception as e:
+                    failed = True
+                    if self.options.verbose:
+                        print("%s: %s" % (name, GetDetailExceptionInfo(e)))
+                result.record(time.time() - begin, failed)
+
+        before = self.serverStats()
+        begin = time.time()
+        workers = [threading.Thread(target=worker)
+                   for i in range(self.options.threads)]
+        for w in workers:
+            w.daemon = True
+            w.start()
+        for w in workers:
+            w.join()
+        result.elapsed = time.time() - begin
+        after = self.serverStats()
+        if before is not None and after is not None:
+            for counter in SERVER_COUNTERS:
+                result.counters[counter] = \
+                    long(getattr(after, counter)) - \
+                    long(getattr(before, counter))
+        self.results.append(result)
+        print(result.report())
+        return result
+
+    def hostTask(self, index):
+        def task():
+            cmd = addHost.addHostCmd()
+            cmd.zoneid = self.zone.id
+            cmd.podid = self.cluster.podid
+            cmd.clusterid = self.cluster.id
+            cmd.hypervisor = "Simulator"
+            cmd.url = "http://sim/c%s/h%d" % (self.cluster.id, index)
+            cmd.username = "root"
+            cmd.password = "password"
+            self.apiclient.addHost(cmd)
+        return task
+
+    def scenarioHosts(self):
+        self.run("hosts", [self.hostTask(i) for i in range(self.options.hosts)])
+
+    def scenarioDeploy(self):
+        template = get_template(self.apiclient, self.zone.id,
+                                hypervisor="Simulator")
+        if template == FAILED:
+            raise Exception("No template found for zone %s" % self.zone.name)
+        offering = self.apiclient.listServiceOfferings(
+            listServiceOfferings.listServiceOfferingsCmd())[0]
+        networkid = self.options.network
+        if networkid is None and self.zone.networktype == "Advanced":
+            cmd = listNetworks.listNetworksCmd()
+            cmd.zoneid = self.zone.id
+            cmd.canusefordeploy = True
+            networks = self.apiclient.listNetworks(cmd)
+            if not networks:
+                raise Exception("No network to deploy in, use --network")
+            networkid = networks[0].id
+        lock = threading.Lock()
+
+        def task():
+            cmd = deployVirtualMachine.deployVirtualMachineCmd()
+            cmd.zoneid = self.zone.id
+            cmd.templateid = template.id
+            cmd.serviceofferingid = offering.id
+            if networkid is not None:
+                cmd.networkids = [networkid]
+            vm = self.apiclient.deployVirtualMachine(cmd)
+            with lock:
+                self.vms.append(vm.id)
+        self.run("deploy", [task] * self.options.vms)
+
+    def listTasks(self):
+        tasks = []
+        for api, cmdclass in [("listVirtualMachines",
+                               listVirtualMachines.listVirtualMachinesCmd),
+                              ("listHosts", listHosts.listHostsCmd),
+                              ("listVolumes", listVolumes.listVolumesCmd)]:
+            def task(api=api, cmdclass=cmdclass):
+                cmd = cmdclass()
+                cmd.listall = True
+                cmd.page = 1
+                cmd.pagesize = self.options.page_size
+                getattr(self.apiclient, api)(cmd)
+            tasks.append(task)
+        return tasks
+
+    def scenarioList(self):
+        self.run("list", self.listTasks() * self.options.list_calls)
+
+    def setConfiguration(self, name, value):
+        cmd = updateConfiguration.updateConfigurationCmd()
+        cmd.name = name
+        cmd.value = value
+        return self.apiclient.updateConfiguration(cmd)
+
+    def getConfiguration(self, name):
+        cmd = listConfigurations.listConfigurationsCmd()
+        cmd.name = name
+        configs = self.apiclient.listConfigurations(cmd)
+        return configs[0].value if configs else None
+
+    def restartServer(self):
+        '''
+        Restarts the management server with the restart command and waits
+        for its api to answer and the hosts of the cluster to be Up again.
+        '''
+        print("Restarting the management server: %s" %
+              self.options.restart_command)
+        if subprocess.call(self.options.restart_command, shell=True) != 0:
+            raise Exception("Failed to restart the management server with %s"
+                            % self.options.restart_command)
+        deadline = time.time() + self.options.restart_timeout
+        while True:
+            time.sleep(5)
+            try:
+                self.connect()
+                cmd = listHosts.listHostsCmd()
+                cmd.clusterid = self.cluster.id
+                cmd.type = "Routing"
+                hosts = self.apiclient.listHosts(cmd) or []
+                if all(h.state == "Up" for h in hosts):
+                    return
+            except Exception as e:
+                if self.options.verbose:
+                    print("Waiting for the management server: %s" %
+                          GetDetailExceptionInfo(e))
+            if time.time() >= deadline:
+                raise Exception("The management server is not back after %ds"
+                                % self.options.restart_timeout)
+
+    def scenarioPing(self):
+        '''
+        The simulated hosts ping at the interval the management server hands
+        them when they connect, and the server reads ping.interval only when
+        it starts.  With a restart command the interval is lowered and the
+        server restarted, list calls then run against the server for the
+        configured time before the interval is restored with another
+        restart.  Without one the list calls run at the interval the server
+        was started with.
+        '''
+        until = lambda: time.time() + self.options.ping_duration
+        if not self.options.restart_command:
+            print("ping: no --restart-command, running at ping.interval=%s "
+                  "as set when the management server started" %
+                  self.getConfiguration("ping.interval"))
+            self.run("ping", self.listTasks() * self.options.threads,
+                     until=until())
+            return
+        previous = self.getConfiguration("ping.interval")
+        self.setConfiguration("ping.interval", str(self.options.ping_interval))
+        try:
+            self.restartServer()
+            self.run("ping", self.listTasks() * self.options.threads,
+                     until=until())
+        finally:
+            if previous is not None:
+                self.setConfiguration("ping.interval", previous)
+                self.restartServer()
+
+    def scenarioStop(self):
+        def stop(vmid):
+            def task():
+                cmd = stopVirtualMachine.stopVirtualMachineCmd()
+                cmd.id = vmid
+                cmd.forced = True
+                self.apiclient.stopVirtualMachine(cmd)
+            return task
+        self.run("stop", [stop(vm) for vm in self.vms])
+
+    def scenarioDestroy(self):
+        def destroy(vmid):
+            def task():
+                cmd = destroyVirtualMachine.destroyVirtualMachineCmd()
+                cmd.id = vmid
+                cmd.expunge = True
+                self.apiclient.destroyVirtualMachine(cmd)
+            return task
+        self.run("destroy", [destroy(vm) for vm in self.vms])
+        self.vms = []
+
+    def execute(self, scenarios):
+        self.connect()
+        for scenario in scenarios:
+            getattr(self, "scenario" + scenario.capitalize())()
+        print("\n==== Benchmark Results ====")
+        for result in self.results:
+            print(result.report())
+
+
+def main(args=sys.argv[1:]):
+    parser = OptionParser()
+    parser.add_option("-c", "--config", dest="config",
+                      default="setup/dev/advanced.cfg",
+                      help="marvin config of the simulator zone")
+    parser.add_option("-z", "--zone", dest="zone", default=None,
+                      help="name of the zone, the first one by default")
+    parser.add_option("--hosts", dest="hosts", type="int", default=100,
+                      help="number of simulated hosts to register")
+    parser.add_option("--vms", dest="vms", type="int", default=500,
+                      help="number of vms to deploy")
+    parser.add_option("--network", dest="network", default=None,
+                      help="network to deploy the vms in")
+    parser.add_option("--threads", dest="threads", type="int", default=20,
+                      help="number of concurrent api callers")
+    parser.add_option("--list-calls", dest="list_calls", type="int",
+                      default=200, help="rounds of list api calls")
+    parser.add_option("--page-size", dest="page_size", type="int",
+                      default=500, help="page size of the list api calls")
+    parser.add_option("--ping-interval", dest="ping_interval", type="int",
+                      default=5, help="ping interval during the ping storm")
+    parser.add_option("--ping-duration", dest="ping_duration", type="int",
+                      default=120, help="seconds the ping storm lasts")
+    parser.add_option("--restart-command", dest="restart_command",
+                      default=None,
+                      help="shell command restarting the management server, "
+                           "needed for the ping storm to use --ping-interval")
+    parser.add_option("--restart-timeout", dest="restart_timeout",
+                      type="int", default=600,
+                      help="seconds to wait for the management server and "
+                           "its hosts after a restart")
+    parser.add_option("-s", "--scenarios", dest="scenarios",
+                      default=",".join(SCENARIOS),
+                      help="comma separated scenarios out of %s" %
+                           ",".join(SCENARIOS))
+    parser.add_option("-v", "--verbose", dest="verbose",
+                      action="store_true", default=False,
+                      help="print the failed calls")
+    (options, args) = parser.parse_args(args)
+
+    scenarios = [s.strip() for s in options.scenarios.split(",") if s.strip()]
+    for scenario in scenarios:
+        if scenario not in SCENARIOS:
+            parser.error("Unknown scenario %s" % scenario)
+    Benchmark(options).execute(scenarios)
+
+
+if __name__ == "__main__":
+    main()
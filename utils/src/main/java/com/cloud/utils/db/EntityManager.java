@@ -20,7 +20,9 @@
 package com.cloud.utils.db;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Generic Entity Manager to retrieve database objects.
@@ -55,6 +57,18 @@ public interface EntityManager {
      */
     public <T> T findByUuidIncludingRemoved(Class<T> entityType, String uuid);
 
+    /**
+     * Finds several entities, including removed ones, with one query per batch of uuids.
+     * @return the entities found keyed by their uuid.
+     */
+    public <T> Map<String, ? extends T> findByUuidsIncludingRemoved(Class<T> entityType, Collection<String> uuids);
+
+    /**
+     * Finds several entities with one query per batch of ids.
+     * @return the entities found keyed by their id.
+     */
+    public <T, K extends Serializable> Map<K, ? extends T> findByIds(Class<T> entityType, Collection<K> ids);
+
     /**
      * Finds an entity by external id which is always String
      * @param <T> entity class
@@ -0,0 +1,176 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils.net;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.googlecode.ipv6.IPv6Address;
+
+/**
+ * Keeps track of the addresses in use in a contiguous IPv4 or IPv6 range with
+ * one bit per address, so that finding a free address does not require
+ * loading and comparing every used address.  A /16 takes 8KB.
+ *
+ * Addresses outside of the range are ignored.  The bitmap is thread safe.
+ */
+public class IpAddressBitmap {
+    /**
+     * Largest range a bitmap is created for (2MB of bits).
+     */
+    public static final int MAX_SIZE = 1 << 24;
+
+    private final long _first4;
+    private final IPv6Address _first6;
+    private final BigInteger _first6Int;
+    private final int _size;
+    private final BitSet _used;
+    private int _usedCount;
+
+    private IpAddressBitmap(long first4, IPv6Address first6, int size) {
+        _first4 = first4;
+        _first6 = first6;
+        _first6Int = first6 != null ? new BigInteger(1, first6.toByteArray()) : null;
+        _size = size;
+        _used = new BitSet(size);
+    }
+
+    /**
+     * @return bitmap for the addresses from first to last included, null if
+     *         the range is empty or larger than {@link #MAX_SIZE}.
+     */
+    public static IpAddressBitmap forIp4Range(long first, long last) {
+        if (last < first || last - first + 1 > MAX_SIZE) {
+            return null;
+        }
+        return new IpAddressBitmap(first, null, (int)(last - first + 1));
+    }
+
+    /**
+     * @param ip6Range range in the start-end format of vlan ip6 ranges.
+     * @return bitmap for the range, null if the range is invalid or larger
+     *         than {@link #MAX_SIZE}.
+     */
+    public static IpAddressBitmap forIp6Range(String ip6Range) {
+        final BigInteger count = NetUtils.countIp6InRange(ip6Range);
+        if (count == null || count.compareTo(BigInteger.valueOf(MAX_SIZE)) > 0) {
+            return null;
+        }
+        return new IpAddressBitmap(0, IPv6Address.fromString(ip6Range.split("-")[0]), count.intValue());
+    }
+
+    public boolean isIp6() {
+        return _first6 != null;
+    }
+
+    public int getSize() {
+        return _size;
+    }
+
+    public synchronized int getFreeCount() {
+        return _size - _usedCount;
+    }
+
+    protected int toOffset(String ip) {
+        long offset;
+        try {
+            if (_first6 != null) {
+                offset = new BigInteger(1, IPv6Address.fromString(ip).toByteArray()).subtract(_first6Int).longValue();
+            } else {
+                offset = NetUtils.ip2Long(ip) - _first4;
+            }
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        return offset >= 0 && offset < _size ? (int)offset : -1;
+    }
+
+    protected String toAddress(int offset) {
+        return _first6 != null ? _first6.add(offset).toString() : NetUtils.long2Ip(_first4 + offset);
+    }
+
+    public synchronized boolean isUsed(String ip) {
+        final int offset = toOffset(ip);
+        return offset >= 0 && _used.get(offset);
+    }
+
+    /**
+     * @return true if the address is in the range and was free.
+     */
+    public synchronized boolean markUsed(String ip) {
+        final int offset = toOffset(ip);
+        if (offset < 0 || _used.get(offset)) {
+            return false;
+        }
+        _used.set(offset);
+        _usedCount++;
+        return true;
+    }
+
+    /**
+     * @return true if the address is in the range and was in use.
+     */
+    public synchronized boolean markFree(String ip) {
+        final int offset = toOffset(ip);
+        if (offset < 0 || !_used.get(offset)) {
+            return false;
+        }
+        _used.clear(offset);
+        _usedCount--;
+        return true;
+    }
+
+    /**
+     * Picks a free address, starting the search at a random place in the
+     * range, and marks it as used.
+     *
+     * @return the address, null if all of them are in use.
+     */
+    public synchronized String allocate(Random random) {
+        if (_usedCount >= _size) {
+            return null;
+        }
+        int offset = _used.nextClearBit(random.nextInt(_size));
+        if (offset >= _size) {
+            offset = _used.nextClearBit(0);
+        }
+        _used.set(offset);
+        _usedCount++;
+        return toAddress(offset);
+    }
+
+    /**
+     * @return up to max free IPv4 addresses from the start of the range, as
+     *         longs.
+     */
+    public synchronized Set<Long> getFreeIp4s(int max) {
+        final Set<Long> result = new TreeSet<Long>();
+        if (_first6 != null) {
+            return result;
+        }
+        for (int offset = _used.nextClearBit(0); offset < _size && result.size() < max; offset = _used.nextClearBit(offset + 1)) {
+            result.add(_first4 + offset);
+        }
+        return result;
+    }
+}
@@ -578,6 +578,19 @@ public class NetUtils {
         return result;
     }
 
+    /**
+     * @return a bitmap of the host addresses of the cidr, that is without the
+     *         network and broadcast addresses, all of them free.
+     */
+    public static IpAddressBitmap getIpBitmapFromCidr(final String cidr, final long size) {
+        assert size < MAX_CIDR : "You do know this is not for ipv6 right?  Keep it smaller than 32 but you have " + size;
+        final long ip = ip2Long(cidr);
+        final long startNetMask = ip2Long(getCidrNetmask(size));
+        final long start = (ip & startNetMask) + 1;
+        final long end = (((start >> MAX_CIDR - size) + 1) << MAX_CIDR - size) - 2;
+        return IpAddressBitmap.forIp4Range(start, end);
+    }
+
     /**
      * Given a cidr, this method returns an ip address within the range but
      * is not in the avoid list.
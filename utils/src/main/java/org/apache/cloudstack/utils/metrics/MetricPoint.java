@@ -0,0 +1,76 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.apache.cloudstack.utils.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of values measured of one thing at one point in time, e.g. the cpu,
+ * network and disk stats of a vm.  The tags identify the thing measured, in
+ * Graphite they become part of the key.
+ */
+public class MetricPoint {
+    private final String name;
+    private final Map<String, String> tags = new LinkedHashMap<String, String>();
+    private final Map<String, Number> fields = new LinkedHashMap<String, Number>();
+    private final long timestamp;
+
+    /**
+     * @param name the name of the measurement, e.g. cloudstack.stats.instances
+     * @param timestamp milliseconds since epoch
+     */
+    public MetricPoint(String name, long timestamp) {
+        this.name = name;
+        this.timestamp = timestamp;
+    }
+
+    public MetricPoint(String name) {
+        this(name, System.currentTimeMillis());
+    }
+
+    public MetricPoint tag(String key, String value) {
+        tags.put(key, value);
+        return this;
+    }
+
+    public MetricPoint field(String key, Number value) {
+        if (value != null) {
+            fields.put(key, value);
+        }
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    public Map<String, Number> getFields() {
+        return fields;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
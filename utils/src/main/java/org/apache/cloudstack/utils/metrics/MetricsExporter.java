@@ -0,0 +1,322 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.apache.cloudstack.utils.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.cloud.utils.backoff.BackoffAlgorithm;
+
+/**
+ * MetricsExporter sends metric points to an external collector, e.g.
+ * Graphite or InfluxDB, from a thread of its own.  The points are put on a
+ * bounded queue, so a slow or unreachable collector never holds up whoever
+ * measures them; when the queue is full new points are dropped and counted.
+ * The sending thread drains the queue in batches and writes every batch with
+ * as few writes as possible, reusing its buffers from batch to batch.  A batch
+ * that cannot be written is retried after the back-off, and dropped once the
+ * retries are used up.
+ */
+public class MetricsExporter {
+    private static final Logger s_logger = Logger.getLogger(MetricsExporter.class);
+
+    public enum Transport {
+        UDP, TCP
+    }
+
+    // stay below the mtu so that datagrams are not fragmented
+    static final int MAX_DATAGRAM_SIZE = 1400;
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private final MetricsFormat _format;
+    private final Transport _transport;
+    private final String _host;
+    private final int _port;
+    private final String _prefix;
+    private final BlockingQueue<MetricPoint> _queue;
+    private final int _batchSize;
+    private final BackoffAlgorithm _backoff;
+    private final int _retries;
+
+    private final AtomicLong _sent = new AtomicLong();
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+
+    // only used from the sending thread
+    private final List<MetricPoint> _batch;
+    private final StringBuilder _lines = new StringBuilder(16 * 1024);
+    private final CharsetEncoder _encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer _bytes = ByteBuffer.allocate(16 * 1024);
+    private DatagramSocket _datagramSocket;
+    private Socket _socket;
+    private OutputStream _socketOut;
+
+    private Thread _thread;
+    private volatile boolean _running;
+
+    /**
+     * @param prefix prepended to the name of every point, ends with a dot if set
+     * @param queueSize the number of points that may wait to be sent
+     * @param batchSize the maximum number of points sent in one batch
+     * @param backoff waited on before a failed batch is retried
+     * @param retries how often a failed batch is retried before it is dropped
+     */
+    public MetricsExporter(MetricsFormat format, Transport transport, String host, int port, String prefix, int queueSize, int batchSize, BackoffAlgorithm backoff,
+            int retries) {
+        _format = format;
+        _transport = transport;
+        _host = host;
+        _port = port;
+        _prefix = prefix == null ? "" : prefix;
+        _queue = new ArrayBlockingQueue<MetricPoint>(queueSize);
+        _batchSize = batchSize;
+        _batch = new ArrayList<MetricPoint>(batchSize);
+        _backoff = backoff;
+        _retries = retries;
+    }
+
+    public synchronized void start() {
+        if (_thread != null) {
+            return;
+        }
+        _running = true;
+        _thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runExporter();
+            }
+        }, "MetricsExporter-" + _format.name().toLowerCase());
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /**
+     * Stops the exporter after it made an attempt to send the points still
+     * queued, waiting at most the given time for it.
+     */
+    public synchronized void stop(long waitMs) {
+        if (_thread == null) {
+            return;
+        }
+        _running = false;
+        _thread.interrupt();
+        try {
+            _thread.join(waitMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _thread = null;
+    }
+
+    /**
+     * Queues the point to be sent.
+     *
+     * @return false if the queue is full and the point was dropped.
+     */
+    public boolean offer(MetricPoint point) {
+        if (_queue.offer(point)) {
+            return true;
+        }
+        _dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return the number of points sent.
+     */
+    public long getSent() {
+        return _sent.get();
+    }
+
+    /**
+     * @return the number of points dropped because the queue was full.
+     */
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    /**
+     * @return the number of points dropped because they could not be sent.
+     */
+    public long getFailed() {
+        return _failed.get();
+    }
+
+    /**
+     * @return the number of points waiting to be sent.
+     */
+    public int getQueued() {
+        return _queue.size();
+    }
+
+    private void runExporter() {
+        try {
+            while (_running || !_queue.isEmpty()) {
+                final MetricPoint first;
+                try {
+                    first = _queue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (first == null) {
+                    continue;
+                }
+                _batch.clear();
+                _batch.add(first);
+                _queue.drainTo(_batch, _batchSize - 1);
+                send(_batch);
+            }
+        } catch (Throwable t) {
+            s_logger.error("Metrics exporter to " + _host + ":" + _port + " stopped unexpectedly", t);
+        } finally {
+            close();
+        }
+    }
+
+    private void send(List<MetricPoint> batch) {
+        _lines.setLength(0);
+        for (MetricPoint point : batch) {
+            _format.append(_lines, _prefix, point);
+        }
+        encode();
+
+        for (int attempt = 0;; attempt++) {
+            try {
+                if (_transport == Transport.TCP) {
+                    writeStream();
+                } else {
+                    writeDatagrams();
+                }
+                _sent.addAndGet(batch.size());
+                _backoff.reset();
+                return;
+            } catch (IOException e) {
+                close();
+                if (attempt >= _retries || !_running) {
+                    _failed.addAndGet(batch.size());
+                    s_logger.debug("Dropping " + batch.size() + " metric points, failed to send them to " + _host + ":" + _port + ": " + e.getMessage());
+                    return;
+                }
+                _backoff.waitBeforeRetry();
+            }
+        }
+    }
+
+    private void encode() {
+        final CharBuffer chars = CharBuffer.wrap(_lines);
+        _encoder.reset();
+        _bytes.clear();
+        while (true) {
+            CoderResult result = _encoder.encode(chars, _bytes, true);
+            if (!result.isOverflow()) {
+                result = _encoder.flush(_bytes);
+            }
+            if (!result.isOverflow()) {
+                break;
+            }
+            final ByteBuffer bigger = ByteBuffer.allocate(_bytes.capacity() * 2);
+            _bytes.flip();
+            bigger.put(_bytes);
+            _bytes = bigger;
+        }
+        _bytes.flip();
+    }
+
+    private void writeStream() throws IOException {
+        if (_socket == null) {
+            _socket = new Socket();
+            _socket.connect(new InetSocketAddress(_host, _port), CONNECT_TIMEOUT);
+            _socket.setSoTimeout(CONNECT_TIMEOUT);
+            _socketOut = _socket.getOutputStream();
+        }
+        _socketOut.write(_bytes.array(), 0, _bytes.limit());
+        _socketOut.flush();
+    }
+
+    /**
+     * Sends the lines in as few datagrams as possible without splitting a
+     * line over two datagrams.
+     */
+    private void writeDatagrams() throws IOException {
+        if (_datagramSocket == null) {
+            _datagramSocket = new DatagramSocket();
+        }
+        // resolved every batch, so that a collector that moves is followed
+        final InetAddress address = InetAddress.getByName(_host);
+        final byte[] bytes = _bytes.array();
+        final int limit = _bytes.limit();
+        final DatagramPacket packet = new DatagramPacket(bytes, 0, 0, address, _port);
+        int start = 0;
+        while (start < limit) {
+            int end = Math.min(start + MAX_DATAGRAM_SIZE, limit);
+            if (end < limit) {
+                int lastLine = end;
+                while (lastLine > start && bytes[lastLine - 1] != '\n') {
+                    lastLine--;
+                }
+                if (lastLine > start) {
+                    end = lastLine;
+                } else {
+                    // a single line longer than a datagram, send it whole
+                    while (end < limit && bytes[end - 1] != '\n') {
+                        end++;
+                    }
+                }
+            }
+            packet.setData(bytes, start, end - start);
+            _datagramSocket.send(packet);
+            start = end;
+        }
+    }
+
+    private void close() {
+        if (_datagramSocket != null) {
+            _datagramSocket.close();
+            _datagramSocket = null;
+        }
+        if (_socket != null) {
+            try {
+                _socket.close();
+            } catch (IOException e) {
+                s_logger.trace("Ignoring error closing the metrics socket", e);
+            }
+            _socket = null;
+            _socketOut = null;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.apache.cloudstack.utils.metrics;
+
+import java.util.Map;
+
+/**
+ * The wire formats metric points can be written in.  Every line a format
+ * appends ends with a newline, so lines can be batched into one write.
+ */
+public enum MetricsFormat {
+    /**
+     * The Graphite plaintext protocol, one line per field:
+     * {@code <prefix><name>.<tag values>.<field> <value> <seconds>}
+     */
+    GRAPHITE {
+        @Override
+        public void append(StringBuilder out, String prefix, MetricPoint point) {
+            final long seconds = point.getTimestamp() / 1000;
+            for (Map.Entry<String, Number> field : point.getFields().entrySet()) {
+                if (!isFinite(field.getValue())) {
+                    continue;
+                }
+                out.append(prefix).append(point.getName());
+                for (String tag : point.getTags().values()) {
+                    out.append('.').append(tag);
+                }
+                out.append('.').append(field.getKey()).append(' ').append(field.getValue()).append(' ').append(seconds).append('\n');
+            }
+        }
+    },
+
+    /**
+     * The InfluxDB line protocol, one line per point:
+     * {@code <prefix><name>,<tag>=<value> <field>=<value>,... <nanoseconds>}
+     */
+    INFLUXDB {
+        @Override
+        public void append(StringBuilder out, String prefix, MetricPoint point) {
+            final int start = out.length();
+            escape(out, prefix + point.getName(), false);
+            for (Map.Entry<String, String> tag : point.getTags().entrySet()) {
+                out.append(',');
+                escape(out, tag.getKey(), true);
+                out.append('=');
+                escape(out, tag.getValue(), true);
+            }
+            char separator = ' ';
+            for (Map.Entry<String, Number> field : point.getFields().entrySet()) {
+                final Number value = field.getValue();
+                if (!isFinite(value)) {
+                    continue;
+                }
+                out.append(separator);
+                separator = ',';
+                escape(out, field.getKey(), true);
+                out.append('=').append(value);
+                if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                    out.append('i');
+                }
+            }
+            if (separator == ' ') {
+                // a point without fields is not valid line protocol
+                out.setLength(start);
+                return;
+            }
+            out.append(' ').append(point.getTimestamp() * 1000000L).append('\n');
+        }
+
+        private void escape(StringBuilder out, String value, boolean escapeEquals) {
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == ',' || c == ' ' || (escapeEquals && c == '=')) {
+                    out.append('\\');
+                }
+                out.append(c);
+            }
+        }
+    };
+
+    /**
+     * Appends the lines of the point to the buffer.
+     *
+     * @param prefix prepended to the name of the point, ends with a dot if set
+     */
+    public abstract void append(StringBuilder out, String prefix, MetricPoint point);
+
+    private static boolean isFinite(Number value) {
+        final double d = value.doubleValue();
+        return !Double.isNaN(d) && !Double.isInfinite(d);
+    }
+}
@@ -0,0 +1,108 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IpAddressBitmapTest {
+
+    @Test
+    public void testBitmapFromCidr() {
+        final IpAddressBitmap bitmap = NetUtils.getIpBitmapFromCidr("10.1.1.0", 24);
+        assertEquals(254, bitmap.getSize());
+        assertEquals(254, bitmap.getFreeCount());
+        final Set<Long> free = bitmap.getFreeIp4s(255);
+        assertEquals(NetUtils.getAllIpsFromCidr("10.1.1.0", 24, new HashSet<Long>()), free);
+        assertTrue(free.contains(NetUtils.ip2Long("10.1.1.1")));
+        assertTrue(free.contains(NetUtils.ip2Long("10.1.1.254")));
+        assertFalse(free.contains(NetUtils.ip2Long("10.1.1.255")));
+    }
+
+    @Test
+    public void testLargeCidr() {
+        final IpAddressBitmap bitmap = NetUtils.getIpBitmapFromCidr("10.1.0.0", 16);
+        assertEquals(65534, bitmap.getSize());
+        assertEquals(255, bitmap.getFreeIp4s(255).size());
+    }
+
+    @Test
+    public void testMarkUsedAndFree() {
+        final IpAddressBitmap bitmap = NetUtils.getIpBitmapFromCidr("10.1.1.0", 24);
+        assertTrue(bitmap.markUsed("10.1.1.1"));
+        assertFalse(bitmap.markUsed("10.1.1.1"));
+        assertFalse(bitmap.markUsed("10.1.2.1"));
+        assertTrue(bitmap.isUsed("10.1.1.1"));
+        assertEquals(253, bitmap.getFreeCount());
+        assertFalse(bitmap.getFreeIp4s(255).contains(NetUtils.ip2Long("10.1.1.1")));
+
+        assertTrue(bitmap.markFree("10.1.1.1"));
+        assertFalse(bitmap.markFree("10.1.1.1"));
+        assertFalse(bitmap.isUsed("10.1.1.1"));
+        assertEquals(254, bitmap.getFreeCount());
+    }
+
+    @Test
+    public void testAllocateUntilFull() {
+        final IpAddressBitmap bitmap = NetUtils.getIpBitmapFromCidr("192.168.0.0", 28);
+        final Random random = new Random(1);
+        final Set<String> allocated = new HashSet<String>();
+        for (int i = 0; i < 14; i++) {
+            final String ip = bitmap.allocate(random);
+            assertNotNull(ip);
+            assertTrue(NetUtils.isIpWithInCidrRange(ip, "192.168.0.0/28"));
+            assertTrue(allocated.add(ip));
+        }
+        assertEquals(0, bitmap.getFreeCount());
+        assertNull(bitmap.allocate(random));
+
+        bitmap.markFree("192.168.0.7");
+        assertEquals("192.168.0.7", bitmap.allocate(random));
+    }
+
+    @Test
+    public void testIp6Range() {
+        final IpAddressBitmap bitmap = IpAddressBitmap.forIp6Range("2001:db8::10-2001:db8::1f");
+        assertTrue(bitmap.isIp6());
+        assertEquals(16, bitmap.getSize());
+        assertTrue(bitmap.markUsed("2001:db8::10"));
+        assertFalse(bitmap.markUsed("2001:db8::20"));
+        final Random random = new Random(1);
+        for (int i = 0; i < 15; i++) {
+            final String ip = bitmap.allocate(random);
+            assertTrue(NetUtils.isIp6InRange(ip, "2001:db8::10-2001:db8::1f"));
+        }
+        assertNull(bitmap.allocate(random));
+    }
+
+    @Test
+    public void testIp6RangeTooLarge() {
+        assertNull(IpAddressBitmap.forIp6Range("2001:db8::-2001:db8::ffff:ffff"));
+    }
+}
@@ -0,0 +1,154 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package org.apache.cloudstack.utils.metrics;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cloud.utils.backoff.impl.ConstantTimeBackoff;
+
+public class MetricsExporterTest {
+
+    private static ConstantTimeBackoff backoff() {
+        final Map<String, Object> params = new HashMap<String, Object>();
+        params.put("seconds", "0");
+        final ConstantTimeBackoff backoff = new ConstantTimeBackoff();
+        backoff.configure("MetricsExporterTest", params);
+        return backoff;
+    }
+
+    private static MetricPoint point(int i) {
+        return new MetricPoint("cloudstack.stats.instances", 1500000000000L).tag("instance", "vm-" + i).field("cpu.num", 2).field("cpu.utilization", 12.5);
+    }
+
+    @Test
+    public void testGraphiteFormat() {
+        final StringBuilder out = new StringBuilder();
+        MetricsFormat.GRAPHITE.append(out, "cs.", point(1).field("memory.target_kbs", Double.NaN));
+        Assert.assertEquals("cs.cloudstack.stats.instances.vm-1.cpu.num 2 1500000000\n"
+                + "cs.cloudstack.stats.instances.vm-1.cpu.utilization 12.5 1500000000\n", out.toString());
+    }
+
+    @Test
+    public void testInfluxDbFormat() {
+        final StringBuilder out = new StringBuilder();
+        MetricsFormat.INFLUXDB.append(out, "", point(1).tag("zone", "zone one,a=b"));
+        MetricsFormat.INFLUXDB.append(out, "", new MetricPoint("empty").tag("instance", "vm-2"));
+        Assert.assertEquals("cloudstack.stats.instances,instance=vm-1,zone=zone\\ one\\,a\\=b cpu.num=2i,cpu.utilization=12.5 1500000000000000000\n", out.toString());
+    }
+
+    @Test
+    public void testUdpBatchesStayWithinADatagram() throws Exception {
+        try (DatagramSocket server = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(5000);
+            final MetricsExporter exporter = new MetricsExporter(MetricsFormat.GRAPHITE, MetricsExporter.Transport.UDP, "127.0.0.1", server.getLocalPort(), "", 1000, 100,
+                    backoff(), 0);
+            for (int i = 0; i < 200; i++) {
+                Assert.assertTrue(exporter.offer(point(i)));
+            }
+            exporter.start();
+
+            final List<String> lines = new ArrayList<String>();
+            final byte[] buffer = new byte[65536];
+            while (lines.size() < 400) {
+                final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                server.receive(packet);
+                Assert.assertTrue(packet.getLength() <= MetricsExporter.MAX_DATAGRAM_SIZE);
+                final String datagram = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+                Assert.assertTrue(datagram.endsWith("\n"));
+                for (String line : datagram.split("\n")) {
+                    lines.add(line);
+                }
+            }
+            exporter.stop(5000);
+
+            Assert.assertEquals(400, lines.size());
+            Assert.assertEquals("cloudstack.stats.instances.vm-0.cpu.num 2 1500000000", lines.get(0));
+            Assert.assertEquals(200, exporter.getSent());
+            Assert.assertEquals(0, exporter.getDropped());
+        }
+    }
+
+    @Test
+    public void testTcp() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(5000);
+            final MetricsExporter exporter = new MetricsExporter(MetricsFormat.INFLUXDB, MetricsExporter.Transport.TCP, "127.0.0.1", server.getLocalPort(), "", 1000, 100,
+                    backoff(), 0);
+            exporter.start();
+            for (int i = 0; i < 250; i++) {
+                exporter.offer(point(i));
+            }
+
+            try (Socket client = server.accept()) {
+                client.setSoTimeout(5000);
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+                for (int i = 0; i < 250; i++) {
+                    Assert.assertEquals("cloudstack.stats.instances,instance=vm-" + i + " cpu.num=2i,cpu.utilization=12.5 1500000000000000000", reader.readLine());
+                }
+            }
+            exporter.stop(5000);
+            Assert.assertEquals(250, exporter.getSent());
+        }
+    }
+
+    @Test
+    public void testPointsAreDroppedWhenTheQueueIsFull() {
+        final MetricsExporter exporter = new MetricsExporter(MetricsFormat.GRAPHITE, MetricsExporter.Transport.UDP, "127.0.0.1", 2003, "", 2, 100, backoff(), 0);
+        Assert.assertTrue(exporter.offer(point(1)));
+        Assert.assertTrue(exporter.offer(point(2)));
+        Assert.assertFalse(exporter.offer(point(3)));
+        Assert.assertEquals(1, exporter.getDropped());
+        Assert.assertEquals(2, exporter.getQueued());
+    }
+
+    @Test
+    public void testBatchesAreDroppedAfterTheRetries() throws Exception {
+        final int port;
+        try (ServerSocket unused = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = unused.getLocalPort();
+        }
+        final MetricsExporter exporter = new MetricsExporter(MetricsFormat.GRAPHITE, MetricsExporter.Transport.TCP, "127.0.0.1", port, "", 1000, 100, backoff(), 2);
+        for (int i = 0; i < 10; i++) {
+            exporter.offer(point(i));
+        }
+        exporter.start();
+        for (int i = 0; i < 50 && exporter.getFailed() < 10; i++) {
+            Thread.sleep(100);
+        }
+        exporter.stop(5000);
+
+        Assert.assertEquals(10, exporter.getFailed());
+        Assert.assertEquals(0, exporter.getSent());
+    }
+}
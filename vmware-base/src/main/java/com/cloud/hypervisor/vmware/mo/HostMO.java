@@ -652,6 +652,27 @@ public class HostMO extends BaseMO implements VmwareHypervisorHost {
             s_logger.trace("vCenter API trace - retrieveProperties() for VM properties. target MOR: " + _mor.getValue() + ", properties: " +
                     new Gson().toJson(propertyPaths));
 
+        List<PropertyFilterSpec> pfSpecArr = new ArrayList<PropertyFilterSpec>();
+        pfSpecArr.add(getVmPropertyFilterSpec(propertyPaths));
+
+        List<ObjectContent> properties = _context.getService().retrieveProperties(_context.getPropertyCollector(), pfSpecArr);
+
+        if (s_logger.isTraceEnabled())
+            s_logger.trace("vCenter API trace - retrieveProperties() done");
+        return properties.toArray(new ObjectContent[properties.size()]);
+    }
+
+    /**
+     * Returns the same properties as getVmPropertiesOnHyperHost, but only
+     * fetches the changes since the previous call from vCenter.
+     *
+     * @see HostVmPropertyTracker
+     */
+    public ObjectContent[] getTrackedVmPropertiesOnHyperHost(String[] propertyPaths) throws Exception {
+        return HostVmPropertyTracker.get(_context, _mor, propertyPaths, getVmPropertyFilterSpec(propertyPaths)).getVmProperties();
+    }
+
+    private PropertyFilterSpec getVmPropertyFilterSpec(String[] propertyPaths) {
         PropertySpec pSpec = new PropertySpec();
         pSpec.setType("VirtualMachine");
         pSpec.getPathSet().addAll(Arrays.asList(propertyPaths));
@@ -669,14 +690,7 @@ public class HostMO extends BaseMO implements VmwareHypervisorHost {
         PropertyFilterSpec pfSpec = new PropertyFilterSpec();
         pfSpec.getPropSet().add(pSpec);
         pfSpec.getObjectSet().add(oSpec);
-        List<PropertyFilterSpec> pfSpecArr = new ArrayList<PropertyFilterSpec>();
-        pfSpecArr.add(pfSpec);
-
-        List<ObjectContent> properties = _context.getService().retrieveProperties(_context.getPropertyCollector(), pfSpecArr);
-
-        if (s_logger.isTraceEnabled())
-            s_logger.trace("vCenter API trace - retrieveProperties() done");
-        return properties.toArray(new ObjectContent[properties.size()]);
+        return pfSpec;
     }
 
     @Override
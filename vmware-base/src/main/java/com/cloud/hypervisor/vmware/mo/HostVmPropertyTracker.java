@@ -0,0 +1,193 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.vmware.mo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.cloud.hypervisor.vmware.util.VmwareContext;
+import com.vmware.vim25.DynamicProperty;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectContent;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.ObjectUpdateKind;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyChangeOp;
+import com.vmware.vim25.PropertyFilterSpec;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.UpdateSet;
+import com.vmware.vim25.VimPortType;
+import com.vmware.vim25.WaitOptions;
+
+/**
+ * HostVmPropertyTracker keeps the properties of the vms on a host up to date
+ * through a property collector session of its own, so that vCenter only has
+ * to send what changed since the previous call instead of the properties of
+ * every vm.  The session lives as long as the vCenter session of the context
+ * it is kept on; the first call after a reconnect, or after the session
+ * failed, fetches the properties of all the vms again.
+ */
+public class HostVmPropertyTracker {
+    private static final Logger s_logger = Logger.getLogger(HostVmPropertyTracker.class);
+
+    private static final String STOCK_OBJECT_PREFIX = "HostVmPropertyTracker.";
+
+    private final VmwareContext _context;
+    private final PropertyFilterSpec _filterSpec;
+
+    private ManagedObjectReference _collector;
+    private String _version;
+    // vm mor value -> vm mor and its properties
+    private final Map<String, ManagedObjectReference> _vms = new HashMap<String, ManagedObjectReference>();
+    private final Map<String, Map<String, Object>> _properties = new HashMap<String, Map<String, Object>>();
+
+    HostVmPropertyTracker(VmwareContext context, PropertyFilterSpec filterSpec) {
+        _context = context;
+        _filterSpec = filterSpec;
+    }
+
+    /**
+     * @return the tracker of the vm properties of the host kept on the
+     *         context, a new one if there is none yet.
+     */
+    public static HostVmPropertyTracker get(VmwareContext context, ManagedObjectReference hostMor, String[] propertyPaths, PropertyFilterSpec filterSpec) {
+        final String name = STOCK_OBJECT_PREFIX + hostMor.getValue() + "." + String.join(",", propertyPaths);
+        synchronized (context) {
+            HostVmPropertyTracker tracker = context.getStockObject(name);
+            if (tracker == null) {
+                tracker = new HostVmPropertyTracker(context, filterSpec);
+                context.registerStockObject(name, tracker);
+            }
+            return tracker;
+        }
+    }
+
+    /**
+     * Fetches the changes since the previous call, does not wait for changes.
+     *
+     * @return the properties of all the vms on the host, as a full
+     *         RetrieveProperties would return them.
+     * @throws Exception if the changes cannot be fetched, the next call then
+     *         starts over with a new session.
+     */
+    public synchronized ObjectContent[] getVmProperties() throws Exception {
+        try {
+            if (_collector == null) {
+                open();
+            }
+            update();
+        } catch (Exception e) {
+            close();
+            throw e;
+        }
+
+        final List<ObjectContent> contents = new ArrayList<ObjectContent>(_properties.size());
+        for (Map.Entry<String, Map<String, Object>> vm : _properties.entrySet()) {
+            final ObjectContent content = new ObjectContent();
+            content.setObj(_vms.get(vm.getKey()));
+            for (Map.Entry<String, Object> property : vm.getValue().entrySet()) {
+                final DynamicProperty dynamicProperty = new DynamicProperty();
+                dynamicProperty.setName(property.getKey());
+                dynamicProperty.setVal(property.getValue());
+                content.getPropSet().add(dynamicProperty);
+            }
+            contents.add(content);
+        }
+        return contents.toArray(new ObjectContent[contents.size()]);
+    }
+
+    private void open() throws Exception {
+        final VimPortType service = _context.getService();
+        _collector = service.createPropertyCollector(_context.getPropertyCollector());
+        service.createFilter(_collector, _filterSpec, false);
+        // an empty version returns the current properties of all the vms
+        _version = "";
+        _vms.clear();
+        _properties.clear();
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Opened vm property collector " + _collector.getValue() + " on " + _context.getServerAddress());
+        }
+    }
+
+    /**
+     * Drops the session, the next call starts over with all the properties.
+     */
+    public synchronized void close() {
+        if (_collector != null) {
+            try {
+                _context.getService().destroyPropertyCollector(_collector);
+            } catch (Exception e) {
+                s_logger.trace("Ignoring failure to destroy the property collector of a lost session", e);
+            }
+        }
+        _collector = null;
+        _version = null;
+        _vms.clear();
+        _properties.clear();
+    }
+
+    private void update() throws Exception {
+        final WaitOptions options = new WaitOptions();
+        // return at once when nothing changed
+        options.setMaxWaitSeconds(0);
+        while (true) {
+            final UpdateSet updateSet = _context.getService().waitForUpdatesEx(_collector, _version, options);
+            if (updateSet == null) {
+                return;
+            }
+            _version = updateSet.getVersion();
+            if (updateSet.getFilterSet() != null) {
+                for (PropertyFilterUpdate filterUpdate : updateSet.getFilterSet()) {
+                    for (ObjectUpdate objectUpdate : filterUpdate.getObjectSet()) {
+                        apply(objectUpdate);
+                    }
+                }
+            }
+            if (!Boolean.TRUE.equals(updateSet.isTruncated())) {
+                return;
+            }
+        }
+    }
+
+    private void apply(ObjectUpdate objectUpdate) {
+        final ManagedObjectReference mor = objectUpdate.getObj();
+        if (objectUpdate.getKind() == ObjectUpdateKind.LEAVE) {
+            _vms.remove(mor.getValue());
+            _properties.remove(mor.getValue());
+            return;
+        }
+
+        Map<String, Object> properties = _properties.get(mor.getValue());
+        if (properties == null) {
+            properties = new LinkedHashMap<String, Object>();
+            _vms.put(mor.getValue(), mor);
+            _properties.put(mor.getValue(), properties);
+        }
+        for (PropertyChange change : objectUpdate.getChangeSet()) {
+            if (change.getOp() == PropertyChangeOp.REMOVE || change.getOp() == PropertyChangeOp.INDIRECT_REMOVE || change.getVal() == null) {
+                properties.remove(change.getName());
+            } else {
+                properties.put(change.getName(), change.getVal());
+            }
+        }
+    }
+}
@@ -29,7 +29,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -70,6 +72,7 @@ import com.vmware.vim25.VirtualDeviceConfigSpec;
 import com.vmware.vim25.VirtualDeviceConfigSpecFileOperation;
 import com.vmware.vim25.VirtualDeviceConfigSpecOperation;
 import com.vmware.vim25.VirtualDeviceConnectInfo;
+import com.vmware.vim25.VirtualDeviceFileBackingInfo;
 import com.vmware.vim25.VirtualDisk;
 import com.vmware.vim25.VirtualDiskFlatVer1BackingInfo;
 import com.vmware.vim25.VirtualDiskFlatVer2BackingInfo;
@@ -2659,7 +2662,7 @@ public class VirtualMachineMO extends BaseMO {
         return pathList;
     }
 
-    private String getDeviceBusName(List<VirtualDevice> allDevices, VirtualDevice theDevice) throws Exception {
+    private static String getDeviceBusName(List<VirtualDevice> allDevices, VirtualDevice theDevice) throws Exception {
         for (VirtualDevice device : allDevices) {
             if (device.getKey() == theDevice.getControllerKey().intValue()) {
                 if (device instanceof VirtualIDEController) {
@@ -2750,6 +2753,25 @@ public class VirtualMachineMO extends BaseMO {
         return deviceList.toArray(new VirtualDisk[0]);
     }
 
+    /**
+     * @param devices the config.hardware.device property of a vm.
+     * @return the base name of the vmdk file backing each disk, keyed by the
+     *         bus name of the disk, e.g. scsi0:0, as the perf counters of
+     *         the disk are.
+     */
+    public static Map<String, String> getDiskFileBaseNamesByBusName(List<VirtualDevice> devices) throws Exception {
+        Map<String, String> fileBaseNames = new HashMap<String, String>();
+        if (devices != null) {
+            for (VirtualDevice device : devices) {
+                if (device instanceof VirtualDisk && device.getBacking() instanceof VirtualDeviceFileBackingInfo) {
+                    String fileName = ((VirtualDeviceFileBackingInfo)device.getBacking()).getFileName();
+                    fileBaseNames.put(getDeviceBusName(devices, device), new DatastoreFile(fileName).getFileBaseName());
+                }
+            }
+        }
+        return fileBaseNames;
+    }
+
     public VirtualDisk getDiskDeviceByBusName(List<VirtualDevice> allDevices, String busName) throws Exception {
         for (VirtualDevice device : allDevices) {
             if (device instanceof VirtualDisk) {
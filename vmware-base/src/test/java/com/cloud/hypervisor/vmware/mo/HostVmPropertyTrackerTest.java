@@ -0,0 +1,168 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.vmware.mo;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.cloud.hypervisor.vmware.util.VmwareContext;
+import com.vmware.vim25.DynamicProperty;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectContent;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.ObjectUpdateKind;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyChangeOp;
+import com.vmware.vim25.PropertyFilterSpec;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.RuntimeFault;
+import com.vmware.vim25.RuntimeFaultFaultMsg;
+import com.vmware.vim25.UpdateSet;
+import com.vmware.vim25.VimPortType;
+import com.vmware.vim25.VirtualMachinePowerState;
+import com.vmware.vim25.WaitOptions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HostVmPropertyTrackerTest {
+
+    @Mock
+    VmwareContext context;
+    @Mock
+    VimPortType service;
+
+    ManagedObjectReference collector = mor("PropertyCollector", "session[1]");
+    HostVmPropertyTracker tracker;
+
+    private static ManagedObjectReference mor(String type, String value) {
+        ManagedObjectReference mor = new ManagedObjectReference();
+        mor.setType(type);
+        mor.setValue(value);
+        return mor;
+    }
+
+    private static ObjectUpdate update(ObjectUpdateKind kind, String vm, Object... nameValues) {
+        ObjectUpdate update = new ObjectUpdate();
+        update.setKind(kind);
+        update.setObj(mor("VirtualMachine", vm));
+        for (int i = 0; i < nameValues.length; i += 2) {
+            PropertyChange change = new PropertyChange();
+            change.setName((String)nameValues[i]);
+            change.setVal(nameValues[i + 1]);
+            change.setOp(PropertyChangeOp.ASSIGN);
+            update.getChangeSet().add(change);
+        }
+        return update;
+    }
+
+    private static UpdateSet updateSet(String version, boolean truncated, ObjectUpdate... updates) {
+        PropertyFilterUpdate filterUpdate = new PropertyFilterUpdate();
+        for (ObjectUpdate update : updates) {
+            filterUpdate.getObjectSet().add(update);
+        }
+        UpdateSet updateSet = new UpdateSet();
+        updateSet.setVersion(version);
+        updateSet.setTruncated(truncated);
+        updateSet.getFilterSet().add(filterUpdate);
+        return updateSet;
+    }
+
+    private static Map<String, Map<String, Object>> byVm(ObjectContent[] contents) {
+        Map<String, Map<String, Object>> vms = new HashMap<String, Map<String, Object>>();
+        for (ObjectContent content : contents) {
+            Map<String, Object> properties = new HashMap<String, Object>();
+            for (DynamicProperty property : content.getPropSet()) {
+                properties.put(property.getName(), property.getVal());
+            }
+            vms.put(content.getObj().getValue(), properties);
+        }
+        return vms;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        when(context.getService()).thenReturn(service);
+        when(context.getPropertyCollector()).thenReturn(mor("PropertyCollector", "propertyCollector"));
+        when(service.createPropertyCollector(any(ManagedObjectReference.class))).thenReturn(collector);
+        tracker = new HostVmPropertyTracker(context, new PropertyFilterSpec());
+
+        // the first call returns all the vms, in two parts
+        when(service.waitForUpdatesEx(eq(collector), eq(""), any(WaitOptions.class))).thenReturn(
+                updateSet("1", true, update(ObjectUpdateKind.ENTER, "vm-1", "name", "i-2-3-VM", "runtime.powerState", VirtualMachinePowerState.POWERED_ON)));
+        when(service.waitForUpdatesEx(eq(collector), eq("1"), any(WaitOptions.class))).thenReturn(
+                updateSet("2", false, update(ObjectUpdateKind.ENTER, "vm-2", "name", "i-2-4-VM", "runtime.powerState", VirtualMachinePowerState.POWERED_OFF)));
+    }
+
+    @Test
+    public void testInitialCallReturnsAllVms() throws Exception {
+        Map<String, Map<String, Object>> vms = byVm(tracker.getVmProperties());
+
+        Assert.assertEquals(2, vms.size());
+        Assert.assertEquals("i-2-3-VM", vms.get("vm-1").get("name"));
+        Assert.assertEquals(VirtualMachinePowerState.POWERED_OFF, vms.get("vm-2").get("runtime.powerState"));
+        verify(service).createFilter(eq(collector), any(PropertyFilterSpec.class), anyBoolean());
+    }
+
+    @Test
+    public void testOnlyChangesAreFetchedAfterwards() throws Exception {
+        tracker.getVmProperties();
+        when(service.waitForUpdatesEx(eq(collector), eq("2"), any(WaitOptions.class))).thenReturn(
+                updateSet("3", false, update(ObjectUpdateKind.MODIFY, "vm-1", "runtime.powerState", VirtualMachinePowerState.POWERED_OFF),
+                        update(ObjectUpdateKind.LEAVE, "vm-2")));
+
+        Map<String, Map<String, Object>> vms = byVm(tracker.getVmProperties());
+        Assert.assertEquals(1, vms.size());
+        Assert.assertEquals("i-2-3-VM", vms.get("vm-1").get("name"));
+        Assert.assertEquals(VirtualMachinePowerState.POWERED_OFF, vms.get("vm-1").get("runtime.powerState"));
+
+        // nothing changed
+        vms = byVm(tracker.getVmProperties());
+        Assert.assertEquals(1, vms.size());
+        verify(service, times(1)).createPropertyCollector(any(ManagedObjectReference.class));
+    }
+
+    @Test
+    public void testStartsOverAfterAFailure() throws Exception {
+        tracker.getVmProperties();
+        when(service.waitForUpdatesEx(eq(collector), eq("2"), any(WaitOptions.class))).thenThrow(new RuntimeFaultFaultMsg("session lost", new RuntimeFault()));
+
+        try {
+            tracker.getVmProperties();
+            Assert.fail("the failure is passed on so the caller can fall back to a full sweep");
+        } catch (RuntimeFaultFaultMsg e) {
+            // expected
+        }
+        verify(service).destroyPropertyCollector(collector);
+
+        Assert.assertEquals(2, byVm(tracker.getVmProperties()).size());
+        verify(service, times(2)).createPropertyCollector(any(ManagedObjectReference.class));
+        verify(service, times(2)).waitForUpdatesEx(eq(collector), eq(""), any(WaitOptions.class));
+    }
+}